@@ -0,0 +1,47 @@
+package com.example.mqtt.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 基准测试入口
+ * 接受所有 JMH 命令行参数（如基准名称正则、-f、-wi），结果默认以JSON格式写入
+ * benchmark-results/jmh-标签-时间.json，便于在不同版本之间对比。
+ *
+ * 用法: java -Dbenchmark.label=1.0.0 -jar target/benchmarks.jar [JMH参数]
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+
+        String result = commandLine.getResult().orElse(null);
+        if (result == null) {
+            String label = System.getProperty("benchmark.label", "current");
+            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            result = "benchmark-results/jmh-" + label + "-" + timestamp + ".json";
+            options.result(result);
+        }
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+
+        File parent = new File(result).getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        new Runner(options.build()).run();
+        System.out.println("结果已写入: " + result);
+    }
+}
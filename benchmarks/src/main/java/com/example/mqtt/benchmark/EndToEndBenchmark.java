@@ -0,0 +1,101 @@
+package com.example.mqtt.benchmark;
+
+import com.example.mqtt.MqttClient;
+import com.example.mqtt.MqttConfig;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 端到端发布/接收
+ * 发布端和订阅端各使用一个 MqttClient 连接 mqtt.properties 中配置的 Broker。
+ * roundTrip 测量单条消息从发布到订阅端处理器收到的延迟，publishThroughput 测量在发布窗口限制下的发布吞吐量。
+ */
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+    private static final long RECEIVE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    @Param({"0", "1", "2"})
+    public int qos;
+
+    private final AtomicLong lastReceived = new AtomicLong();
+    private final byte[] payload = new byte[64];
+    private MqttClient publisher;
+    private MqttClient subscriber;
+    private String topic;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        MqttConfig config = new MqttConfig();
+        topic = "bench/e2e/" + qos + "/" + System.nanoTime();
+
+        subscriber = new MqttClient(config, config.generateClientId("bench_sub"));
+        publisher = new MqttClient(config, config.generateClientId("bench_pub"));
+        if (!subscriber.connect() || !publisher.connect()) {
+            throw new IllegalStateException("无法连接到Broker " + config.getBrokerUrl()
+                + "，请先启动Broker或修改 benchmarks/src/main/resources/mqtt.properties");
+        }
+
+        subscriber.addHandler(topic, (receivedTopic, message) -> {
+            byte[] data = message.getPayload();
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (data[i] & 0xff);
+            }
+            lastReceived.set(value);
+        });
+        subscriber.subscribe(topic, qos);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        publisher.disconnect();
+        subscriber.disconnect();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long roundTrip() {
+        long expected = ++sequence;
+        for (int i = 0; i < 8; i++) {
+            payload[i] = (byte) (expected >>> (56 - i * 8));
+        }
+        publisher.publishAsync(payload.clone(), topic, qos);
+
+        long deadline = System.nanoTime() + RECEIVE_TIMEOUT_NANOS;
+        while (lastReceived.get() < expected) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("等待消息超时: " + expected);
+            }
+            Thread.onSpinWait();
+        }
+        return expected;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public CompletableFuture<IMqttDeliveryToken> publishThroughput() {
+        return publisher.publishAsync(payload, topic, qos);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.mqtt.benchmark;
+
+import com.example.mqtt.MessageDispatcher;
+import com.example.mqtt.TopicRouter;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * 消息分发：按主题过滤器查找处理器，以及交给处理线程的开销
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandlerDispatchBenchmark {
+
+    @Param({"10", "1000"})
+    public int filterCount;
+
+    private final TopicRouter<BiConsumer<String, MqttMessage>> router = new TopicRouter<>();
+    private final List<String> filters = new ArrayList<>();
+    private final MqttMessage message = new MqttMessage(new byte[64]);
+    private final AtomicLong handled = new AtomicLong();
+    private final BiConsumer<String, MqttMessage> handler = (topic, msg) -> handled.incrementAndGet();
+    private final TopicRouter.MatchVisitor<BiConsumer<String, MqttMessage>, MqttMessage> invoke =
+        (h, topic, msg) -> h.accept(topic, msg);
+
+    private String topic;
+    private MessageDispatcher inlineDispatcher;
+    private MessageDispatcher stripedDispatcher;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        for (int i = 0; i < filterCount; i++) {
+            String filter = (i % 2 == 0 ? "sensors/" + i + "/+/temperature" : "devices/" + i + "/#");
+            filters.add(filter);
+            router.add(filter, handler);
+        }
+        topic = "sensors/" + (filterCount / 2 * 2 - 2) + "/room1/temperature";
+        inlineDispatcher = new MessageDispatcher("bench-inline", 0, 1, MessageDispatcher.OverflowPolicy.BLOCK);
+        stripedDispatcher = new MessageDispatcher("bench-striped", 4, 1024, MessageDispatcher.OverflowPolicy.BLOCK);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        inlineDispatcher.shutdown(0);
+        stripedDispatcher.shutdown(1000);
+    }
+
+    /**
+     * 主题路由树匹配
+     */
+    @Benchmark
+    public int routerMatch() {
+        return router.match(topic, message, invoke);
+    }
+
+    /**
+     * 对照：逐个过滤器按层级比较
+     */
+    @Benchmark
+    public void linearScan(Blackhole blackhole) {
+        for (String filter : filters) {
+            if (matches(filter, topic)) {
+                handler.accept(topic, message);
+                blackhole.consume(filter);
+            }
+        }
+    }
+
+    /**
+     * 在回调线程中直接执行处理器（mqtt.dispatch.threads=0）
+     */
+    @Benchmark
+    public void dispatchInline() {
+        inlineDispatcher.dispatch(topic, message, handler);
+    }
+
+    /**
+     * 按主题哈希交给处理线程（队列满时阻塞）
+     */
+    @Benchmark
+    public void dispatchStriped() {
+        stripedDispatcher.dispatch(topic, message, handler);
+    }
+
+    private static boolean matches(String filter, String topic) {
+        String[] filterLevels = filter.split("/");
+        String[] topicLevels = topic.split("/");
+        for (int i = 0; i < filterLevels.length; i++) {
+            if (filterLevels[i].equals("#")) {
+                return true;
+            }
+            if (i >= topicLevels.length) {
+                return false;
+            }
+            if (!filterLevels[i].equals("+") && !filterLevels[i].equals(topicLevels[i])) {
+                return false;
+            }
+        }
+        return filterLevels.length == topicLevels.length;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.mqtt.benchmark;
+
+import com.example.mqtt.CborPayloadCodec;
+import com.example.mqtt.JsonPayloadCodec;
+import com.example.mqtt.PayloadCompressor;
+import com.example.mqtt.SensorReading;
+import com.example.mqtt.SensorReadingCodec;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发布端负载序列化
+ * gsonPretty 是最初 publish(Object) 的实现（格式化JSON转String再转字节），其余为替代方案
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PayloadSerializationBenchmark {
+    private final Gson prettyGson = new GsonBuilder().setPrettyPrinting().create();
+    private final Gson compactGson = new Gson();
+    private final JsonPayloadCodec jsonCodec = new JsonPayloadCodec();
+    private final CborPayloadCodec cborCodec = new CborPayloadCodec();
+    private final PayloadCompressor compressor = new PayloadCompressor(true, 0, 6);
+    private final byte[] sensorBuffer = new byte[SensorReadingCodec.PAYLOAD_LENGTH];
+
+    private Map<String, Object> data;
+    private SensorReading reading;
+    private byte[] compactJson;
+
+    @Setup
+    public void setup() {
+        data = SensorSamples.sensorMap();
+        reading = SensorSamples.sensorReading();
+        compactJson = jsonCodec.encode(data);
+    }
+
+    @Benchmark
+    public byte[] gsonPretty() {
+        return prettyGson.toJson(data).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] gsonCompact() {
+        return compactGson.toJson(data).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] jsonCodec() {
+        return jsonCodec.encode(data);
+    }
+
+    @Benchmark
+    public byte[] cborCodec() {
+        return cborCodec.encode(data);
+    }
+
+    @Benchmark
+    public byte[] sensorBinary() {
+        SensorReadingCodec.encode(reading, sensorBuffer, 0);
+        return sensorBuffer;
+    }
+
+    @Benchmark
+    public byte[] jsonCompressed() {
+        return compressor.compress(compactJson);
+    }
+}
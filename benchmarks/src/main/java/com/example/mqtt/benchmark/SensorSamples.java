@@ -0,0 +1,29 @@
+package com.example.mqtt.benchmark;
+
+import com.example.mqtt.SensorReading;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 基准测试使用的样例数据，与 MqttPublisher 生成的模拟传感器数据结构一致
+ */
+final class SensorSamples {
+
+    private SensorSamples() {
+    }
+
+    static Map<String, Object> sensorMap() {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("id", 12345);
+        data.put("timestamp", "2024-05-01T12:34:56.789");
+        data.put("temperature", 25.37);
+        data.put("humidity", 48.12);
+        data.put("status", "normal");
+        return data;
+    }
+
+    static SensorReading sensorReading() {
+        return new SensorReading(12345, 1714566896789L, 25.37, 48.12, SensorReading.Status.NORMAL);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.mqtt.benchmark;
+
+import com.example.mqtt.CborPayloadCodec;
+import com.example.mqtt.JsonPayloadCodec;
+import com.example.mqtt.JsonPayloadView;
+import com.example.mqtt.PayloadCodecs;
+import com.example.mqtt.SensorReading;
+import com.example.mqtt.SensorReadingCodec;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订阅端负载解析：从收到的负载中取出温度值
+ * gsonTree 是最初 MqttDemo 消息处理器的实现（字节转String后解析成 JsonObject）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SubscriberParsingBenchmark {
+    private final JsonPayloadCodec jsonCodec = new JsonPayloadCodec();
+    private final CborPayloadCodec cborCodec = new CborPayloadCodec();
+    private final PayloadCodecs codecs = new PayloadCodecs();
+    private final JsonPayloadView view = new JsonPayloadView();
+    private final SensorReading reading = new SensorReading();
+
+    private byte[] jsonPayload;
+    private byte[] cborPayload;
+    private byte[] sensorPayload;
+
+    @Setup
+    public void setup() {
+        jsonPayload = jsonCodec.encode(SensorSamples.sensorMap());
+        cborPayload = cborCodec.encode(SensorSamples.sensorMap());
+        sensorPayload = new SensorReadingCodec().encode(SensorSamples.sensorReading());
+    }
+
+    @Benchmark
+    public double gsonTree() {
+        String payload = new String(jsonPayload, StandardCharsets.UTF_8);
+        JsonObject json = JsonParser.parseString(payload).getAsJsonObject();
+        return json.get("temperature").getAsDouble();
+    }
+
+    @Benchmark
+    public double jsonCodecMap() {
+        Map<?, ?> map = (Map<?, ?>) codecs.decode(jsonPayload);
+        return ((Number) map.get("temperature")).doubleValue();
+    }
+
+    @Benchmark
+    public double jsonView() {
+        return view.reset(jsonPayload).getDouble("temperature");
+    }
+
+    @Benchmark
+    public double cborCodecMap() {
+        Map<?, ?> map = (Map<?, ?>) codecs.decode(cborPayload);
+        return ((Number) map.get("temperature")).doubleValue();
+    }
+
+    @Benchmark
+    public double sensorBinary() {
+        return SensorReadingCodec.decode(sensorPayload, reading).getTemperature();
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.mqtt;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自适应发布流控
+ * 根据发布到确认（deliveryComplete）的延迟调整 {@link PublishWindow} 的大小（AIMD）：
+ * <ul>
+ *   <li>延迟正常时加性增大窗口：启动阶段每条确认加1（每个往返翻倍），之后每个往返加1</li>
+ *   <li>延迟超过阈值时乘性减小窗口（×0.7），确认超时或发布失败时减半；每个往返最多减小一次</li>
+ * </ul>
+ * 延迟阈值默认为基准延迟（最近一段时间内平滑延迟的最小值）乘以 mqtt.flow.latency.tolerance，
+ * 也可以用 mqtt.flow.latency.target.ms 指定固定值。
+ *
+ * 窗口不超过发布窗口的有效上限（mqtt.max.inflight，MQTT 5 下还不超过 Broker 声明的接收上限），
+ * 上限在重连后变化时由连接调用 {@link #onCeilingChanged()} 更新。
+ *
+ * 发送速率由窗口决定：稳定状态下速率约等于 窗口 / 平均延迟，见 {@link #getEstimatedRate()}。
+ */
+public class AdaptiveRateController {
+    private static final double DECREASE_FACTOR = 0.7;
+    private static final double TIMEOUT_FACTOR = 0.5;
+    /** 基准延迟的刷新周期，避免网络变化后一直沿用过小的历史最小值 */
+    private static final long BASELINE_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(10);
+    /** 相对阈值的最小余量，避免基准延迟很小时的正常抖动（GC、线程调度）触发减窗 */
+    private static final long MIN_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final PublishWindow window;
+    private final int minWindow;
+    private int maxWindow;
+    private final double tolerance;
+    private final long targetLatencyNanos;
+    private final long timeoutNanos;
+
+    private double congestionWindow;
+    private double slowStartThreshold;
+    private long baselineNanos = Long.MAX_VALUE;
+    private long periodMinNanos = Long.MAX_VALUE;
+    private long periodStart = System.nanoTime();
+    private double smoothedNanos;
+    private long lastDecrease;
+    private long increases;
+    private long decreases;
+    private long timeouts;
+
+    /**
+     * @param window             受控的发布窗口，其有效上限即最大窗口
+     * @param minWindow          最小窗口
+     * @param initialWindow      初始窗口
+     * @param tolerance          延迟超过基准延迟的多少倍视为拥塞
+     * @param targetLatencyNanos 固定的延迟阈值，0 表示使用基准延迟 × tolerance
+     * @param timeoutNanos       确认超时
+     */
+    AdaptiveRateController(PublishWindow window, int minWindow, int initialWindow,
+                           double tolerance, long targetLatencyNanos, long timeoutNanos) {
+        if (tolerance <= 1.0) {
+            throw new IllegalArgumentException("mqtt.flow.latency.tolerance 必须大于1: " + tolerance);
+        }
+        this.window = window;
+        this.maxWindow = window.getCeiling();
+        this.minWindow = Math.max(1, Math.min(minWindow, maxWindow));
+        this.tolerance = tolerance;
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.timeoutNanos = timeoutNanos;
+        this.congestionWindow = Math.max(this.minWindow, Math.min(initialWindow, maxWindow));
+        this.slowStartThreshold = maxWindow;
+        window.setLimit((int) congestionWindow);
+    }
+
+    /**
+     * 按 mqtt.flow.* 配置创建
+     */
+    static AdaptiveRateController fromConfig(MqttConfig config, PublishWindow window) {
+        return new AdaptiveRateController(window,
+            config.getFlowWindowMin(),
+            config.getFlowWindowInitial(),
+            config.getFlowLatencyTolerance(),
+            TimeUnit.MILLISECONDS.toNanos(config.getFlowLatencyTargetMs()),
+            TimeUnit.MILLISECONDS.toNanos(config.getFlowAckTimeoutMs()));
+    }
+
+    /**
+     * 收到一条确认
+     *
+     * @param latencyNanos 从发布到确认的耗时
+     */
+    public synchronized void onAck(long latencyNanos) {
+        long now = System.nanoTime();
+        smoothedNanos = smoothedNanos == 0 ? latencyNanos : smoothedNanos * 0.875 + latencyNanos * 0.125;
+        // 基准取平滑延迟的最小值，单条偶然很快的确认不会拉低阈值
+        updateBaseline((long) smoothedNanos, now);
+
+        if (timeoutNanos > 0 && latencyNanos >= timeoutNanos) {
+            timeouts++;
+            decrease(TIMEOUT_FACTOR, now);
+        } else if (latencyNanos > threshold()) {
+            decrease(DECREASE_FACTOR, now);
+        } else {
+            increase();
+        }
+    }
+
+    /**
+     * 发布失败（连接断开、超时等）
+     */
+    public synchronized void onFailure() {
+        timeouts++;
+        decrease(TIMEOUT_FACTOR, System.nanoTime());
+    }
+
+    /**
+     * 发布窗口的有效上限变化（连接后按 Broker 声明的接收上限设置），窗口超出新上限时立即缩小
+     */
+    public synchronized void onCeilingChanged() {
+        int ceiling = window.getCeiling();
+        if (ceiling == maxWindow) {
+            return;
+        }
+        // 慢启动阈值停在原上限时随上限变化，窗口可以继续快速增长到新上限
+        if (slowStartThreshold >= maxWindow || slowStartThreshold > ceiling) {
+            slowStartThreshold = ceiling;
+        }
+        maxWindow = ceiling;
+        congestionWindow = Math.min(congestionWindow, maxWindow);
+        window.setLimit((int) congestionWindow);
+    }
+
+    private void updateBaseline(long latencyNanos, long now) {
+        periodMinNanos = Math.min(periodMinNanos, latencyNanos);
+        baselineNanos = Math.min(baselineNanos, latencyNanos);
+        if (now - periodStart >= BASELINE_PERIOD_NANOS) {
+            baselineNanos = periodMinNanos;
+            periodMinNanos = Long.MAX_VALUE;
+            periodStart = now;
+        }
+    }
+
+    private long threshold() {
+        if (targetLatencyNanos > 0) {
+            return targetLatencyNanos;
+        }
+        return Math.max((long) (baselineNanos * tolerance), baselineNanos + MIN_SLACK_NANOS);
+    }
+
+    private void increase() {
+        if (congestionWindow >= maxWindow) {
+            return;
+        }
+        if (congestionWindow < slowStartThreshold) {
+            congestionWindow += 1;
+        } else {
+            congestionWindow += 1 / congestionWindow;
+        }
+        congestionWindow = Math.min(congestionWindow, maxWindow);
+        increases++;
+        apply();
+    }
+
+    private void decrease(double factor, long now) {
+        // 同一个往返内的多条慢确认只算一次拥塞
+        if (now - lastDecrease < smoothedNanos) {
+            return;
+        }
+        lastDecrease = now;
+        congestionWindow = Math.max(Math.min(minWindow, maxWindow), congestionWindow * factor);
+        slowStartThreshold = congestionWindow;
+        decreases++;
+        apply();
+    }
+
+    private void apply() {
+        int limit = (int) congestionWindow;
+        if (limit != window.getLimit()) {
+            window.setLimit(limit);
+        }
+    }
+
+    /**
+     * 当前窗口
+     */
+    public synchronized int getWindow() {
+        return (int) congestionWindow;
+    }
+
+    /**
+     * 平滑后的确认延迟（纳秒）
+     */
+    public synchronized long getSmoothedLatencyNanos() {
+        return (long) smoothedNanos;
+    }
+
+    /**
+     * 基准延迟（纳秒），尚无确认时为0
+     */
+    public synchronized long getBaselineLatencyNanos() {
+        return baselineNanos == Long.MAX_VALUE ? 0 : baselineNanos;
+    }
+
+    /**
+     * 按当前窗口和平均延迟估算的可持续发送速率（条/秒）
+     */
+    public synchronized double getEstimatedRate() {
+        return smoothedNanos == 0 ? 0 : (int) congestionWindow * 1e9 / smoothedNanos;
+    }
+
+    public synchronized long getIncreaseCount() {
+        return increases;
+    }
+
+    public synchronized long getDecreaseCount() {
+        return decreases;
+    }
+
+    public synchronized long getTimeoutCount() {
+        return timeouts;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("窗口 %d/%d, 延迟 %.1fms (基准 %.1fms), 估算速率 %.0f 条/秒, 增大 %d 次, 减小 %d 次, 超时 %d 次",
+            (int) congestionWindow, maxWindow, smoothedNanos / 1e6, getBaselineLatencyNanos() / 1e6,
+            getEstimatedRate(), increases, decreases, timeouts);
+    }
+}
@@ -0,0 +1,376 @@
+package com.example.mqtt;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CBOR（RFC 8949）二进制编解码器
+ * 支持 Map、集合/数组、字符串、整数、浮点数、布尔值、null 和 byte[]；
+ * 其它对象先通过Gson转换为JSON树再编码。
+ * 浮点数在不损失精度时使用4字节单精度，整数使用最短编码。
+ */
+public class CborPayloadCodec implements PayloadCodec {
+    public static final int ID = 2;
+    public static final String CONTENT_TYPE = "application/cbor";
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_BYTES = 2;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_MAP = 5;
+    private static final int MAJOR_TAG = 6;
+    private static final int MAJOR_SIMPLE = 7;
+
+    private static final int FALSE = 0xf4;
+    private static final int TRUE = 0xf5;
+    private static final int NULL = 0xf6;
+    private static final int FLOAT32 = 0xfa;
+    private static final int FLOAT64 = 0xfb;
+    private static final int BREAK = 0xff;
+
+    private final Gson gson = new Gson();
+    private final ThreadLocal<PayloadBuffer> buffers = ThreadLocal.withInitial(() -> new PayloadBuffer(256));
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public byte[] encode(Object data) {
+        PayloadBuffer out = buffers.get();
+        out.reset();
+        PayloadCodecs.writeHeader(out, ID);
+        write(out, data);
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] data, int offset, int length) {
+        Reader reader = new Reader(data, offset, offset + length);
+        return reader.read();
+    }
+
+    // ==================== 编码 ====================
+
+    private void write(PayloadBuffer out, Object value) {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            writeText(out, (String) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) {
+            writeDouble(out, ((Number) value).doubleValue());
+        } else if (value instanceof BigInteger) {
+            writeLong(out, ((BigInteger) value).longValue());
+        } else if (value instanceof Number) {
+            writeLong(out, ((Number) value).longValue());
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            writeTypeAndLength(out, MAJOR_MAP, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeText(out, String.valueOf(entry.getKey()));
+                write(out, entry.getValue());
+            }
+        } else if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            writeTypeAndLength(out, MAJOR_ARRAY, collection.size());
+            for (Object item : collection) {
+                write(out, item);
+            }
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            writeTypeAndLength(out, MAJOR_BYTES, bytes.length);
+            out.writeBytes(bytes, 0, bytes.length);
+        } else if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            writeTypeAndLength(out, MAJOR_ARRAY, array.length);
+            for (Object item : array) {
+                write(out, item);
+            }
+        } else if (value instanceof Character || value instanceof Enum) {
+            writeText(out, value.toString());
+        } else if (value instanceof JsonElement) {
+            writeJson(out, (JsonElement) value);
+        } else {
+            writeJson(out, gson.toJsonTree(value));
+        }
+    }
+
+    private void writeJson(PayloadBuffer out, JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            out.writeByte(NULL);
+        } else if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            writeTypeAndLength(out, MAJOR_MAP, object.size());
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                writeText(out, entry.getKey());
+                writeJson(out, entry.getValue());
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            writeTypeAndLength(out, MAJOR_ARRAY, array.size());
+            for (JsonElement item : array) {
+                writeJson(out, item);
+            }
+        } else {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                out.writeByte(primitive.getAsBoolean() ? TRUE : FALSE);
+            } else if (primitive.isNumber()) {
+                BigDecimal number = primitive.getAsBigDecimal();
+                if (number.scale() <= 0 && number.toBigInteger().bitLength() < 64) {
+                    writeLong(out, number.longValueExact());
+                } else {
+                    writeDouble(out, number.doubleValue());
+                }
+            } else {
+                writeText(out, primitive.getAsString());
+            }
+        }
+    }
+
+    private static void writeText(PayloadBuffer out, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeTypeAndLength(out, MAJOR_TEXT, bytes.length);
+        out.writeBytes(bytes, 0, bytes.length);
+    }
+
+    private static void writeLong(PayloadBuffer out, long value) {
+        if (value >= 0) {
+            writeTypeAndLength(out, MAJOR_UNSIGNED, value);
+        } else {
+            writeTypeAndLength(out, MAJOR_NEGATIVE, -1 - value);
+        }
+    }
+
+    private static void writeDouble(PayloadBuffer out, double value) {
+        float single = (float) value;
+        if (single == value || Double.isNaN(value)) {
+            out.writeByte(FLOAT32);
+            out.writeBigEndian(Float.floatToIntBits(single), 4);
+        } else {
+            out.writeByte(FLOAT64);
+            out.writeBigEndian(Double.doubleToLongBits(value), 8);
+        }
+    }
+
+    private static void writeTypeAndLength(PayloadBuffer out, int major, long length) {
+        int type = major << 5;
+        if (length < 24) {
+            out.writeByte(type | (int) length);
+        } else if (length <= 0xffL) {
+            out.writeByte(type | 24);
+            out.writeBigEndian(length, 1);
+        } else if (length <= 0xffffL) {
+            out.writeByte(type | 25);
+            out.writeBigEndian(length, 2);
+        } else if (length <= 0xffffffffL) {
+            out.writeByte(type | 26);
+            out.writeBigEndian(length, 4);
+        } else {
+            out.writeByte(type | 27);
+            out.writeBigEndian(length, 8);
+        }
+    }
+
+    // ==================== 解码 ====================
+
+    /**
+     * 顺序读取CBOR数据项
+     */
+    private static final class Reader {
+        private final byte[] data;
+        private final int end;
+        private int position;
+
+        Reader(byte[] data, int offset, int end) {
+            this.data = data;
+            this.position = offset;
+            this.end = end;
+        }
+
+        Object read() {
+            int initial = readUnsignedByte();
+            int major = initial >>> 5;
+            int info = initial & 0x1f;
+
+            switch (major) {
+                case MAJOR_UNSIGNED:
+                    return readArgument(info);
+                case MAJOR_NEGATIVE:
+                    return -1 - readArgument(info);
+                case MAJOR_BYTES:
+                    return info == 31 ? readIndefiniteBytes() : readBytes((int) readArgument(info));
+                case MAJOR_TEXT:
+                    if (info == 31) {
+                        return new String(readIndefiniteBytes(), StandardCharsets.UTF_8);
+                    }
+                    int textLength = (int) readArgument(info);
+                    String text = new String(data, position, checkAvailable(textLength), StandardCharsets.UTF_8);
+                    position += textLength;
+                    return text;
+                case MAJOR_ARRAY:
+                    return readArray(info);
+                case MAJOR_MAP:
+                    return readMap(info);
+                case MAJOR_TAG:
+                    readArgument(info);
+                    return read();
+                case MAJOR_SIMPLE:
+                default:
+                    return readSimple(initial, info);
+            }
+        }
+
+        private List<Object> readArray(int info) {
+            List<Object> list;
+            if (info == 31) {
+                list = new ArrayList<>();
+                while (peek() != BREAK) {
+                    list.add(read());
+                }
+                position++;
+            } else {
+                int size = (int) readArgument(info);
+                list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(read());
+                }
+            }
+            return list;
+        }
+
+        private Map<String, Object> readMap(int info) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            if (info == 31) {
+                while (peek() != BREAK) {
+                    map.put(String.valueOf(read()), read());
+                }
+                position++;
+            } else {
+                long size = readArgument(info);
+                for (long i = 0; i < size; i++) {
+                    map.put(String.valueOf(read()), read());
+                }
+            }
+            return map;
+        }
+
+        private Object readSimple(int initial, int info) {
+            switch (initial) {
+                case FALSE:
+                    return Boolean.FALSE;
+                case TRUE:
+                    return Boolean.TRUE;
+                case NULL:
+                case 0xf7:
+                    return null;
+                case 0xf9:
+                    return halfToDouble((int) readBigEndian(2));
+                case FLOAT32:
+                    return (double) Float.intBitsToFloat((int) readBigEndian(4));
+                case FLOAT64:
+                    return Double.longBitsToDouble(readBigEndian(8));
+                default:
+                    throw new IllegalArgumentException("不支持的CBOR简单值: " + info);
+            }
+        }
+
+        private long readArgument(int info) {
+            if (info < 24) {
+                return info;
+            }
+            switch (info) {
+                case 24:
+                    return readBigEndian(1);
+                case 25:
+                    return readBigEndian(2);
+                case 26:
+                    return readBigEndian(4);
+                case 27:
+                    return readBigEndian(8);
+                default:
+                    throw new IllegalArgumentException("无效的CBOR长度编码: " + info);
+            }
+        }
+
+        private byte[] readBytes(int length) {
+            byte[] bytes = new byte[checkAvailable(length)];
+            System.arraycopy(data, position, bytes, 0, length);
+            position += length;
+            return bytes;
+        }
+
+        private byte[] readIndefiniteBytes() {
+            PayloadBuffer chunks = new PayloadBuffer(64);
+            while (peek() != BREAK) {
+                int chunkInfo = readUnsignedByte() & 0x1f;
+                int length = checkAvailable((int) readArgument(chunkInfo));
+                chunks.writeBytes(data, position, length);
+                position += length;
+            }
+            position++;
+            return chunks.toByteArray();
+        }
+
+        private long readBigEndian(int length) {
+            checkAvailable(length);
+            long value = 0;
+            for (int i = 0; i < length; i++) {
+                value = (value << 8) | (data[position++] & 0xff);
+            }
+            return value;
+        }
+
+        private int readUnsignedByte() {
+            checkAvailable(1);
+            return data[position++] & 0xff;
+        }
+
+        private int peek() {
+            checkAvailable(1);
+            return data[position] & 0xff;
+        }
+
+        private int checkAvailable(int length) {
+            if (length < 0 || position + length > end) {
+                throw new IllegalArgumentException("CBOR数据不完整");
+            }
+            return length;
+        }
+
+        private static double halfToDouble(int half) {
+            int exponent = (half >> 10) & 0x1f;
+            int mantissa = half & 0x3ff;
+            double value;
+            if (exponent == 0) {
+                value = mantissa * Math.pow(2, -24);
+            } else if (exponent != 31) {
+                value = (mantissa + 1024) * Math.pow(2, exponent - 25);
+            } else {
+                value = mantissa == 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+            }
+            return (half & 0x8000) != 0 ? -value : value;
+        }
+    }
+}
@@ -0,0 +1,492 @@
+package com.example.mqtt;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * 客户端运行指标
+ * 记录发布调用耗时、发布到确认的耗时、处理器耗时（{@link LatencyHistogram}），
+ * 按主题统计的消息数和字节数，以及在途消息数和重连次数。
+ *
+ * 记录方法只做原子计数，不加锁、不分配对象（每个主题第一次出现时除外），可在生产环境常开。
+ * 调用 {@link #start} 后注册为 JMX MBean，并每秒计算一次速率；可选定期打印摘要。
+ */
+public class ClientMetrics implements ClientMetricsMBean {
+    /** 单独统计的主题数上限，超出的主题合并到 {@link #OTHER_TOPICS} */
+    public static final int MAX_TOPICS = 1000;
+    public static final String OTHER_TOPICS = "#other";
+
+    private static volatile ScheduledExecutorService scheduler;
+
+    private final LatencyHistogram publishCallLatency = new LatencyHistogram();
+    private final LatencyHistogram ackLatency = new LatencyHistogram();
+    private final LatencyHistogram handlerLatency = new LatencyHistogram();
+    private final LatencyHistogram queueWaitLatency = new LatencyHistogram();
+    private final Counters totals = new Counters();
+    private final Map<String, Counters> topics = new ConcurrentHashMap<>();
+    private final LongAdder publishFailures = new LongAdder();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong connectionLosses = new AtomicLong();
+    private volatile IntSupplier inflightGauge = () -> 0;
+    private volatile IntSupplier windowGauge = () -> 0;
+    private volatile IntSupplier backlogGauge = () -> 0;
+    private volatile DuplicateFilter duplicateFilter;
+
+    private String name;
+    private ObjectName objectName;
+    private ScheduledFuture<?> sampleTask;
+    private ScheduledFuture<?> dumpTask;
+    private long lastSampleNanos;
+
+    /**
+     * 记录一次发布调用
+     *
+     * @param callNanos 发布调用本身的耗时
+     */
+    public void recordPublish(String topic, int bytes, long callNanos) {
+        publishCallLatency.record(callNanos);
+        totals.published(bytes);
+        countersFor(topic).published(bytes);
+    }
+
+    public void recordPublishFailure() {
+        publishFailures.increment();
+    }
+
+    /**
+     * 记录从发布到 deliveryComplete 的耗时
+     */
+    public void recordDelivery(long latencyNanos) {
+        ackLatency.record(latencyNanos);
+    }
+
+    public void recordReceive(String topic, int bytes) {
+        totals.received(bytes);
+        countersFor(topic).received(bytes);
+    }
+
+    public void recordHandler(long nanos) {
+        handlerLatency.record(nanos);
+    }
+
+    /**
+     * 记录消息从到达到开始处理的等待时间（消费延迟）
+     */
+    public void recordQueueWait(long nanos) {
+        queueWaitLatency.record(nanos);
+    }
+
+    public void recordReconnect() {
+        reconnects.incrementAndGet();
+    }
+
+    public void recordConnectionLost() {
+        connectionLosses.incrementAndGet();
+    }
+
+    /**
+     * 设置在途消息数的取值来源
+     */
+    public void setInflightGauge(IntSupplier inflightGauge) {
+        this.inflightGauge = inflightGauge;
+    }
+    
+    /**
+     * 设置重复消息过滤器，用于报告过滤数和误判率
+     */
+    public void setDuplicateFilter(DuplicateFilter duplicateFilter) {
+        this.duplicateFilter = duplicateFilter;
+    }
+    
+    /**
+     * 设置发布窗口大小的取值来源
+     */
+    public void setWindowGauge(IntSupplier windowGauge) {
+        this.windowGauge = windowGauge;
+    }
+    
+    /**
+     * 设置积压消息数（已接收、尚未处理完）的取值来源
+     */
+    public void setBacklogGauge(IntSupplier backlogGauge) {
+        this.backlogGauge = backlogGauge;
+    }
+
+    private Counters countersFor(String topic) {
+        Counters counters = topics.get(topic);
+        if (counters != null) {
+            return counters;
+        }
+        if (topics.size() >= MAX_TOPICS) {
+            return topics.computeIfAbsent(OTHER_TOPICS, key -> new Counters());
+        }
+        return topics.computeIfAbsent(topic, key -> new Counters());
+    }
+
+    /**
+     * 注册 JMX MBean 并开始计算速率
+     *
+     * @param name              客户端名称（通常为客户端ID）
+     * @param jmx               是否注册为 JMX MBean
+     * @param dumpIntervalSeconds 定期打印摘要的间隔（秒），0 表示不打印
+     */
+    public synchronized void start(String name, boolean jmx, long dumpIntervalSeconds) {
+        stop();
+        this.name = name;
+        this.lastSampleNanos = System.nanoTime();
+
+        if (jmx) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName candidate = new ObjectName("com.example.mqtt:type=ClientMetrics,name=" + ObjectName.quote(name));
+                if (server.isRegistered(candidate)) {
+                    server.unregisterMBean(candidate);
+                }
+                server.registerMBean(this, candidate);
+                objectName = candidate;
+            } catch (JMException e) {
+                System.err.println("⚠ 注册JMX指标失败: " + e.getMessage());
+            }
+        }
+
+        ScheduledExecutorService executor = scheduler();
+        sampleTask = executor.scheduleAtFixedRate(this::sample, 1, 1, TimeUnit.SECONDS);
+        if (dumpIntervalSeconds > 0) {
+            dumpTask = executor.scheduleAtFixedRate(
+                () -> System.out.println(snapshot()), dumpIntervalSeconds, dumpIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 注销 JMX MBean 并停止定时任务
+     */
+    public synchronized void stop() {
+        if (sampleTask != null) {
+            sampleTask.cancel(false);
+            sampleTask = null;
+        }
+        if (dumpTask != null) {
+            dumpTask.cancel(false);
+            dumpTask = null;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                // 已被注销
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * 计算最近一个采样周期的速率
+     */
+    private synchronized void sample() {
+        long now = System.nanoTime();
+        double seconds = (now - lastSampleNanos) / 1e9;
+        lastSampleNanos = now;
+        if (seconds <= 0) {
+            return;
+        }
+        totals.sample(seconds);
+        for (Counters counters : topics.values()) {
+            counters.sample(seconds);
+        }
+    }
+
+    /**
+     * 进程内共享的定时线程（指标采样、微批量发布的 linger 刷新）
+     */
+    static ScheduledExecutorService scheduler() {
+        ScheduledExecutorService executor = scheduler;
+        if (executor == null) {
+            synchronized (ClientMetrics.class) {
+                executor = scheduler;
+                if (executor == null) {
+                    executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "mqtt-metrics");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    scheduler = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    public LatencyHistogram getPublishCallLatency() {
+        return publishCallLatency;
+    }
+
+    public LatencyHistogram getAckLatency() {
+        return ackLatency;
+    }
+
+    public LatencyHistogram getHandlerLatency() {
+        return handlerLatency;
+    }
+
+    public LatencyHistogram getQueueWaitLatency() {
+        return queueWaitLatency;
+    }
+
+    @Override
+    public long getPublishedMessages() {
+        return totals.publishedMessages.sum();
+    }
+
+    @Override
+    public long getPublishedBytes() {
+        return totals.publishedBytes.sum();
+    }
+
+    @Override
+    public long getPublishFailures() {
+        return publishFailures.sum();
+    }
+
+    @Override
+    public long getReceivedMessages() {
+        return totals.receivedMessages.sum();
+    }
+
+    @Override
+    public long getReceivedBytes() {
+        return totals.receivedBytes.sum();
+    }
+
+    @Override
+    public double getPublishRate() {
+        return totals.publishRate;
+    }
+
+    @Override
+    public double getPublishByteRate() {
+        return totals.publishByteRate;
+    }
+
+    @Override
+    public double getReceiveRate() {
+        return totals.receiveRate;
+    }
+
+    @Override
+    public double getReceiveByteRate() {
+        return totals.receiveByteRate;
+    }
+
+    @Override
+    public int getInflight() {
+        return inflightGauge.getAsInt();
+    }
+
+    @Override
+    public int getPublishWindow() {
+        return windowGauge.getAsInt();
+    }
+
+    @Override
+    public int getBacklog() {
+        return backlogGauge.getAsInt();
+    }
+
+    @Override
+    public long getReconnectCount() {
+        return reconnects.get();
+    }
+
+    @Override
+    public long getConnectionLostCount() {
+        return connectionLosses.get();
+    }
+
+    @Override
+    public long getDuplicateMessages() {
+        DuplicateFilter filter = duplicateFilter;
+        return filter == null ? 0 : filter.getDuplicateCount();
+    }
+
+    @Override
+    public double getDuplicateHitRate() {
+        DuplicateFilter filter = duplicateFilter;
+        return filter == null ? 0 : filter.getHitRate();
+    }
+
+    @Override
+    public double getDuplicateFalsePositiveRate() {
+        DuplicateFilter filter = duplicateFilter;
+        return filter == null ? 0 : filter.getFalsePositiveRate();
+    }
+
+    @Override
+    public double getPublishCallP50Micros() {
+        return micros(publishCallLatency.getPercentile(50));
+    }
+
+    @Override
+    public double getPublishCallP99Micros() {
+        return micros(publishCallLatency.getPercentile(99));
+    }
+
+    @Override
+    public double getPublishCallP999Micros() {
+        return micros(publishCallLatency.getPercentile(99.9));
+    }
+
+    @Override
+    public double getPublishCallMaxMicros() {
+        return micros(publishCallLatency.getMax());
+    }
+
+    @Override
+    public double getAckP50Micros() {
+        return micros(ackLatency.getPercentile(50));
+    }
+
+    @Override
+    public double getAckP99Micros() {
+        return micros(ackLatency.getPercentile(99));
+    }
+
+    @Override
+    public double getAckP999Micros() {
+        return micros(ackLatency.getPercentile(99.9));
+    }
+
+    @Override
+    public double getAckMaxMicros() {
+        return micros(ackLatency.getMax());
+    }
+
+    @Override
+    public double getHandlerP50Micros() {
+        return micros(handlerLatency.getPercentile(50));
+    }
+
+    @Override
+    public double getHandlerP99Micros() {
+        return micros(handlerLatency.getPercentile(99));
+    }
+
+    @Override
+    public double getHandlerP999Micros() {
+        return micros(handlerLatency.getPercentile(99.9));
+    }
+
+    @Override
+    public double getHandlerMaxMicros() {
+        return micros(handlerLatency.getMax());
+    }
+
+    @Override
+    public double getQueueWaitP50Micros() {
+        return micros(queueWaitLatency.getPercentile(50));
+    }
+
+    @Override
+    public double getQueueWaitP99Micros() {
+        return micros(queueWaitLatency.getPercentile(99));
+    }
+
+    @Override
+    public double getQueueWaitMaxMicros() {
+        return micros(queueWaitLatency.getMax());
+    }
+
+    @Override
+    public String[] getTopicStats() {
+        List<String> lines = new ArrayList<>(topics.size());
+        for (Map.Entry<String, Counters> entry : topics.entrySet()) {
+            Counters counters = entry.getValue();
+            lines.add(String.format("%s %d %d %d %d %.1f %.1f", entry.getKey(),
+                counters.publishedMessages.sum(), counters.publishedBytes.sum(),
+                counters.receivedMessages.sum(), counters.receivedBytes.sum(),
+                counters.publishRate, counters.receiveRate));
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    @Override
+    public String snapshot() {
+        return String.format("[指标 %s] 发布 %.0f/s (%.1f KB/s, 共%d, 失败%d) 接收 %.0f/s (%.1f KB/s, 共%d) "
+                + "在途 %d/%d 重连 %d | 发布调用 p50=%.0fus p99=%.0fus | 确认 p50=%.0fus p99=%.0fus p999=%.0fus "
+                + "| 处理 p50=%.0fus p99=%.0fus | 积压 %d 等待 p50=%.0fus p99=%.0fus",
+            name, getPublishRate(), getPublishByteRate() / 1024, getPublishedMessages(), getPublishFailures(),
+            getReceiveRate(), getReceiveByteRate() / 1024, getReceivedMessages(),
+            getInflight(), getPublishWindow(), getReconnectCount(),
+            getPublishCallP50Micros(), getPublishCallP99Micros(),
+            getAckP50Micros(), getAckP99Micros(), getAckP999Micros(),
+            getHandlerP50Micros(), getHandlerP99Micros(),
+            getBacklog(), getQueueWaitP50Micros(), getQueueWaitP99Micros());
+    }
+
+    @Override
+    public void resetHistograms() {
+        publishCallLatency.reset();
+        ackLatency.reset();
+        handlerLatency.reset();
+        queueWaitLatency.reset();
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    /**
+     * 一组消息计数及最近一秒的速率
+     */
+    private static final class Counters {
+        final LongAdder publishedMessages = new LongAdder();
+        final LongAdder publishedBytes = new LongAdder();
+        final LongAdder receivedMessages = new LongAdder();
+        final LongAdder receivedBytes = new LongAdder();
+        volatile double publishRate;
+        volatile double publishByteRate;
+        volatile double receiveRate;
+        volatile double receiveByteRate;
+        private long lastPublished;
+        private long lastPublishedBytes;
+        private long lastReceived;
+        private long lastReceivedBytes;
+
+        void published(int bytes) {
+            publishedMessages.increment();
+            publishedBytes.add(bytes);
+        }
+
+        void received(int bytes) {
+            receivedMessages.increment();
+            receivedBytes.add(bytes);
+        }
+
+        void sample(double seconds) {
+            long published = publishedMessages.sum();
+            long publishedByteCount = publishedBytes.sum();
+            long received = receivedMessages.sum();
+            long receivedByteCount = receivedBytes.sum();
+            publishRate = (published - lastPublished) / seconds;
+            publishByteRate = (publishedByteCount - lastPublishedBytes) / seconds;
+            receiveRate = (received - lastReceived) / seconds;
+            receiveByteRate = (receivedByteCount - lastReceivedBytes) / seconds;
+            lastPublished = published;
+            lastPublishedBytes = publishedByteCount;
+            lastReceived = received;
+            lastReceivedBytes = receivedByteCount;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.mqtt;
+
+/**
+ * 客户端指标的 JMX 接口
+ * 注册名: com.example.mqtt:type=ClientMetrics,name="客户端ID"
+ * 延迟单位为微秒，速率为最近一秒的每秒值
+ */
+public interface ClientMetricsMBean {
+
+    long getPublishedMessages();
+
+    long getPublishedBytes();
+
+    long getPublishFailures();
+
+    long getReceivedMessages();
+
+    long getReceivedBytes();
+
+    double getPublishRate();
+
+    double getPublishByteRate();
+
+    double getReceiveRate();
+
+    double getReceiveByteRate();
+
+    int getInflight();
+
+    /** 发布窗口大小（在途消息上限，启用自适应流控时随确认延迟变化） */
+    int getPublishWindow();
+
+    /** 已接收、尚未处理完的消息数（消费积压） */
+    int getBacklog();
+
+    long getReconnectCount();
+
+    long getConnectionLostCount();
+
+    /** 被重复消息过滤器丢弃的消息数（未启用时为0） */
+    long getDuplicateMessages();
+
+    /** 重复消息占检查消息的比例 */
+    double getDuplicateHitRate();
+
+    /** 重复消息过滤器的估算误判率 */
+    double getDuplicateFalsePositiveRate();
+
+    /** 调用 publishAsync 的耗时（含等待发布窗口） */
+    double getPublishCallP50Micros();
+
+    double getPublishCallP99Micros();
+
+    double getPublishCallP999Micros();
+
+    double getPublishCallMaxMicros();
+
+    /** 从发布到 deliveryComplete 的耗时 */
+    double getAckP50Micros();
+
+    double getAckP99Micros();
+
+    double getAckP999Micros();
+
+    double getAckMaxMicros();
+
+    /** 消息处理器的执行耗时 */
+    double getHandlerP50Micros();
+
+    double getHandlerP99Micros();
+
+    double getHandlerP999Micros();
+
+    double getHandlerMaxMicros();
+
+    /** 消息从到达到开始处理的等待时间（消费延迟） */
+    double getQueueWaitP50Micros();
+
+    double getQueueWaitP99Micros();
+
+    double getQueueWaitMaxMicros();
+
+    /** 每个主题一行: 主题 发布数 发布字节 接收数 接收字节 发布/秒 接收/秒 */
+    String[] getTopicStats();
+
+    /** 当前所有指标的单行摘要 */
+    String snapshot();
+
+    void resetHistograms();
+}
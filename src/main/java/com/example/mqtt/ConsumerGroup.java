@@ -0,0 +1,150 @@
+package com.example.mqtt;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 消费组
+ * 在一个进程中启动多个订阅者，以同一个组名共享订阅（$share/组名/主题），由 Broker 在成员之间分摊消息。
+ * 每个成员使用独立连接和独立的处理线程，消息处理完后才确认（MQTT 5 下未确认上限为 mqtt.share.member.inflight），
+ * 处理慢的成员未确认的消息达到上限后，Broker 把消息分给其他成员。
+ * 其他进程中的同名消费组成员同样参与分摊，增加成员（本进程或新进程）即可线性提高处理吞吐量。
+ */
+public class ConsumerGroup {
+    private final String group;
+    private final MqttSubscriber[] members;
+
+    public ConsumerGroup() {
+        this(MqttConfig.shared());
+    }
+
+    public ConsumerGroup(MqttConfig config) {
+        this(config, config.getShareGroup(), config.getShareMembers());
+    }
+
+    public ConsumerGroup(MqttConfig config, String group, int memberCount) {
+        if (group == null || group.isEmpty()) {
+            throw new IllegalArgumentException("消费组名不能为空（mqtt.share.group）");
+        }
+        if (memberCount < 1) {
+            throw new IllegalArgumentException("成员数必须大于0: " + memberCount);
+        }
+        this.group = group;
+        this.members = new MqttSubscriber[memberCount];
+        for (int i = 0; i < memberCount; i++) {
+            members[i] = new MqttSubscriber(config, config.generateClientId(group + i), group);
+        }
+    }
+
+    /**
+     * 连接所有成员并以共享订阅订阅 mqtt.topic
+     *
+     * @return 连接成功的成员数
+     */
+    public int connect() {
+        int connectedCount = 0;
+        for (MqttSubscriber member : members) {
+            if (member.connect()) {
+                connectedCount++;
+            }
+        }
+        System.out.println("✓ 消费组 " + group + " 已连接 " + connectedCount + "/" + members.length + " 个成员");
+        return connectedCount;
+    }
+
+    /**
+     * 各成员已处理的消息数
+     */
+    public int[] getMessageCounts() {
+        int[] counts = new int[members.length];
+        for (int i = 0; i < members.length; i++) {
+            counts[i] = members[i].getMessageCount();
+        }
+        return counts;
+    }
+
+    /**
+     * 各成员的积压（已接收、尚未处理完的消息数）
+     */
+    public int[] getBacklogs() {
+        int[] backlogs = new int[members.length];
+        for (int i = 0; i < members.length; i++) {
+            backlogs[i] = members[i].getBacklog();
+        }
+        return backlogs;
+    }
+
+    /**
+     * 在线成员数
+     */
+    public int getConnectedCount() {
+        int count = 0;
+        for (MqttSubscriber member : members) {
+            if (member.isConnected()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public List<MqttSubscriber> getMembers() {
+        return Collections.unmodifiableList(Arrays.asList(members));
+    }
+
+    /**
+     * 断开所有成员
+     */
+    public void disconnect() {
+        for (MqttSubscriber member : members) {
+            member.disconnect();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder waits = new StringBuilder();
+        for (MqttSubscriber member : members) {
+            if (waits.length() > 0) {
+                waits.append(", ");
+            }
+            waits.append(String.format("%.1f", member.getMetrics().getQueueWaitP99Micros() / 1000));
+        }
+        return "消费组 " + group + ": 在线 " + getConnectedCount() + "/" + members.length
+            + "，已处理 " + Arrays.toString(getMessageCounts())
+            + "，积压 " + Arrays.toString(getBacklogs())
+            + "，等待 p99(ms) [" + waits + "]";
+    }
+
+    /**
+     * 主函数 - 按 mqtt.share.group / mqtt.share.members 启动消费组
+     */
+    public static void main(String[] args) {
+        ConsumerGroup consumers = new ConsumerGroup();
+        if (consumers.connect() == 0) {
+            return;
+        }
+
+        System.out.println("按 Ctrl+C 停止\n");
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("\n\n中断信号收到，正在停止...");
+            System.out.println(consumers);
+            consumers.disconnect();
+            System.out.println("程序结束");
+        }));
+
+        try {
+            while (true) {
+                Thread.sleep(10_000);
+                System.out.println(consumers);
+            }
+        } catch (InterruptedException e) {
+            System.out.println("\n程序被中断");
+        }
+    }
+}
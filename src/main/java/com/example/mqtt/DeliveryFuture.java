@@ -0,0 +1,22 @@
+package com.example.mqtt;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步发布的 Future，同时记录发布开始时间和发布方
+ * 作为 Paho 令牌的 userContext 传递，deliveryComplete 时据此计算发布到确认的耗时，
+ * 并在共享连接（{@link MqttConnectionManager}）上把确认交给发布方
+ */
+class DeliveryFuture extends CompletableFuture<IMqttDeliveryToken> {
+    final long startNanos;
+    final MqttConnectionManager.Listener owner;
+    /** 等待确认的时间已超过 mqtt.flow.ack.timeout.ms（已计入流控超时） */
+    volatile boolean ackTimedOut;
+
+    DeliveryFuture(long startNanos, MqttConnectionManager.Listener owner) {
+        this.startNanos = startNanos;
+        this.owner = owner;
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.mqtt;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 重复消息过滤器
+ * QoS 1 消息在重连后可能被重复投递，过滤器记住最近收到的消息标识，再次出现时判定为重复。
+ *
+ * 消息标识为 主题 + 负载内容的64位哈希，或 主题 + 负载中的业务ID字段（mqtt.dedup.field，JSON路径）。
+ * 标识保存在两代轮换的布隆过滤器中：新标识写入当前代，当前代写满 capacity 条或超过时间窗口后
+ * 变为上一代，原来的上一代清空后作为新的当前代。因此内存固定（两个位数组），检查为常数时间，
+ * 每个标识至少被记住 min(时间窗口, capacity 条消息) 的时长。
+ *
+ * 布隆过滤器可能误判（把新消息当成重复），误判率按 mqtt.dedup.fpp 设计，实际估算值见
+ * {@link #getFalsePositiveRate()}；不会漏判窗口内的重复消息。
+ */
+public class DuplicateFilter {
+    private static final int MAX_HASHES = 16;
+    private static final double LN2 = Math.log(2);
+
+    private final int capacity;
+    private final long windowNanos;
+    private final int hashes;
+    private final long mask;
+    private final String idField;
+    private final ThreadLocal<JsonPayloadView> views = ThreadLocal.withInitial(JsonPayloadView::new);
+
+    private long[] current;
+    private long[] previous;
+    private int currentCount;
+    private long currentBitsSet;
+    private long previousBitsSet;
+    private long rotatedAt;
+
+    private long checked;
+    private long duplicates;
+    private long rotations;
+
+    /**
+     * @param capacity          每一代最多记录的标识数
+     * @param falsePositiveRate 每一代写满时的设计误判率
+     * @param windowMillis      时间窗口（毫秒）
+     * @param idField           业务ID字段的JSON路径，null 或空表示按负载内容识别
+     */
+    public DuplicateFilter(int capacity, double falsePositiveRate, long windowMillis, String idField) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("mqtt.dedup.capacity 必须大于0: " + capacity);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("mqtt.dedup.fpp 必须在0和1之间: " + falsePositiveRate);
+        }
+        this.capacity = capacity;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.idField = idField == null || idField.isEmpty() ? null : idField;
+
+        // m = -n·ln(p) / ln(2)²，向上取2的幂以便用位与代替取模
+        long bits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (LN2 * LN2));
+        bits = Math.max(64, Long.highestOneBit(bits - 1) << 1);
+        this.mask = bits - 1;
+        // k = -log2(p)：按设计误判率取哈希次数，位数组取整后多出的空间用于降低误判率而不是增加哈希次数
+        this.hashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(-Math.log(falsePositiveRate) / LN2)));
+        this.current = new long[(int) (bits >>> 6)];
+        this.previous = new long[(int) (bits >>> 6)];
+        this.rotatedAt = System.nanoTime();
+    }
+
+    /**
+     * 按 mqtt.dedup.* 配置创建，未启用时返回 null
+     */
+    public static DuplicateFilter fromConfig(MqttConfig config) {
+        if (!config.isDedupEnabled()) {
+            return null;
+        }
+        return new DuplicateFilter(config.getDedupCapacity(), config.getDedupFpp(),
+            TimeUnit.SECONDS.toMillis(config.getDedupWindowSeconds()), config.getDedupField());
+    }
+
+    /**
+     * 检查消息是否重复，并记住该消息
+     *
+     * @param payload 解压后的负载
+     */
+    public boolean isDuplicate(String topic, byte[] payload) {
+        return isDuplicate(identify(topic, payload));
+    }
+
+    /**
+     * 计算消息标识（在锁外执行）
+     */
+    long identify(String topic, byte[] payload) {
+        long seed = Hashing.mix(topic.hashCode());
+        if (idField != null) {
+            long id = views.get().reset(payload).hashOf(idField);
+            if (id != 0) {
+                return Hashing.mix(seed ^ id);
+            }
+            // 没有ID字段的消息按内容识别
+        }
+        return Hashing.hash64(payload, 0, payload.length, seed);
+    }
+
+    /**
+     * 检查标识是否出现过，并记住该标识
+     */
+    public synchronized boolean isDuplicate(long id) {
+        long now = System.nanoTime();
+        if (currentCount >= capacity || now - rotatedAt >= windowNanos) {
+            rotate(now);
+        }
+        checked++;
+
+        long h1 = id;
+        long h2 = Hashing.mix(id + 0x9E3779B97F4A7C15L) | 1;
+        boolean inCurrent = true;
+        boolean inPrevious = true;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (h1 + i * h2) & mask;
+            int word = (int) (bit >>> 6);
+            long flag = 1L << bit;
+            if ((current[word] & flag) == 0) {
+                inCurrent = false;
+                current[word] |= flag;
+                currentBitsSet++;
+            }
+            if ((previous[word] & flag) == 0) {
+                inPrevious = false;
+            }
+        }
+
+        if (inCurrent || inPrevious) {
+            duplicates++;
+            return true;
+        }
+        currentCount++;
+        return false;
+    }
+
+    private void rotate(long now) {
+        long[] cleared = previous;
+        Arrays.fill(cleared, 0);
+        previous = current;
+        previousBitsSet = currentBitsSet;
+        current = cleared;
+        currentBitsSet = 0;
+        currentCount = 0;
+        rotatedAt = now;
+        rotations++;
+    }
+
+    /**
+     * 检查过的消息数
+     */
+    public synchronized long getCheckedCount() {
+        return checked;
+    }
+
+    /**
+     * 判定为重复（被过滤）的消息数
+     */
+    public synchronized long getDuplicateCount() {
+        return duplicates;
+    }
+
+    /**
+     * 重复消息占比
+     */
+    public synchronized double getHitRate() {
+        return checked == 0 ? 0 : (double) duplicates / checked;
+    }
+
+    /**
+     * 按两代位数组当前的填充率估算的误判率
+     */
+    public synchronized double getFalsePositiveRate() {
+        double bits = mask + 1.0;
+        double currentRate = Math.pow(currentBitsSet / bits, hashes);
+        double previousRate = Math.pow(previousBitsSet / bits, hashes);
+        return 1 - (1 - currentRate) * (1 - previousRate);
+    }
+
+    public synchronized long getRotationCount() {
+        return rotations;
+    }
+
+    /**
+     * 位数组占用的内存（字节）
+     */
+    public long getMemoryBytes() {
+        return (mask + 1) / 8 * 2;
+    }
+
+    public int getHashCount() {
+        return hashes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("检查 %d, 重复 %d (%.2f%%), 估算误判率 %.4f%%, 轮换 %d 次, 内存 %d KB",
+            checked, duplicates, getHitRate() * 100, getFalsePositiveRate() * 100, rotations, getMemoryBytes() / 1024);
+    }
+}
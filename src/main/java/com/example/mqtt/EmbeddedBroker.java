@@ -0,0 +1,887 @@
+package com.example.mqtt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内嵌MQTT Broker
+ * 运行在当前JVM中、只监听本机回环地址的 MQTT 3.1.1 Broker，用于离线的集成测试、压测和基准测试，
+ * 不依赖外部网络，结果可重复。
+ *
+ * 支持 QoS 0/1/2、保留消息、"+"/"#" 通配符订阅（复用 {@link TopicRouter}）、遗嘱消息、
+ * 持久会话（cleanSession=false 时保留订阅，离线期间缓存 QoS 1/2 消息，重连后重发未确认的消息）、
+ * 共享订阅（$share/组名/过滤器：每条消息只投递给组内一个在线成员，优先未确认消息最少的成员）。
+ * 不做认证，不支持 TLS。
+ *
+ * 每个连接使用一个读线程，投递消息时直接写入订阅方的连接，订阅方处理较慢时会反压发布方。
+ *
+ * 用法：在代码中 {@code new EmbeddedBroker(0).start()}，或在 mqtt.properties 中配置 mqtt.broker=embedded
+ * （mqtt.port 为监听端口，0 表示随机端口），也可以通过 main 方法单独运行。
+ */
+public class EmbeddedBroker {
+    private static final int CONNECT = 1;
+    private static final int CONNACK = 2;
+    private static final int PUBLISH = 3;
+    private static final int PUBACK = 4;
+    private static final int PUBREC = 5;
+    private static final int PUBREL = 6;
+    private static final int PUBCOMP = 7;
+    private static final int SUBSCRIBE = 8;
+    private static final int SUBACK = 9;
+    private static final int UNSUBSCRIBE = 10;
+    private static final int UNSUBACK = 11;
+    private static final int PINGREQ = 12;
+    private static final int PINGRESP = 13;
+    private static final int DISCONNECT = 14;
+
+    private static final int MAX_REMAINING_LENGTH = 268_435_455;
+    /** 持久会话离线期间最多缓存的消息数，超出后丢弃最早的消息 */
+    private static final int MAX_OFFLINE_MESSAGES = 10000;
+
+    private static final TopicRouter.MatchVisitor<Subscription, List<Subscription>> COLLECT =
+        (subscription, topic, matches) -> matches.add(subscription);
+
+    private static EmbeddedBroker shared;
+
+    private final int requestedPort;
+    private final TopicRouter<Subscription> router = new TopicRouter<>();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Message> retained = new ConcurrentHashMap<>();
+    /** 每个共享订阅（组名+过滤器）的轮询位置 */
+    private final Map<String, AtomicInteger> shareCursors = new ConcurrentHashMap<>();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final Object sessionLock = new Object();
+    private final AtomicLong clientIdCounter = new AtomicLong();
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    /**
+     * @param port 监听端口，0 表示随机端口
+     */
+    public EmbeddedBroker(int port) {
+        this.requestedPort = port;
+    }
+
+    public EmbeddedBroker() {
+        this(0);
+    }
+
+    /**
+     * 获取（必要时启动）进程内共享的 Broker，供 mqtt.broker=embedded 使用
+     */
+    public static synchronized EmbeddedBroker startShared(int port) {
+        if (shared == null || !shared.isRunning()) {
+            try {
+                shared = new EmbeddedBroker(port).start();
+            } catch (IOException e) {
+                throw new IllegalStateException("内嵌Broker启动失败 (端口 " + port + "): " + e.getMessage(), e);
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * 开始监听
+     */
+    public synchronized EmbeddedBroker start() throws IOException {
+        if (running) {
+            return this;
+        }
+        serverSocket = new ServerSocket(requestedPort, 128, InetAddress.getLoopbackAddress());
+        running = true;
+
+        Thread acceptor = new Thread(this::acceptLoop, "mqtt-broker-accept-" + serverSocket.getLocalPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+        System.out.println("✓ 内嵌Broker已启动: " + getUrl());
+        return this;
+    }
+
+    /**
+     * 停止监听并断开所有连接
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // 忽略
+        }
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        connections.clear();
+        sessions.clear();
+        retained.clear();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 实际监听的端口
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * 客户端连接地址
+     */
+    public String getUrl() {
+        return "tcp://127.0.0.1:" + getPort();
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * 收到的 PUBLISH 数
+     */
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    /**
+     * 发出的 PUBLISH 数（含重发）
+     */
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    public int getRetainedCount() {
+        return retained.size();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Connection connection = new Connection(socket);
+                connections.add(connection);
+                Thread reader = new Thread(connection, "mqtt-broker-conn-" + socket.getPort());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("✗ 内嵌Broker接受连接失败: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 把消息投递给所有匹配的订阅（同一会话的多个重叠订阅只投递一次，取最高QoS），
+     * 共享订阅每组只投递给一个成员
+     */
+    private void route(Message message, List<Subscription> matches) {
+        matches.clear();
+        router.match(message.topic, matches, COLLECT);
+        int size = matches.size();
+        boolean shared = false;
+        for (int i = 0; i < size; i++) {
+            Subscription subscription = matches.get(i);
+            if (subscription == null) {
+                continue;
+            }
+            if (subscription.shareCursor != null) {
+                shared = true;
+                continue;
+            }
+            int qos = subscription.qos;
+            for (int j = i + 1; j < size; j++) {
+                Subscription other = matches.get(j);
+                if (other != null && other.shareCursor == null && other.session == subscription.session) {
+                    qos = Math.max(qos, other.qos);
+                    matches.set(j, null);
+                }
+            }
+            subscription.session.deliver(message, Math.min(qos, message.qos), false);
+        }
+        if (shared) {
+            routeShared(message, matches);
+        }
+        matches.clear();
+    }
+
+    /**
+     * 共享订阅：每个 组名+过滤器 只选一个成员投递，优先在线且未确认消息最少的成员，
+     * 负载相同时从轮询位置开始选择，使成员轮流接收。
+     * 处理慢的成员未确认的消息多，新消息自然流向其他成员
+     */
+    private void routeShared(Message message, List<Subscription> matches) {
+        int size = matches.size();
+        for (int i = 0; i < size; i++) {
+            Subscription first = matches.get(i);
+            if (first == null || first.shareCursor == null) {
+                continue;
+            }
+            int members = 0;
+            for (int j = i; j < size; j++) {
+                Subscription other = matches.get(j);
+                if (other != null && other.shareCursor == first.shareCursor) {
+                    members++;
+                }
+            }
+            int offset = Math.floorMod(first.shareCursor.getAndIncrement(), members);
+            Subscription chosen = null;
+            int chosenLoad = Integer.MAX_VALUE;
+            int chosenPosition = Integer.MAX_VALUE;
+            int index = 0;
+            for (int j = i; j < size; j++) {
+                Subscription other = matches.get(j);
+                if (other == null || other.shareCursor != first.shareCursor) {
+                    continue;
+                }
+                matches.set(j, null);
+                // 成员相对轮询位置的顺序，负载相同时选择最靠前的成员
+                int position = Math.floorMod(index++ - offset, members);
+                int load = other.session.load();
+                if (load < chosenLoad || (load == chosenLoad && position < chosenPosition)) {
+                    chosen = other;
+                    chosenLoad = load;
+                    chosenPosition = position;
+                }
+            }
+            chosen.session.deliver(message, Math.min(chosen.qos, message.qos), false);
+        }
+    }
+
+    private void updateRetained(Message message) {
+        if (message.payload.length == 0) {
+            retained.remove(message.topic);
+        } else {
+            retained.put(message.topic, message);
+        }
+    }
+
+    /**
+     * 丢弃会话及其订阅
+     */
+    private void discardSession(Session session) {
+        sessions.remove(session.clientId, session);
+        synchronized (session) {
+            for (Subscription subscription : session.subscriptions.values()) {
+                router.remove(subscription.route, subscription);
+            }
+            session.subscriptions.clear();
+            session.inflight.clear();
+            session.offline.clear();
+        }
+    }
+
+    /**
+     * 已发布的消息（不可变，可投递给多个订阅方）
+     */
+    private static final class Message {
+        final String topic;
+        final byte[] topicBytes;
+        final byte[] payload;
+        final int qos;
+
+        Message(String topic, byte[] payload, int qos) {
+            this.topic = topic;
+            this.topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+            this.payload = payload;
+            this.qos = qos;
+        }
+    }
+
+    private static final class Subscription {
+        final Session session;
+        final String filter;
+        /** 消息实际匹配的过滤器（共享订阅去掉 $share/组名/ 前缀） */
+        final String route;
+        final int qos;
+        /** 共享订阅的轮询位置（同组同过滤器的成员共用），普通订阅为 null */
+        final AtomicInteger shareCursor;
+
+        Subscription(Session session, String filter, int qos, AtomicInteger shareCursor) {
+            this.session = session;
+            this.filter = filter;
+            this.route = TopicRouter.matchingFilter(filter);
+            this.qos = qos;
+            this.shareCursor = shareCursor;
+        }
+    }
+
+    /**
+     * 等待订阅方确认的出站消息
+     */
+    private static final class Outbound {
+        final Message message;
+        final int qos;
+        /** QoS 2 已收到 PUBREC，等待 PUBCOMP */
+        boolean released;
+
+        Outbound(Message message, int qos) {
+            this.message = message;
+            this.qos = qos;
+        }
+    }
+
+    /**
+     * 客户端会话，所有状态在 synchronized(this) 下访问
+     */
+    private final class Session {
+        final String clientId;
+        final boolean cleanSession;
+        final Map<String, Subscription> subscriptions = new HashMap<>();
+        final Map<Integer, Outbound> inflight = new LinkedHashMap<>();
+        final Set<Integer> inboundQos2 = new HashSet<>();
+        final ArrayDeque<Outbound> offline = new ArrayDeque<>();
+        Connection connection;
+        int nextPacketId = 1;
+
+        Session(String clientId, boolean cleanSession) {
+            this.clientId = clientId;
+            this.cleanSession = cleanSession;
+        }
+
+        synchronized void deliver(Message message, int qos, boolean retain) {
+            if (connection == null) {
+                if (!cleanSession && qos > 0) {
+                    if (offline.size() >= MAX_OFFLINE_MESSAGES) {
+                        offline.pollFirst();
+                    }
+                    offline.addLast(new Outbound(message, qos));
+                }
+                return;
+            }
+            send(message, qos, retain);
+        }
+
+        /**
+         * 共享订阅选择成员时的负载：未确认的出站消息数，离线会话排在最后
+         */
+        synchronized int load() {
+            return connection == null ? Integer.MAX_VALUE - 1 : inflight.size();
+        }
+
+        private void send(Message message, int qos, boolean retain) {
+            int packetId = 0;
+            if (qos > 0) {
+                packetId = allocatePacketId();
+                if (packetId == 0) {
+                    // 65535 个消息标识都在使用中
+                    return;
+                }
+                inflight.put(packetId, new Outbound(message, qos));
+            }
+            connection.writePublish(message, qos, packetId, false, retain);
+        }
+
+        private int allocatePacketId() {
+            if (inflight.size() >= 65535) {
+                return 0;
+            }
+            while (true) {
+                int id = nextPacketId;
+                nextPacketId = id == 65535 ? 1 : id + 1;
+                if (!inflight.containsKey(id)) {
+                    return id;
+                }
+            }
+        }
+
+        /**
+         * 连接建立后重发未确认的消息，并投递离线期间缓存的消息
+         */
+        synchronized void attach(Connection attached) {
+            connection = attached;
+            for (Map.Entry<Integer, Outbound> entry : inflight.entrySet()) {
+                Outbound outbound = entry.getValue();
+                if (outbound.released) {
+                    attached.writeAck(PUBREL, 0x02, entry.getKey());
+                } else {
+                    attached.writePublish(outbound.message, outbound.qos, entry.getKey(), true, false);
+                }
+            }
+            while (!offline.isEmpty()) {
+                Outbound outbound = offline.pollFirst();
+                send(outbound.message, outbound.qos, false);
+            }
+        }
+    }
+
+    /**
+     * 客户端连接，读线程处理所有入站报文，写操作加锁
+     */
+    private final class Connection implements Runnable {
+        private final Socket socket;
+        private final List<Subscription> matches = new ArrayList<>();
+        private DataInputStream in;
+        private OutputStream out;
+        private Session session;
+        private Message will;
+        private boolean willRetain;
+        private volatile boolean closed;
+
+        Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            boolean graceful = false;
+            try {
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 8192));
+                out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+                if (!handleConnect()) {
+                    return;
+                }
+                while (!closed) {
+                    int header = in.read();
+                    if (header < 0) {
+                        break;
+                    }
+                    byte[] body = readBody();
+                    if (!handlePacket(header, body)) {
+                        graceful = true;
+                        break;
+                    }
+                }
+            } catch (EOFException | SocketException e) {
+                // 连接断开
+            } catch (IOException | RuntimeException e) {
+                if (!closed) {
+                    System.err.println("✗ 内嵌Broker连接异常: " + e.getMessage());
+                }
+            } finally {
+                close();
+                connections.remove(this);
+                onClosed(graceful);
+            }
+        }
+
+        private void onClosed(boolean graceful) {
+            if (session == null) {
+                return;
+            }
+            boolean detached;
+            synchronized (session) {
+                detached = session.connection == this;
+                if (detached) {
+                    session.connection = null;
+                }
+            }
+            if (detached && session.cleanSession) {
+                synchronized (sessionLock) {
+                    discardSession(session);
+                }
+            }
+            if (!graceful && will != null && running) {
+                if (willRetain) {
+                    updateRetained(will);
+                }
+                route(will, matches);
+            }
+        }
+
+        /**
+         * 处理 CONNECT，返回 false 时关闭连接
+         */
+        private boolean handleConnect() throws IOException {
+            int header = in.read();
+            if (header < 0 || (header >> 4) != CONNECT) {
+                return false;
+            }
+            Reader reader = new Reader(readBody());
+            String protocol = reader.readString();
+            int level = reader.readByte();
+            if (!("MQTT".equals(protocol) && level == 4) && !("MQIsdp".equals(protocol) && level == 3)) {
+                writePacket(CONNACK << 4, new byte[] {0, 1});
+                return false;
+            }
+
+            int flags = reader.readByte();
+            boolean cleanSession = (flags & 0x02) != 0;
+            int keepAlive = reader.readShort();
+            String clientId = reader.readString();
+            if ((flags & 0x04) != 0) {
+                String willTopic = reader.readString();
+                byte[] willPayload = reader.readBinary();
+                will = new Message(willTopic, willPayload, (flags >> 3) & 0x03);
+                willRetain = (flags & 0x20) != 0;
+            }
+
+            if (clientId.isEmpty()) {
+                if (!cleanSession) {
+                    writePacket(CONNACK << 4, new byte[] {0, 2});
+                    return false;
+                }
+                clientId = "embedded-" + clientIdCounter.incrementAndGet();
+            }
+            if (keepAlive > 0) {
+                socket.setSoTimeout(keepAlive * 1500);
+            }
+
+            boolean sessionPresent;
+            synchronized (sessionLock) {
+                Session existing = sessions.get(clientId);
+                if (existing != null) {
+                    Connection previous;
+                    synchronized (existing) {
+                        previous = existing.connection;
+                        existing.connection = null;
+                    }
+                    if (previous != null) {
+                        // 同一客户端ID重复连接，断开旧连接
+                        previous.close();
+                    }
+                    if (cleanSession || existing.cleanSession) {
+                        discardSession(existing);
+                        existing = null;
+                    }
+                }
+                sessionPresent = existing != null;
+                if (existing == null) {
+                    existing = new Session(clientId, cleanSession);
+                    sessions.put(clientId, existing);
+                }
+                session = existing;
+            }
+
+            writePacket(CONNACK << 4, new byte[] {(byte) (sessionPresent ? 1 : 0), 0});
+            session.attach(this);
+            return true;
+        }
+
+        /**
+         * 处理一个入站报文，收到 DISCONNECT 时返回 false
+         */
+        private boolean handlePacket(int header, byte[] body) throws IOException {
+            switch (header >> 4) {
+                case PUBLISH:
+                    handlePublish(header, body);
+                    return true;
+                case PUBACK:
+                case PUBCOMP:
+                    synchronized (session) {
+                        session.inflight.remove(readPacketId(body));
+                    }
+                    return true;
+                case PUBREC: {
+                    int packetId = readPacketId(body);
+                    synchronized (session) {
+                        Outbound outbound = session.inflight.get(packetId);
+                        if (outbound != null) {
+                            outbound.released = true;
+                        }
+                    }
+                    writeAck(PUBREL, 0x02, packetId);
+                    return true;
+                }
+                case PUBREL: {
+                    int packetId = readPacketId(body);
+                    synchronized (session) {
+                        session.inboundQos2.remove(packetId);
+                    }
+                    writeAck(PUBCOMP, 0, packetId);
+                    return true;
+                }
+                case SUBSCRIBE:
+                    handleSubscribe(body);
+                    return true;
+                case UNSUBSCRIBE:
+                    handleUnsubscribe(body);
+                    return true;
+                case PINGREQ:
+                    writePacket(PINGRESP << 4, new byte[0]);
+                    return true;
+                case DISCONNECT:
+                    will = null;
+                    return false;
+                default:
+                    throw new IOException("不支持的报文类型: " + (header >> 4));
+            }
+        }
+
+        private void handlePublish(int header, byte[] body) throws IOException {
+            int qos = (header >> 1) & 0x03;
+            boolean retain = (header & 0x01) != 0;
+            if (qos > 2) {
+                throw new IOException("无效的QoS: " + qos);
+            }
+
+            Reader reader = new Reader(body);
+            String topic = reader.readString();
+            if (topic.isEmpty() || topic.indexOf('+') >= 0 || topic.indexOf('#') >= 0) {
+                throw new IOException("无效的发布主题: " + topic);
+            }
+            int packetId = qos > 0 ? reader.readShort() : 0;
+            Message message = new Message(topic, reader.readRemaining(), qos);
+            receivedCount.incrementAndGet();
+
+            boolean first = true;
+            if (qos == 2) {
+                synchronized (session) {
+                    first = session.inboundQos2.add(packetId);
+                }
+            }
+            if (first) {
+                if (retain) {
+                    updateRetained(message);
+                }
+                route(message, matches);
+            }
+
+            if (qos == 1) {
+                writeAck(PUBACK, 0, packetId);
+            } else if (qos == 2) {
+                writeAck(PUBREC, 0, packetId);
+            }
+        }
+
+        private void handleSubscribe(byte[] body) throws IOException {
+            Reader reader = new Reader(body);
+            int packetId = reader.readShort();
+            List<String> filters = new ArrayList<>();
+            List<Integer> granted = new ArrayList<>();
+            while (reader.hasRemaining()) {
+                String filter = reader.readString();
+                int qos = reader.readByte();
+                if (qos > 2) {
+                    throw new IOException("无效的订阅QoS: " + qos);
+                }
+                try {
+                    TopicRouter.validateFilter(filter);
+                } catch (IllegalArgumentException e) {
+                    filters.add(null);
+                    granted.add(0x80);
+                    continue;
+                }
+                AtomicInteger shareCursor = TopicRouter.shareGroup(filter) == null
+                    ? null : shareCursors.computeIfAbsent(filter, key -> new AtomicInteger());
+                Subscription subscription = new Subscription(session, filter, qos, shareCursor);
+                synchronized (session) {
+                    Subscription previous = session.subscriptions.put(filter, subscription);
+                    if (previous != null) {
+                        router.remove(previous.route, previous);
+                    }
+                    router.add(subscription.route, subscription);
+                }
+                filters.add(filter);
+                granted.add(qos);
+            }
+
+            byte[] response = new byte[2 + granted.size()];
+            response[0] = (byte) (packetId >> 8);
+            response[1] = (byte) packetId;
+            for (int i = 0; i < granted.size(); i++) {
+                response[2 + i] = (byte) (int) granted.get(i);
+            }
+            writePacket(SUBACK << 4, response);
+
+            // 发送匹配新订阅的保留消息
+            for (int i = 0; i < filters.size(); i++) {
+                String filter = filters.get(i);
+                // 共享订阅不发送保留消息
+                if (filter == null || retained.isEmpty() || TopicRouter.shareGroup(filter) != null) {
+                    continue;
+                }
+                TopicRouter<Boolean> single = new TopicRouter<>();
+                single.add(filter, Boolean.TRUE);
+                for (Message message : retained.values()) {
+                    if (single.hasMatch(message.topic)) {
+                        session.deliver(message, Math.min(message.qos, granted.get(i)), true);
+                    }
+                }
+            }
+        }
+
+        private void handleUnsubscribe(byte[] body) throws IOException {
+            Reader reader = new Reader(body);
+            int packetId = reader.readShort();
+            while (reader.hasRemaining()) {
+                String filter = reader.readString();
+                synchronized (session) {
+                    Subscription subscription = session.subscriptions.remove(filter);
+                    if (subscription != null) {
+                        router.remove(subscription.route, subscription);
+                    }
+                }
+            }
+            writeAck(UNSUBACK, 0, packetId);
+        }
+
+        private byte[] readBody() throws IOException {
+            int length = 0;
+            int multiplier = 1;
+            int digit;
+            do {
+                digit = in.readUnsignedByte();
+                length += (digit & 0x7f) * multiplier;
+                multiplier *= 128;
+                if (multiplier > 128 * 128 * 128 * 128) {
+                    throw new IOException("剩余长度格式错误");
+                }
+            } while ((digit & 0x80) != 0);
+            if (length > MAX_REMAINING_LENGTH) {
+                throw new IOException("报文过长: " + length);
+            }
+            byte[] body = new byte[length];
+            in.readFully(body);
+            return body;
+        }
+
+        private int readPacketId(byte[] body) throws IOException {
+            if (body.length < 2) {
+                throw new IOException("缺少消息标识");
+            }
+            return ((body[0] & 0xff) << 8) | (body[1] & 0xff);
+        }
+
+        synchronized void writePublish(Message message, int qos, int packetId, boolean dup, boolean retain) {
+            if (closed) {
+                return;
+            }
+            try {
+                out.write((PUBLISH << 4) | (dup ? 0x08 : 0) | (qos << 1) | (retain ? 0x01 : 0));
+                writeLength(2 + message.topicBytes.length + (qos > 0 ? 2 : 0) + message.payload.length);
+                writeShort(message.topicBytes.length);
+                out.write(message.topicBytes);
+                if (qos > 0) {
+                    writeShort(packetId);
+                }
+                out.write(message.payload);
+                out.flush();
+                deliveredCount.incrementAndGet();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        synchronized void writeAck(int type, int flags, int packetId) {
+            writePacket((type << 4) | flags, new byte[] {(byte) (packetId >> 8), (byte) packetId});
+        }
+
+        synchronized void writePacket(int header, byte[] body) {
+            if (closed) {
+                return;
+            }
+            try {
+                out.write(header);
+                writeLength(body.length);
+                out.write(body);
+                out.flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void writeLength(int length) throws IOException {
+            do {
+                int digit = length % 128;
+                length /= 128;
+                if (length > 0) {
+                    digit |= 0x80;
+                }
+                out.write(digit);
+            } while (length > 0);
+        }
+
+        private void writeShort(int value) throws IOException {
+            out.write(value >> 8);
+            out.write(value);
+        }
+
+        void close() {
+            closed = true;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+    }
+
+    /**
+     * 报文正文读取
+     */
+    private static final class Reader {
+        private final byte[] data;
+        private int position;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        boolean hasRemaining() {
+            return position < data.length;
+        }
+
+        int readByte() throws IOException {
+            if (position >= data.length) {
+                throw new IOException("报文不完整");
+            }
+            return data[position++] & 0xff;
+        }
+
+        int readShort() throws IOException {
+            return (readByte() << 8) | readByte();
+        }
+
+        byte[] readBinary() throws IOException {
+            int length = readShort();
+            if (position + length > data.length) {
+                throw new IOException("报文不完整");
+            }
+            byte[] value = new byte[length];
+            System.arraycopy(data, position, value, 0, length);
+            position += length;
+            return value;
+        }
+
+        String readString() throws IOException {
+            return new String(readBinary(), StandardCharsets.UTF_8);
+        }
+
+        byte[] readRemaining() {
+            byte[] value = new byte[data.length - position];
+            System.arraycopy(data, position, value, 0, value.length);
+            position = data.length;
+            return value;
+        }
+    }
+
+    /**
+     * 单独运行内嵌Broker
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 1883;
+        EmbeddedBroker broker = new EmbeddedBroker(port).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(broker::stop));
+        System.out.println("按 Ctrl+C 停止");
+        Thread.currentThread().join();
+    }
+}
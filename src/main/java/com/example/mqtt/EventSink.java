@@ -0,0 +1,352 @@
+package com.example.mqtt;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 消息事件日志
+ * 替代发布、确认、接收路径上的 System.out.println：按事件类型计数，
+ * 只有级别不低于 mqtt.log.level 且被抽样命中（每N条记录1条）的事件才会格式化输出。
+ *
+ * 输出先写入进程内共享的无锁环形缓冲区，由后台线程写到 {@link Output}（默认控制台），
+ * 调用方不会因控制台I/O阻塞；缓冲区满时丢弃日志并计数。
+ * 后台线程在缓冲区为空时休眠，由写入日志的线程唤醒；所有事件日志都 {@link #close()} 后输出完剩余日志即退出。
+ *
+ * 用法：
+ * <pre>
+ * if (events.sample(EventSink.Type.RECEIVE, EventSink.Level.INFO)) {
+ *     events.log(EventSink.Level.INFO, "← 收到消息 (主题: " + topic + ")");
+ * }
+ * </pre>
+ */
+public class EventSink {
+
+    /**
+     * 日志级别，OFF 表示不输出
+     */
+    public enum Level {
+        OFF, ERROR, WARN, INFO, DEBUG;
+
+        public static Level parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("未知的日志级别: " + value);
+            }
+        }
+    }
+
+    /**
+     * 事件类型，每种类型单独计数和抽样
+     */
+    public enum Type {
+        /** 发布消息 */
+        PUBLISH,
+        /** 消息发送完成（Broker确认） */
+        DELIVERY,
+        /** 收到消息 */
+        RECEIVE,
+        /** 消息处理或发送出错 */
+        ERROR
+    }
+
+    /**
+     * 日志输出目标（在后台线程中调用）
+     */
+    @FunctionalInterface
+    public interface Output {
+        void write(Level level, String line);
+    }
+
+    /** 控制台输出：WARN 及以上写标准错误，其余写标准输出 */
+    public static final Output CONSOLE = (level, line) -> {
+        if (level.compareTo(Level.WARN) <= 0) {
+            System.err.println(line);
+        } else {
+            System.out.println(line);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final Ring RING = new Ring(BUFFER_SIZE);
+    private static volatile Output output = CONSOLE;
+    /** 尚未关闭的事件日志数，为0且缓冲区为空时后台线程退出 */
+    private static final AtomicInteger OPEN = new AtomicInteger();
+    private static volatile Thread drainer;
+    /** 后台线程正在（或即将）休眠，写入方需要唤醒它 */
+    private static volatile boolean sleeping;
+    private static boolean shutdownHookInstalled;
+
+    private final Level threshold;
+    private final int[] sampleRates = new int[Type.values().length];
+    private final LongAdder[] counts = new LongAdder[Type.values().length];
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * 创建事件日志，所有类型默认每条都输出（受级别限制）
+     */
+    public EventSink(Level threshold) {
+        this.threshold = threshold;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+            sampleRates[i] = 1;
+        }
+        OPEN.incrementAndGet();
+    }
+
+    /**
+     * 按 mqtt.log.* 配置创建
+     */
+    public static EventSink fromConfig(MqttConfig config) {
+        EventSink sink = new EventSink(config.getLogLevel());
+        sink.setSampleRate(Type.PUBLISH, config.getLogSamplePublish());
+        sink.setSampleRate(Type.DELIVERY, config.getLogSampleDelivery());
+        sink.setSampleRate(Type.RECEIVE, config.getLogSampleReceive());
+        return sink;
+    }
+
+    /**
+     * 设置抽样率
+     *
+     * @param rate 0 = 只计数不输出，1 = 每条都输出，N = 平均每N条输出1条
+     */
+    public void setSampleRate(Type type, int rate) {
+        sampleRates[type.ordinal()] = Math.max(0, rate);
+    }
+
+    /**
+     * 替换全局日志输出目标（例如转到 SLF4J 或文件）
+     */
+    public static void setOutput(Output newOutput) {
+        output = newOutput != null ? newOutput : CONSOLE;
+    }
+
+    /**
+     * 记录一次事件，返回是否需要输出日志
+     * 只做计数和一次随机数判断，不分配对象；返回 true 时调用方再拼接日志内容并调用 {@link #log}
+     */
+    public boolean sample(Type type, Level level) {
+        counts[type.ordinal()].increment();
+        if (level.compareTo(threshold) > 0 || threshold == Level.OFF) {
+            return false;
+        }
+        int rate = sampleRates[type.ordinal()];
+        if (rate <= 1) {
+            return rate == 1;
+        }
+        return ThreadLocalRandom.current().nextInt(rate) == 0;
+    }
+
+    /**
+     * 输出一行日志（异步，缓冲区满时丢弃）
+     */
+    public void log(Level level, String line) {
+        if (level.compareTo(threshold) > 0 || threshold == Level.OFF) {
+            return;
+        }
+        RING.offer(level, line);
+        wakeDrainer();
+    }
+
+    /**
+     * 记录并输出一个错误事件
+     */
+    public void error(String line) {
+        if (sample(Type.ERROR, Level.ERROR)) {
+            log(Level.ERROR, line);
+        }
+    }
+
+    /**
+     * 不再使用该事件日志（客户端断开时调用），所有事件日志都关闭后后台线程输出完剩余日志即退出
+     * 关闭后仍可以继续记录，后台线程按需重新启动
+     */
+    public void close() {
+        if (closed.compareAndSet(false, true) && OPEN.decrementAndGet() == 0) {
+            Thread thread = drainer;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    public long getCount(Type type) {
+        return counts[type.ordinal()].sum();
+    }
+
+    public Level getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * 缓冲区满而丢弃的日志行数
+     */
+    public static long getDroppedCount() {
+        return RING.dropped.sum();
+    }
+
+    /**
+     * 等待缓冲区中的日志全部输出
+     */
+    public static void flush(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!RING.isEmpty() && System.currentTimeMillis() < deadline) {
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    /**
+     * 确保后台线程在运行，休眠时唤醒它（写入缓冲区之后调用）
+     */
+    private static void wakeDrainer() {
+        Thread thread = drainer;
+        if (thread == null) {
+            startDrainer();
+        } else if (sleeping) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private static synchronized void startDrainer() {
+        if (drainer != null) {
+            return;
+        }
+        Thread thread = new Thread(EventSink::drainLoop, "mqtt-events");
+        thread.setDaemon(true);
+        drainer = thread;
+        thread.start();
+        if (!shutdownHookInstalled) {
+            // 退出前输出剩余日志
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(1000)));
+            shutdownHookInstalled = true;
+        }
+    }
+
+    private static void drainLoop() {
+        long reportedDrops = RING.reportedDrops;
+        while (true) {
+            boolean idle = true;
+            while (RING.poll()) {
+                idle = false;
+            }
+            long drops = RING.dropped.sum();
+            if (drops != reportedDrops) {
+                write(Level.WARN, "⚠ 日志缓冲区已满，丢弃了 " + (drops - reportedDrops) + " 条日志");
+                reportedDrops = drops;
+                RING.reportedDrops = drops;
+            }
+            if (!idle) {
+                continue;
+            }
+            if (OPEN.get() == 0 && exitIfIdle()) {
+                return;
+            }
+            // 先声明休眠再检查缓冲区：写入方在写入之后检查 sleeping，两边至少有一方看到对方
+            sleeping = true;
+            if (RING.isEmpty() && OPEN.get() > 0) {
+                LockSupport.park();
+            }
+            sleeping = false;
+        }
+    }
+
+    /**
+     * 没有未关闭的事件日志且缓冲区为空时结束后台线程；之后写入的日志会重新启动一个
+     */
+    private static synchronized boolean exitIfIdle() {
+        if (OPEN.get() != 0 || !RING.isEmpty()) {
+            return false;
+        }
+        // 先清除再检查缓冲区：写入方在写入之后检查 drainer，看到旧线程时这里一定能看到它写入的日志
+        drainer = null;
+        if (!RING.isEmpty()) {
+            drainer = Thread.currentThread();
+            return false;
+        }
+        return true;
+    }
+
+    private static void write(Level level, String line) {
+        try {
+            output.write(level, line);
+        } catch (RuntimeException e) {
+            // 输出失败不影响后续日志
+        }
+    }
+
+    /**
+     * 多生产者单消费者的有界无锁环形缓冲区
+     * 每个槽位的序号表示其状态：等于写入位置时可写，等于写入位置+1时可读
+     */
+    private static final class Ring {
+        private final int mask;
+        private final AtomicLongArray sequences;
+        private final Level[] levels;
+        private final String[] lines;
+        private final AtomicLong tail = new AtomicLong();
+        private final LongAdder dropped = new LongAdder();
+        private volatile long head;
+        /** 已经报告过的丢弃数（后台线程重新启动时接着报告） */
+        private long reportedDrops;
+
+        Ring(int capacity) {
+            this.mask = capacity - 1;
+            this.sequences = new AtomicLongArray(capacity);
+            this.levels = new Level[capacity];
+            this.lines = new String[capacity];
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        void offer(Level level, String line) {
+            long position = tail.get();
+            while (true) {
+                int index = (int) (position & mask);
+                long diff = sequences.get(index) - position;
+                if (diff == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        levels[index] = level;
+                        lines[index] = line;
+                        sequences.lazySet(index, position + 1);
+                        return;
+                    }
+                    position = tail.get();
+                } else if (diff < 0) {
+                    dropped.increment();
+                    return;
+                } else {
+                    position = tail.get();
+                }
+            }
+        }
+
+        /**
+         * 输出一行日志，缓冲区为空时返回 false（只由后台线程调用）
+         */
+        boolean poll() {
+            long position = head;
+            int index = (int) (position & mask);
+            if (sequences.get(index) != position + 1) {
+                return false;
+            }
+            Level level = levels[index];
+            String line = lines[index];
+            lines[index] = null;
+            sequences.lazySet(index, position + mask + 1);
+            write(level, line);
+            head = position + 1;
+            return true;
+        }
+
+        boolean isEmpty() {
+            return head >= tail.get();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.mqtt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 批量建立连接
+ * 逐个串行连接时每个连接都要等一次 CONNECT/CONNACK 往返，Paho 启动收发线程时还会按100毫秒间隔轮询等待，
+ * 每个连接固定约300毫秒，数千个设备需要几分钟；
+ * 全部同时连接又会在同一时刻冲击 Broker，超时后一起重试，形成连接风暴。
+ *
+ * 这里由固定数量的工作线程并行连接（mqtt.fleet.concurrency 限制同时进行中的连接数），
+ * 每个连接开始前随机等待 0 ~ mqtt.fleet.stagger.ms 毫秒把突发打散，失败的连接按 mqtt.reconnect.* 退避重试。
+ * 所有客户端共用同一份配置，客户端ID由 {@link MqttConfig#generateClientId(String)} 生成，保证不重复。
+ *
+ * 由 {@link #connect(int, String)} 创建的客户端共用一个消息处理线程池和一份指标（一个 JMX MBean），
+ * 而不是每个客户端各自创建：数千个设备各自一个线程池和 MBean 会有数万个线程。
+ * 两者随 {@link Result#disconnect()} 关闭。
+ */
+public class FleetBootstrap {
+    /** 每隔多少秒打印一次进度 */
+    private static final int PROGRESS_INTERVAL_S = 5;
+
+    private final MqttConfig config;
+    private final int concurrency;
+    private final long staggerMillis;
+    private final int retries;
+
+    /**
+     * @param concurrency   同时进行中的连接数上限
+     * @param staggerMillis 每个连接开始前的最大随机等待时间（0 = 不等待）
+     * @param retries       单个连接失败后的重试次数
+     */
+    public FleetBootstrap(MqttConfig config, int concurrency, long staggerMillis, int retries) {
+        if (concurrency < 1 || staggerMillis < 0 || retries < 0) {
+            throw new IllegalArgumentException("批量连接配置错误: concurrency=" + concurrency
+                + ", stagger=" + staggerMillis + ", retries=" + retries);
+        }
+        this.config = config;
+        this.concurrency = concurrency;
+        this.staggerMillis = staggerMillis;
+        this.retries = retries;
+    }
+
+    /**
+     * 按 mqtt.fleet.* 配置创建
+     */
+    public static FleetBootstrap fromConfig(MqttConfig config) {
+        return new FleetBootstrap(config, config.getFleetConcurrency(), config.getFleetStaggerMs(),
+            config.getFleetRetries());
+    }
+
+    /**
+     * 创建并连接 count 个独立连接的客户端，客户端ID按 类型+序号 生成，
+     * 客户端共用一个消息处理线程池和一份指标（见 {@link Result#getMetrics()}）
+     */
+    public Result connect(int count, String type) {
+        String name = "fleet-" + type;
+        MessageDispatcher dispatcher = MessageDispatcher.fromConfig(name, config);
+        ClientMetrics metrics = new ClientMetrics();
+        List<MqttClient> clients = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            clients.add(new MqttClient(config, config.generateClientId(type + i), dispatcher, metrics));
+        }
+        metrics.setInflightGauge(() -> {
+            int inflight = 0;
+            for (MqttClient client : clients) {
+                inflight += client.getInflightCount();
+            }
+            return inflight;
+        });
+        metrics.start(name, config.isMetricsJmx(), config.getMetricsDumpIntervalSeconds());
+        return connect(clients, dispatcher, metrics);
+    }
+
+    /**
+     * 并行连接给定的客户端，等待全部连接成功或放弃后返回
+     */
+    public Result connect(List<MqttClient> clients) {
+        return connect(clients, null, null);
+    }
+
+    private Result connect(List<MqttClient> clients, MessageDispatcher dispatcher, ClientMetrics metrics) {
+        int total = clients.size();
+        AtomicIntegerArray succeeded = new AtomicIntegerArray(total);
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder attempts = new LongAdder();
+        AtomicInteger connected = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(total);
+
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, total)), r -> {
+            Thread thread = new Thread(r, "mqtt-fleet");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int i = 0; i < total; i++) {
+                int index = i;
+                workers.execute(() -> {
+                    try {
+                        if (connectOne(clients.get(index), latency, attempts)) {
+                            succeeded.set(index, 1);
+                            connected.incrementAndGet();
+                        }
+                    } finally {
+                        finished.countDown();
+                    }
+                });
+            }
+            while (!finished.await(PROGRESS_INTERVAL_S, TimeUnit.SECONDS)) {
+                System.out.printf("→ [%ds] 已连接 %d/%d%n",
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), connected.get(), total);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            workers.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // 只收集已经结束的任务的结果（被中断时其余客户端按失败处理）
+        List<MqttClient> ok = new ArrayList<>(connected.get());
+        List<MqttClient> failed = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            (succeeded.get(i) != 0 ? ok : failed).add(clients.get(i));
+        }
+        Result result = new Result(ok, failed, elapsed, attempts.sum(), latency, dispatcher, metrics);
+        System.out.println((failed.isEmpty() ? "✓ " : "⚠ ") + result);
+        return result;
+    }
+
+    /**
+     * 连接一个客户端：随机错开后连接，失败时退避重试
+     */
+    private boolean connectOne(MqttClient client, LatencyHistogram latency, LongAdder attempts) {
+        for (int attempt = 0; ; attempt++) {
+            long delay = attempt == 0 ? staggerDelayMillis()
+                : Reconnector.backoffMillis(config.getReconnectMinDelayMs(), config.getReconnectMaxDelayMs(), attempt - 1);
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            attempts.increment();
+            long begin = System.nanoTime();
+            if (client.connect()) {
+                latency.record(System.nanoTime() - begin);
+                return true;
+            }
+            if (attempt >= retries) {
+                return false;
+            }
+        }
+    }
+
+    private long staggerDelayMillis() {
+        return staggerMillis == 0 ? 0 : ThreadLocalRandom.current().nextLong(staggerMillis + 1);
+    }
+
+    /**
+     * 批量连接的结果
+     */
+    public static final class Result {
+        private final List<MqttClient> connected;
+        private final List<MqttClient> failed;
+        private final long elapsedNanos;
+        private final long attempts;
+        private final LatencyHistogram connectLatency;
+        private final MessageDispatcher dispatcher;
+        private final ClientMetrics metrics;
+
+        Result(List<MqttClient> connected, List<MqttClient> failed, long elapsedNanos, long attempts,
+               LatencyHistogram connectLatency, MessageDispatcher dispatcher, ClientMetrics metrics) {
+            this.connected = Collections.unmodifiableList(connected);
+            this.failed = Collections.unmodifiableList(failed);
+            this.elapsedNanos = elapsedNanos;
+            this.attempts = attempts;
+            this.connectLatency = connectLatency;
+            this.dispatcher = dispatcher;
+            this.metrics = metrics;
+        }
+
+        /**
+         * 连接成功的客户端（按传入顺序）
+         */
+        public List<MqttClient> getConnected() {
+            return connected;
+        }
+
+        /**
+         * 重试后仍连接失败的客户端
+         */
+        public List<MqttClient> getFailed() {
+            return failed;
+        }
+
+        /**
+         * 是否全部连接成功
+         */
+        public boolean isFullyConnected() {
+            return failed.isEmpty();
+        }
+
+        /**
+         * 从开始到所有客户端连接成功（或放弃）的时间
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * 连接尝试总次数（含重试）
+         */
+        public long getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * 单个连接成功那一次尝试的耗时分布（纳秒，不含错开等待）
+         */
+        public LatencyHistogram getConnectLatency() {
+            return connectLatency;
+        }
+
+        /**
+         * 所有客户端共用的指标，客户端由调用方创建时返回 null（各客户端自己的指标见 {@link MqttClient#getMetrics()}）
+         */
+        public ClientMetrics getMetrics() {
+            return metrics;
+        }
+
+        /**
+         * 断开所有客户端，再关闭共用的消息处理线程池和指标
+         */
+        public void disconnect() {
+            for (MqttClient client : connected) {
+                client.disconnect();
+            }
+            if (dispatcher != null) {
+                // 处理完已接收的消息
+                dispatcher.shutdown(5000);
+            }
+            if (metrics != null) {
+                metrics.stop();
+            }
+        }
+
+        @Override
+        public String toString() {
+            int total = connected.size() + failed.size();
+            double seconds = elapsedNanos / 1e9;
+            return String.format("已连接 %d/%d，用时 %.2f 秒 (%.0f 个/秒)，尝试 %d 次，失败 %d，"
+                    + "单次连接(ms): p50=%.1f p99=%.1f max=%.1f",
+                connected.size(), total, seconds, seconds == 0 ? 0 : connected.size() / seconds, attempts,
+                failed.size(), connectLatency.getPercentile(50) / 1e6, connectLatency.getPercentile(99) / 1e6,
+                connectLatency.getMax() / 1e6);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.mqtt;
+
+/**
+ * 64位非加密哈希（xxHash64 风格），用于消息去重等只需要均匀分布、不需要抗碰撞攻击的场景
+ */
+final class Hashing {
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private Hashing() {
+    }
+
+    static long hash64(byte[] data, int offset, int length, long seed) {
+        long h = seed + PRIME5 + length;
+        int position = offset;
+        int end = offset + length;
+
+        while (position + 8 <= end) {
+            long k = readLong(data, position) * PRIME2;
+            k = Long.rotateLeft(k, 31) * PRIME1;
+            h ^= k;
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+            position += 8;
+        }
+        if (position + 4 <= end) {
+            h ^= (readInt(data, position) & 0xFFFFFFFFL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            position += 4;
+        }
+        while (position < end) {
+            h ^= (data[position] & 0xFF) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+            position++;
+        }
+        return mix(h);
+    }
+
+    static long hash64(byte[] data) {
+        return hash64(data, 0, data.length, 0);
+    }
+
+    /**
+     * 64位终结混合，使每一位输入影响所有输出位
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long readLong(byte[] data, int position) {
+        return (data[position] & 0xFFL)
+            | (data[position + 1] & 0xFFL) << 8
+            | (data[position + 2] & 0xFFL) << 16
+            | (data[position + 3] & 0xFFL) << 24
+            | (data[position + 4] & 0xFFL) << 32
+            | (data[position + 5] & 0xFFL) << 40
+            | (data[position + 6] & 0xFFL) << 48
+            | (data[position + 7] & 0xFFL) << 56;
+    }
+
+    private static int readInt(byte[] data, int position) {
+        return (data[position] & 0xFF)
+            | (data[position + 1] & 0xFF) << 8
+            | (data[position + 2] & 0xFF) << 16
+            | (data[position + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.mqtt;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 紧凑JSON编解码器
+ * 不使用格式化输出；序列化结果直接以UTF-8写入线程复用的缓冲区，
+ * 不生成中间 String
+ */
+public class JsonPayloadCodec implements PayloadCodec {
+    public static final int ID = 1;
+    public static final String CONTENT_TYPE = "application/json";
+
+    private final Gson gson;
+    private final ThreadLocal<Encoder> encoders = ThreadLocal.withInitial(Encoder::new);
+
+    public JsonPayloadCodec() {
+        this(new Gson());
+    }
+
+    public JsonPayloadCodec(Gson gson) {
+        this.gson = gson;
+    }
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public byte[] encode(Object data) {
+        Encoder encoder = encoders.get();
+        encoder.buffer.reset();
+        try {
+            gson.toJson(data, encoder.writer);
+            encoder.writer.flush();
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+        return encoder.buffer.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] data, int offset, int length) {
+        InputStreamReader reader = new InputStreamReader(
+            new ByteArrayInputStream(data, offset, length), StandardCharsets.UTF_8);
+        return gson.fromJson(reader, Object.class);
+    }
+
+    /**
+     * 每个线程复用的缓冲区和字符编码器
+     */
+    private static final class Encoder {
+        final PayloadBuffer buffer = new PayloadBuffer(256);
+        final Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,489 @@
+package com.example.mqtt;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON负载的惰性视图
+ * 直接在UTF-8字节上按路径查找字段，只扫描到目标字段为止，不构建对象树、不解码整个字符串。
+ * 适合只需要从较大的消息中读取少数几个字段的处理器。
+ *
+ * 路径用 "." 分隔对象字段，数字段表示数组下标，例如 "temperature"、"device.location.lat"、"readings.0"。
+ * 数值读取不分配对象；实例可通过 {@link #reset(byte[], int, int)} 复用。
+ * 视图假定负载是合法的JSON，遇到格式错误时按字段不存在处理。
+ */
+public class JsonPayloadView {
+    private static final int NOT_FOUND = -1;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    private byte[] data;
+    private int start;
+    private int end;
+
+    public JsonPayloadView() {
+        this(new byte[0]);
+    }
+
+    public JsonPayloadView(byte[] data) {
+        reset(data, 0, data.length);
+    }
+
+    /**
+     * 指向新的负载，便于复用同一个视图实例
+     */
+    public JsonPayloadView reset(byte[] data, int offset, int length) {
+        this.data = data;
+        this.start = offset;
+        this.end = offset + length;
+        return this;
+    }
+
+    public JsonPayloadView reset(byte[] data) {
+        return reset(data, 0, data.length);
+    }
+
+    /**
+     * 字段是否存在（值为 null 也视为存在）
+     */
+    public boolean has(String path) {
+        return find(path) != NOT_FOUND;
+    }
+
+    /**
+     * 读取数值字段
+     *
+     * @throws IllegalArgumentException 字段不存在或不是数值
+     */
+    public double getDouble(String path) {
+        int position = find(path);
+        double value = position == NOT_FOUND ? Double.NaN : parseDouble(position);
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("字段不存在或不是数值: " + path);
+        }
+        return value;
+    }
+
+    /**
+     * 读取数值字段，不存在或不是数值时返回默认值
+     */
+    public double getDouble(String path, double defaultValue) {
+        int position = find(path);
+        if (position == NOT_FOUND) {
+            return defaultValue;
+        }
+        double value = parseDouble(position);
+        return Double.isNaN(value) ? defaultValue : value;
+    }
+
+    /**
+     * 读取整数字段，不存在或不是数值时返回默认值（小数部分被截断）
+     */
+    public long getLong(String path, long defaultValue) {
+        int position = find(path);
+        if (position == NOT_FOUND) {
+            return defaultValue;
+        }
+        double value = parseDouble(position);
+        return Double.isNaN(value) ? defaultValue : (long) value;
+    }
+
+    /**
+     * 读取布尔字段，不存在或不是布尔值时返回默认值
+     */
+    public boolean getBoolean(String path, boolean defaultValue) {
+        int position = find(path);
+        if (position == NOT_FOUND) {
+            return defaultValue;
+        }
+        if (matchesLiteral(position, "true")) {
+            return true;
+        }
+        if (matchesLiteral(position, "false")) {
+            return false;
+        }
+        return defaultValue;
+    }
+
+    /**
+     * 读取字符串字段；数值、布尔值按原文返回；不存在或为 null 时返回 null
+     */
+    public String getString(String path) {
+        int position = find(path);
+        if (position == NOT_FOUND || matchesLiteral(position, "null")) {
+            return null;
+        }
+        if (data[position] == '"') {
+            return decodeString(position);
+        }
+        int valueEnd = skipValue(position);
+        return new String(data, position, valueEnd - position, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 字段值原文（含字符串引号）的64位哈希，不分配对象；字段不存在或为 null 时返回 0
+     * 用于按业务ID识别消息，例如去重
+     */
+    public long hashOf(String path) {
+        int position = find(path);
+        if (position == NOT_FOUND || matchesLiteral(position, "null")) {
+            return 0;
+        }
+        int valueEnd = skipValue(position);
+        long hash = Hashing.hash64(data, position, valueEnd - position, 0);
+        return hash != 0 ? hash : 1;
+    }
+
+    // ==================== 查找 ====================
+
+    /**
+     * 按路径定位字段值的起始位置
+     */
+    private int find(String path) {
+        int position = skipWhitespace(start);
+        int segmentStart = 0;
+        int pathLength = path.length();
+
+        while (position != NOT_FOUND) {
+            int segmentEnd = path.indexOf('.', segmentStart);
+            if (segmentEnd < 0) {
+                segmentEnd = pathLength;
+            }
+
+            if (position >= end) {
+                return NOT_FOUND;
+            }
+            byte container = data[position];
+            if (container == '{') {
+                position = findMember(position + 1, path, segmentStart, segmentEnd);
+            } else if (container == '[') {
+                position = findElement(position + 1, path, segmentStart, segmentEnd);
+            } else {
+                return NOT_FOUND;
+            }
+
+            if (segmentEnd == pathLength) {
+                return position;
+            }
+            segmentStart = segmentEnd + 1;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * 在对象中查找字段，返回字段值的起始位置
+     */
+    private int findMember(int position, String path, int segmentStart, int segmentEnd) {
+        while (true) {
+            position = skipWhitespace(position);
+            if (position >= end || data[position] != '"') {
+                return NOT_FOUND;
+            }
+            int keyEnd = skipString(position);
+            if (keyEnd == NOT_FOUND) {
+                return NOT_FOUND;
+            }
+            boolean matched = keyMatches(position + 1, keyEnd - 1, path, segmentStart, segmentEnd);
+
+            position = skipWhitespace(keyEnd);
+            if (position >= end || data[position] != ':') {
+                return NOT_FOUND;
+            }
+            position = skipWhitespace(position + 1);
+            if (matched) {
+                return position < end ? position : NOT_FOUND;
+            }
+
+            position = skipValue(position);
+            position = skipWhitespace(position);
+            if (position >= end || data[position] != ',') {
+                return NOT_FOUND;
+            }
+            position++;
+        }
+    }
+
+    /**
+     * 在数组中按下标查找元素，返回元素的起始位置
+     */
+    private int findElement(int position, String path, int segmentStart, int segmentEnd) {
+        int index = 0;
+        for (int i = segmentStart; i < segmentEnd; i++) {
+            char c = path.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_FOUND;
+            }
+            index = index * 10 + (c - '0');
+        }
+        if (segmentStart == segmentEnd) {
+            return NOT_FOUND;
+        }
+
+        position = skipWhitespace(position);
+        if (position >= end || data[position] == ']') {
+            return NOT_FOUND;
+        }
+        for (int i = 0; i < index; i++) {
+            position = skipWhitespace(skipValue(position));
+            if (position >= end || data[position] != ',') {
+                return NOT_FOUND;
+            }
+            position = skipWhitespace(position + 1);
+        }
+        return position < end ? position : NOT_FOUND;
+    }
+
+    /**
+     * 比较字段名（UTF-8字节）与路径中的一段（Java字符）是否相同
+     */
+    private boolean keyMatches(int keyStart, int keyEnd, String path, int segmentStart, int segmentEnd) {
+        int position = keyStart;
+        for (int i = segmentStart; i < segmentEnd; i++) {
+            char c = path.charAt(i);
+            if (position < keyEnd && data[position] == '\\') {
+                return escapedKeyMatches(keyStart, path, segmentStart, segmentEnd);
+            }
+            if (c < 0x80) {
+                if (position >= keyEnd || data[position] != c) {
+                    return false;
+                }
+                position++;
+                continue;
+            }
+
+            // 非ASCII字符：按UTF-8编码后逐字节比较
+            int codePoint = c;
+            if (Character.isHighSurrogate(c) && i + 1 < segmentEnd) {
+                codePoint = Character.toCodePoint(c, path.charAt(++i));
+            }
+            int encodedLength = codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            if (position + encodedLength > keyEnd) {
+                return false;
+            }
+            int lead = (encodedLength == 2 ? 0xc0 : encodedLength == 3 ? 0xe0 : 0xf0)
+                | (codePoint >> (6 * (encodedLength - 1)));
+            if ((data[position++] & 0xff) != lead) {
+                return false;
+            }
+            for (int shift = 6 * (encodedLength - 2); shift >= 0; shift -= 6) {
+                if ((data[position++] & 0xff) != (0x80 | ((codePoint >> shift) & 0x3f))) {
+                    return false;
+                }
+            }
+        }
+        if (position < keyEnd && data[position] == '\\') {
+            return escapedKeyMatches(keyStart, path, segmentStart, segmentEnd);
+        }
+        return position == keyEnd;
+    }
+
+    /**
+     * 字段名包含转义字符时的慢速比较
+     */
+    private boolean escapedKeyMatches(int keyStart, String path, int segmentStart, int segmentEnd) {
+        String key = decodeString(keyStart - 1);
+        return key.length() == segmentEnd - segmentStart
+            && path.regionMatches(segmentStart, key, 0, key.length());
+    }
+
+    // ==================== 跳过值 ====================
+
+    /**
+     * 跳过一个完整的值，返回值之后的位置
+     */
+    private int skipValue(int position) {
+        if (position >= end) {
+            return end;
+        }
+        byte b = data[position];
+        if (b == '"') {
+            int next = skipString(position);
+            return next == NOT_FOUND ? end : next;
+        }
+        if (b == '{' || b == '[') {
+            int depth = 0;
+            while (position < end) {
+                b = data[position];
+                if (b == '"') {
+                    position = skipString(position);
+                    if (position == NOT_FOUND) {
+                        return end;
+                    }
+                    continue;
+                }
+                if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        return position + 1;
+                    }
+                }
+                position++;
+            }
+            return end;
+        }
+        // 数值或字面量
+        while (position < end) {
+            b = data[position];
+            if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                break;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * 跳过字符串（position 指向开头的引号），返回结束引号之后的位置
+     */
+    private int skipString(int position) {
+        position++;
+        while (position < end) {
+            byte b = data[position];
+            if (b == '\\') {
+                position += 2;
+            } else if (b == '"') {
+                return position + 1;
+            } else {
+                position++;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private int skipWhitespace(int position) {
+        while (position < end) {
+            byte b = data[position];
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                break;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    private boolean matchesLiteral(int position, String literal) {
+        int length = literal.length();
+        if (position + length > end) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[position + i] != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ==================== 解析值 ====================
+
+    /**
+     * 解析数值（也接受带引号的数值字符串），无法解析时返回 NaN
+     */
+    private double parseDouble(int position) {
+        int valueEnd;
+        if (data[position] == '"') {
+            int next = skipString(position);
+            if (next == NOT_FOUND) {
+                return Double.NaN;
+            }
+            position++;
+            valueEnd = next - 1;
+        } else {
+            valueEnd = skipValue(position);
+        }
+
+        int i = position;
+        boolean negative = false;
+        if (i < valueEnd && (data[i] == '-' || data[i] == '+')) {
+            negative = data[i] == '-';
+            i++;
+        }
+
+        // 快速路径：不超过15位有效数字且没有指数，结果与 Double.parseDouble 一致
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        boolean fastPath = i < valueEnd;
+        for (; i < valueEnd; i++) {
+            byte b = data[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+                if (fraction) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                fastPath = false;
+                break;
+            }
+        }
+
+        if (fastPath && digits <= 15 && fractionDigits < POWERS_OF_TEN.length) {
+            double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+
+        try {
+            return Double.parseDouble(new String(data, position, valueEnd - position, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * 解码字符串值（position 指向开头的引号）
+     */
+    private String decodeString(int position) {
+        int valueEnd = skipString(position);
+        if (valueEnd == NOT_FOUND) {
+            return null;
+        }
+        int contentStart = position + 1;
+        int contentEnd = valueEnd - 1;
+
+        boolean escaped = false;
+        for (int i = contentStart; i < contentEnd; i++) {
+            if (data[i] == '\\') {
+                escaped = true;
+                break;
+            }
+        }
+        if (!escaped) {
+            return new String(data, contentStart, contentEnd - contentStart, StandardCharsets.UTF_8);
+        }
+
+        // 含转义字符：先按UTF-8解码，再处理转义
+        String raw = new String(data, contentStart, contentEnd - contentStart, StandardCharsets.UTF_8);
+        StringBuilder builder = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\' || i + 1 >= raw.length()) {
+                builder.append(c);
+                continue;
+            }
+            char next = raw.charAt(++i);
+            switch (next) {
+                case 'n': builder.append('\n'); break;
+                case 't': builder.append('\t'); break;
+                case 'r': builder.append('\r'); break;
+                case 'b': builder.append('\b'); break;
+                case 'f': builder.append('\f'); break;
+                case 'u':
+                    if (i + 4 < raw.length()) {
+                        builder.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+                        i += 4;
+                    }
+                    break;
+                default: builder.append(next); break;
+            }
+        }
+        return builder.toString();
+    }
+}
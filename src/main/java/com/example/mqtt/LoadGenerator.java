@@ -0,0 +1,306 @@
+package com.example.mqtt;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 压测工具
+ * 模拟大量设备按固定速率发布传感器数据（见 mqtt.load.* 配置），运行结束后输出吞吐量、延迟百分位和错误数。
+ *
+ * 每个设备是一个轻量任务而不是一个平台线程：JVM 支持虚拟线程（Java 21+）时每个设备运行在一个虚拟线程上，
+ * 否则由一个小型定时线程池按速率调度。设备分散到 mqtt.load.connections 个MQTT连接和 mqtt.load.topics 个主题上。
+ *
+ * 设备用 {@link MqttClient#publishWhenReady(byte[], String, int)} 发布，发布窗口已满时消息排队而设备不阻塞：
+ * 阻塞在发布窗口上会占住虚拟线程的载体线程，或者占住调度线程池、拖慢其他设备。
+ *
+ * 延迟从每条消息计划发送的时刻算到 Broker 确认（QoS 0 为交给发送线程），
+ * 因此发送端跟不上计划速率时排队的时间也会计入延迟。
+ */
+public class LoadGenerator {
+    /** 每隔多少秒打印一次进度 */
+    private static final int PROGRESS_INTERVAL_S = 5;
+    /** 运行结束后等待未确认消息的最长时间 */
+    private static final long DRAIN_TIMEOUT_MS = 10_000;
+
+    private final MqttConfig config;
+    private final int devices;
+    private final double rate;
+    private final int qos;
+    private final int topics;
+    private final int payloadSize;
+    private final long periodNanos;
+    private final long rampUpNanos;
+    private final long durationNanos;
+
+    private final List<MqttClient> clients = new ArrayList<>();
+    private FleetBootstrap.Result fleet;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder acked = new LongAdder();
+    private final LongAdder spooled = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final AtomicInteger startedDevices = new AtomicInteger();
+    private int connectFailures;
+    private volatile boolean running;
+    private long startNanos;
+
+    public LoadGenerator(MqttConfig config) {
+        if (config.getLoadDevices() <= 0 || config.getLoadRate() <= 0) {
+            throw new IllegalArgumentException("mqtt.load.devices 和 mqtt.load.rate 必须大于0");
+        }
+        this.config = config;
+        this.devices = config.getLoadDevices();
+        this.rate = config.getLoadRate();
+        this.qos = config.getLoadQos();
+        this.topics = Math.max(1, config.getLoadTopics());
+        this.payloadSize = config.getLoadPayloadSize();
+        this.periodNanos = (long) (1e9 / rate);
+        this.rampUpNanos = TimeUnit.SECONDS.toNanos(config.getLoadRampUpSeconds());
+        this.durationNanos = TimeUnit.SECONDS.toNanos(config.getLoadDurationSeconds());
+    }
+
+    /**
+     * 并行建立连接（见 {@link FleetBootstrap}），返回成功的连接数
+     */
+    public int connect() {
+        int connections = Math.max(1, Math.min(config.getLoadConnections(), devices));
+        fleet = FleetBootstrap.fromConfig(config).connect(connections, "load_");
+        clients.addAll(fleet.getConnected());
+        connectFailures = fleet.getFailed().size();
+        return clients.size();
+    }
+
+    /**
+     * 运行压测直到 mqtt.load.duration.s 结束
+     */
+    public void run() throws InterruptedException {
+        if (clients.isEmpty()) {
+            throw new IllegalStateException("没有可用的连接");
+        }
+
+        ExecutorService virtualThreads = newVirtualThreadExecutor();
+        ScheduledExecutorService scheduler = null;
+        running = true;
+        startNanos = System.nanoTime();
+
+        List<Device> all = new ArrayList<>(devices);
+        for (int i = 0; i < devices; i++) {
+            long startAt = startNanos + rampUpNanos * i / devices;
+            all.add(new Device(i, clients.get(i % clients.size()), config.getTopic() + "/" + (i % topics), startAt));
+        }
+
+        if (virtualThreads != null) {
+            System.out.println("→ 使用虚拟线程运行 " + devices + " 个设备");
+            for (Device device : all) {
+                virtualThreads.execute(device::runLoop);
+            }
+        } else {
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+            System.out.println("→ 当前JVM不支持虚拟线程，使用 " + threads + " 个调度线程运行 " + devices + " 个设备");
+            scheduler = Executors.newScheduledThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "mqtt-load");
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (Device device : all) {
+                scheduler.scheduleAtFixedRate(device::publishOne,
+                    device.startAt - startNanos, periodNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        long deadline = startNanos + durationNanos;
+        long lastSent = 0;
+        long lastReport = startNanos;
+        while (System.nanoTime() < deadline) {
+            long sleep = Math.min(TimeUnit.SECONDS.toNanos(PROGRESS_INTERVAL_S), deadline - System.nanoTime());
+            TimeUnit.NANOSECONDS.sleep(Math.max(0, sleep));
+
+            long now = System.nanoTime();
+            long total = sent.sum();
+            System.out.printf("→ [%ds] 设备 %d/%d, 发送 %d (%.0f 条/秒), 确认 %d, 错误 %d%n",
+                TimeUnit.NANOSECONDS.toSeconds(now - startNanos), startedDevices.get(), devices,
+                total, (total - lastSent) * 1e9 / Math.max(1, now - lastReport), acked.sum(), errors.sum());
+            lastSent = total;
+            lastReport = now;
+        }
+
+        running = false;
+        if (virtualThreads != null) {
+            virtualThreads.shutdown();
+            virtualThreads.awaitTermination(5, TimeUnit.SECONDS);
+        } else {
+            scheduler.shutdown();
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        long elapsed = System.nanoTime() - startNanos;
+
+        // 等待未确认的消息
+        long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (outstanding() > 0 && System.currentTimeMillis() < drainDeadline) {
+            Thread.sleep(50);
+        }
+
+        printSummary(elapsed);
+    }
+
+    /**
+     * 断开所有连接
+     */
+    public void disconnect() {
+        if (fleet != null) {
+            fleet.disconnect();
+            fleet = null;
+        }
+        clients.clear();
+    }
+
+    private long outstanding() {
+        return sent.sum() - acked.sum() - spooled.sum() - errors.sum();
+    }
+
+    private void printSummary(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long total = sent.sum();
+        System.out.println("\n========== 压测结果 ==========");
+        System.out.printf("设备: %d (连接 %d, 主题 %d, QoS %d, 每设备 %.2f 条/秒, 平均消息 %d 字节)%n",
+            devices, clients.size(), topics, qos, rate, total == 0 ? 0 : bytes.sum() / total);
+        System.out.printf("运行时长: %.1f 秒 (启动阶段 %d 秒)%n", seconds, config.getLoadRampUpSeconds());
+        System.out.printf("发送: %d  确认: %d  暂存: %d  错误: %d  未确认: %d  连接失败: %d%n",
+            total, acked.sum(), spooled.sum(), errors.sum(), outstanding(), connectFailures);
+        System.out.printf("吞吐量: %.0f 条/秒 (满速目标 %.0f 条/秒), %.1f KB/秒%n",
+            acked.sum() / seconds, devices * rate, bytes.sum() / seconds / 1024);
+        System.out.printf("延迟(ms): p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f%n",
+            millis(latency.getPercentile(50)), millis(latency.getPercentile(90)),
+            millis(latency.getPercentile(99)), millis(latency.getPercentile(99.9)), millis(latency.getMax()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * 创建每个任务一个虚拟线程的执行器，JVM 不支持时返回 null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 一个模拟设备，同一时刻只有一个线程调用 {@link #publishOne()}
+     */
+    private final class Device {
+        final int index;
+        final MqttClient client;
+        final String topic;
+        final long startAt;
+        final Random random;
+        long sequence;
+        String padding;
+
+        Device(int index, MqttClient client, String topic, long startAt) {
+            this.index = index;
+            this.client = client;
+            this.topic = topic;
+            this.startAt = startAt;
+            this.random = new Random(index);
+        }
+
+        /**
+         * 虚拟线程模式：按计划时刻休眠后发送，落后于计划时立即补发
+         */
+        void runLoop() {
+            long next = startAt;
+            while (running) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                    continue;
+                }
+                publishOne();
+                next += periodNanos;
+            }
+        }
+
+        void publishOne() {
+            if (!running) {
+                return;
+            }
+            if (sequence == 0) {
+                startedDevices.incrementAndGet();
+            }
+            long intended = startAt + sequence * periodNanos;
+            sequence++;
+
+            try {
+                byte[] payload = encode();
+                sent.increment();
+                bytes.add(payload.length);
+                client.publishWhenReady(payload, topic, qos).whenComplete((token, error) -> {
+                    if (error != null) {
+                        errors.increment();
+                    } else if (token == null) {
+                        spooled.increment();
+                    } else {
+                        acked.increment();
+                        latency.record(System.nanoTime() - intended);
+                    }
+                });
+            } catch (RuntimeException e) {
+                errors.increment();
+            }
+        }
+
+        /**
+         * 编码一条传感器数据，配置了 mqtt.load.payload.size 时用填充字段补足长度
+         */
+        private byte[] encode() {
+            Map<String, Object> data = MqttPublisher.createSensorData(sequence, random);
+            data.put("device", index);
+            if (payloadSize <= 0) {
+                return client.getCodecs().encode(topic, data);
+            }
+            if (padding == null) {
+                int base = client.getCodecs().encode(topic, data).length;
+                // 填充字段本身约占 14 字节
+                padding = "x".repeat(Math.max(0, payloadSize - base - 14));
+            }
+            data.put("padding", padding);
+            return client.getCodecs().encode(topic, data);
+        }
+    }
+
+    /**
+     * 主函数 - 按 mqtt.properties 中的 mqtt.load.* 配置运行压测
+     */
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator(MqttConfig.shared());
+
+        System.out.println("正在建立连接...");
+        if (generator.connect() == 0) {
+            System.err.println("✗ 没有可用的连接，压测结束");
+            return;
+        }
+
+        try {
+            generator.run();
+        } finally {
+            generator.disconnect();
+        }
+    }
+}
@@ -0,0 +1,656 @@
+package com.example.mqtt;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 基于内存映射段日志的 Paho 持久化实现
+ * 用于在进程重启后恢复未确认的 QoS 1/2 消息，代替每条消息创建一个文件的 MqttDefaultFilePersistence。
+ *
+ * 所有写入（put/remove）以记录形式追加到内存映射的段文件中，内存中的索引记录每个键最新记录的位置；
+ * 打开时按顺序重放所有段重建索引，校验失败的记录（进程崩溃时写了一半）及其之后的内容被丢弃。
+ *
+ * 记录格式（大端序）：
+ * <pre>
+ * 长度      4  之后所有字节数（含CRC）
+ * 类型      1  1 = PUT，2 = REMOVE
+ * 键长度    2
+ * 键        UTF-8
+ * 头部长度  4  仅 PUT
+ * 头部
+ * 负载长度  4  仅 PUT
+ * 负载
+ * CRC32     4  类型到负载的校验和
+ * </pre>
+ *
+ * 最早的段中已没有有效记录时直接删除；失效字节超过一个段且多于有效字节时进行压缩，
+ * 把所有有效记录复制到新段后删除旧段。
+ *
+ * 注意：只有使用固定的客户端ID且 cleanSession=false 时，重启后才能恢复在途消息。
+ */
+public class MappedFilePersistence implements MqttClientPersistence {
+
+    /**
+     * 刷盘策略
+     */
+    public enum SyncPolicy {
+        /** 每次写入后刷盘，进程或系统崩溃都不丢失 */
+        ALWAYS,
+        /** 后台线程定时刷盘，系统崩溃最多丢失一个间隔内的写入 */
+        INTERVAL,
+        /** 由操作系统决定何时写回，只保证进程崩溃不丢失 */
+        OS;
+
+        public static SyncPolicy parse(String value) {
+            return valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_REMOVE = 2;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String LOCK_FILE = ".lock";
+    /** 长度字段 + 类型 + 键长度 + CRC */
+    private static final int RECORD_OVERHEAD = 4 + 1 + 2 + 4;
+
+    private final File baseDirectory;
+    private final SyncPolicy syncPolicy;
+    private final long syncIntervalMs;
+    private final int segmentSize;
+
+    private File directory;
+    private RandomAccessFile lockFile;
+    private FileLock lock;
+    private ScheduledExecutorService syncExecutor;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Map<String, Location> index = new HashMap<>();
+    private final CRC32 crc = new CRC32();
+    private long nextSegmentId;
+    private long liveBytes;
+    private long totalBytes;
+
+    public MappedFilePersistence(String directory) {
+        this(directory, SyncPolicy.INTERVAL, 100, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param directory      持久化根目录，每个客户端在其中使用独立的子目录
+     * @param syncPolicy     刷盘策略
+     * @param syncIntervalMs INTERVAL 策略的刷盘间隔（毫秒）
+     * @param segmentSize    段文件大小（字节），超过该大小的单条记录使用独立的段
+     */
+    public MappedFilePersistence(String directory, SyncPolicy syncPolicy, long syncIntervalMs, int segmentSize) {
+        if (segmentSize < 4096) {
+            throw new IllegalArgumentException("段文件大小不能小于4096字节: " + segmentSize);
+        }
+        this.baseDirectory = new File(directory);
+        this.syncPolicy = syncPolicy;
+        this.syncIntervalMs = syncIntervalMs;
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public synchronized void open(String clientId, String serverURI) throws MqttPersistenceException {
+        if (directory != null) {
+            return;
+        }
+        File dir = new File(baseDirectory, sanitize(clientId + "-" + serverURI));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new MqttPersistenceException(new IOException("无法创建持久化目录: " + dir));
+        }
+
+        try {
+            lockFile = new RandomAccessFile(new File(dir, LOCK_FILE), "rw");
+            try {
+                lock = lockFile.getChannel().tryLock();
+            } catch (OverlappingFileLockException e) {
+                // 同一进程中已打开
+                lock = null;
+            }
+            if (lock == null) {
+                closeQuietly(lockFile);
+                throw new MqttPersistenceException(MqttPersistenceException.REASON_CODE_PERSISTENCE_IN_USE);
+            }
+            directory = dir;
+            recover();
+        } catch (IOException e) {
+            releaseResources();
+            throw new MqttPersistenceException(e);
+        }
+
+        if (syncPolicy == SyncPolicy.INTERVAL) {
+            syncExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "mqtt-persistence-sync-" + clientId);
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncExecutor.scheduleWithFixedDelay(this::syncDirty, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void close() throws MqttPersistenceException {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            if (directory == null) {
+                return;
+            }
+            executor = syncExecutor;
+            syncExecutor = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (syncPolicy != SyncPolicy.OS) {
+                for (Segment segment : segments) {
+                    segment.force();
+                }
+            }
+            releaseResources();
+        }
+    }
+
+    @Override
+    public synchronized void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+        checkOpen();
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] header = persistable.getHeaderBytes();
+        int headerOffset = persistable.getHeaderOffset();
+        int headerLength = header == null ? 0 : persistable.getHeaderLength();
+        byte[] payload = persistable.getPayloadBytes();
+        int payloadOffset = persistable.getPayloadOffset();
+        int payloadLength = payload == null ? 0 : persistable.getPayloadLength();
+
+        int recordLength = RECORD_OVERHEAD + keyBytes.length + 8 + headerLength + payloadLength;
+        Segment segment = segmentFor(recordLength);
+        ByteBuffer buffer = segment.buffer;
+        int position = segment.writePosition;
+
+        buffer.position(position);
+        buffer.putInt(recordLength - 4);
+        buffer.put(TYPE_PUT);
+        buffer.putShort((short) keyBytes.length);
+        buffer.put(keyBytes);
+        buffer.putInt(headerLength);
+        if (headerLength > 0) {
+            buffer.put(header, headerOffset, headerLength);
+        }
+        buffer.putInt(payloadLength);
+        if (payloadLength > 0) {
+            buffer.put(payload, payloadOffset, payloadLength);
+        }
+        buffer.putInt(checksum(buffer, position + 4, recordLength - 8));
+
+        appended(segment, recordLength);
+        Location previous = index.put(key, new Location(segment, position, recordLength));
+        segment.liveRecords++;
+        liveBytes += recordLength;
+        if (previous != null) {
+            dropped(previous);
+        }
+        afterWrite(segment);
+    }
+
+    @Override
+    public synchronized MqttPersistable get(String key) throws MqttPersistenceException {
+        checkOpen();
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+
+        ByteBuffer buffer = location.segment.buffer.duplicate();
+        int keyLength = buffer.getShort(location.offset + 5) & 0xffff;
+        buffer.position(location.offset + 7 + keyLength);
+        byte[] header = new byte[buffer.getInt()];
+        buffer.get(header);
+        byte[] payload = new byte[buffer.getInt()];
+        buffer.get(payload);
+        return new StoredData(header, payload);
+    }
+
+    @Override
+    public synchronized void remove(String key) throws MqttPersistenceException {
+        checkOpen();
+        Location location = index.remove(key);
+        if (location == null) {
+            return;
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int recordLength = RECORD_OVERHEAD + keyBytes.length;
+        Segment segment = segmentFor(recordLength);
+        ByteBuffer buffer = segment.buffer;
+        int position = segment.writePosition;
+
+        buffer.position(position);
+        buffer.putInt(recordLength - 4);
+        buffer.put(TYPE_REMOVE);
+        buffer.putShort((short) keyBytes.length);
+        buffer.put(keyBytes);
+        buffer.putInt(checksum(buffer, position + 4, recordLength - 8));
+
+        appended(segment, recordLength);
+        dropped(location);
+        afterWrite(segment);
+    }
+
+    @Override
+    public synchronized Enumeration keys() throws MqttPersistenceException {
+        checkOpen();
+        return Collections.enumeration(new ArrayList<>(index.keySet()));
+    }
+
+    @Override
+    public synchronized void clear() throws MqttPersistenceException {
+        checkOpen();
+        for (Segment segment : segments) {
+            segment.delete();
+        }
+        segments.clear();
+        index.clear();
+        liveBytes = 0;
+        totalBytes = 0;
+    }
+
+    @Override
+    public synchronized boolean containsKey(String key) throws MqttPersistenceException {
+        checkOpen();
+        return index.containsKey(key);
+    }
+
+    /**
+     * 当前持久化的消息数
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * 段文件中已写入的字节数（含已失效的记录）
+     */
+    public synchronized long getDiskBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * 有效记录的字节数
+     */
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    private void checkOpen() throws MqttPersistenceException {
+        if (directory == null) {
+            throw new MqttPersistenceException(new IllegalStateException("持久化存储未打开"));
+        }
+    }
+
+    /**
+     * 返回能容纳指定长度记录的当前段，空间不足时创建新段
+     */
+    private Segment segmentFor(int recordLength) throws MqttPersistenceException {
+        Segment active = segments.peekLast();
+        if (active != null && active.buffer.capacity() - active.writePosition >= recordLength) {
+            return active;
+        }
+        try {
+            Segment segment = Segment.create(directory, nextSegmentId++, Math.max(segmentSize, recordLength));
+            segments.addLast(segment);
+            return segment;
+        } catch (IOException e) {
+            throw new MqttPersistenceException(e);
+        }
+    }
+
+    private void appended(Segment segment, int recordLength) {
+        segment.writePosition += recordLength;
+        segment.dirty = true;
+        totalBytes += recordLength;
+    }
+
+    /**
+     * 一条有效记录被覆盖或删除
+     */
+    private void dropped(Location location) {
+        location.segment.liveRecords--;
+        liveBytes -= location.length;
+    }
+
+    private void afterWrite(Segment segment) throws MqttPersistenceException {
+        if (syncPolicy == SyncPolicy.ALWAYS) {
+            segment.force();
+        }
+        releaseLeadingSegments();
+        long deadBytes = totalBytes - liveBytes;
+        if (deadBytes > segmentSize && deadBytes > liveBytes) {
+            compact();
+        }
+    }
+
+    /**
+     * 删除开头已没有有效记录的段
+     * 只删除最早的段，保证删除记录（REMOVE）不会早于它所删除的 PUT 被回收
+     */
+    private void releaseLeadingSegments() {
+        while (segments.size() > 1 && segments.peekFirst().liveRecords == 0) {
+            Segment segment = segments.pollFirst();
+            totalBytes -= segment.writePosition;
+            segment.delete();
+        }
+    }
+
+    /**
+     * 把所有有效记录复制到新段，然后删除旧段
+     * 新段的编号大于所有旧段，删除旧段前崩溃时重放结果不变
+     */
+    private void compact() throws MqttPersistenceException {
+        List<Segment> oldSegments = new ArrayList<>(segments);
+        segments.clear();
+        totalBytes = 0;
+
+        for (Location location : index.values()) {
+            Segment target = segmentFor(location.length);
+            ByteBuffer source = location.segment.buffer.duplicate();
+            source.limit(location.offset + location.length).position(location.offset);
+            target.buffer.position(target.writePosition);
+            target.buffer.put(source);
+
+            location.segment = target;
+            location.offset = target.writePosition;
+            target.liveRecords++;
+            appended(target, location.length);
+        }
+
+        for (Segment segment : segments) {
+            segment.force();
+        }
+        for (Segment segment : oldSegments) {
+            segment.delete();
+        }
+    }
+
+    /**
+     * 打开时按段编号顺序重放所有记录
+     */
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files == null || files.length == 0) {
+            return;
+        }
+        Arrays.sort(files);
+
+        for (File file : files) {
+            Segment segment = Segment.open(file, parseSegmentId(file));
+            nextSegmentId = segment.id + 1;
+            segments.addLast(segment);
+            replay(segment);
+        }
+
+        Iterator<Segment> iterator = segments.iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            if (segment.liveRecords == 0 && segment != segments.peekLast()) {
+                totalBytes -= segment.writePosition;
+                iterator.remove();
+                segment.delete();
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void replay(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        int capacity = buffer.capacity();
+        int position = 0;
+
+        while (position + RECORD_OVERHEAD <= capacity) {
+            int length = buffer.getInt(position);
+            int recordLength = length + 4;
+            if (length < RECORD_OVERHEAD - 4 || position + recordLength > capacity
+                    || checksum(buffer, position + 4, recordLength - 8) != buffer.getInt(position + recordLength - 4)) {
+                break;
+            }
+
+            byte type = buffer.get(position + 4);
+            int keyLength = buffer.getShort(position + 5) & 0xffff;
+            byte[] keyBytes = new byte[keyLength];
+            ByteBuffer view = buffer.duplicate();
+            view.position(position + 7);
+            view.get(keyBytes);
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+
+            Location previous;
+            if (type == TYPE_PUT) {
+                previous = index.put(key, new Location(segment, position, recordLength));
+                segment.liveRecords++;
+                liveBytes += recordLength;
+            } else {
+                previous = index.remove(key);
+            }
+            if (previous != null) {
+                dropped(previous);
+            }
+            position += recordLength;
+        }
+
+        segment.writePosition = position;
+        totalBytes += position;
+        if (position + 4 <= capacity && buffer.getInt(position) != 0) {
+            // 清除崩溃时写了一半的记录，避免其残留内容与后续追加的记录拼接
+            for (int i = position; i < capacity; i++) {
+                buffer.put(i, (byte) 0);
+            }
+            segment.dirty = true;
+        }
+    }
+
+    private int checksum(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(offset + length).position(offset);
+        crc.reset();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * INTERVAL 策略的后台刷盘
+     */
+    private void syncDirty() {
+        List<Segment> dirty = new ArrayList<>();
+        synchronized (this) {
+            for (Segment segment : segments) {
+                if (segment.dirty) {
+                    segment.dirty = false;
+                    dirty.add(segment);
+                }
+            }
+        }
+        for (Segment segment : dirty) {
+            segment.buffer.force();
+        }
+    }
+
+    private void releaseResources() {
+        segments.clear();
+        index.clear();
+        liveBytes = 0;
+        totalBytes = 0;
+        nextSegmentId = 0;
+        try {
+            if (lock != null) {
+                lock.release();
+            }
+        } catch (IOException e) {
+            // 关闭文件时锁会一并释放
+        }
+        closeQuietly(lockFile);
+        lock = null;
+        lockFile = null;
+        directory = null;
+    }
+
+    private static long parseSegmentId(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static String sanitize(String name) {
+        StringBuilder builder = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            builder.append(Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '.' ? c : '_');
+        }
+        return builder.toString();
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+    }
+
+    /**
+     * 段文件：整个文件映射到内存，按顺序追加记录
+     */
+    private static final class Segment {
+        final long id;
+        final File file;
+        final MappedByteBuffer buffer;
+        int writePosition;
+        int liveRecords;
+        boolean dirty;
+
+        private Segment(long id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        static Segment create(File directory, long id, int size) throws IOException {
+            return map(id, new File(directory, String.format("%016d%s", id, SEGMENT_SUFFIX)), size);
+        }
+
+        static Segment open(File file, long id) throws IOException {
+            return map(id, file, (int) Math.min(file.length(), Integer.MAX_VALUE));
+        }
+
+        private static Segment map(long id, File file, int size) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                // 映射在通道关闭后依然有效
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+                return new Segment(id, file, buffer);
+            }
+        }
+
+        void force() {
+            if (dirty) {
+                dirty = false;
+                buffer.force();
+            }
+        }
+
+        void delete() {
+            if (!file.delete()) {
+                // 部分平台无法删除仍被映射的文件
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * 键最新记录的位置
+     */
+    private static final class Location {
+        Segment segment;
+        int offset;
+        final int length;
+
+        Location(Segment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * 从段文件读出的持久化数据
+     */
+    private static final class StoredData implements MqttPersistable {
+        private final byte[] header;
+        private final byte[] payload;
+
+        StoredData(byte[] header, byte[] payload) {
+            this.header = header;
+            this.payload = payload;
+        }
+
+        @Override
+        public byte[] getHeaderBytes() {
+            return header;
+        }
+
+        @Override
+        public int getHeaderLength() {
+            return header.length;
+        }
+
+        @Override
+        public int getHeaderOffset() {
+            return 0;
+        }
+
+        @Override
+        public byte[] getPayloadBytes() {
+            return payload;
+        }
+
+        @Override
+        public int getPayloadLength() {
+            return payload.length;
+        }
+
+        @Override
+        public int getPayloadOffset() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.mqtt;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * 消息分发器
+ * 把消息处理从Paho回调线程转移到有界工作线程池。
+ * 按主题哈希分条（stripe）：同一主题的消息始终由同一个工作线程按到达顺序处理，
+ * 不同主题的消息在多个线程上并行处理。
+ * 线程数为0时在回调线程中直接处理（不使用线程池）。
+ */
+public class MessageDispatcher {
+
+    /**
+     * 队列已满时的处理策略
+     */
+    public enum OverflowPolicy {
+        /** 阻塞回调线程，直到队列有空位（向Broker施加背压） */
+        BLOCK,
+        /** 丢弃队列中最早的消息 */
+        DROP_OLDEST,
+        /** 丢弃新到达的消息 */
+        DROP_NEWEST;
+
+        public static OverflowPolicy parse(String value) {
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private static final Task POISON = new Task(null, null, null);
+
+    private final List<BlockingQueue<Task>> queues;
+    private final Thread[] workers;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile BiConsumer<String, MqttMessage> discardHandler;
+    private volatile boolean running = true;
+
+    public MessageDispatcher(String name, int threads, int queueSize, OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        this.queues = new ArrayList<>(Math.max(0, threads));
+        this.workers = new Thread[Math.max(0, threads)];
+
+        for (int i = 0; i < workers.length; i++) {
+            BlockingQueue<Task> queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+            queues.add(queue);
+            workers[i] = new Thread(() -> runWorker(queue), name + "-dispatch-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * 根据配置创建分发器
+     */
+    public static MessageDispatcher fromConfig(String name, MqttConfig config) {
+        return new MessageDispatcher(name, config.getDispatchThreads(),
+            config.getDispatchQueueSize(), config.getDispatchOverflowPolicy());
+    }
+
+    /**
+     * 设置消息被丢弃时的回调（队列已满或分发器已关闭），用于释放调用方为该消息占用的资源
+     */
+    public void setDiscardHandler(BiConsumer<String, MqttMessage> discardHandler) {
+        this.discardHandler = discardHandler;
+    }
+
+    /**
+     * 分发一条消息
+     */
+    public void dispatch(String topic, MqttMessage message, BiConsumer<String, MqttMessage> handler) {
+        if (queues.isEmpty()) {
+            invoke(topic, message, handler);
+            return;
+        }
+        if (!running) {
+            discard(topic, message);
+            return;
+        }
+
+        BlockingQueue<Task> queue = queues.get(stripe(topic));
+        Task task = new Task(topic, message, handler);
+
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    queue.put(task);
+                    // 等待期间分发器已关闭：工作线程可能已经退出，自己取回并丢弃
+                    if (!running && queue.remove(task)) {
+                        discard(topic, message);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    discard(topic, message);
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(task)) {
+                    Task oldest = queue.poll();
+                    if (oldest == POISON) {
+                        // 分发器正在关闭：放回结束标记（刚腾出一个位置），丢弃新消息
+                        queue.offer(POISON);
+                        discard(topic, message);
+                        return;
+                    }
+                    if (oldest != null) {
+                        discard(oldest.topic, oldest.message);
+                    }
+                }
+                break;
+            case DROP_NEWEST:
+            default:
+                if (!queue.offer(task)) {
+                    discard(topic, message);
+                }
+                break;
+        }
+    }
+
+    private void discard(String topic, MqttMessage message) {
+        droppedCount.incrementAndGet();
+        BiConsumer<String, MqttMessage> handler = discardHandler;
+        if (handler != null) {
+            handler.accept(topic, message);
+        }
+    }
+
+    private int stripe(String topic) {
+        int h = topic.hashCode();
+        h ^= (h >>> 16);
+        return (h & 0x7fffffff) % queues.size();
+    }
+
+    private void runWorker(BlockingQueue<Task> queue) {
+        while (true) {
+            Task task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                // 关闭超时被中断
+                discardQueued(queue);
+                return;
+            }
+            if (task == POISON) {
+                // 关闭过程中结束标记之后入队的消息不会再被处理，按丢弃计入
+                discardQueued(queue);
+                return;
+            }
+            invoke(task.topic, task.message, task.handler);
+        }
+    }
+
+    private void discardQueued(BlockingQueue<Task> queue) {
+        Task rest;
+        while ((rest = queue.poll()) != null) {
+            if (rest != POISON) {
+                discard(rest.topic, rest.message);
+            }
+        }
+    }
+
+    private static void invoke(String topic, MqttMessage message, BiConsumer<String, MqttMessage> handler) {
+        try {
+            handler.accept(topic, message);
+        } catch (Exception e) {
+            System.err.println("✗ 处理消息出错 (主题: " + topic + "): " + e.getMessage());
+        }
+    }
+
+    /**
+     * 队列中等待处理的消息总数
+     */
+    public int getQueuedCount() {
+        int total = 0;
+        for (BlockingQueue<Task> queue : queues) {
+            total += queue.size();
+        }
+        return total;
+    }
+
+    /**
+     * 因队列已满或分发器已关闭而丢弃的消息数
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 停止接收新消息，处理完队列中已有的消息后退出工作线程
+     * 超时后仍未退出的工作线程会被中断，队列中剩余的消息按丢弃计入；timeoutMs 为 0 时不等待
+     */
+    public void shutdown(long timeoutMs) {
+        if (!running) {
+            return;
+        }
+        running = false;
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        try {
+            for (BlockingQueue<Task> queue : queues) {
+                // 处理器卡住、队列已满时最多等到超时
+                if (!queue.offer(POISON, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    break;
+                }
+            }
+            for (Thread worker : workers) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining > 0) {
+                    TimeUnit.NANOSECONDS.timedJoin(worker, remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Thread worker : workers) {
+            if (worker.isAlive()) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    private static final class Task {
+        final String topic;
+        final MqttMessage message;
+        final BiConsumer<String, MqttMessage> handler;
+
+        Task(String topic, MqttMessage message, BiConsumer<String, MqttMessage> handler) {
+            this.topic = topic;
+            this.message = message;
+            this.handler = handler;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.mqtt;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.ScheduledExecutorPingSender;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * MQTT 3.1.1 协议实现（Paho mqttv3）
+ */
+final class Mqtt3Transport implements MqttTransport {
+    private final MqttAsyncClient client;
+    private final MqttConnectOptions options;
+
+    Mqtt3Transport(MqttConfig config, String clientId, ScheduledExecutorService pingScheduler) throws MqttException {
+        this.client = new MqttAsyncClient(config.getBrokerUrl(), clientId, config.createPersistence(),
+            new ScheduledExecutorPingSender(pingScheduler));
+        this.options = new MqttConnectOptions();
+        options.setCleanSession(config.isCleanSession());
+        options.setKeepAliveInterval(config.getKeepAlive());
+        // 由 Reconnector 负责重连（指数退避 + 随机抖动）
+        options.setAutomaticReconnect(false);
+        options.setMaxInflight(config.getMaxInflight());
+        if (config.getUsername() != null && !config.getUsername().isEmpty()) {
+            options.setUserName(config.getUsername());
+            if (config.getPassword() != null && !config.getPassword().isEmpty()) {
+                options.setPassword(config.getPassword().toCharArray());
+            }
+        }
+    }
+
+    @Override
+    public void setCallback(MqttCallbackExtended callback) {
+        client.setCallback(callback);
+    }
+
+    @Override
+    public IMqttToken connect(IMqttActionListener callback) throws MqttException {
+        return client.connect(options, null, callback);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return client.isConnected();
+    }
+
+    @Override
+    public void setManualAcks(int receiveMaximum) {
+        client.setManualAcks(true);
+    }
+
+    @Override
+    public void messageArrivedComplete(int messageId, int qos) throws MqttException {
+        client.messageArrivedComplete(messageId, qos);
+    }
+
+    @Override
+    public IMqttDeliveryToken publish(String topic, MqttMessage message, Object userContext,
+                                      IMqttActionListener callback) throws MqttException {
+        return client.publish(topic, message, userContext, callback);
+    }
+
+    @Override
+    public IMqttToken subscribe(String[] topics, int[] qos, IMqttActionListener callback) throws MqttException {
+        return client.subscribe(topics, qos, null, callback);
+    }
+
+    @Override
+    public IMqttToken unsubscribe(String topic) throws MqttException {
+        return client.unsubscribe(topic);
+    }
+
+    @Override
+    public IMqttToken disconnect() throws MqttException {
+        return client.disconnect();
+    }
+
+    @Override
+    public void close() throws MqttException {
+        client.close();
+    }
+
+    @Override
+    public int getServerReceiveMaximum() {
+        return 0;
+    }
+
+    @Override
+    public int getServerTopicAliasMaximum() {
+        return 0;
+    }
+
+    @Override
+    public int getProtocolVersion() {
+        return 3;
+    }
+}
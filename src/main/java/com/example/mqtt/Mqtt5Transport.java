@@ -0,0 +1,438 @@
+package com.example.mqtt;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttWireMessage;
+import org.eclipse.paho.mqttv5.client.MqttActionListener;
+import org.eclipse.paho.mqttv5.client.MqttAsyncClient;
+import org.eclipse.paho.mqttv5.client.MqttCallback;
+import org.eclipse.paho.mqttv5.client.MqttClientPersistence;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.MqttDisconnectResponse;
+import org.eclipse.paho.mqttv5.client.TimerPingSender;
+import org.eclipse.paho.mqttv5.client.persist.MemoryPersistence;
+import org.eclipse.paho.mqttv5.client.persist.MqttDefaultFilePersistence;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * MQTT 5 协议实现（Paho mqttv5），由 mqtt.protocol=5 启用
+ *
+ * 与 3.1.1 相比减少每条消息的开销，并把流控交给协议协商：
+ * <ul>
+ *   <li>主题别名：Broker 在 CONNACK 中声明可用的别名数后，Paho 为连接上最先发布的主题分配别名，
+ *       同一主题之后的 PUBLISH 只携带2字节的别名，不再重复完整的主题字符串（重连后重新分配）。
+ *       每个连接只发布少量固定主题的设备（遥测场景）所有主题都能分到别名。
+ *       mqtt.topic.alias.max 是允许 Broker 向本客户端使用的别名数</li>
+ *   <li>接收上限：mqtt.receive.maximum 告诉 Broker 本客户端同时处理的 QoS 1/2 消息上限；
+ *       Broker 声明的接收上限会限制连接的发布窗口（超过时 Paho 会直接拒绝发布）</li>
+ *   <li>消息过期：mqtt.message.expiry.s 大于0时每条消息带上过期时间，Broker 不再投递过期的消息
+ *       （例如离线期间堆积的遥测数据）</li>
+ * </ul>
+ *
+ * 上层看到的令牌、消息和异常仍是 Paho v3 的类型。
+ */
+final class Mqtt5Transport implements MqttTransport {
+    /** MQTT 5 未声明 Receive Maximum 时的默认值 */
+    private static final int DEFAULT_RECEIVE_MAXIMUM = 65535;
+    /** 会话永不过期（对应 3.1.1 的 clean session = false） */
+    private static final long SESSION_NEVER_EXPIRES = 0xFFFFFFFFL;
+
+    private final MqttAsyncClient client;
+    private final MqttConnectionOptions options;
+    private final long messageExpirySeconds;
+    private volatile org.eclipse.paho.mqttv5.client.IMqttToken connectToken;
+
+    Mqtt5Transport(MqttConfig config, String clientId, ScheduledExecutorService pingScheduler) throws MqttException {
+        try {
+            this.client = new MqttAsyncClient(config.getBrokerUrl(), clientId, createPersistence(config),
+                new TimerPingSender(pingScheduler), null);
+        } catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+            throw convert(e);
+        }
+        this.options = new MqttConnectionOptions();
+        options.setCleanStart(config.isCleanSession());
+        if (!config.isCleanSession()) {
+            options.setSessionExpiryInterval(SESSION_NEVER_EXPIRES);
+        }
+        options.setKeepAliveInterval(config.getKeepAlive());
+        // 由 Reconnector 负责重连（指数退避 + 随机抖动）
+        options.setAutomaticReconnect(false);
+        options.setReceiveMaximum(config.getReceiveMaximum());
+        options.setTopicAliasMaximum(config.getTopicAliasMaximum());
+        if (config.getUsername() != null && !config.getUsername().isEmpty()) {
+            options.setUserName(config.getUsername());
+            if (config.getPassword() != null && !config.getPassword().isEmpty()) {
+                options.setPassword(config.getPassword().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        this.messageExpirySeconds = config.getMessageExpirySeconds();
+    }
+
+    /**
+     * v5 客户端使用自己的持久化接口，mmap 段日志只实现了 v3 接口，改用文件持久化
+     */
+    private static MqttClientPersistence createPersistence(MqttConfig config) {
+        switch (config.getPersistence()) {
+            case "memory":
+                return new MemoryPersistence();
+            case "file":
+                return new MqttDefaultFilePersistence(config.getPersistenceDir());
+            case "mmap":
+                System.out.println("⚠ MQTT 5 不支持 mmap 持久化，改用 file");
+                return new MqttDefaultFilePersistence(config.getPersistenceDir());
+            default:
+                throw new IllegalArgumentException("未知的持久化方式: " + config.getPersistence());
+        }
+    }
+
+    @Override
+    public void setCallback(MqttCallbackExtended callback) {
+        client.setCallback(new CallbackAdapter(callback));
+    }
+
+    @Override
+    public IMqttToken connect(IMqttActionListener callback) throws MqttException {
+        try {
+            org.eclipse.paho.mqttv5.client.IMqttToken token = client.connect(options, null, new MqttActionListener() {
+                @Override
+                public void onSuccess(org.eclipse.paho.mqttv5.client.IMqttToken asyncActionToken) {
+                    connectToken = asyncActionToken;
+                    if (callback != null) {
+                        callback.onSuccess(new Token(asyncActionToken));
+                    }
+                }
+
+                @Override
+                public void onFailure(org.eclipse.paho.mqttv5.client.IMqttToken asyncActionToken, Throwable exception) {
+                    if (callback != null) {
+                        callback.onFailure(new Token(asyncActionToken), convert(exception));
+                    }
+                }
+            });
+            connectToken = token;
+            return new Token(token);
+        } catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+            throw convert(e);
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return client.isConnected();
+    }
+
+    @Override
+    public void setManualAcks(int receiveMaximum) {
+        client.setManualAcks(true);
+        if (receiveMaximum > 0) {
+            Integer configured = options.getReceiveMaximum();
+            options.setReceiveMaximum(configured == null ? receiveMaximum : Math.min(configured, receiveMaximum));
+        }
+    }
+
+    @Override
+    public void messageArrivedComplete(int messageId, int qos) throws MqttException {
+        try {
+            client.messageArrivedComplete(messageId, qos);
+        } catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+            throw convert(e);
+        }
+    }
+
+    @Override
+    public IMqttDeliveryToken publish(String topic, MqttMessage message, Object userContext,
+                                      IMqttActionListener callback) throws MqttException {
+        // 每条消息单独的属性对象：Paho 发送时会把分配的主题别名写进属性
+        MqttProperties properties = new MqttProperties();
+        if (messageExpirySeconds > 0) {
+            properties.setMessageExpiryInterval(messageExpirySeconds);
+        }
+        org.eclipse.paho.mqttv5.common.MqttMessage v5Message = new org.eclipse.paho.mqttv5.common.MqttMessage(
+            message.getPayload(), message.getQos(), message.isRetained(), properties);
+        try {
+            return new Token(client.publish(topic, v5Message, userContext, wrap(callback)));
+        } catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+            throw convert(e);
+        }
+    }
+
+    @Override
+    public IMqttToken subscribe(String[] topics, int[] qos, IMqttActionListener callback) throws MqttException {
+        try {
+            return new Token(client.subscribe(topics, qos, null, wrap(callback)));
+        } catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+            throw convert(e);
+        }
+    }
+
+    @Override
+    public IMqttToken unsubscribe(String topic) throws MqttException {
+        try {
+            return new Token(client.unsubscribe(topic));
+        } catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+            throw convert(e);
+        }
+    }
+
+    @Override
+    public IMqttToken disconnect() throws MqttException {
+        try {
+            return new Token(client.disconnect());
+        } catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+            throw convert(e);
+        }
+    }
+
+    @Override
+    public void close() throws MqttException {
+        try {
+            client.close();
+        } catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+            throw convert(e);
+        }
+    }
+
+    @Override
+    public int getServerReceiveMaximum() {
+        MqttProperties properties = connackProperties();
+        Integer value = properties == null ? null : properties.getReceiveMaximum();
+        return value == null ? DEFAULT_RECEIVE_MAXIMUM : value;
+    }
+
+    @Override
+    public int getServerTopicAliasMaximum() {
+        MqttProperties properties = connackProperties();
+        Integer value = properties == null ? null : properties.getTopicAliasMaximum();
+        return value == null ? 0 : value;
+    }
+
+    @Override
+    public int getProtocolVersion() {
+        return 5;
+    }
+
+    private MqttProperties connackProperties() {
+        org.eclipse.paho.mqttv5.client.IMqttToken token = connectToken;
+        return token == null || !token.isComplete() ? null : token.getResponseProperties();
+    }
+
+    private static MqttActionListener wrap(IMqttActionListener callback) {
+        if (callback == null) {
+            return null;
+        }
+        return new MqttActionListener() {
+            @Override
+            public void onSuccess(org.eclipse.paho.mqttv5.client.IMqttToken asyncActionToken) {
+                callback.onSuccess(new Token(asyncActionToken));
+            }
+
+            @Override
+            public void onFailure(org.eclipse.paho.mqttv5.client.IMqttToken asyncActionToken, Throwable exception) {
+                callback.onFailure(new Token(asyncActionToken), convert(exception));
+            }
+        };
+    }
+
+    private static MqttMessage convert(org.eclipse.paho.mqttv5.common.MqttMessage message) {
+        MqttMessage converted = new MqttMessage(message.getPayload());
+        converted.setQos(message.getQos());
+        converted.setRetained(message.isRetained());
+        converted.setId(message.getId());
+        return converted;
+    }
+
+    private static MqttException convert(Throwable exception) {
+        if (exception instanceof MqttException) {
+            return (MqttException) exception;
+        }
+        if (exception instanceof org.eclipse.paho.mqttv5.common.MqttException) {
+            return new Mqtt5Exception((org.eclipse.paho.mqttv5.common.MqttException) exception);
+        }
+        return new MqttException(exception);
+    }
+
+    /**
+     * 以 v3 异常的形式携带 v5 的原因码和描述（客户端错误码两个版本一致，Broker 原因码只在 v5 中有定义）
+     */
+    private static final class Mqtt5Exception extends MqttException {
+        private static final long serialVersionUID = 1L;
+
+        Mqtt5Exception(org.eclipse.paho.mqttv5.common.MqttException cause) {
+            super(cause.getReasonCode(), cause);
+        }
+
+        @Override
+        public String getMessage() {
+            return getCause().getMessage();
+        }
+    }
+
+    /**
+     * 把 v5 回调转换为 v3 回调
+     */
+    private static final class CallbackAdapter implements MqttCallback {
+        private final MqttCallbackExtended callback;
+
+        CallbackAdapter(MqttCallbackExtended callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void disconnected(MqttDisconnectResponse response) {
+            Throwable cause = response.getException();
+            if (cause == null) {
+                // Broker 主动断开（DISCONNECT 报文带原因码）
+                cause = new MqttException(MqttException.REASON_CODE_CONNECTION_LOST,
+                    new IllegalStateException("Broker 断开连接: 原因码 " + response.getReturnCode()
+                        + (response.getReasonString() != null ? " " + response.getReasonString() : "")));
+            }
+            callback.connectionLost(convert(cause));
+        }
+
+        @Override
+        public void mqttErrorOccurred(org.eclipse.paho.mqttv5.common.MqttException exception) {
+            System.err.println("✗ MQTT 5 协议错误: " + exception.getMessage());
+        }
+
+        @Override
+        public void messageArrived(String topic, org.eclipse.paho.mqttv5.common.MqttMessage message) throws Exception {
+            callback.messageArrived(topic, convert(message));
+        }
+
+        @Override
+        public void deliveryComplete(org.eclipse.paho.mqttv5.client.IMqttToken token) {
+            callback.deliveryComplete(new Token(token));
+        }
+
+        @Override
+        public void connectComplete(boolean reconnect, String serverURI) {
+            callback.connectComplete(reconnect, serverURI);
+        }
+
+        @Override
+        public void authPacketArrived(int reasonCode, MqttProperties properties) {
+            // 未使用增强认证
+        }
+    }
+
+    /**
+     * 以 v3 令牌的形式访问 v5 令牌
+     */
+    private static final class Token implements IMqttDeliveryToken {
+        private final org.eclipse.paho.mqttv5.client.IMqttToken token;
+
+        Token(org.eclipse.paho.mqttv5.client.IMqttToken token) {
+            this.token = token;
+        }
+
+        @Override
+        public void waitForCompletion() throws MqttException {
+            try {
+                token.waitForCompletion();
+            } catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+                throw convert(e);
+            }
+        }
+
+        @Override
+        public void waitForCompletion(long timeout) throws MqttException {
+            try {
+                token.waitForCompletion(timeout);
+            } catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+                throw convert(e);
+            }
+        }
+
+        @Override
+        public boolean isComplete() {
+            return token.isComplete();
+        }
+
+        @Override
+        public MqttException getException() {
+            org.eclipse.paho.mqttv5.common.MqttException exception = token.getException();
+            return exception == null ? null : convert(exception);
+        }
+
+        @Override
+        public void setActionCallback(IMqttActionListener listener) {
+            token.setActionCallback(wrap(listener));
+        }
+
+        @Override
+        public IMqttActionListener getActionCallback() {
+            // 回调只能在发送时指定
+            return null;
+        }
+
+        @Override
+        public IMqttAsyncClient getClient() {
+            return null;
+        }
+
+        @Override
+        public String[] getTopics() {
+            return token.getTopics();
+        }
+
+        @Override
+        public void setUserContext(Object userContext) {
+            token.setUserContext(userContext);
+        }
+
+        @Override
+        public Object getUserContext() {
+            return token.getUserContext();
+        }
+
+        @Override
+        public int getMessageId() {
+            return token.getMessageId();
+        }
+
+        /**
+         * SUBACK 中的结果：授予的QoS，失败的原因码（0x80 及以上）统一为 0x80
+         */
+        @Override
+        public int[] getGrantedQos() {
+            int[] codes = token.getReasonCodes();
+            if (codes == null) {
+                return null;
+            }
+            int[] granted = new int[codes.length];
+            for (int i = 0; i < codes.length; i++) {
+                granted[i] = codes[i] >= 0x80 ? 0x80 : codes[i];
+            }
+            return granted;
+        }
+
+        @Override
+        public boolean getSessionPresent() {
+            return token.getSessionPresent();
+        }
+
+        @Override
+        public MqttWireMessage getResponse() {
+            // v5 报文没有对应的 v3 类型
+            return null;
+        }
+
+        @Override
+        public MqttMessage getMessage() throws MqttException {
+            try {
+                org.eclipse.paho.mqttv5.common.MqttMessage message = token.getMessage();
+                return message == null ? null : convert(message);
+            } catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+                throw convert(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.mqtt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MQTT微批量发布器
+ * 缓存待发送的对象，满足以下任一条件时整批发布：
+ * 1. 缓存条数达到批量大小
+ * 2. 第一条消息入队后等待时间超过 linger
+ * 3. 手动调用 flush() 或 close()（客户端断开连接时自动调用）
+ *
+ * 只在锁内取出当前批次，发布（可能等待发布窗口）在锁外进行，不阻塞其他线程添加消息；
+ * linger 定时使用所有客户端共享的定时线程。并发刷新的批次之间不保证发送顺序。
+ *
+ * 通过 {@link MqttClient#createBatchPublisher(String)} 创建
+ */
+public class MqttBatchPublisher {
+    private final MqttClient client;
+    private final String topic;
+    private final int qos;
+    private final int batchSize;
+    private final long lingerMs;
+    private final boolean packed;
+
+    private List<Object> buffer;
+    private ScheduledFuture<?> lingerTask;
+    private boolean closed = false;
+
+    MqttBatchPublisher(MqttClient client, String topic, int qos, int batchSize, long lingerMs, boolean packed) {
+        this.client = client;
+        this.topic = topic;
+        this.qos = qos;
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerMs = lingerMs;
+        this.packed = packed;
+        this.buffer = new ArrayList<>(this.batchSize);
+    }
+
+    /**
+     * 添加一条消息，批次已满时立即发布
+     */
+    public boolean add(Object item) {
+        List<Object> batch;
+        synchronized (this) {
+            if (closed) {
+                System.err.println("✗ 批量发布器已关闭，无法添加消息");
+                return false;
+            }
+
+            buffer.add(item);
+            if (buffer.size() < batchSize) {
+                if (buffer.size() == 1 && lingerMs > 0) {
+                    lingerTask = ClientMetrics.scheduler().schedule(this::flush, lingerMs, TimeUnit.MILLISECONDS);
+                }
+                return true;
+            }
+            batch = takeBatch();
+        }
+        publish(batch);
+        return true;
+    }
+
+    /**
+     * 立即发布缓存中的所有消息
+     */
+    public CompletableFuture<Void> flush() {
+        List<Object> batch;
+        synchronized (this) {
+            batch = takeBatch();
+        }
+        return publish(batch);
+    }
+
+    /**
+     * 取出当前批次并取消 linger 定时，缓存为空时返回 null（持有锁时调用）
+     */
+    private List<Object> takeBatch() {
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+        if (buffer.isEmpty()) {
+            return null;
+        }
+        List<Object> batch = buffer;
+        buffer = new ArrayList<>(batchSize);
+        return batch;
+    }
+
+    private CompletableFuture<Void> publish(List<Object> batch) {
+        if (batch == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return client.publishBatch(batch, topic, qos, packed);
+    }
+
+    /**
+     * 当前缓存中的消息数
+     */
+    public synchronized int getPendingCount() {
+        return buffer.size();
+    }
+
+    /**
+     * 刷新剩余消息并等待确认
+     */
+    public void close() {
+        List<Object> batch;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            batch = takeBatch();
+        }
+
+        try {
+            publish(batch).get(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("✗ 批量消息发送失败: " + e.getMessage());
+        }
+    }
+}
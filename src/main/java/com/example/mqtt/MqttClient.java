@@ -1,10 +1,15 @@
 package com.example.mqtt;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import org.eclipse.paho.client.mqttv3.*;
-import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.BiConsumer;
 
 /**
@@ -12,98 +17,224 @@ import java.util.function.BiConsumer;
  * 可用于发布和订阅消息
  */
 public class MqttClient {
-    private org.eclipse.paho.client.mqttv3.MqttClient client;
+    private static final TopicRouter.MatchVisitor<BiConsumer<String, MqttMessage>, MqttMessage> INVOKE_HANDLER =
+        (handler, topic, message) -> handler.accept(topic, message);
+    
+    private volatile MqttConnectionManager connection;
     private MqttConfig config;
-    private Gson gson;
-    private boolean connected = false;
-    private BiConsumer<String, MqttMessage> messageHandler;
+    private PayloadCodecs codecs;
+    private PayloadCompressor compressor;
+    private volatile boolean connected = false;
+    private volatile BiConsumer<String, MqttMessage> messageHandler;
+    private final TopicRouter<BiConsumer<String, MqttMessage>> router = new TopicRouter<>();
+    private MessageDispatcher dispatcher;
+    private final PublishPipeline pipeline;
+    private final ClientMetrics metrics;
+    /** 消息处理线程池和指标由 {@link FleetBootstrap} 提供、多个客户端共用，不随本客户端启停 */
+    private final boolean sharedResources;
+    private final EventSink events;
+    private final List<MqttBatchPublisher> batchPublishers = new CopyOnWriteArrayList<>();
+    private final String fixedClientId;
+    private final MqttConnectionManager.Listener listener = new ConnectionListener();
     
     public MqttClient(String clientType) {
-        this.config = new MqttConfig();
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
+        this(MqttConfig.shared(), null);
+    }
+    
+    /**
+     * 使用已加载的配置和指定的客户端ID创建客户端
+     * clientId 为 null 时使用该Broker端点的共享连接（与进程中其他未指定ID的客户端复用同一个TCP连接）；
+     * 指定时使用该客户端ID独立的连接
+     */
+    public MqttClient(MqttConfig config, String clientId) {
+        this(config, clientId, null, null);
+    }
+    
+    /**
+     * 批量创建的客户端共用一个消息处理线程池和一份指标（由调用方启动和关闭）；
+     * 两者都为 null 时客户端在连接时自己创建
+     */
+    MqttClient(MqttConfig config, String clientId, MessageDispatcher sharedDispatcher, ClientMetrics sharedMetrics) {
+        this.config = config;
+        this.fixedClientId = clientId;
+        this.codecs = PayloadCodecs.fromConfig(config);
+        this.compressor = PayloadCompressor.fromConfig(config);
+        this.events = EventSink.fromConfig(config);
+        this.sharedResources = sharedDispatcher != null;
+        this.dispatcher = sharedDispatcher;
+        this.metrics = sharedMetrics != null ? sharedMetrics : new ClientMetrics();
+        this.pipeline = new PublishPipeline(listener, codecs, compressor, metrics, events, sharedMetrics == null);
     }
     
     /**
-     * 连接到MQTT Broker
+     * 连接到MQTT Broker（共享连接已建立时直接复用）
      */
     public boolean connect() {
+        if (connection != null) {
+            // 已连接，或断线后正在由连接自动重连
+            return isConnected();
+        }
+        MqttConnectionManager acquired = MqttConnectionManager.acquire(config, fixedClientId);
         try {
-            String clientId = config.generateClientId("client");
-            System.out.println("正在连接到 " + config.getBrokerUrl() + "...");
-            System.out.println("客户端ID: " + clientId);
-            
-            // 创建MQTT客户端
-            client = new org.eclipse.paho.client.mqttv3.MqttClient(
-                config.getBrokerUrl(), 
-                clientId, 
-                new MemoryPersistence()
-            );
-            
-            // 配置连接选项
-            MqttConnectOptions options = new MqttConnectOptions();
-            options.setCleanSession(config.isCleanSession());
-            options.setKeepAliveInterval(config.getKeepAlive());
-            options.setAutomaticReconnect(true);
+            String name = acquired.nextFacadeName("client");
             
-            // 设置用户名和密码（如果需要）
-            if (config.getUsername() != null && !config.getUsername().isEmpty()) {
-                options.setUserName(config.getUsername());
-                if (config.getPassword() != null && !config.getPassword().isEmpty()) {
-                    options.setPassword(config.getPassword().toCharArray());
-                }
+            pipeline.attach(acquired);
+            if (!sharedResources) {
+                // 消息处理线程池
+                dispatcher = MessageDispatcher.fromConfig(name, config);
+                metrics.start(name, config.isMetricsJmx(), config.getMetricsDumpIntervalSeconds());
             }
             
-            // 设置回调
-            client.setCallback(new MqttCallback() {
-                @Override
-                public void connectionLost(Throwable cause) {
-                    connected = false;
-                    System.out.println("✗ 连接断开: " + cause.getMessage());
-                }
-                
-                @Override
-                public void messageArrived(String topic, MqttMessage message) throws Exception {
-                    if (messageHandler != null) {
-                        messageHandler.accept(topic, message);
-                    } else {
-                        // 默认处理
-                        defaultMessageHandler(topic, message);
-                    }
-                }
-                
-                @Override
-                public void deliveryComplete(IMqttDeliveryToken token) {
-                    System.out.println("  消息已发送");
-                }
-            });
-            
-            // 连接到Broker
-            client.connect(options);
+            acquired.addListener(listener);
+            connection = acquired;
+            acquired.connect();
             connected = true;
             
-            System.out.println("✓ 连接成功 (Client ID: " + clientId + ")");
+            // 离线发送缓冲区（连接成功后自动重连才会生效，因此在首次连接成功后创建）
+            pipeline.openSpool(name, config);
+            
+            System.out.println("✓ 连接成功 (Client ID: " + acquired.getClientId() + ")");
             return true;
             
         } catch (MqttException e) {
             System.err.println("✗ 连接失败: " + e.getMessage());
             e.printStackTrace();
+            acquired.removeListener(listener);
+            acquired.release();
+            connection = null;
+            pipeline.detach();
+            if (!sharedResources) {
+                dispatcher.shutdown(0);
+                metrics.stop();
+            }
             return false;
         }
     }
     
+    /**
+     * 共享连接上的事件（在 Paho 回调线程中执行）
+     */
+    private final class ConnectionListener implements MqttConnectionManager.Listener {
+        @Override
+        public void connectComplete(boolean reconnect, String serverURI) {
+            connected = true;
+            if (reconnect) {
+                metrics.recordReconnect();
+                System.out.println("✓ 已重新连接: " + serverURI);
+            }
+            pipeline.drainSpool();
+        }
+        
+        @Override
+        public void connectionLost(Throwable cause) {
+            connected = false;
+            metrics.recordConnectionLost();
+            System.out.println("✗ 连接断开: " + cause.getMessage());
+        }
+        
+        @Override
+        public void messageArrived(String topic, MqttMessage message) {
+            metrics.recordReceive(topic, message.getPayload().length);
+            dispatcher.dispatch(topic, message, MqttClient.this::handleMessage);
+        }
+        
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+            pipeline.deliveryComplete(token);
+        }
+    }
+    
+    /**
+     * 订阅确认中被 Broker 拒绝（0x80）的数量
+     */
+    private static int countRejected(int[] grantedQos) {
+        int rejected = 0;
+        if (grantedQos != null) {
+            for (int granted : grantedQos) {
+                if (granted == 0x80) {
+                    rejected++;
+                }
+            }
+        }
+        return rejected;
+    }
+    
+    /**
+     * 处理接收到的消息（在分发线程中执行），记录处理耗时
+     */
+    private void handleMessage(String topic, MqttMessage message) {
+        long start = System.nanoTime();
+        try {
+            routeMessage(topic, message);
+        } finally {
+            metrics.recordHandler(System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * 把消息交给匹配的处理器
+     */
+    private void routeMessage(String topic, MqttMessage message) {
+        // 解压压缩过的负载（接收到的消息不可修改，需复制一份）
+        if (PayloadCompressor.isCompressed(message.getPayload())) {
+            try {
+                MqttMessage decompressed = new MqttMessage(compressor.decompress(message.getPayload()));
+                decompressed.setQos(message.getQos());
+                decompressed.setRetained(message.isRetained());
+                decompressed.setId(message.getId());
+                message = decompressed;
+            } catch (IllegalArgumentException e) {
+                events.error("✗ 解压消息失败 (主题: " + topic + "): " + e.getMessage());
+                return;
+            }
+        }
+        
+        // 优先交给按主题过滤器注册的处理器
+        if (router.match(topic, message, INVOKE_HANDLER) > 0) {
+            return;
+        }
+        
+        BiConsumer<String, MqttMessage> handler = messageHandler;
+        if (handler != null) {
+            handler.accept(topic, message);
+        } else {
+            // 默认处理
+            defaultMessageHandler(topic, message);
+        }
+    }
+    
     /**
      * 默认消息处理器
      */
     private void defaultMessageHandler(String topic, MqttMessage message) {
+        if (!events.sample(EventSink.Type.RECEIVE, EventSink.Level.INFO)) {
+            return;
+        }
         try {
-            String payload = new String(message.getPayload(), "UTF-8");
-            System.out.println("← 收到消息 (主题: " + topic + ")");
-            System.out.println("  内容: " + payload);
+            String payload = codecs.toDisplayString(message.getPayload());
+            events.log(EventSink.Level.INFO, "← 收到消息 (主题: " + topic + ")\n  内容: " + payload);
         } catch (Exception e) {
-            System.err.println("✗ 处理消息出错: " + e.getMessage());
+            events.error("✗ 处理消息出错: " + e.getMessage());
         }
     }
     
+    /**
+     * 按主题过滤器注册消息处理器
+     * 过滤器支持 "+" 和 "#" 通配符；同一主题匹配多个过滤器时，每个处理器都会被调用。
+     * 共享订阅过滤器 "$share/组名/过滤器" 按其中的过滤器匹配。
+     * 没有任何过滤器匹配的消息交给 setMessageHandler 设置的处理器（或默认处理器）。
+     */
+    public void addHandler(String topicFilter, BiConsumer<String, MqttMessage> handler) {
+        router.add(TopicRouter.matchingFilter(topicFilter), handler);
+    }
+    
+    /**
+     * 移除按主题过滤器注册的消息处理器
+     */
+    public boolean removeHandler(String topicFilter, BiConsumer<String, MqttMessage> handler) {
+        return router.remove(TopicRouter.matchingFilter(topicFilter), handler);
+    }
+    
     /**
      * 设置自定义消息处理器
      */
@@ -111,28 +242,70 @@ public class MqttClient {
         this.messageHandler = handler;
     }
     
+    /**
+     * 异步发布消息
+     * 消息交给发送线程后立即返回，QoS 1/2 在收到 PUBACK/PUBCOMP 后完成 Future。
+     * 在途消息数达到发布窗口（mqtt.max.inflight，启用自适应流控时随确认延迟调整）时阻塞调用方，
+     * 因此不要在消息回调线程中等待窗口释放；不能阻塞的调用方使用
+     * {@link #tryPublishAsync} 或 {@link #publishWhenReady}。
+     */
+    public CompletableFuture<IMqttDeliveryToken> publishAsync(String message, String topic, int qos) {
+        return publishAsync(message.getBytes(StandardCharsets.UTF_8), topic, qos);
+    }
+    
+    /**
+     * 异步发布原始字节消息
+     * 启用离线发送缓冲区时，断线期间（以及缓冲区中还有未补发的消息时）消息进入缓冲区，
+     * 返回的 Future 立即以 null 完成；缓冲区已满时 Future 以异常完成。
+     */
+    public CompletableFuture<IMqttDeliveryToken> publishAsync(byte[] payload, String topic, int qos) {
+        return pipeline.publishAsync(payload, topic, qos);
+    }
+    
+    /**
+     * 尝试异步发布，不等待发布窗口
+     * 窗口已满时返回 null，调用方可以稍后重试或丢弃；其余行为与 {@link #publishAsync(byte[], String, int)} 相同
+     */
+    public CompletableFuture<IMqttDeliveryToken> tryPublishAsync(byte[] payload, String topic, int qos) {
+        return pipeline.tryPublishAsync(payload, topic, qos);
+    }
+    
+    /**
+     * 异步发布，发布窗口已满时排队等待而不阻塞调用方
+     * 排队的消息在窗口有空位时由共用的发送线程按顺序发出，返回的 Future 在Broker确认后完成
+     */
+    public CompletableFuture<IMqttDeliveryToken> publishWhenReady(byte[] payload, String topic, int qos) {
+        return pipeline.publishWhenReady(payload, topic, qos);
+    }
+    
+    /**
+     * 异步发布消息（使用默认主题和QoS）
+     */
+    public CompletableFuture<IMqttDeliveryToken> publishAsync(String message) {
+        return publishAsync(message, config.getTopic(), config.getQos());
+    }
+    
+    /**
+     * 异步发布对象消息
+     */
+    public CompletableFuture<IMqttDeliveryToken> publishAsync(Object data, String topic, int qos) {
+        return publishAsync(codecs.encode(topic, data), topic, qos);
+    }
+    
     /**
      * 发布消息
+     * 阻塞直到消息发送完成（QoS 1/2 等待Broker确认）
      */
     public boolean publish(String message, String topic, int qos) {
-        if (!connected || client == null || !client.isConnected()) {
-            System.err.println("✗ 未连接，无法发布消息");
-            return false;
-        }
-        
-        try {
-            MqttMessage mqttMessage = new MqttMessage(message.getBytes("UTF-8"));
-            mqttMessage.setQos(qos);
-            mqttMessage.setRetained(false);
-            
-            client.publish(topic, mqttMessage);
-            System.out.println("→ 发布消息到 '" + topic + "': " + message);
-            return true;
-            
-        } catch (Exception e) {
-            System.err.println("✗ 发布失败: " + e.getMessage());
-            return false;
-        }
+        return publish(message.getBytes(StandardCharsets.UTF_8), topic, qos);
+    }
+    
+    /**
+     * 发布原始字节消息
+     * 阻塞直到消息发送完成（QoS 1/2 等待Broker确认）
+     */
+    public boolean publish(byte[] payload, String topic, int qos) {
+        return pipeline.publish(payload, topic, qos);
     }
     
     /**
@@ -146,8 +319,7 @@ public class MqttClient {
      * 发布对象消息
      */
     public boolean publish(Object data, String topic, int qos) {
-        String json = gson.toJson(data);
-        return publish(json, topic, qos);
+        return publish(codecs.encode(topic, data), topic, qos);
     }
     
     /**
@@ -157,18 +329,57 @@ public class MqttClient {
         return publish(data, config.getTopic(), config.getQos());
     }
     
+    /**
+     * 批量发布对象消息
+     * 一次完成所有对象的序列化后连续交给发送线程（不逐条等待确认）；
+     * packed 为 true 时把整批对象打包成一个数组作为单条消息发送。
+     * 返回的 Future 在整批消息都被确认后完成。
+     */
+    public CompletableFuture<Void> publishBatch(Collection<?> items, String topic, int qos, boolean packed) {
+        return pipeline.publishBatch(items, topic, qos, packed);
+    }
+    
+    /**
+     * 批量发布对象消息（使用默认QoS和打包方式）
+     */
+    public CompletableFuture<Void> publishBatch(Collection<?> items, String topic) {
+        return publishBatch(items, topic, config.getQos(), config.isBatchPacked());
+    }
+    
+    /**
+     * 创建微批量发布器
+     * 按 mqtt.batch.size 或 mqtt.batch.linger.ms 攒批发布到指定主题，
+     * 断开连接前会自动刷新未发送的消息
+     */
+    public MqttBatchPublisher createBatchPublisher(String topic) {
+        MqttBatchPublisher batchPublisher = new MqttBatchPublisher(this, topic, config.getQos(),
+            config.getBatchSize(), config.getBatchLingerMs(), config.isBatchPacked());
+        batchPublishers.add(batchPublisher);
+        return batchPublisher;
+    }
+    
     /**
      * 订阅主题
+     * 订阅会被记住，clean session 下重连后自动恢复；连接断开、正在重连时只登记，重连成功后自动订阅
      */
     public boolean subscribe(String topic, int qos) {
-        if (!connected || client == null || !client.isConnected()) {
+        MqttConnectionManager current = connection;
+        if (current == null) {
             System.err.println("✗ 未连接，无法订阅");
             return false;
         }
         
         try {
             System.out.println("正在订阅主题: " + topic);
-            client.subscribe(topic, qos);
+            int[] granted = current.subscribe(new String[] {topic}, new int[] {qos}, listener);
+            if (countRejected(granted) > 0) {
+                System.err.println("✗ 订阅被Broker拒绝: " + topic);
+                return false;
+            }
+            if (!current.isConnected()) {
+                System.out.println("→ 连接已断开，订阅已登记，重连后自动订阅: " + topic);
+                return true;
+            }
             System.out.println("✓ 订阅成功");
             return true;
             
@@ -178,6 +389,61 @@ public class MqttClient {
         }
     }
     
+    /**
+     * 批量订阅：所有主题过滤器放在一个 SUBSCRIBE 报文中，只需一次往返
+     * 订阅会被记住，clean session 下重连后自动恢复
+     *
+     * @return 全部订阅成功时返回 true；被 Broker 拒绝的过滤器不会被记住
+     */
+    public boolean subscribe(String[] topics, int[] qos) {
+        if (topics.length != qos.length) {
+            throw new IllegalArgumentException("主题数和QoS数不一致: " + topics.length + "/" + qos.length);
+        }
+        if (topics.length == 0) {
+            return true;
+        }
+        MqttConnectionManager current = connection;
+        if (current == null) {
+            System.err.println("✗ 未连接，无法订阅");
+            return false;
+        }
+        
+        try {
+            int rejected = countRejected(current.subscribe(topics, qos, listener));
+            if (rejected > 0) {
+                System.err.println("✗ " + rejected + " 个主题过滤器被Broker拒绝");
+                return false;
+            }
+            if (!current.isConnected()) {
+                System.out.println("→ 连接已断开，已登记 " + topics.length + " 个主题过滤器，重连后自动订阅");
+                return true;
+            }
+            System.out.println("✓ 已订阅 " + topics.length + " 个主题过滤器");
+            return true;
+            
+        } catch (MqttException e) {
+            System.err.println("✗ 批量订阅失败: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * 以相同QoS批量订阅
+     */
+    public boolean subscribe(Collection<String> topics, int qos) {
+        int[] qosArray = new int[topics.size()];
+        Arrays.fill(qosArray, qos);
+        return subscribe(topics.toArray(new String[0]), qosArray);
+    }
+    
+    /**
+     * 当前记住的订阅（主题过滤器 -> QoS）
+     */
+    public Map<String, Integer> getSubscriptions() {
+        MqttConnectionManager current = connection;
+        return current == null ? new LinkedHashMap<>() : current.getSubscriptions(listener);
+    }
+    
     /**
      * 订阅主题（使用默认主题和QoS）
      */
@@ -189,9 +455,11 @@ public class MqttClient {
      * 取消订阅
      */
     public boolean unsubscribe(String topic) {
+        MqttConnectionManager current = connection;
         try {
-            if (client != null && client.isConnected()) {
-                client.unsubscribe(topic);
+            if (current != null) {
+                // 共享连接上其他使用者还订阅该过滤器时只取消本客户端的登记
+                current.unsubscribe(topic, listener);
                 System.out.println("✓ 已取消订阅: " + topic);
                 return true;
             }
@@ -205,23 +473,88 @@ public class MqttClient {
      * 断开连接
      */
     public void disconnect() {
-        try {
-            if (client != null && client.isConnected()) {
-                client.disconnect();
-                System.out.println("已断开连接");
-            }
-            if (client != null) {
-                client.close();
-            }
-        } catch (MqttException e) {
-            System.err.println("断开连接时出错: " + e.getMessage());
+        // 先刷新所有微批量发布器中缓存的消息
+        for (MqttBatchPublisher batchPublisher : batchPublishers) {
+            batchPublisher.close();
         }
+        batchPublishers.clear();
+        pipeline.detach();
+        
+        // 释放连接，最后一个使用者释放时才真正断开
+        MqttConnectionManager current = connection;
+        if (current != null) {
+            current.removeListener(listener);
+            current.release();
+            connection = null;
+            connected = false;
+        }
+        events.close();
+        
+        if (sharedResources) {
+            return;
+        }
+        if (dispatcher != null) {
+            // 处理完已接收的消息
+            dispatcher.shutdown(5000);
+        }
+        metrics.stop();
+    }
+    
+    /**
+     * 负载编解码器注册表，可用于按主题指定编码
+     */
+    public PayloadCodecs getCodecs() {
+        return codecs;
+    }
+    
+    /**
+     * 当前在途（尚未确认）的消息数
+     */
+    public int getInflightCount() {
+        return pipeline.getInflightCount();
+    }
+    
+    /**
+     * 运行指标
+     */
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * 自适应流控（连接级，共享连接上的使用者共用），未连接或未启用（mqtt.flow.adaptive=false）时返回 null
+     */
+    public AdaptiveRateController getFlowControl() {
+        MqttConnectionManager current = connection;
+        return current == null ? null : current.getFlowControl();
+    }
+    
+    /**
+     * 消息事件日志（发布、确认、接收的计数和抽样日志）
+     */
+    public EventSink getEvents() {
+        return events;
+    }
+    
+    /**
+     * 离线发送缓冲区，未启用时返回 null
+     */
+    public OutboundSpool getSpool() {
+        return pipeline.getSpool();
     }
     
     /**
      * 检查是否已连接
      */
     public boolean isConnected() {
-        return connected && client != null && client.isConnected();
+        MqttConnectionManager current = connection;
+        return connected && current != null && current.isConnected();
+    }
+    
+    /**
+     * 使用的连接（共享或独立），未连接时返回 null
+     */
+    public MqttConnectionManager getConnection() {
+        return connection;
     }
 }
@@ -1,26 +1,118 @@
 package com.example.mqtt;
 
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
+
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * MQTT配置类
  * 从配置文件加载MQTT连接参数
+ *
+ * 配置在构造时加载，之后只读；同一进程中的多个客户端应使用 {@link #shared()} 共享一份快照，
+ * 避免每个客户端都重新读取和解析 mqtt.properties。
  */
 public class MqttConfig {
     private static final String CONFIG_FILE = "mqtt.properties";
     
+    private static volatile MqttConfig shared;
+    /** 本进程生成的客户端ID序号 */
+    private static final AtomicLong CLIENT_ID_SEQUENCE = new AtomicLong();
+    /** 未配置 mqtt.node.id 时的节点标识：进程号 + 随机数（base36） */
+    private static final String DEFAULT_NODE_ID = Long.toString(ProcessHandle.current().pid(), 36)
+        + Long.toString(ThreadLocalRandom.current().nextLong(36L * 36 * 36 * 36), 36);
+    
     private String broker;
     private int port;
     private String topic;
     private String clientIdPrefix;
+    private String clientId;
+    private String nodeId;
     private String username;
     private String password;
     private int keepAlive;
     private int qos;
     private boolean cleanSession;
+    private int protocolVersion;
+    private int receiveMaximum;
+    private int topicAliasMaximum;
+    private long messageExpirySeconds;
+    private int maxInflight;
+    private int batchSize;
+    private long batchLingerMs;
+    private boolean batchPacked;
+    private int dispatchThreads;
+    private int dispatchQueueSize;
+    private MessageDispatcher.OverflowPolicy dispatchOverflowPolicy;
+    private String shareGroup;
+    private int shareMembers;
+    private int shareMemberInflight;
+    private int shardCount;
+    private String defaultCodec;
+    private String codecTopics;
+    private boolean compressionEnabled;
+    private int compressionThreshold;
+    private int compressionLevel;
+    private String compressionDictionary;
+    private int compressionDictionaryId;
+    private String persistence;
+    private String persistenceDir;
+    private MappedFilePersistence.SyncPolicy persistenceSync;
+    private long persistenceSyncIntervalMs;
+    private int persistenceSegmentSizeMb;
+    private boolean spoolEnabled;
+    private int spoolMemorySize;
+    private int spoolDiskMaxMb;
+    private int spoolDrainRate;
+    private boolean metricsJmx;
+    private long metricsDumpIntervalSeconds;
+    private EventSink.Level logLevel;
+    private boolean flowAdaptive;
+    private boolean dedupEnabled;
+    private String dedupField;
+    private long dedupWindowSeconds;
+    private int dedupCapacity;
+    private double dedupFpp;
+    private String aggregateTopics;
+    private String aggregateFields;
+    private String aggregateKeyField;
+    private long aggregateWindowSeconds;
+    private long aggregateSlideSeconds;
+    private int aggregateMaxKeys;
+    private String aggregateOutputTopic;
+    private boolean rbeEnabled;
+    private String rbeDeadband;
+    private String rbeDeadbandFields;
+    private String rbeAlwaysFields;
+    private long rbeHeartbeatSeconds;
+    private boolean rbeDelta;
+    private long reconnectMinDelayMs;
+    private long reconnectMaxDelayMs;
+    private int flowWindowMin;
+    private int flowWindowInitial;
+    private double flowLatencyTolerance;
+    private long flowLatencyTargetMs;
+    private long flowAckTimeoutMs;
+    private int logSamplePublish;
+    private int logSampleDelivery;
+    private int logSampleReceive;
+    private int loadDevices;
+    private int loadConnections;
+    private double loadRate;
+    private int loadPayloadSize;
+    private int loadQos;
+    private int loadTopics;
+    private int loadRampUpSeconds;
+    private int loadDurationSeconds;
+    private int fleetConcurrency;
+    private long fleetStaggerMs;
+    private int fleetRetries;
     
     // 默认配置
     private static final String DEFAULT_BROKER = "broker.emqx.io";
@@ -30,6 +122,70 @@ public class MqttConfig {
     private static final int DEFAULT_KEEP_ALIVE = 60;
     private static final int DEFAULT_QOS = 1;
     private static final boolean DEFAULT_CLEAN_SESSION = true;
+    private static final int DEFAULT_PROTOCOL_VERSION = 3;
+    private static final int DEFAULT_RECEIVE_MAXIMUM = 1000;
+    private static final int DEFAULT_TOPIC_ALIAS_MAXIMUM = 64;
+    private static final long DEFAULT_MESSAGE_EXPIRY_S = 0;
+    private static final int DEFAULT_MAX_INFLIGHT = 100;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final long DEFAULT_BATCH_LINGER_MS = 50;
+    private static final boolean DEFAULT_BATCH_PACKED = false;
+    private static final int DEFAULT_DISPATCH_THREADS = 4;
+    private static final int DEFAULT_DISPATCH_QUEUE_SIZE = 1000;
+    private static final String DEFAULT_DISPATCH_OVERFLOW = "block";
+    private static final String DEFAULT_SHARE_GROUP = "";
+    private static final int DEFAULT_SHARE_MEMBERS = 1;
+    private static final int DEFAULT_SHARE_MEMBER_INFLIGHT = 100;
+    private static final int DEFAULT_SHARD_COUNT = 4;
+    private static final String DEFAULT_CODEC = "json";
+    private static final boolean DEFAULT_COMPRESSION_ENABLED = false;
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 256;
+    private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+    private static final int DEFAULT_COMPRESSION_DICTIONARY_ID = 2;
+    private static final String DEFAULT_PERSISTENCE = "memory";
+    private static final String DEFAULT_PERSISTENCE_DIR = "mqtt-data";
+    private static final String DEFAULT_PERSISTENCE_SYNC = "interval";
+    private static final long DEFAULT_PERSISTENCE_SYNC_INTERVAL_MS = 100;
+    private static final int DEFAULT_PERSISTENCE_SEGMENT_SIZE_MB = 16;
+    private static final boolean DEFAULT_SPOOL_ENABLED = false;
+    private static final int DEFAULT_SPOOL_MEMORY_SIZE = 10000;
+    private static final int DEFAULT_SPOOL_DISK_MAX_MB = 64;
+    private static final int DEFAULT_SPOOL_DRAIN_RATE = 500;
+    private static final boolean DEFAULT_METRICS_JMX = true;
+    private static final long DEFAULT_METRICS_DUMP_INTERVAL_S = 0;
+    private static final String DEFAULT_LOG_LEVEL = "info";
+    private static final boolean DEFAULT_FLOW_ADAPTIVE = false;
+    private static final boolean DEFAULT_DEDUP_ENABLED = false;
+    private static final long DEFAULT_DEDUP_WINDOW_S = 60;
+    private static final int DEFAULT_DEDUP_CAPACITY = 100000;
+    private static final double DEFAULT_DEDUP_FPP = 0.001;
+    private static final String DEFAULT_AGGREGATE_FIELDS = "temperature,humidity";
+    private static final long DEFAULT_AGGREGATE_WINDOW_S = 60;
+    private static final long DEFAULT_AGGREGATE_SLIDE_S = 0;
+    private static final int DEFAULT_AGGREGATE_MAX_KEYS = 100000;
+    private static final boolean DEFAULT_RBE_ENABLED = false;
+    private static final String DEFAULT_RBE_DEADBAND = "0";
+    private static final String DEFAULT_RBE_ALWAYS_FIELDS = "id,timestamp";
+    private static final long DEFAULT_RBE_HEARTBEAT_S = 300;
+    private static final boolean DEFAULT_RBE_DELTA = false;
+    private static final long DEFAULT_RECONNECT_MIN_DELAY_MS = 500;
+    private static final long DEFAULT_RECONNECT_MAX_DELAY_MS = 60000;
+    private static final int DEFAULT_FLOW_WINDOW_MIN = 1;
+    private static final int DEFAULT_FLOW_WINDOW_INITIAL = 10;
+    private static final double DEFAULT_FLOW_LATENCY_TOLERANCE = 2.0;
+    private static final long DEFAULT_FLOW_LATENCY_TARGET_MS = 0;
+    private static final long DEFAULT_FLOW_ACK_TIMEOUT_MS = 5000;
+    private static final int DEFAULT_LOG_SAMPLE = 0;
+    private static final int DEFAULT_LOAD_DEVICES = 1000;
+    private static final int DEFAULT_LOAD_CONNECTIONS = 100;
+    private static final double DEFAULT_LOAD_RATE = 1.0;
+    private static final int DEFAULT_LOAD_PAYLOAD_SIZE = 0;
+    private static final int DEFAULT_LOAD_TOPICS = 100;
+    private static final int DEFAULT_LOAD_RAMP_UP_S = 10;
+    private static final int DEFAULT_LOAD_DURATION_S = 60;
+    private static final int DEFAULT_FLEET_CONCURRENCY = 64;
+    private static final long DEFAULT_FLEET_STAGGER_MS = 20;
+    private static final int DEFAULT_FLEET_RETRIES = 2;
     
     public MqttConfig() {
         // 设置默认值
@@ -40,6 +196,82 @@ public class MqttConfig {
         this.keepAlive = DEFAULT_KEEP_ALIVE;
         this.qos = DEFAULT_QOS;
         this.cleanSession = DEFAULT_CLEAN_SESSION;
+        this.protocolVersion = DEFAULT_PROTOCOL_VERSION;
+        this.receiveMaximum = DEFAULT_RECEIVE_MAXIMUM;
+        this.topicAliasMaximum = DEFAULT_TOPIC_ALIAS_MAXIMUM;
+        this.messageExpirySeconds = DEFAULT_MESSAGE_EXPIRY_S;
+        this.maxInflight = DEFAULT_MAX_INFLIGHT;
+        this.batchSize = DEFAULT_BATCH_SIZE;
+        this.batchLingerMs = DEFAULT_BATCH_LINGER_MS;
+        this.batchPacked = DEFAULT_BATCH_PACKED;
+        this.dispatchThreads = DEFAULT_DISPATCH_THREADS;
+        this.dispatchQueueSize = DEFAULT_DISPATCH_QUEUE_SIZE;
+        this.dispatchOverflowPolicy = MessageDispatcher.OverflowPolicy.parse(DEFAULT_DISPATCH_OVERFLOW);
+        this.shareGroup = DEFAULT_SHARE_GROUP;
+        this.shareMembers = DEFAULT_SHARE_MEMBERS;
+        this.shareMemberInflight = DEFAULT_SHARE_MEMBER_INFLIGHT;
+        this.shardCount = DEFAULT_SHARD_COUNT;
+        this.defaultCodec = DEFAULT_CODEC;
+        this.codecTopics = "";
+        this.compressionEnabled = DEFAULT_COMPRESSION_ENABLED;
+        this.compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+        this.compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+        this.compressionDictionary = "";
+        this.compressionDictionaryId = DEFAULT_COMPRESSION_DICTIONARY_ID;
+        this.persistence = DEFAULT_PERSISTENCE;
+        this.persistenceDir = DEFAULT_PERSISTENCE_DIR;
+        this.persistenceSync = MappedFilePersistence.SyncPolicy.parse(DEFAULT_PERSISTENCE_SYNC);
+        this.persistenceSyncIntervalMs = DEFAULT_PERSISTENCE_SYNC_INTERVAL_MS;
+        this.persistenceSegmentSizeMb = DEFAULT_PERSISTENCE_SEGMENT_SIZE_MB;
+        this.spoolEnabled = DEFAULT_SPOOL_ENABLED;
+        this.spoolMemorySize = DEFAULT_SPOOL_MEMORY_SIZE;
+        this.spoolDiskMaxMb = DEFAULT_SPOOL_DISK_MAX_MB;
+        this.spoolDrainRate = DEFAULT_SPOOL_DRAIN_RATE;
+        this.metricsJmx = DEFAULT_METRICS_JMX;
+        this.metricsDumpIntervalSeconds = DEFAULT_METRICS_DUMP_INTERVAL_S;
+        this.logLevel = EventSink.Level.parse(DEFAULT_LOG_LEVEL);
+        this.flowAdaptive = DEFAULT_FLOW_ADAPTIVE;
+        this.dedupEnabled = DEFAULT_DEDUP_ENABLED;
+        this.dedupField = "";
+        this.dedupWindowSeconds = DEFAULT_DEDUP_WINDOW_S;
+        this.dedupCapacity = DEFAULT_DEDUP_CAPACITY;
+        this.dedupFpp = DEFAULT_DEDUP_FPP;
+        this.aggregateTopics = "";
+        this.aggregateFields = DEFAULT_AGGREGATE_FIELDS;
+        this.aggregateKeyField = "";
+        this.aggregateWindowSeconds = DEFAULT_AGGREGATE_WINDOW_S;
+        this.aggregateSlideSeconds = DEFAULT_AGGREGATE_SLIDE_S;
+        this.aggregateMaxKeys = DEFAULT_AGGREGATE_MAX_KEYS;
+        this.aggregateOutputTopic = "";
+        this.rbeEnabled = DEFAULT_RBE_ENABLED;
+        this.rbeDeadband = DEFAULT_RBE_DEADBAND;
+        this.rbeDeadbandFields = "";
+        this.rbeAlwaysFields = DEFAULT_RBE_ALWAYS_FIELDS;
+        this.rbeHeartbeatSeconds = DEFAULT_RBE_HEARTBEAT_S;
+        this.rbeDelta = DEFAULT_RBE_DELTA;
+        this.reconnectMinDelayMs = DEFAULT_RECONNECT_MIN_DELAY_MS;
+        this.reconnectMaxDelayMs = DEFAULT_RECONNECT_MAX_DELAY_MS;
+        this.flowWindowMin = DEFAULT_FLOW_WINDOW_MIN;
+        this.flowWindowInitial = DEFAULT_FLOW_WINDOW_INITIAL;
+        this.flowLatencyTolerance = DEFAULT_FLOW_LATENCY_TOLERANCE;
+        this.flowLatencyTargetMs = DEFAULT_FLOW_LATENCY_TARGET_MS;
+        this.flowAckTimeoutMs = DEFAULT_FLOW_ACK_TIMEOUT_MS;
+        this.logSamplePublish = DEFAULT_LOG_SAMPLE;
+        this.logSampleDelivery = DEFAULT_LOG_SAMPLE;
+        this.logSampleReceive = DEFAULT_LOG_SAMPLE;
+        this.loadDevices = DEFAULT_LOAD_DEVICES;
+        this.loadConnections = DEFAULT_LOAD_CONNECTIONS;
+        this.loadRate = DEFAULT_LOAD_RATE;
+        this.loadPayloadSize = DEFAULT_LOAD_PAYLOAD_SIZE;
+        this.loadQos = DEFAULT_QOS;
+        this.loadTopics = DEFAULT_LOAD_TOPICS;
+        this.loadRampUpSeconds = DEFAULT_LOAD_RAMP_UP_S;
+        this.loadDurationSeconds = DEFAULT_LOAD_DURATION_S;
+        this.fleetConcurrency = DEFAULT_FLEET_CONCURRENCY;
+        this.fleetStaggerMs = DEFAULT_FLEET_STAGGER_MS;
+        this.fleetRetries = DEFAULT_FLEET_RETRIES;
+        this.clientId = "";
+        this.nodeId = DEFAULT_NODE_ID;
         this.username = "";
         this.password = "";
         
@@ -47,6 +279,23 @@ public class MqttConfig {
         loadConfig();
     }
     
+    /**
+     * 进程共享的配置快照（第一次调用时加载，之后直接返回同一个实例）
+     */
+    public static MqttConfig shared() {
+        MqttConfig config = shared;
+        if (config == null) {
+            synchronized (MqttConfig.class) {
+                config = shared;
+                if (config == null) {
+                    config = new MqttConfig();
+                    shared = config;
+                }
+            }
+        }
+        return config;
+    }
+    
     /**
      * 从配置文件加载配置
      */
@@ -62,11 +311,88 @@ public class MqttConfig {
                 this.port = Integer.parseInt(props.getProperty("mqtt.port", String.valueOf(DEFAULT_PORT)));
                 this.topic = props.getProperty("mqtt.topic", DEFAULT_TOPIC);
                 this.clientIdPrefix = props.getProperty("mqtt.client.id.prefix", DEFAULT_CLIENT_ID_PREFIX);
+                this.clientId = props.getProperty("mqtt.client.id", "");
+                String node = props.getProperty("mqtt.node.id", "").trim();
+                this.nodeId = node.isEmpty() ? DEFAULT_NODE_ID : node;
                 this.username = props.getProperty("mqtt.username", "");
                 this.password = props.getProperty("mqtt.password", "");
                 this.keepAlive = Integer.parseInt(props.getProperty("mqtt.keepalive", String.valueOf(DEFAULT_KEEP_ALIVE)));
                 this.qos = Integer.parseInt(props.getProperty("mqtt.qos", String.valueOf(DEFAULT_QOS)));
                 this.cleanSession = Boolean.parseBoolean(props.getProperty("mqtt.clean.session", String.valueOf(DEFAULT_CLEAN_SESSION)));
+                this.protocolVersion = parseProtocolVersion(props.getProperty("mqtt.protocol", String.valueOf(DEFAULT_PROTOCOL_VERSION)));
+                this.receiveMaximum = Integer.parseInt(props.getProperty("mqtt.receive.maximum", String.valueOf(DEFAULT_RECEIVE_MAXIMUM)));
+                this.topicAliasMaximum = Integer.parseInt(props.getProperty("mqtt.topic.alias.max", String.valueOf(DEFAULT_TOPIC_ALIAS_MAXIMUM)));
+                this.messageExpirySeconds = Long.parseLong(props.getProperty("mqtt.message.expiry.s", String.valueOf(DEFAULT_MESSAGE_EXPIRY_S)));
+                this.maxInflight = Integer.parseInt(props.getProperty("mqtt.max.inflight", String.valueOf(DEFAULT_MAX_INFLIGHT)));
+                this.batchSize = Integer.parseInt(props.getProperty("mqtt.batch.size", String.valueOf(DEFAULT_BATCH_SIZE)));
+                this.batchLingerMs = Long.parseLong(props.getProperty("mqtt.batch.linger.ms", String.valueOf(DEFAULT_BATCH_LINGER_MS)));
+                this.batchPacked = Boolean.parseBoolean(props.getProperty("mqtt.batch.packed", String.valueOf(DEFAULT_BATCH_PACKED)));
+                this.dispatchThreads = Integer.parseInt(props.getProperty("mqtt.dispatch.threads", String.valueOf(DEFAULT_DISPATCH_THREADS)));
+                this.dispatchQueueSize = Integer.parseInt(props.getProperty("mqtt.dispatch.queue.size", String.valueOf(DEFAULT_DISPATCH_QUEUE_SIZE)));
+                this.dispatchOverflowPolicy = MessageDispatcher.OverflowPolicy.parse(props.getProperty("mqtt.dispatch.overflow", DEFAULT_DISPATCH_OVERFLOW));
+                this.shareGroup = props.getProperty("mqtt.share.group", DEFAULT_SHARE_GROUP).trim();
+                this.shareMembers = Integer.parseInt(props.getProperty("mqtt.share.members", String.valueOf(DEFAULT_SHARE_MEMBERS)));
+                this.shareMemberInflight = Integer.parseInt(props.getProperty("mqtt.share.member.inflight", String.valueOf(DEFAULT_SHARE_MEMBER_INFLIGHT)));
+                this.shardCount = Integer.parseInt(props.getProperty("mqtt.shard.count", String.valueOf(DEFAULT_SHARD_COUNT)));
+                this.defaultCodec = props.getProperty("mqtt.codec.default", DEFAULT_CODEC);
+                this.codecTopics = props.getProperty("mqtt.codec.topics", "");
+                this.compressionEnabled = Boolean.parseBoolean(props.getProperty("mqtt.compression.enabled", String.valueOf(DEFAULT_COMPRESSION_ENABLED)));
+                this.compressionThreshold = Integer.parseInt(props.getProperty("mqtt.compression.threshold", String.valueOf(DEFAULT_COMPRESSION_THRESHOLD)));
+                this.compressionLevel = Integer.parseInt(props.getProperty("mqtt.compression.level", String.valueOf(DEFAULT_COMPRESSION_LEVEL)));
+                this.compressionDictionary = props.getProperty("mqtt.compression.dictionary", "");
+                this.compressionDictionaryId = Integer.parseInt(props.getProperty("mqtt.compression.dictionary.id", String.valueOf(DEFAULT_COMPRESSION_DICTIONARY_ID)));
+                this.persistence = props.getProperty("mqtt.persistence", DEFAULT_PERSISTENCE).trim().toLowerCase();
+                this.persistenceDir = props.getProperty("mqtt.persistence.dir", DEFAULT_PERSISTENCE_DIR);
+                this.persistenceSync = MappedFilePersistence.SyncPolicy.parse(props.getProperty("mqtt.persistence.sync", DEFAULT_PERSISTENCE_SYNC));
+                this.persistenceSyncIntervalMs = Long.parseLong(props.getProperty("mqtt.persistence.sync.interval.ms", String.valueOf(DEFAULT_PERSISTENCE_SYNC_INTERVAL_MS)));
+                this.persistenceSegmentSizeMb = Integer.parseInt(props.getProperty("mqtt.persistence.segment.size.mb", String.valueOf(DEFAULT_PERSISTENCE_SEGMENT_SIZE_MB)));
+                this.spoolEnabled = Boolean.parseBoolean(props.getProperty("mqtt.spool.enabled", String.valueOf(DEFAULT_SPOOL_ENABLED)));
+                this.spoolMemorySize = Integer.parseInt(props.getProperty("mqtt.spool.memory.size", String.valueOf(DEFAULT_SPOOL_MEMORY_SIZE)));
+                this.spoolDiskMaxMb = Integer.parseInt(props.getProperty("mqtt.spool.disk.max.mb", String.valueOf(DEFAULT_SPOOL_DISK_MAX_MB)));
+                this.spoolDrainRate = Integer.parseInt(props.getProperty("mqtt.spool.drain.rate", String.valueOf(DEFAULT_SPOOL_DRAIN_RATE)));
+                this.metricsJmx = Boolean.parseBoolean(props.getProperty("mqtt.metrics.jmx", String.valueOf(DEFAULT_METRICS_JMX)));
+                this.metricsDumpIntervalSeconds = Long.parseLong(props.getProperty("mqtt.metrics.dump.interval.s", String.valueOf(DEFAULT_METRICS_DUMP_INTERVAL_S)));
+                this.logLevel = EventSink.Level.parse(props.getProperty("mqtt.log.level", DEFAULT_LOG_LEVEL));
+                this.flowAdaptive = Boolean.parseBoolean(props.getProperty("mqtt.flow.adaptive", String.valueOf(DEFAULT_FLOW_ADAPTIVE)));
+                this.dedupEnabled = Boolean.parseBoolean(props.getProperty("mqtt.dedup.enabled", String.valueOf(DEFAULT_DEDUP_ENABLED)));
+                this.dedupField = props.getProperty("mqtt.dedup.field", "").trim();
+                this.dedupWindowSeconds = Long.parseLong(props.getProperty("mqtt.dedup.window.s", String.valueOf(DEFAULT_DEDUP_WINDOW_S)));
+                this.dedupCapacity = Integer.parseInt(props.getProperty("mqtt.dedup.capacity", String.valueOf(DEFAULT_DEDUP_CAPACITY)));
+                this.dedupFpp = Double.parseDouble(props.getProperty("mqtt.dedup.fpp", String.valueOf(DEFAULT_DEDUP_FPP)));
+                this.aggregateTopics = props.getProperty("mqtt.aggregate.topics", "").trim();
+                this.aggregateFields = props.getProperty("mqtt.aggregate.fields", DEFAULT_AGGREGATE_FIELDS).trim();
+                this.aggregateKeyField = props.getProperty("mqtt.aggregate.key", "").trim();
+                this.aggregateWindowSeconds = Long.parseLong(props.getProperty("mqtt.aggregate.window.s", String.valueOf(DEFAULT_AGGREGATE_WINDOW_S)));
+                this.aggregateSlideSeconds = Long.parseLong(props.getProperty("mqtt.aggregate.slide.s", String.valueOf(DEFAULT_AGGREGATE_SLIDE_S)));
+                this.aggregateMaxKeys = Integer.parseInt(props.getProperty("mqtt.aggregate.max.keys", String.valueOf(DEFAULT_AGGREGATE_MAX_KEYS)));
+                this.aggregateOutputTopic = props.getProperty("mqtt.aggregate.output.topic", "").trim();
+                this.rbeEnabled = Boolean.parseBoolean(props.getProperty("mqtt.rbe.enabled", String.valueOf(DEFAULT_RBE_ENABLED)));
+                this.rbeDeadband = props.getProperty("mqtt.rbe.deadband", DEFAULT_RBE_DEADBAND).trim();
+                this.rbeDeadbandFields = props.getProperty("mqtt.rbe.deadband.fields", "").trim();
+                this.rbeAlwaysFields = props.getProperty("mqtt.rbe.always.fields", DEFAULT_RBE_ALWAYS_FIELDS).trim();
+                this.rbeHeartbeatSeconds = Long.parseLong(props.getProperty("mqtt.rbe.heartbeat.s", String.valueOf(DEFAULT_RBE_HEARTBEAT_S)));
+                this.rbeDelta = Boolean.parseBoolean(props.getProperty("mqtt.rbe.delta", String.valueOf(DEFAULT_RBE_DELTA)));
+                this.reconnectMinDelayMs = Long.parseLong(props.getProperty("mqtt.reconnect.min.delay.ms", String.valueOf(DEFAULT_RECONNECT_MIN_DELAY_MS)));
+                this.reconnectMaxDelayMs = Long.parseLong(props.getProperty("mqtt.reconnect.max.delay.ms", String.valueOf(DEFAULT_RECONNECT_MAX_DELAY_MS)));
+                this.flowWindowMin = Integer.parseInt(props.getProperty("mqtt.flow.window.min", String.valueOf(DEFAULT_FLOW_WINDOW_MIN)));
+                this.flowWindowInitial = Integer.parseInt(props.getProperty("mqtt.flow.window.initial", String.valueOf(DEFAULT_FLOW_WINDOW_INITIAL)));
+                this.flowLatencyTolerance = Double.parseDouble(props.getProperty("mqtt.flow.latency.tolerance", String.valueOf(DEFAULT_FLOW_LATENCY_TOLERANCE)));
+                this.flowLatencyTargetMs = Long.parseLong(props.getProperty("mqtt.flow.latency.target.ms", String.valueOf(DEFAULT_FLOW_LATENCY_TARGET_MS)));
+                this.flowAckTimeoutMs = Long.parseLong(props.getProperty("mqtt.flow.ack.timeout.ms", String.valueOf(DEFAULT_FLOW_ACK_TIMEOUT_MS)));
+                this.logSamplePublish = Integer.parseInt(props.getProperty("mqtt.log.sample.publish", String.valueOf(DEFAULT_LOG_SAMPLE)));
+                this.logSampleDelivery = Integer.parseInt(props.getProperty("mqtt.log.sample.delivery", String.valueOf(DEFAULT_LOG_SAMPLE)));
+                this.logSampleReceive = Integer.parseInt(props.getProperty("mqtt.log.sample.receive", String.valueOf(DEFAULT_LOG_SAMPLE)));
+                this.loadDevices = Integer.parseInt(props.getProperty("mqtt.load.devices", String.valueOf(DEFAULT_LOAD_DEVICES)));
+                this.loadConnections = Integer.parseInt(props.getProperty("mqtt.load.connections", String.valueOf(DEFAULT_LOAD_CONNECTIONS)));
+                this.loadRate = Double.parseDouble(props.getProperty("mqtt.load.rate", String.valueOf(DEFAULT_LOAD_RATE)));
+                this.loadPayloadSize = Integer.parseInt(props.getProperty("mqtt.load.payload.size", String.valueOf(DEFAULT_LOAD_PAYLOAD_SIZE)));
+                this.loadQos = Integer.parseInt(props.getProperty("mqtt.load.qos", String.valueOf(this.qos)));
+                this.loadTopics = Integer.parseInt(props.getProperty("mqtt.load.topics", String.valueOf(DEFAULT_LOAD_TOPICS)));
+                this.loadRampUpSeconds = Integer.parseInt(props.getProperty("mqtt.load.rampup.s", String.valueOf(DEFAULT_LOAD_RAMP_UP_S)));
+                this.loadDurationSeconds = Integer.parseInt(props.getProperty("mqtt.load.duration.s", String.valueOf(DEFAULT_LOAD_DURATION_S)));
+                this.fleetConcurrency = Integer.parseInt(props.getProperty("mqtt.fleet.concurrency", String.valueOf(DEFAULT_FLEET_CONCURRENCY)));
+                this.fleetStaggerMs = Long.parseLong(props.getProperty("mqtt.fleet.stagger.ms", String.valueOf(DEFAULT_FLEET_STAGGER_MS)));
+                this.fleetRetries = Integer.parseInt(props.getProperty("mqtt.fleet.retries", String.valueOf(DEFAULT_FLEET_RETRIES)));
                 
                 System.out.println("✓ 配置文件加载成功");
             } else {
@@ -74,17 +400,44 @@ public class MqttConfig {
             }
         } catch (IOException e) {
             System.out.println("⚠ 读取配置文件失败，使用默认配置: " + e.getMessage());
-        } catch (NumberFormatException e) {
+        } catch (IllegalArgumentException e) {
             System.out.println("⚠ 配置文件格式错误，使用默认配置: " + e.getMessage());
         }
     }
     
+    /**
+     * 解析协议版本: 3 / 3.1.1 表示 MQTT 3.1.1，5 表示 MQTT 5
+     */
+    private static int parseProtocolVersion(String value) {
+        switch (value.trim()) {
+            case "3":
+            case "3.1.1":
+                return 3;
+            case "5":
+            case "5.0":
+                return 5;
+            default:
+                throw new IllegalArgumentException("不支持的协议版本: " + value);
+        }
+    }
+    
     /**
      * 获取MQTT Broker URL
+     * mqtt.broker=embedded 时在当前JVM中启动内嵌Broker（见 {@link EmbeddedBroker}）
      */
     public String getBrokerUrl() {
+        if (isEmbeddedBroker()) {
+            return EmbeddedBroker.startShared(port).getUrl();
+        }
         return "tcp://" + broker + ":" + port;
     }
+
+    /**
+     * 是否使用内嵌Broker
+     */
+    public boolean isEmbeddedBroker() {
+        return "embedded".equalsIgnoreCase(broker);
+    }
     
     // Getters
     public String getBroker() {
@@ -123,10 +476,355 @@ public class MqttConfig {
         return cleanSession;
     }
     
+    public int getMaxInflight() {
+        return maxInflight;
+    }
+    
+    public int getBatchSize() {
+        return batchSize;
+    }
+    
+    public long getBatchLingerMs() {
+        return batchLingerMs;
+    }
+    
+    public boolean isBatchPacked() {
+        return batchPacked;
+    }
+    
+    public int getDispatchThreads() {
+        return dispatchThreads;
+    }
+    
+    public int getDispatchQueueSize() {
+        return dispatchQueueSize;
+    }
+    
+    public MessageDispatcher.OverflowPolicy getDispatchOverflowPolicy() {
+        return dispatchOverflowPolicy;
+    }
+    
+    /**
+     * 订阅者加入的消费组（共享订阅），空字符串表示普通订阅
+     */
+    public String getShareGroup() {
+        return shareGroup;
+    }
+    
+    /**
+     * 消费组（ConsumerGroup）在本进程中启动的成员数
+     */
+    public int getShareMembers() {
+        return shareMembers;
+    }
+    
+    /**
+     * 每个消费组成员未确认的消息上限（MQTT 5 下作为成员连接的 Receive Maximum，0 = 使用 mqtt.receive.maximum）
+     */
+    public int getShareMemberInflight() {
+        return shareMemberInflight;
+    }
+    
+    public int getShardCount() {
+        return shardCount;
+    }
+    
+    public String getDefaultCodec() {
+        return defaultCodec;
+    }
+    
+    public String getCodecTopics() {
+        return codecTopics;
+    }
+    
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+    
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+    
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+    
+    public String getCompressionDictionary() {
+        return compressionDictionary;
+    }
+    
+    public int getCompressionDictionaryId() {
+        return compressionDictionaryId;
+    }
+    
+    public String getClientId() {
+        return clientId;
+    }
+    
+    public String getPersistence() {
+        return persistence;
+    }
+    
+    public String getPersistenceDir() {
+        return persistenceDir;
+    }
+    
+    public MappedFilePersistence.SyncPolicy getPersistenceSync() {
+        return persistenceSync;
+    }
+    
+    public long getPersistenceSyncIntervalMs() {
+        return persistenceSyncIntervalMs;
+    }
+    
+    public int getPersistenceSegmentSizeMb() {
+        return persistenceSegmentSizeMb;
+    }
+    
+    public boolean isSpoolEnabled() {
+        return spoolEnabled;
+    }
+    
+    public int getSpoolMemorySize() {
+        return spoolMemorySize;
+    }
+    
+    public int getSpoolDiskMaxMb() {
+        return spoolDiskMaxMb;
+    }
+    
+    public int getSpoolDrainRate() {
+        return spoolDrainRate;
+    }
+    
+    public boolean isMetricsJmx() {
+        return metricsJmx;
+    }
+    
+    public long getMetricsDumpIntervalSeconds() {
+        return metricsDumpIntervalSeconds;
+    }
+    
+    /**
+     * 按配置创建消息持久化存储
+     * memory: 内存（默认），file: Paho 默认文件持久化，mmap: 内存映射段日志
+     */
+    public MqttClientPersistence createPersistence() {
+        switch (persistence) {
+            case "memory":
+                return new MemoryPersistence();
+            case "file":
+                return new MqttDefaultFilePersistence(persistenceDir);
+            case "mmap":
+                return new MappedFilePersistence(persistenceDir, persistenceSync,
+                    persistenceSyncIntervalMs, persistenceSegmentSizeMb * 1024 * 1024);
+            default:
+                throw new IllegalArgumentException("未知的持久化方式: " + persistence);
+        }
+    }
+    
+    /**
+     * 协议版本（3 = MQTT 3.1.1，5 = MQTT 5）
+     */
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+    
+    public int getReceiveMaximum() {
+        return receiveMaximum;
+    }
+    
+    public int getTopicAliasMaximum() {
+        return topicAliasMaximum;
+    }
+    
+    public long getMessageExpirySeconds() {
+        return messageExpirySeconds;
+    }
+    
+    public boolean isFlowAdaptive() {
+        return flowAdaptive;
+    }
+    
+    public int getFlowWindowMin() {
+        return flowWindowMin;
+    }
+    
+    public int getFlowWindowInitial() {
+        return flowWindowInitial;
+    }
+    
+    public double getFlowLatencyTolerance() {
+        return flowLatencyTolerance;
+    }
+    
+    public long getFlowLatencyTargetMs() {
+        return flowLatencyTargetMs;
+    }
+    
+    public long getFlowAckTimeoutMs() {
+        return flowAckTimeoutMs;
+    }
+    
+    public boolean isDedupEnabled() {
+        return dedupEnabled;
+    }
+    
+    public String getDedupField() {
+        return dedupField;
+    }
+    
+    public long getDedupWindowSeconds() {
+        return dedupWindowSeconds;
+    }
+    
+    public int getDedupCapacity() {
+        return dedupCapacity;
+    }
+    
+    public double getDedupFpp() {
+        return dedupFpp;
+    }
+    
+    public String getAggregateTopics() {
+        return aggregateTopics;
+    }
+    
+    public String getAggregateFields() {
+        return aggregateFields;
+    }
+    
+    public String getAggregateKeyField() {
+        return aggregateKeyField;
+    }
+    
+    public long getAggregateWindowSeconds() {
+        return aggregateWindowSeconds;
+    }
+    
+    public long getAggregateSlideSeconds() {
+        return aggregateSlideSeconds;
+    }
+    
+    public int getAggregateMaxKeys() {
+        return aggregateMaxKeys;
+    }
+    
+    public String getAggregateOutputTopic() {
+        return aggregateOutputTopic;
+    }
+    
+    public boolean isRbeEnabled() {
+        return rbeEnabled;
+    }
+    
+    public String getRbeDeadband() {
+        return rbeDeadband;
+    }
+    
+    public String getRbeDeadbandFields() {
+        return rbeDeadbandFields;
+    }
+    
+    public String getRbeAlwaysFields() {
+        return rbeAlwaysFields;
+    }
+    
+    public long getRbeHeartbeatSeconds() {
+        return rbeHeartbeatSeconds;
+    }
+    
+    public boolean isRbeDelta() {
+        return rbeDelta;
+    }
+    
+    public long getReconnectMinDelayMs() {
+        return reconnectMinDelayMs;
+    }
+    
+    public long getReconnectMaxDelayMs() {
+        return reconnectMaxDelayMs;
+    }
+    
+    public EventSink.Level getLogLevel() {
+        return logLevel;
+    }
+    
+    public int getLogSamplePublish() {
+        return logSamplePublish;
+    }
+    
+    public int getLogSampleDelivery() {
+        return logSampleDelivery;
+    }
+    
+    public int getLogSampleReceive() {
+        return logSampleReceive;
+    }
+    
+    public int getLoadDevices() {
+        return loadDevices;
+    }
+    
+    public int getLoadConnections() {
+        return loadConnections;
+    }
+    
+    public double getLoadRate() {
+        return loadRate;
+    }
+    
+    public int getLoadPayloadSize() {
+        return loadPayloadSize;
+    }
+    
+    public int getLoadQos() {
+        return loadQos;
+    }
+    
+    public int getLoadTopics() {
+        return loadTopics;
+    }
+    
+    public int getLoadRampUpSeconds() {
+        return loadRampUpSeconds;
+    }
+    
+    public int getLoadDurationSeconds() {
+        return loadDurationSeconds;
+    }
+    
+    public int getFleetConcurrency() {
+        return fleetConcurrency;
+    }
+    
+    public long getFleetStaggerMs() {
+        return fleetStaggerMs;
+    }
+    
+    public int getFleetRetries() {
+        return fleetRetries;
+    }
+    
     /**
-     * 生成唯一的客户端ID
+     * 节点标识，用于区分不同进程生成的客户端ID
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+    
+    /**
+     * 生成唯一的客户端ID: 前缀_类型_节点标识_序号
+     * 序号在进程内递增，节点标识区分不同进程，同一毫秒内创建的大量客户端也不会重复
+     * （重复的客户端ID会让Broker互相踢下线，形成重连风暴）。
+     * 配置了固定客户端ID时返回 固定ID_类型_序号：不含节点标识，重启后按相同顺序创建的客户端得到相同的ID，
+     * 用于恢复持久化的在途消息；序号保证同一进程中的多个客户端（如批量连接的设备）不会共用一个ID
      */
     public String generateClientId(String type) {
-        return clientIdPrefix + "_" + type + "_" + System.currentTimeMillis();
+        String sequence = Long.toString(CLIENT_ID_SEQUENCE.incrementAndGet(), 36);
+        if (clientId != null && !clientId.isEmpty()) {
+            return clientId + "_" + type + "_" + sequence;
+        }
+        return clientIdPrefix + "_" + type + "_" + nodeId + "_" + sequence;
     }
 }
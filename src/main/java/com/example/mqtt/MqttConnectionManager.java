@@ -0,0 +1,773 @@
+package com.example.mqtt;
+
+import org.eclipse.paho.client.mqttv3.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 共享连接管理
+ * 每个Broker端点只建立一个连接（一个 {@link MqttTransport}：一个TCP连接、一组Paho线程），
+ * 进程中任意数量的发布者、订阅者（{@link MqttClient}、{@link MqttPublisher}、{@link MqttSubscriber}）复用这个连接。
+ * 连接按引用计数管理：第一个使用者获取时建立连接，最后一个使用者释放时断开。
+ *
+ * 连接统一负责：
+ * <ul>
+ *   <li>连接选项、断线重连（{@link Reconnector}）和重连后批量恢复所有使用者的订阅</li>
+ *   <li>订阅登记：每条收到的消息只交给订阅了匹配过滤器的使用者（每个使用者最多一次），
+ *       同一过滤器被多个使用者订阅时按最高QoS订阅，最后一个使用者取消时才向Broker取消订阅</li>
+ *   <li>发布窗口和自适应流控：在途消息数是连接级的限制（Paho maxInflight），由所有使用者共享；
+ *       发送确认按 {@link DeliveryFuture} 记录的使用者回调；在途消息超过 mqtt.flow.ack.timeout.ms 仍未确认时
+ *       由心跳定时线程定期检查发现并减小窗口（确认可能永远不会到达）</li>
+ *   <li>协议版本（mqtt.protocol）：MQTT 5 下发布窗口不超过Broker在 CONNACK 中声明的 Receive Maximum</li>
+ * </ul>
+ *
+ * 指定了客户端ID的使用者（例如压测、分片发布器、消费组成员）获得独立的连接，不与其他使用者共享。
+ * 独立连接可以改为处理完后手动确认收到的消息（{@link #setManualAcks(int)}）。
+ * 共享连接使用第一个获取者的配置。
+ */
+public final class MqttConnectionManager {
+    private static final Map<String, MqttConnectionManager> CONNECTIONS = new HashMap<>();
+    /** 所有连接共用的心跳定时线程（Paho 默认每个连接一个 Timer 线程） */
+    private static volatile ScheduledExecutorService pingScheduler;
+    /** 连接时等待正在进行的重连完成的最长时间（与 Paho 默认的连接超时一致） */
+    private static final long RECONNECT_WAIT_MILLIS = 30_000;
+
+    /**
+     * 连接事件的接收方（使用者），回调在 Paho 回调线程中执行，不能阻塞
+     */
+    public interface Listener {
+        /**
+         * 连接建立
+         *
+         * @param reconnect 是否为断线后重新连接
+         */
+        default void connectComplete(boolean reconnect, String serverURI) {
+        }
+
+        default void connectionLost(Throwable cause) {
+        }
+
+        /**
+         * 收到与该使用者的订阅匹配的消息
+         * 连接改为手动确认（{@link #setManualAcks(int)}）时，处理完后调用 {@link #messageArrivedComplete(MqttMessage)}
+         */
+        default void messageArrived(String topic, MqttMessage message) {
+        }
+
+        /**
+         * 该使用者发布的消息已确认
+         */
+        default void deliveryComplete(IMqttDeliveryToken token) {
+        }
+    }
+
+    private final String key;
+    private final MqttConfig config;
+    private final String clientId;
+    private final boolean shared;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Map<Listener, Integer>> subscriptions = new LinkedHashMap<>();
+    /** 已登记、尚未得到Broker确认的过滤器（未连接时登记的订阅），连接成功后补订；由 subscriptions 锁保护 */
+    private final Set<String> unsent = new LinkedHashSet<>();
+    private final TopicRouter<Listener> router = new TopicRouter<>();
+    private final PublishWindow publishWindow;
+    private final AdaptiveRateController flowControl;
+    /** 已发布、尚未确认的消息，用于检查确认超时 */
+    private final Set<DeliveryFuture> pending = ConcurrentHashMap.newKeySet();
+    /** 手动确认时已收到、尚未确认的 QoS 1/2 消息（按对象区分） */
+    private final Set<MqttMessage> unacked = ConcurrentHashMap.newKeySet();
+    private final Reconnector reconnector;
+    private final AtomicBoolean connectedOnce = new AtomicBoolean();
+    private final AtomicInteger facadeSequence = new AtomicInteger();
+    // 只在 Paho 回调线程中使用
+    private final List<Listener> matched = new ArrayList<>();
+    /** 连接状态变化的通知（等待重连完成） */
+    private final Object linkState = new Object();
+
+    private volatile MqttTransport transport;
+    private volatile boolean connected;
+    private int references;
+    /** 最后一个使用者已释放、正在断开（由 CONNECTIONS 锁保护） */
+    private boolean closing;
+    private ScheduledFuture<?> ackTimeoutTask;
+    /** 手动确认的未确认消息上限，-1 表示自动确认 */
+    private volatile int manualAckLimit = -1;
+
+    private MqttConnectionManager(String key, MqttConfig config, String clientId, boolean shared) {
+        this.key = key;
+        this.config = config;
+        this.clientId = clientId;
+        this.shared = shared;
+        this.publishWindow = new PublishWindow(config.getMaxInflight());
+        this.flowControl = config.isFlowAdaptive() ? AdaptiveRateController.fromConfig(config, publishWindow) : null;
+        this.reconnector = Reconnector.fromConfig(config, this::attemptReconnect);
+    }
+
+    /**
+     * 获取Broker端点的共享连接（引用计数加一），使用完后调用 {@link #release()}
+     */
+    public static MqttConnectionManager acquire(MqttConfig config) {
+        return acquire(config, null);
+    }
+
+    /**
+     * 获取连接（引用计数加一），使用完后调用 {@link #release()}
+     *
+     * @param clientId 客户端ID，null 表示使用该端点的共享连接；指定时获得该客户端ID独立的连接
+     */
+    public static MqttConnectionManager acquire(MqttConfig config, String clientId) {
+        String endpoint = config.getBrokerUrl() + "|" + config.getUsername();
+        String key = clientId == null ? endpoint : endpoint + "|" + clientId;
+        synchronized (CONNECTIONS) {
+            MqttConnectionManager connection = awaitClosed(key);
+            if (connection == null) {
+                connection = clientId == null
+                    ? new MqttConnectionManager(key, config, config.generateClientId("client"), true)
+                    : new MqttConnectionManager(key, config, clientId, false);
+                CONNECTIONS.put(key, connection);
+            }
+            connection.references++;
+            return connection;
+        }
+    }
+
+    /**
+     * 释放连接（引用计数减一），最后一个使用者释放时断开连接
+     */
+    public void release() {
+        synchronized (CONNECTIONS) {
+            if (--references > 0) {
+                return;
+            }
+            // 断开完成前保留在表中，同一客户端ID的新连接等旧连接断开后再建立（否则Broker会把其中一个踢下线）
+            closing = true;
+        }
+        try {
+            close();
+        } finally {
+            synchronized (CONNECTIONS) {
+                CONNECTIONS.remove(key, this);
+                CONNECTIONS.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 返回该键当前可用的连接，正在断开的连接等它断开并移出表后返回 null（调用时持有 CONNECTIONS 锁）
+     */
+    private static MqttConnectionManager awaitClosed(String key) {
+        boolean interrupted = false;
+        MqttConnectionManager connection;
+        while ((connection = CONNECTIONS.get(key)) != null && connection.closing) {
+            try {
+                CONNECTIONS.wait();
+            } catch (InterruptedException e) {
+                // 等断开结束后再恢复中断状态
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return connection;
+    }
+
+    /**
+     * 当前进程中的连接数
+     */
+    public static int getConnectionCount() {
+        synchronized (CONNECTIONS) {
+            return CONNECTIONS.size();
+        }
+    }
+
+    /**
+     * 建立连接（已连接时立即返回）
+     * 断线后正在由 {@link Reconnector} 重连时等待重连完成，超时（30秒）后抛出异常，不会把断开的连接当作已连接
+     */
+    public void connect() throws MqttException {
+        if (!establish()) {
+            awaitReconnect();
+        }
+    }
+
+    /**
+     * 首次建立连接，连接已存在（包括正在重连）时返回 false
+     */
+    private synchronized boolean establish() throws MqttException {
+        if (transport != null) {
+            return false;
+        }
+
+        System.out.println("正在连接到 " + config.getBrokerUrl() + "...");
+        System.out.println("客户端ID: " + clientId);
+
+        MqttTransport created = MqttTransport.create(config, clientId, pingScheduler());
+        created.setCallback(new Callback());
+        if (manualAckLimit >= 0) {
+            created.setManualAcks(manualAckLimit);
+        }
+
+        transport = created;
+        try {
+            created.connect(null).waitForCompletion();
+        } catch (MqttException e) {
+            transport = null;
+            try {
+                created.close();
+            } catch (MqttException ignored) {
+                // 未建立连接
+            }
+            throw e;
+        }
+        connected = true;
+        applyServerLimits(created);
+        startAckTimeoutCheck();
+        if (created.getProtocolVersion() == 5) {
+            System.out.println("MQTT 5: Broker接收上限 " + created.getServerReceiveMaximum()
+                + "，主题别名 " + created.getServerTopicAliasMaximum() + "，发布窗口 "
+                + publishWindow.getLimit());
+        }
+        return true;
+    }
+
+    private void awaitReconnect() throws MqttException {
+        if (isConnected()) {
+            return;
+        }
+        System.out.println("→ 连接已断开，等待自动重连...");
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RECONNECT_WAIT_MILLIS);
+        synchronized (linkState) {
+            while (!isConnected()) {
+                if (transport == null) {
+                    throw new MqttException(MqttException.REASON_CODE_CLIENT_CLOSED);
+                }
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    throw new MqttException(MqttException.REASON_CODE_CLIENT_TIMEOUT);
+                }
+                try {
+                    linkState.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MqttException(e);
+                }
+            }
+        }
+    }
+
+    private void signalLinkState() {
+        synchronized (linkState) {
+            linkState.notifyAll();
+        }
+    }
+
+    /**
+     * 发布窗口不超过Broker声明的接收上限（MQTT 5 Receive Maximum，每次连接成功后可能变化），
+     * 否则超出的 QoS 1/2 消息会被 Paho 直接拒绝
+     */
+    private void applyServerLimits(MqttTransport current) {
+        int receiveMaximum = current.getServerReceiveMaximum();
+        publishWindow.setCeiling(receiveMaximum > 0 ? receiveMaximum : config.getMaxInflight());
+        if (flowControl != null) {
+            // 自适应窗口以有效上限为最大窗口
+            flowControl.onCeilingChanged();
+        }
+    }
+
+    /**
+     * 启用自适应流控且配置了确认超时时，定期检查最早的在途消息
+     * 确认超时原本只能在迟到的确认到达时发现，永远不到达的确认（Broker过载、丢包）就不会触发减窗
+     */
+    private void startAckTimeoutCheck() {
+        long timeoutMs = config.getFlowAckTimeoutMs();
+        if (flowControl == null || timeoutMs <= 0 || ackTimeoutTask != null) {
+            return;
+        }
+        long period = Math.max(50, timeoutMs / 2);
+        ackTimeoutTask = pingScheduler().scheduleAtFixedRate(
+            () -> checkAckTimeouts(TimeUnit.MILLISECONDS.toNanos(timeoutMs)), period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 在途时间超过确认超时的消息各计一次超时（之后到达的确认不再参与延迟统计），有新的超时消息时窗口减半
+     */
+    private void checkAckTimeouts(long timeoutNanos) {
+        long now = System.nanoTime();
+        boolean expired = false;
+        for (DeliveryFuture future : pending) {
+            if (!future.ackTimedOut && now - future.startNanos >= timeoutNanos) {
+                future.ackTimedOut = true;
+                expired = true;
+            }
+        }
+        if (expired) {
+            flowControl.onFailure();
+        }
+    }
+
+    /**
+     * 改为由使用者处理完消息后确认（{@link #messageArrivedComplete(MqttMessage)}），只用于独立连接，连接前调用
+     * 未确认的消息占用 Broker 给本客户端的在途配额，处理慢的使用者不再确认后 Broker 停止向它投递
+     * （共享订阅时分给组内其他成员），不需要阻塞 Paho 回调线程
+     *
+     * @param receiveMaximum 未确认消息上限（MQTT 5 下作为 Receive Maximum，0 = 使用 mqtt.receive.maximum），
+     *                       负数表示恢复自动确认（连接失败后撤销设置）
+     */
+    public synchronized void setManualAcks(int receiveMaximum) {
+        if (shared) {
+            throw new IllegalStateException("共享连接不能手动确认消息: " + clientId);
+        }
+        if (transport != null && (manualAckLimit < 0) != (receiveMaximum < 0)) {
+            throw new IllegalStateException("手动确认必须在连接前设置: " + clientId);
+        }
+        manualAckLimit = Math.max(-1, receiveMaximum);
+    }
+
+    /**
+     * 确认一条已处理（或已丢弃）的消息；自动确认、QoS 0 和重复确认时忽略
+     * 断线前收到的消息不再确认：消息ID属于已断开的连接，Broker 会按会话设置重新投递或丢弃
+     */
+    public void messageArrivedComplete(MqttMessage message) {
+        if (!unacked.remove(message)) {
+            return;
+        }
+        MqttTransport current = transport;
+        if (current == null || !current.isConnected()) {
+            return;
+        }
+        try {
+            current.messageArrivedComplete(message.getId(), message.getQos());
+        } catch (MqttException e) {
+            System.err.println("✗ 确认消息失败 (ID: " + message.getId() + "): " + e.getMessage());
+        }
+    }
+
+    /**
+     * 注册使用者，之后开始接收连接事件
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 注销使用者，同时取消只有该使用者订阅的过滤器
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+        List<String> owned = new ArrayList<>();
+        synchronized (subscriptions) {
+            for (Map.Entry<String, Map<Listener, Integer>> entry : subscriptions.entrySet()) {
+                if (entry.getValue().containsKey(listener)) {
+                    owned.add(entry.getKey());
+                }
+            }
+        }
+        for (String topic : owned) {
+            try {
+                unsubscribe(topic, listener);
+            } catch (MqttException e) {
+                System.err.println("✗ 取消订阅失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 为使用者订阅（所有主题过滤器放在一个 SUBSCRIBE 报文中），等待Broker确认
+     * 订阅会被记住，clean session 下重连后自动恢复；未连接（或正在重连）时只登记，连接成功后自动订阅
+     *
+     * @return Broker授予的QoS，被拒绝的过滤器为 0x80（不会被记住）；只登记时为请求的QoS
+     */
+    public int[] subscribe(String[] topics, int[] qos, Listener owner) throws MqttException {
+        if (topics.length != qos.length) {
+            throw new IllegalArgumentException("主题数和QoS数不一致: " + topics.length + "/" + qos.length);
+        }
+        int[] effective = new int[topics.length];
+        synchronized (subscriptions) {
+            for (int i = 0; i < topics.length; i++) {
+                Map<Listener, Integer> owners = subscriptions.computeIfAbsent(topics[i], t -> new LinkedHashMap<>());
+                // 先登记路由，SUBACK 之后立即到达的保留消息也能交给该使用者
+                // 共享订阅收到的消息携带原始主题，按去掉 $share/组名/ 的过滤器路由
+                if (owners.put(owner, qos[i]) == null) {
+                    router.add(TopicRouter.matchingFilter(topics[i]), owner);
+                }
+                effective[i] = maxQos(owners);
+                unsent.add(topics[i]);
+            }
+        }
+
+        MqttTransport current = transport;
+        if (current == null || !isConnected()) {
+            // 连接（重连）成功后由 restoreSubscriptions 补订
+            return effective;
+        }
+        int[] granted;
+        try {
+            IMqttToken token = current.subscribe(topics, effective, null);
+            token.waitForCompletion();
+            granted = token.getGrantedQos();
+        } catch (MqttException e) {
+            if (!isConnected()) {
+                // 订阅过程中连接断开，保留登记，重连后补订
+                return effective;
+            }
+            forget(topics, owner);
+            throw e;
+        }
+        synchronized (subscriptions) {
+            for (String topic : topics) {
+                unsent.remove(topic);
+            }
+        }
+
+        List<String> rejected = new ArrayList<>();
+        for (int i = 0; i < topics.length; i++) {
+            if (granted != null && i < granted.length && granted[i] == 0x80) {
+                rejected.add(topics[i]);
+            }
+        }
+        if (!rejected.isEmpty()) {
+            forget(rejected.toArray(new String[0]), owner);
+        }
+        return granted != null ? granted : effective;
+    }
+
+    /**
+     * 取消使用者的订阅，没有其他使用者订阅该过滤器时才向Broker取消订阅
+     */
+    public void unsubscribe(String topic, Listener owner) throws MqttException {
+        boolean last;
+        synchronized (subscriptions) {
+            Map<Listener, Integer> owners = subscriptions.get(topic);
+            if (owners == null || owners.remove(owner) == null) {
+                return;
+            }
+            router.remove(TopicRouter.matchingFilter(topic), owner);
+            last = owners.isEmpty();
+            if (last) {
+                subscriptions.remove(topic);
+                unsent.remove(topic);
+            }
+        }
+        MqttTransport current = transport;
+        if (last && current != null && current.isConnected()) {
+            current.unsubscribe(topic).waitForCompletion();
+        }
+    }
+
+    private void forget(String[] topics, Listener owner) {
+        synchronized (subscriptions) {
+            for (String topic : topics) {
+                Map<Listener, Integer> owners = subscriptions.get(topic);
+                if (owners != null && owners.remove(owner) != null) {
+                    router.remove(TopicRouter.matchingFilter(topic), owner);
+                    if (owners.isEmpty()) {
+                        subscriptions.remove(topic);
+                        unsent.remove(topic);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int maxQos(Map<Listener, Integer> owners) {
+        int max = 0;
+        for (int qos : owners.values()) {
+            max = Math.max(max, qos);
+        }
+        return max;
+    }
+
+    /**
+     * 使用者当前的订阅（主题过滤器 -> QoS）
+     */
+    public Map<String, Integer> getSubscriptions(Listener owner) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        synchronized (subscriptions) {
+            for (Map.Entry<String, Map<Listener, Integer>> entry : subscriptions.entrySet()) {
+                Integer qos = entry.getValue().get(owner);
+                if (qos != null) {
+                    result.put(entry.getKey(), qos);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 一次重连尝试（在重连线程中执行），失败后由 Reconnector 退避重试
+     */
+    private void attemptReconnect() {
+        MqttTransport current = transport;
+        if (current == null || current.isConnected()) {
+            reconnector.reset();
+            return;
+        }
+        try {
+            current.connect(new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken asyncActionToken) {
+                    // 其余由 connectComplete 回调处理
+                    applyServerLimits(current);
+                }
+
+                @Override
+                public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                    System.out.println("✗ 重连失败: " + exception.getMessage()
+                        + " (第 " + (reconnector.getFailures() + 1) + " 次)");
+                    reconnector.retry();
+                }
+            });
+        } catch (MqttException e) {
+            System.out.println("✗ 重连失败: " + e.getMessage());
+            reconnector.retry();
+        }
+    }
+
+    /**
+     * 连接成功后用一次批量订阅恢复订阅：clean session 下重连时恢复所有使用者的订阅（Broker 不保留订阅），
+     * 其他情况只补订未连接时登记、尚未得到确认的过滤器
+     * 在 Paho 回调线程中调用，不能阻塞等待结果
+     */
+    private void restoreSubscriptions(boolean resumed) {
+        boolean all = resumed && config.isCleanSession();
+        String[] topics;
+        int[] qos;
+        synchronized (subscriptions) {
+            topics = (all ? subscriptions.keySet() : unsent).toArray(new String[0]);
+            if (topics.length == 0) {
+                return;
+            }
+            qos = new int[topics.length];
+            for (int i = 0; i < topics.length; i++) {
+                qos[i] = maxQos(subscriptions.get(topics[i]));
+            }
+        }
+        MqttTransport current = transport;
+        if (current == null) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            current.subscribe(topics, qos, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken asyncActionToken) {
+                    int failed = 0;
+                    int[] granted = asyncActionToken.getGrantedQos();
+                    if (granted != null) {
+                        for (int value : granted) {
+                            if (value == 0x80) {
+                                failed++;
+                            }
+                        }
+                    }
+                    synchronized (subscriptions) {
+                        for (String topic : topics) {
+                            unsent.remove(topic);
+                        }
+                    }
+                    System.out.printf("✓ 已恢复 %d 个订阅 (%.1f ms)%s%n", topics.length - failed,
+                        (System.nanoTime() - start) / 1e6, failed > 0 ? ", " + failed + " 个被拒绝" : "");
+                }
+
+                @Override
+                public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                    System.err.println("✗ 恢复订阅失败: " + exception.getMessage());
+                }
+            });
+        } catch (MqttException e) {
+            System.err.println("✗ 恢复订阅失败: " + e.getMessage());
+        }
+    }
+
+    private void close() {
+        reconnector.stop();
+        MqttTransport current;
+        synchronized (this) {
+            current = transport;
+            transport = null;
+            connected = false;
+            if (ackTimeoutTask != null) {
+                ackTimeoutTask.cancel(false);
+                ackTimeoutTask = null;
+            }
+        }
+        pending.clear();
+        unacked.clear();
+        signalLinkState();
+        if (current == null) {
+            return;
+        }
+        try {
+            if (current.isConnected()) {
+                current.disconnect().waitForCompletion();
+                System.out.println("已断开连接");
+            }
+            current.close();
+        } catch (MqttException e) {
+            System.err.println("断开连接时出错: " + e.getMessage());
+        }
+    }
+
+    private static ScheduledExecutorService pingScheduler() {
+        ScheduledExecutorService executor = pingScheduler;
+        if (executor == null) {
+            synchronized (MqttConnectionManager.class) {
+                executor = pingScheduler;
+                if (executor == null) {
+                    // 心跳任务只发送 PINGREQ，不阻塞，少量线程即可服务大量连接
+                    executor = Executors.newScheduledThreadPool(2, r -> {
+                        Thread thread = new Thread(r, "mqtt-ping");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    pingScheduler = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private MqttTransport currentTransport() throws MqttException {
+        MqttTransport current = transport;
+        if (current == null) {
+            throw new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED);
+        }
+        return current;
+    }
+
+    /**
+     * 异步发布，userContext 通过令牌带回 deliveryComplete 回调（按配置的协议版本发送）
+     */
+    public IMqttDeliveryToken publish(String topic, MqttMessage message, Object userContext,
+                                      IMqttActionListener callback) throws MqttException {
+        MqttTransport current = currentTransport();
+        if (flowControl != null && userContext instanceof DeliveryFuture) {
+            DeliveryFuture future = (DeliveryFuture) userContext;
+            pending.add(future);
+            future.whenComplete((token, error) -> pending.remove(future));
+        }
+        return current.publish(topic, message, userContext, callback);
+    }
+
+    /**
+     * 连接使用的协议版本（3 = MQTT 3.1.1，5 = MQTT 5）
+     */
+    public int getProtocolVersion() {
+        return config.getProtocolVersion();
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * 为使用者生成连接内唯一的名称（用于指标、发送缓冲区文件和线程名）
+     * 独立连接直接使用客户端ID
+     */
+    public String nextFacadeName(String type) {
+        return shared ? clientId + "-" + type + facadeSequence.incrementAndGet() : clientId;
+    }
+
+    public boolean isConnected() {
+        MqttTransport current = transport;
+        return connected && current != null && current.isConnected();
+    }
+
+    /**
+     * 连接级的发布窗口（所有使用者共享）
+     */
+    PublishWindow getPublishWindow() {
+        return publishWindow;
+    }
+
+    /**
+     * 自适应流控，未启用（mqtt.flow.adaptive=false）时返回 null
+     */
+    public AdaptiveRateController getFlowControl() {
+        return flowControl;
+    }
+
+    /**
+     * Paho 回调：把连接事件分发给所有使用者，把消息只分发给订阅了匹配过滤器的使用者
+     */
+    private final class Callback implements MqttCallbackExtended {
+        @Override
+        public void connectComplete(boolean reconnect, String serverURI) {
+            connected = true;
+            reconnector.reset();
+            boolean resumed = connectedOnce.getAndSet(true);
+            restoreSubscriptions(resumed);
+            signalLinkState();
+            for (Listener listener : listeners) {
+                listener.connectComplete(resumed, serverURI);
+            }
+        }
+
+        @Override
+        public void connectionLost(Throwable cause) {
+            connected = false;
+            unacked.clear();
+            for (Listener listener : listeners) {
+                listener.connectionLost(cause);
+            }
+            reconnector.start();
+        }
+
+        @Override
+        public void messageArrived(String topic, MqttMessage message) {
+            boolean manualAck = manualAckLimit >= 0 && message.getQos() > 0;
+            if (manualAck) {
+                unacked.add(message);
+            }
+            matched.clear();
+            router.match(topic, matched, (listener, t, result) -> {
+                // 同一使用者的多个过滤器匹配同一条消息时只交付一次
+                if (!result.contains(listener)) {
+                    result.add(listener);
+                }
+            });
+            if (manualAck && matched.isEmpty()) {
+                // 没有使用者处理，立即确认
+                messageArrivedComplete(message);
+            }
+            for (int i = 0; i < matched.size(); i++) {
+                matched.get(i).messageArrived(topic, message);
+            }
+            matched.clear();
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+            Object context = token.getUserContext();
+            if (context instanceof DeliveryFuture) {
+                DeliveryFuture future = (DeliveryFuture) context;
+                if (flowControl != null && !future.ackTimedOut) {
+                    // 已按超时计过的消息不再计入延迟
+                    flowControl.onAck(System.nanoTime() - future.startNanos);
+                }
+                if (future.owner != null) {
+                    future.owner.deliveryComplete(token);
+                    return;
+                }
+            }
+            for (Listener listener : listeners) {
+                listener.deliveryComplete(token);
+            }
+        }
+    }
+}
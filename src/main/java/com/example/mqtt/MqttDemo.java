@@ -1,9 +1,5 @@
 package com.example.mqtt;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import org.eclipse.paho.client.mqttv3.MqttMessage;
-
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
@@ -33,15 +29,13 @@ public class MqttDemo {
                 System.out.println("  主题: " + topic);
                 System.out.println("  内容: " + payload);
                 
-                // 尝试解析JSON并提取温度
-                try {
-                    JsonObject json = JsonParser.parseString(payload).getAsJsonObject();
-                    if (json.has("temperature")) {
-                        double temp = json.get("temperature").getAsDouble();
+                // 直接在负载字节上读取温度字段，无需解析整个JSON
+                if (!PayloadCodecs.hasHeader(message.getPayload())) {
+                    JsonPayloadView json = new JsonPayloadView(message.getPayload());
+                    double temp = json.getDouble("temperature", Double.NaN);
+                    if (!Double.isNaN(temp)) {
                         System.out.println("  温度: " + temp + "°C");
                     }
-                } catch (Exception e) {
-                    // 不是JSON格式，忽略
                 }
             } catch (Exception e) {
                 System.err.println("处理消息出错: " + e.getMessage());
@@ -1,123 +1,218 @@
 package com.example.mqtt;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import org.eclipse.paho.client.mqttv3.*;
-import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * MQTT发布者
  * 定期发送模拟传感器数据到指定主题
  */
 public class MqttPublisher {
-    private org.eclipse.paho.client.mqttv3.MqttClient client;
+    private volatile MqttConnectionManager connection;
     private MqttConfig config;
-    private Gson gson;
-    private boolean connected = false;
+    private PayloadCodecs codecs;
+    private PayloadCompressor compressor;
+    private volatile boolean connected = false;
     private int messageCount = 0;
+    private final PublishPipeline pipeline;
+    private final ClientMetrics metrics = new ClientMetrics();
+    private final EventSink events;
+    private final ReportByExceptionFilter reportFilter;
+    private final MqttConnectionManager.Listener listener = new ConnectionListener();
+    private final SensorReading sensorReading = new SensorReading();
+    private final Random random = new Random();
     
     public MqttPublisher() {
-        this.config = new MqttConfig();
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
+        this.config = MqttConfig.shared();
+        this.codecs = PayloadCodecs.fromConfig(config);
+        this.compressor = PayloadCompressor.fromConfig(config);
+        this.events = EventSink.fromConfig(config);
+        this.reportFilter = ReportByExceptionFilter.fromConfig(config);
+        this.pipeline = new PublishPipeline(listener, codecs, compressor, metrics, events);
     }
     
     /**
-     * 连接到MQTT Broker
+     * 连接到MQTT Broker（使用该端点的共享连接，已建立时直接复用）
      */
     public boolean connect() {
+        if (connection != null) {
+            // 已连接，或断线后正在由连接自动重连
+            return isConnected();
+        }
+        MqttConnectionManager acquired = MqttConnectionManager.acquire(config);
         try {
-            String clientId = config.generateClientId("publisher");
-            System.out.println("正在连接到 " + config.getBrokerUrl() + "...");
-            System.out.println("客户端ID: " + clientId);
-            
-            // 创建MQTT客户端
-            client = new org.eclipse.paho.client.mqttv3.MqttClient(config.getBrokerUrl(), clientId, new MemoryPersistence());
-            
-            // 配置连接选项
-            MqttConnectOptions options = new MqttConnectOptions();
-            options.setCleanSession(config.isCleanSession());
-            options.setKeepAliveInterval(config.getKeepAlive());
-            options.setAutomaticReconnect(true);
-            
-            // 设置用户名和密码（如果需要）
-            if (config.getUsername() != null && !config.getUsername().isEmpty()) {
-                options.setUserName(config.getUsername());
-                if (config.getPassword() != null && !config.getPassword().isEmpty()) {
-                    options.setPassword(config.getPassword().toCharArray());
-                }
-            }
+            String name = acquired.nextFacadeName("publisher");
+            pipeline.attach(acquired);
+            metrics.start(name, config.isMetricsJmx(), config.getMetricsDumpIntervalSeconds());
             
-            // 设置回调
-            client.setCallback(new MqttCallback() {
-                @Override
-                public void connectionLost(Throwable cause) {
-                    connected = false;
-                    System.out.println("✗ 连接断开: " + cause.getMessage());
-                }
-                
-                @Override
-                public void messageArrived(String topic, MqttMessage message) throws Exception {
-                    // 发布者通常不需要处理接收到的消息
-                }
-                
-                @Override
-                public void deliveryComplete(IMqttDeliveryToken token) {
-                    // 消息发送完成
-                }
-            });
-            
-            // 连接到Broker
-            client.connect(options);
+            acquired.addListener(listener);
+            connection = acquired;
+            acquired.connect();
             connected = true;
             
+            // 离线发送缓冲区（连接成功后自动重连才会生效，因此在首次连接成功后创建）
+            pipeline.openSpool(name, config);
+            
             System.out.println("✓ 成功连接到MQTT Broker: " + config.getBrokerUrl());
             return true;
             
         } catch (MqttException e) {
             System.err.println("✗ 连接失败: " + e.getMessage());
             e.printStackTrace();
+            acquired.removeListener(listener);
+            acquired.release();
+            connection = null;
+            pipeline.detach();
+            metrics.stop();
             return false;
         }
     }
     
     /**
-     * 发布消息
+     * 共享连接上的事件（在 Paho 回调线程中执行）
      */
-    public boolean publish(String message, String topic) {
-        if (!connected || client == null || !client.isConnected()) {
-            System.err.println("✗ 未连接到Broker，无法发布消息");
-            return false;
+    private final class ConnectionListener implements MqttConnectionManager.Listener {
+        @Override
+        public void connectComplete(boolean reconnect, String serverURI) {
+            connected = true;
+            if (reconnect) {
+                metrics.recordReconnect();
+                System.out.println("✓ 已重新连接: " + serverURI);
+                if (reportFilter != null) {
+                    // 重连后每个主题先完整上报一次，让订阅端重新同步
+                    reportFilter.reset();
+                }
+            }
+            pipeline.drainSpool();
+        }
+        
+        @Override
+        public void connectionLost(Throwable cause) {
+            connected = false;
+            metrics.recordConnectionLost();
+            System.out.println("✗ 连接断开: " + cause.getMessage());
         }
         
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+            // 消息发送完成，通知对应的异步发布
+            pipeline.deliveryComplete(token);
+        }
+    }
+    
+    /**
+     * 异步发布消息
+     * 立即返回，Broker确认后完成 Future；在途消息数达到 mqtt.max.inflight 时阻塞调用方
+     */
+    public CompletableFuture<IMqttDeliveryToken> publishAsync(String message, String topic) {
+        return publishAsync(message.getBytes(StandardCharsets.UTF_8), topic);
+    }
+    
+    /**
+     * 异步发布原始字节消息
+     * 断线期间消息进入离线发送缓冲区，Future 立即以 null 完成；缓冲区已满时以异常完成
+     */
+    public CompletableFuture<IMqttDeliveryToken> publishAsync(byte[] payload, String topic) {
+        return pipeline.publishAsync(payload, topic, config.getQos());
+    }
+    
+    /**
+     * 异步发布对象消息（按主题对应的编解码器编码）
+     * 启用按变化上报时，没有超出死区的数据不发布，Future 立即以 null 完成
+     */
+    public CompletableFuture<IMqttDeliveryToken> publishAsync(Object data, String topic) {
+        Object report = filterReport(data, topic);
+        if (report == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<IMqttDeliveryToken> future;
         try {
-            MqttMessage mqttMessage = new MqttMessage(message.getBytes("UTF-8"));
-            mqttMessage.setQos(config.getQos());
-            mqttMessage.setRetained(false);
-            
-            client.publish(topic, mqttMessage);
-            System.out.println("→ 发布到主题 '" + topic + "':");
-            System.out.println(message);
-            
-            return true;
-            
-        } catch (Exception e) {
-            System.err.println("✗ 发布失败: " + e.getMessage());
-            return false;
+            future = publishAsync(codecs.encode(topic, report), topic);
+        } catch (RuntimeException e) {
+            invalidateReport(topic);
+            throw e;
+        }
+        if (reportFilter != null) {
+            future.whenComplete((token, error) -> {
+                if (error != null) {
+                    invalidateReport(topic);
+                }
+            });
+        }
+        return future;
+    }
+    
+    /**
+     * 按变化上报过滤，返回需要发布的数据（完整数据或增量），不需要发布时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    private Object filterReport(Object data, String topic) {
+        if (reportFilter == null) {
+            return data;
         }
+        if (data instanceof Map) {
+            return reportFilter.filter(topic, (Map<String, ?>) data);
+        }
+        if (data instanceof SensorReading) {
+            return reportFilter.accept(topic, (SensorReading) data) ? data : null;
+        }
+        return data;
     }
     
     /**
-     * 发布对象消息（自动转换为JSON）
+     * 发布失败时让按变化上报过滤器忘记该主题的参考值，下一条数据完整发送
+     */
+    private void invalidateReport(String topic) {
+        if (reportFilter != null) {
+            reportFilter.invalidate(topic);
+        }
+    }
+    
+    /**
+     * 发布消息
+     */
+    public boolean publish(String message, String topic) {
+        return publish(message.getBytes(StandardCharsets.UTF_8), topic);
+    }
+    
+    /**
+     * 发布原始字节消息
+     */
+    public boolean publish(byte[] payload, String topic) {
+        return pipeline.publish(payload, topic, config.getQos());
+    }
+    
+    /**
+     * 发布对象消息（按主题对应的编解码器编码）
+     * 启用按变化上报时，没有超出死区的数据不发布，直接返回 true
      */
     public boolean publish(Object data, String topic) {
-        String json = gson.toJson(data);
-        return publish(json, topic);
+        Object report = filterReport(data, topic);
+        if (report == null) {
+            if (events.sample(EventSink.Type.PUBLISH, EventSink.Level.DEBUG)) {
+                events.log(EventSink.Level.DEBUG, "  数据没有超出死区的变化，跳过发布 (主题: " + topic + ")");
+            }
+            return true;
+        }
+        boolean published;
+        try {
+            published = publish(codecs.encode(topic, report), topic);
+        } catch (RuntimeException e) {
+            invalidateReport(topic);
+            throw e;
+        }
+        if (!published) {
+            invalidateReport(topic);
+        }
+        return published;
     }
     
     /**
@@ -134,15 +229,29 @@ public class MqttPublisher {
         return publish(data, config.getTopic());
     }
     
+    /**
+     * 批量发布对象消息
+     * 一次完成整批序列化后连续交给发送线程；按 mqtt.batch.packed 决定
+     * 每个对象单独成一条消息，还是整批打包为一个数组
+     */
+    public CompletableFuture<Void> publishBatch(Collection<?> items, String topic) {
+        return pipeline.publishBatch(items, topic, config.getQos(), config.isBatchPacked());
+    }
+    
     /**
      * 创建模拟传感器数据
      */
     private Map<String, Object> createSensorData() {
         messageCount++;
-        Random random = new Random();
-        
+        return createSensorData(messageCount, random);
+    }
+    
+    /**
+     * 创建一条模拟传感器数据（供压测等场景复用）
+     */
+    static Map<String, Object> createSensorData(long id, Random random) {
         Map<String, Object> data = new HashMap<>();
-        data.put("id", messageCount);
+        data.put("id", id);
         data.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
         data.put("temperature", Math.round(random.nextDouble() * 10 + 20.0 * 100.0) / 100.0);
         data.put("humidity", Math.round(random.nextDouble() * 20 + 40.0 * 100.0) / 100.0);
@@ -151,21 +260,82 @@ public class MqttPublisher {
         return data;
     }
     
+    /**
+     * 创建模拟传感器读数
+     * 用于定长二进制格式（mqtt.codec.topics 中配置为 sensor 的主题），每次复用同一个实例
+     */
+    private SensorReading createSensorReading() {
+        messageCount++;
+        return sensorReading.set(
+            messageCount,
+            System.currentTimeMillis(),
+            Math.round((20.0 + random.nextDouble() * 10) * 100.0) / 100.0,
+            Math.round((40.0 + random.nextDouble() * 20) * 100.0) / 100.0,
+            SensorReading.Status.NORMAL);
+    }
+    
     /**
      * 断开连接
      */
     public void disconnect() {
-        try {
-            if (client != null && client.isConnected()) {
-                client.disconnect();
-                System.out.println("已断开连接");
-            }
-            if (client != null) {
-                client.close();
-            }
-        } catch (MqttException e) {
-            System.err.println("断开连接时出错: " + e.getMessage());
+        if (reportFilter != null) {
+            System.out.println("按变化上报: " + reportFilter);
+        }
+        pipeline.detach();
+        
+        // 释放连接，最后一个使用者释放时才真正断开
+        MqttConnectionManager current = connection;
+        if (current != null) {
+            current.removeListener(listener);
+            current.release();
+            connection = null;
+            connected = false;
         }
+        events.close();
+        metrics.stop();
+    }
+    
+    /**
+     * 运行指标
+     */
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * 消息事件日志（发布、确认的计数和抽样日志）
+     */
+    public EventSink getEvents() {
+        return events;
+    }
+    
+    /**
+     * 按变化上报过滤器，未启用时返回 null
+     */
+    public ReportByExceptionFilter getReportFilter() {
+        return reportFilter;
+    }
+    
+    /**
+     * 离线发送缓冲区，未启用时返回 null
+     */
+    public OutboundSpool getSpool() {
+        return pipeline.getSpool();
+    }
+    
+    /**
+     * 检查是否已连接
+     */
+    public boolean isConnected() {
+        MqttConnectionManager current = connection;
+        return connected && current != null && current.isConnected();
+    }
+    
+    /**
+     * 底层连接（同一 Broker 的发布者、订阅者和通用客户端共享），未连接时返回 null
+     */
+    public MqttConnectionManager getConnection() {
+        return connection;
     }
     
     /**
@@ -180,6 +350,9 @@ public class MqttPublisher {
         }
         
         System.out.println("\n开始发布消息...");
+        if (publisher.config.getLogSamplePublish() == 0) {
+            System.out.println("(默认不打印消息内容，设置 mqtt.log.sample.publish=1 可显示每条消息)");
+        }
         System.out.println("按 Ctrl+C 停止\n");
         
         // 添加关闭钩子，确保程序退出时断开连接
@@ -192,9 +365,13 @@ public class MqttPublisher {
         try {
             // 持续发布消息
             while (true) {
-                // 创建并发布模拟数据
-                Map<String, Object> sensorData = publisher.createSensorData();
-                publisher.publish(sensorData);
+                // 创建并发布模拟数据（按主题编码选择Map或定长二进制读数）
+                if (publisher.codecs.codecFor(publisher.config.getTopic()) instanceof SensorReadingCodec) {
+                    publisher.publish(publisher.createSensorReading());
+                } else {
+                    Map<String, Object> sensorData = publisher.createSensorData();
+                    publisher.publish(sensorData);
+                }
                 
                 // 等待3秒
                 Thread.sleep(3000);
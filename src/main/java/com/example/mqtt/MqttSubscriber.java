@@ -1,106 +1,212 @@
 package com.example.mqtt;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonSyntaxException;
 import org.eclipse.paho.client.mqttv3.*;
-import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * MQTT订阅者
  * 订阅指定主题并接收消息
+ *
+ * 加入消费组（mqtt.share.group）时以共享订阅 $share/组名/主题 订阅，同组的订阅者分摊消息，
+ * 增加订阅者实例即可提高处理吞吐量，不需要拆分主题。消费组成员使用独立连接（同一进程中可以有多个成员），
+ * 消息处理完后才确认，未确认的消息达到 Broker 给该成员的在途配额（MQTT 5 下为 mqtt.share.member.inflight）后，
+ * Broker 把新消息分给其他成员。
  */
 public class MqttSubscriber {
-    private org.eclipse.paho.client.mqttv3.MqttClient client;
+    private volatile MqttConnectionManager connection;
     private MqttConfig config;
-    private Gson gson;
-    private boolean connected = false;
-    private int messageCount = 0;
+    private final String clientId;
+    private final String group;
+    private PayloadCodecs codecs;
+    private PayloadCompressor compressor;
+    private volatile boolean connected = false;
+    private final AtomicInteger messageCount = new AtomicInteger();
+    private MessageDispatcher dispatcher;
+    private final ClientMetrics metrics = new ClientMetrics();
+    private final EventSink events;
+    private final DuplicateFilter duplicateFilter;
+    private final WindowedAggregator aggregator;
+    private final MqttConnectionManager.Listener listener = new ConnectionListener();
+    /** 窗口摘要的发送路径（与发布者共用连接的发布窗口） */
+    private final PublishPipeline pipeline;
+    /** 已接收、尚未处理完的消息数 */
+    private final AtomicInteger backlog = new AtomicInteger();
     
     public MqttSubscriber() {
-        this.config = new MqttConfig();
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
+        this(MqttConfig.shared(), null, MqttConfig.shared().getShareGroup());
+    }
+    
+    /**
+     * @param clientId 为 null 时：普通订阅者使用该Broker端点的共享连接，消费组成员按组名生成独立的客户端ID
+     * @param group    消费组名，null 或空字符串表示普通订阅
+     */
+    public MqttSubscriber(MqttConfig config, String clientId, String group) {
+        this.config = config;
+        this.group = group == null || group.isEmpty() ? null : group;
+        // 同一连接上的多个成员会收到同一条消息，消费组成员必须使用独立连接
+        this.clientId = clientId != null || this.group == null ? clientId : config.generateClientId(this.group);
+        this.codecs = PayloadCodecs.fromConfig(config);
+        this.compressor = PayloadCompressor.fromConfig(config);
+        this.events = EventSink.fromConfig(config);
+        this.duplicateFilter = DuplicateFilter.fromConfig(config);
+        this.metrics.setDuplicateFilter(duplicateFilter);
+        this.aggregator = WindowedAggregator.fromConfig(config);
+        this.pipeline = new PublishPipeline(listener, codecs, compressor, metrics, events);
+        if (aggregator != null) {
+            if (aggregator.hasOutputTopic()) {
+                aggregator.setPublisher(this::publishSummary);
+            } else {
+                aggregator.onSummary(summary -> events.log(EventSink.Level.INFO, "← 窗口统计: " + summary.toJson()));
+            }
+        }
     }
     
     /**
      * 连接到MQTT Broker并订阅主题
      */
     public boolean connect() {
+        if (connection != null) {
+            // 已连接，或断线后正在由连接自动重连
+            return isConnected();
+        }
+        MqttConnectionManager acquired = MqttConnectionManager.acquire(config, clientId);
         try {
-            String clientId = config.generateClientId("subscriber");
-            System.out.println("正在连接到 " + config.getBrokerUrl() + "...");
-            System.out.println("客户端ID: " + clientId);
-            
-            // 创建MQTT客户端
-            client = new org.eclipse.paho.client.mqttv3.MqttClient(config.getBrokerUrl(), clientId, new MemoryPersistence());
+            String name = acquired.nextFacadeName("subscriber");
             
-            // 配置连接选项
-            MqttConnectOptions options = new MqttConnectOptions();
-            options.setCleanSession(config.isCleanSession());
-            options.setKeepAliveInterval(config.getKeepAlive());
-            options.setAutomaticReconnect(true);
+            // 消息处理线程池，被丢弃的消息同样结束积压并确认
+            dispatcher = MessageDispatcher.fromConfig(name, config);
+            dispatcher.setDiscardHandler((topic, message) -> finish(message));
+            metrics.setBacklogGauge(backlog::get);
+            metrics.start(name, config.isMetricsJmx(), config.getMetricsDumpIntervalSeconds());
+            pipeline.attach(acquired);
             
-            // 设置用户名和密码（如果需要）
-            if (config.getUsername() != null && !config.getUsername().isEmpty()) {
-                options.setUserName(config.getUsername());
-                if (config.getPassword() != null && !config.getPassword().isEmpty()) {
-                    options.setPassword(config.getPassword().toCharArray());
-                }
+            if (group != null) {
+                // 处理完才确认：积压的成员不再确认新消息，Broker 把消息分给其他成员，回调线程不阻塞
+                acquired.setManualAcks(config.getShareMemberInflight());
             }
-            
-            // 设置回调
-            client.setCallback(new MqttCallback() {
-                @Override
-                public void connectionLost(Throwable cause) {
-                    connected = false;
-                    System.out.println("✗ 连接断开: " + cause.getMessage());
-                    System.out.println("自动重连中...");
-                }
-                
-                @Override
-                public void messageArrived(String topic, MqttMessage message) throws Exception {
-                    handleMessage(topic, message);
-                }
-                
-                @Override
-                public void deliveryComplete(IMqttDeliveryToken token) {
-                    // 订阅者通常不需要处理消息发送
-                }
-            });
-            
-            // 连接到Broker
-            client.connect(options);
+            acquired.addListener(listener);
+            connection = acquired;
+            acquired.connect();
             connected = true;
             
             System.out.println("✓ 成功连接到MQTT Broker: " + config.getBrokerUrl());
+            if (aggregator != null) {
+                // 连接成功后才开始输出窗口摘要，连接失败时没有需要停止的定时任务
+                pipeline.openSpool(name, config);
+                aggregator.start();
+            }
             
             // 订阅主题
-            subscribe(config.getTopic());
+            if (group != null) {
+                subscribe(config.getTopic(), group);
+            } else {
+                subscribe(config.getTopic());
+            }
             
             return true;
             
         } catch (MqttException e) {
             System.err.println("✗ 连接失败: " + e.getMessage());
             e.printStackTrace();
+            acquired.removeListener(listener);
+            if (group != null) {
+                acquired.setManualAcks(-1);
+            }
+            acquired.release();
+            connection = null;
+            pipeline.detach();
+            dispatcher.shutdown(0);
+            metrics.stop();
             return false;
         }
     }
     
+    /**
+     * 共享连接上的事件（在 Paho 回调线程中执行）
+     */
+    private final class ConnectionListener implements MqttConnectionManager.Listener {
+        @Override
+        public void connectComplete(boolean reconnect, String serverURI) {
+            connected = true;
+            if (reconnect) {
+                // 订阅由连接统一恢复
+                metrics.recordReconnect();
+                System.out.println("✓ 已重新连接: " + serverURI);
+            }
+            pipeline.drainSpool();
+        }
+        
+        @Override
+        public void connectionLost(Throwable cause) {
+            connected = false;
+            metrics.recordConnectionLost();
+            System.out.println("✗ 连接断开: " + cause.getMessage());
+            System.out.println("自动重连中...");
+        }
+        
+        @Override
+        public void messageArrived(String topic, MqttMessage message) {
+            metrics.recordReceive(topic, message.getPayload().length);
+            backlog.incrementAndGet();
+            long arrived = System.nanoTime();
+            dispatcher.dispatch(topic, message, (t, m) -> {
+                metrics.recordQueueWait(System.nanoTime() - arrived);
+                try {
+                    handleMessage(t, m);
+                } finally {
+                    finish(m);
+                }
+            });
+        }
+        
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+            pipeline.deliveryComplete(token);
+        }
+    }
+    
+    /**
+     * 一条消息处理完（或被丢弃），手动确认时向Broker确认
+     */
+    private void finish(MqttMessage message) {
+        backlog.decrementAndGet();
+        MqttConnectionManager current = connection;
+        if (current != null) {
+            current.messageArrivedComplete(message);
+        }
+    }
+    
     /**
      * 订阅主题
+     * 连接断开、正在重连时只登记订阅，重连成功后自动订阅
      */
     public boolean subscribe(String topic) {
-        if (!connected || client == null || !client.isConnected()) {
+        MqttConnectionManager current = connection;
+        if (current == null) {
             System.err.println("✗ 未连接到Broker，无法订阅");
             return false;
         }
         
         try {
             System.out.println("正在订阅主题: " + topic);
-            client.subscribe(topic, config.getQos());
+            // 订阅登记在连接上，clean session 下重连后由连接统一恢复
+            int[] granted = current.subscribe(new String[] {topic}, new int[] {config.getQos()}, listener);
+            if (granted.length > 0 && granted[0] == 0x80) {
+                System.err.println("✗ 订阅被Broker拒绝: " + topic);
+                return false;
+            }
+            if (!current.isConnected()) {
+                System.out.println("→ 连接已断开，订阅已登记，重连后自动订阅: " + topic);
+                return true;
+            }
             System.out.println("✓ 订阅成功");
-            System.out.println("等待接收消息...\n");
+            System.out.println("等待接收消息...");
+            if (config.getLogSampleReceive() == 0) {
+                System.out.println("(默认不打印消息内容，设置 mqtt.log.sample.receive=1 可显示每条消息)");
+            }
+            System.out.println();
             return true;
             
         } catch (MqttException e) {
@@ -110,41 +216,84 @@ public class MqttSubscriber {
     }
     
     /**
-     * 处理接收到的消息
+     * 以消费组成员身份订阅（共享订阅 $share/组名/主题）
+     * 同组的订阅者分摊匹配的消息，每条消息只交给组内一个成员
+     */
+    public boolean subscribe(String topic, String group) {
+        String filter;
+        try {
+            filter = TopicRouter.sharedFilter(group, topic);
+        } catch (IllegalArgumentException e) {
+            System.err.println("✗ 订阅失败: " + e.getMessage());
+            return false;
+        }
+        return subscribe(filter);
+    }
+    
+    /**
+     * 处理接收到的消息（在分发线程中执行）
      */
     private void handleMessage(String topic, MqttMessage message) {
-        messageCount++;
+        int count = messageCount.incrementAndGet();
+        long start = System.nanoTime();
         
         try {
-            String payload = new String(message.getPayload(), "UTF-8");
+            // 自动解压压缩过的负载
+            byte[] payload = compressor.decompress(message.getPayload());
             
-            System.out.println("← [" + messageCount + "] 收到消息 (主题: " + topic + ")");
-            System.out.println("  QoS: " + message.getQos());
+            // 过滤重连后重复投递的 QoS 1/2 消息
+            if (duplicateFilter != null && message.getQos() > 0 && duplicateFilter.isDuplicate(topic, payload)) {
+                if (events.sample(EventSink.Type.RECEIVE, EventSink.Level.DEBUG)) {
+                    events.log(EventSink.Level.DEBUG, "  重复消息已过滤 (主题: " + topic + ")");
+                }
+                return;
+            }
             
-            // 尝试解析JSON
-            try {
-                JsonObject jsonObject = gson.fromJson(payload, JsonObject.class);
-                System.out.println("  内容:");
-                System.out.println(gson.toJson(jsonObject));
-            } catch (JsonSyntaxException e) {
-                // 不是JSON格式，直接显示文本
-                System.out.println("  内容: " + payload);
+            // 聚合的遥测主题只更新窗口统计，由窗口结束时的摘要代替逐条输出
+            if (aggregator != null && aggregator.matches(topic)) {
+                aggregator.add(topic, payload, System.currentTimeMillis());
+                return;
             }
             
-            System.out.println();  // 空行分隔
+            // 只有抽样命中的消息才格式化输出（默认只计数）
+            if (events.sample(EventSink.Type.RECEIVE, EventSink.Level.INFO)) {
+                // 按负载头选择解码器（无负载头按JSON/文本显示）
+                events.log(EventSink.Level.INFO, "← [" + count + "] 收到消息 (主题: " + topic + ")"
+                    + "\n  QoS: " + message.getQos()
+                    + "\n  类型: " + (PayloadCodecs.hasHeader(payload)
+                        ? codecs.codecOf(payload).contentType() : JsonPayloadCodec.CONTENT_TYPE)
+                    + "\n  内容: " + codecs.toDisplayString(payload)
+                    + "\n");  // 空行分隔
+            }
             
         } catch (Exception e) {
-            System.err.println("✗ 处理消息时出错: " + e.getMessage());
+            events.error("✗ 处理消息时出错: " + e.getMessage());
+        } finally {
+            metrics.recordHandler(System.nanoTime() - start);
         }
     }
     
+    /**
+     * 把窗口摘要发布到派生主题（在聚合定时线程中执行）
+     * 经过发布流水线：计入连接的发布窗口，窗口已满时排队而不阻塞定时线程，断线时进入离线发送缓冲区
+     */
+    private void publishSummary(String topic, byte[] payload) {
+        CompletableFuture<IMqttDeliveryToken> future = pipeline.publishWhenReady(payload, topic, config.getQos());
+        future.exceptionally(error -> {
+            events.error("✗ 发布窗口统计失败 (主题: " + topic + "): " + error.getMessage());
+            return null;
+        });
+    }
+    
     /**
      * 取消订阅
      */
     public boolean unsubscribe(String topic) {
+        MqttConnectionManager current = connection;
         try {
-            if (client != null && client.isConnected()) {
-                client.unsubscribe(topic);
+            if (current != null) {
+                // 共享连接上其他使用者还订阅该过滤器时只取消本订阅者的登记
+                current.unsubscribe(topic, listener);
                 System.out.println("✓ 已取消订阅: " + topic);
                 return true;
             }
@@ -158,18 +307,96 @@ public class MqttSubscriber {
      * 断开连接
      */
     public void disconnect() {
-        try {
-            if (client != null && client.isConnected()) {
-                client.disconnect();
-                System.out.println("\n总共接收了 " + messageCount + " 条消息");
-                System.out.println("已断开连接");
+        if (aggregator != null) {
+            aggregator.stop();
+        }
+        pipeline.detach();
+        // 释放连接，最后一个使用者释放时才真正断开
+        MqttConnectionManager current = connection;
+        if (current != null) {
+            current.removeListener(listener);
+            current.release();
+            connection = null;
+            connected = false;
+            System.out.println("\n总共接收了 " + messageCount.get() + " 条消息");
+            if (duplicateFilter != null) {
+                System.out.println("重复消息过滤: " + duplicateFilter);
             }
-            if (client != null) {
-                client.close();
+            if (aggregator != null) {
+                System.out.println("窗口聚合: " + aggregator);
             }
-        } catch (MqttException e) {
-            System.err.println("断开连接时出错: " + e.getMessage());
         }
+        
+        if (dispatcher != null) {
+            // 处理完已接收的消息
+            dispatcher.shutdown(5000);
+        }
+        events.close();
+        metrics.stop();
+    }
+    
+    /**
+     * 是否已连接
+     */
+    public boolean isConnected() {
+        MqttConnectionManager current = connection;
+        return connected && current != null && current.isConnected();
+    }
+    
+    /**
+     * 底层连接（同一 Broker 的发布者、订阅者和通用客户端共享），未连接时返回 null
+     */
+    public MqttConnectionManager getConnection() {
+        return connection;
+    }
+    
+    /**
+     * 消费组名，普通订阅者返回 null
+     */
+    public String getGroup() {
+        return group;
+    }
+    
+    /**
+     * 已接收、尚未处理完的消息数（消费积压）
+     */
+    public int getBacklog() {
+        return backlog.get();
+    }
+    
+    /**
+     * 已处理的消息数（消费组内各成员的分配情况）
+     */
+    public int getMessageCount() {
+        return messageCount.get();
+    }
+    
+    /**
+     * 消息事件日志（接收的计数和抽样日志）
+     */
+    public EventSink getEvents() {
+        return events;
+    }
+    
+    /**
+     * 重复消息过滤器，未启用时返回 null
+     */
+    public DuplicateFilter getDuplicateFilter() {
+        return duplicateFilter;
+    }
+    
+    /**
+     * 窗口聚合，未配置 mqtt.aggregate.topics 时返回 null
+     */
+    public WindowedAggregator getAggregator() {
+        return aggregator;
+    }
+    
+    /**
+     * 运行指标
+     */
+    public ClientMetrics getMetrics() {
+        return metrics;
     }
     
     /**
@@ -0,0 +1,91 @@
+package com.example.mqtt;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * 连接使用的协议实现（mqtt.protocol）
+ * {@link MqttConnectionManager} 只通过这个接口收发报文，协议版本之间的差异（连接选项、报文属性）由实现负责。
+ * 接口沿用 Paho v3 的令牌、消息和回调类型，上层的发布者、订阅者不需要关心协议版本。
+ */
+interface MqttTransport {
+
+    /**
+     * 按配置的协议版本创建
+     *
+     * @param pingScheduler 心跳定时线程（所有连接共用）
+     */
+    static MqttTransport create(MqttConfig config, String clientId, ScheduledExecutorService pingScheduler)
+            throws MqttException {
+        switch (config.getProtocolVersion()) {
+            case 5:
+                return new Mqtt5Transport(config, clientId, pingScheduler);
+            default:
+                return new Mqtt3Transport(config, clientId, pingScheduler);
+        }
+    }
+
+    /**
+     * 设置连接事件和消息的回调（连接前调用）
+     */
+    void setCallback(MqttCallbackExtended callback);
+
+    /**
+     * 异步连接（首次连接和断线重连都使用）
+     */
+    IMqttToken connect(IMqttActionListener callback) throws MqttException;
+
+    boolean isConnected();
+
+    /**
+     * 改为手动确认收到的 QoS 1/2 消息（连接前调用）：调用 {@link #messageArrivedComplete} 后才发送确认，
+     * 未确认的消息占用 Broker 给本客户端的在途配额
+     *
+     * @param receiveMaximum 未确认消息上限，MQTT 5 下作为本客户端的接收上限（Receive Maximum，0 = 不修改）；
+     *                       3.1.1 没有接收上限，由 Broker 自己的在途消息设置限制
+     */
+    void setManualAcks(int receiveMaximum);
+
+    /**
+     * 确认一条手动确认的消息（QoS 1 发送 PUBACK，QoS 2 发送 PUBCOMP）
+     */
+    void messageArrivedComplete(int messageId, int qos) throws MqttException;
+
+    /**
+     * 异步发布，userContext 通过令牌带回 deliveryComplete 回调
+     */
+    IMqttDeliveryToken publish(String topic, MqttMessage message, Object userContext, IMqttActionListener callback)
+        throws MqttException;
+
+    /**
+     * 异步订阅，令牌的 getGrantedQos() 中被拒绝的过滤器为 0x80
+     */
+    IMqttToken subscribe(String[] topics, int[] qos, IMqttActionListener callback) throws MqttException;
+
+    IMqttToken unsubscribe(String topic) throws MqttException;
+
+    IMqttToken disconnect() throws MqttException;
+
+    void close() throws MqttException;
+
+    /**
+     * Broker 允许的在途消息上限（MQTT 5 CONNACK 的 Receive Maximum，未限制时返回 0）
+     */
+    int getServerReceiveMaximum();
+
+    /**
+     * Broker 允许本客户端使用的主题别名数（MQTT 5 CONNACK 的 Topic Alias Maximum，3.1.1 为 0）
+     */
+    int getServerTopicAliasMaximum();
+
+    /**
+     * 协议版本（3 = MQTT 3.1.1，5 = MQTT 5）
+     */
+    int getProtocolVersion();
+}
@@ -0,0 +1,353 @@
+package com.example.mqtt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 离线发送缓冲区
+ * 连接断开（自动重连期间）时暂存待发布的消息，重连成功后按原顺序以限定速率补发，
+ * 避免大量设备同时重连时集中冲击Broker。
+ *
+ * 消息先进入有界的内存环形缓冲区，内存已满时追加到磁盘段文件，磁盘也达到上限时丢弃新消息并计数。
+ * 缓冲区非空时新发布的消息同样进入缓冲区排队，保证消息顺序不因补发而打乱。
+ * 缓冲区只用于断线期间的暂存，不跨进程重启保留（重启后的恢复由 mqtt.persistence 负责已发出的消息）。
+ */
+public class OutboundSpool {
+
+    /**
+     * 消息交给缓冲区的结果
+     */
+    public enum OfferResult {
+        /** 缓冲区为空且已连接，调用方直接发送 */
+        BYPASS,
+        /** 已暂存 */
+        SPOOLED,
+        /** 缓冲区已满，消息被丢弃 */
+        DROPPED
+    }
+
+    /**
+     * 补发消息的发送方
+     */
+    public interface Sender {
+        /**
+         * 发送一条补发消息
+         *
+         * @return 消息已交给连接返回 true；连接不可用返回 false，等待下次重连后继续补发
+         */
+        boolean send(String topic, byte[] payload, int qos);
+    }
+
+    private final String name;
+    private final Sender sender;
+    private final long drainIntervalNanos;
+
+    // 内存环形缓冲区（保存最早的消息）
+    private final String[] topics;
+    private final byte[][] payloads;
+    private final byte[] qosLevels;
+    private int head;
+    private int memoryCount;
+
+    // 磁盘溢出段（保存内存放不下的较新消息）
+    private final File spoolFile;
+    private final long maxDiskBytes;
+    private FileChannel diskChannel;
+    private long diskReadPosition;
+    private long diskWritePosition;
+    private int diskCount;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong drainedCount = new AtomicLong();
+    private Thread drainer;
+    private volatile boolean closed;
+
+    /**
+     * @param name         名称（通常为客户端ID），用于磁盘文件名和线程名
+     * @param memorySize   内存缓冲区可容纳的消息数
+     * @param directory    磁盘溢出文件所在目录
+     * @param maxDiskBytes 磁盘溢出文件上限（字节），0 表示不使用磁盘
+     * @param drainRate    重连后每秒补发的消息数，0 表示不限速
+     */
+    public OutboundSpool(String name, int memorySize, String directory, long maxDiskBytes, int drainRate, Sender sender) {
+        if (memorySize < 1) {
+            throw new IllegalArgumentException("发送缓冲区大小必须大于0: " + memorySize);
+        }
+        this.name = name;
+        this.sender = sender;
+        this.drainIntervalNanos = drainRate > 0 ? 1_000_000_000L / drainRate : 0;
+        this.topics = new String[memorySize];
+        this.payloads = new byte[memorySize][];
+        this.qosLevels = new byte[memorySize];
+        this.maxDiskBytes = maxDiskBytes;
+        this.spoolFile = new File(directory, "spool-" + name.replaceAll("[^A-Za-z0-9._-]", "_") + ".dat");
+    }
+
+    /**
+     * 根据配置创建发送缓冲区
+     */
+    public static OutboundSpool fromConfig(String name, MqttConfig config, Sender sender) {
+        return new OutboundSpool(name, config.getSpoolMemorySize(), config.getPersistenceDir(),
+            config.getSpoolDiskMaxMb() * 1024L * 1024L, config.getSpoolDrainRate(), sender);
+    }
+
+    /**
+     * 交给缓冲区一条待发布的消息
+     *
+     * @param disconnected 当前是否处于断开状态；已连接且缓冲区为空时返回 BYPASS，由调用方直接发送
+     */
+    public synchronized OfferResult offer(String topic, byte[] payload, int qos, boolean disconnected) {
+        if (closed) {
+            return disconnected ? OfferResult.DROPPED : OfferResult.BYPASS;
+        }
+        if (!disconnected && memoryCount == 0 && diskCount == 0) {
+            return OfferResult.BYPASS;
+        }
+
+        if (diskCount == 0 && memoryCount < topics.length) {
+            int tail = (head + memoryCount) % topics.length;
+            topics[tail] = topic;
+            payloads[tail] = payload;
+            qosLevels[tail] = (byte) qos;
+            memoryCount++;
+        } else if (!appendToDisk(topic, payload, qos)) {
+            droppedCount.incrementAndGet();
+            return OfferResult.DROPPED;
+        }
+
+        if (!disconnected) {
+            // 已连接但还有未补发的消息（排在其后），确保补发线程在运行
+            startDrainer();
+        }
+        return OfferResult.SPOOLED;
+    }
+
+    /**
+     * 开始补发（在 connectComplete 回调中调用）
+     */
+    public synchronized void drain() {
+        if (!closed && (memoryCount > 0 || diskCount > 0)) {
+            startDrainer();
+        }
+    }
+
+    private void startDrainer() {
+        if (drainer != null) {
+            return;
+        }
+        drainer = new Thread(this::drainLoop, "mqtt-spool-drain-" + name);
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    private void drainLoop() {
+        long nextSendNanos = System.nanoTime();
+        try {
+            while (!closed) {
+                String topic;
+                byte[] payload;
+                int qos;
+                synchronized (this) {
+                    if (memoryCount == 0 && diskCount > 0) {
+                        refillFromDisk();
+                    }
+                    if (memoryCount == 0) {
+                        drainer = null;
+                        return;
+                    }
+                    topic = topics[head];
+                    payload = payloads[head];
+                    qos = qosLevels[head];
+                }
+
+                if (drainIntervalNanos > 0) {
+                    long delay = nextSendNanos - System.nanoTime();
+                    if (delay > 0) {
+                        LockSupport.parkNanos(delay);
+                    }
+                    nextSendNanos = Math.max(System.nanoTime(), nextSendNanos) + drainIntervalNanos;
+                }
+
+                if (!sender.send(topic, payload, qos)) {
+                    // 连接又断开，等待下次 connectComplete
+                    synchronized (this) {
+                        drainer = null;
+                    }
+                    return;
+                }
+
+                // 只有补发线程会移除消息，发送期间队首保持不变
+                synchronized (this) {
+                    topics[head] = null;
+                    payloads[head] = null;
+                    head = (head + 1) % topics.length;
+                    memoryCount--;
+                }
+                drainedCount.incrementAndGet();
+            }
+        } catch (RuntimeException e) {
+            System.err.println("✗ 补发缓冲消息出错: " + e.getMessage());
+            synchronized (this) {
+                drainer = null;
+            }
+        }
+    }
+
+    /**
+     * 磁盘记录格式：长度(4) + QoS(1) + 主题长度(2) + 主题 + 负载
+     */
+    private boolean appendToDisk(String topic, byte[] payload, int qos) {
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 2 + topicBytes.length + payload.length;
+        if (diskWritePosition + 4 + length > maxDiskBytes) {
+            return false;
+        }
+
+        try {
+            if (diskChannel == null) {
+                File directory = spoolFile.getParentFile();
+                if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+                    throw new IOException("无法创建目录: " + directory);
+                }
+                diskChannel = new RandomAccessFile(spoolFile, "rw").getChannel();
+                diskChannel.truncate(0);
+            }
+            ByteBuffer record = ByteBuffer.allocate(4 + length);
+            record.putInt(length);
+            record.put((byte) qos);
+            record.putShort((short) topicBytes.length);
+            record.put(topicBytes);
+            record.put(payload);
+            record.flip();
+            while (record.hasRemaining()) {
+                diskWritePosition += diskChannel.write(record, diskWritePosition);
+            }
+            diskCount++;
+            return true;
+        } catch (IOException e) {
+            System.err.println("✗ 写入发送缓冲文件失败: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 从磁盘按顺序读入消息，直到内存缓冲区填满或磁盘读完
+     */
+    private void refillFromDisk() {
+        try {
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+            while (diskCount > 0 && memoryCount < topics.length) {
+                lengthBuffer.clear();
+                readFully(lengthBuffer, diskReadPosition);
+                int length = lengthBuffer.getInt(0);
+                ByteBuffer record = ByteBuffer.allocate(length);
+                readFully(record, diskReadPosition + 4);
+                record.flip();
+
+                int qos = record.get();
+                byte[] topicBytes = new byte[record.getShort() & 0xffff];
+                record.get(topicBytes);
+                byte[] payload = new byte[record.remaining()];
+                record.get(payload);
+
+                int tail = (head + memoryCount) % topics.length;
+                topics[tail] = new String(topicBytes, StandardCharsets.UTF_8);
+                payloads[tail] = payload;
+                qosLevels[tail] = (byte) qos;
+                memoryCount++;
+                diskReadPosition += 4 + length;
+                diskCount--;
+            }
+            if (diskCount == 0) {
+                diskChannel.truncate(0);
+                diskReadPosition = 0;
+                diskWritePosition = 0;
+            }
+        } catch (IOException e) {
+            // 磁盘内容无法读取，剩余消息计为丢弃
+            System.err.println("✗ 读取发送缓冲文件失败: " + e.getMessage());
+            droppedCount.addAndGet(diskCount);
+            diskCount = 0;
+            diskReadPosition = 0;
+            diskWritePosition = 0;
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = diskChannel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("发送缓冲文件被截断");
+            }
+        }
+    }
+
+    /**
+     * 缓冲区中等待补发的消息数（内存 + 磁盘）
+     */
+    public synchronized int getDepth() {
+        return memoryCount + diskCount;
+    }
+
+    /**
+     * 溢出到磁盘的消息数
+     */
+    public synchronized int getDiskDepth() {
+        return diskCount;
+    }
+
+    /**
+     * 因缓冲区已满而丢弃的消息数
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 已补发的消息数
+     */
+    public long getDrainedCount() {
+        return drainedCount.get();
+    }
+
+    /**
+     * 关闭缓冲区，未补发的消息被丢弃
+     *
+     * @return 被丢弃的消息数
+     */
+    public int close() {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            thread = drainer;
+        }
+        if (thread != null) {
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            int remaining = memoryCount + diskCount;
+            memoryCount = 0;
+            diskCount = 0;
+            if (diskChannel != null) {
+                try {
+                    diskChannel.close();
+                } catch (IOException e) {
+                    // 忽略
+                }
+                diskChannel = null;
+                spoolFile.delete();
+            }
+            return remaining;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.mqtt;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * 可复用的负载缓冲区
+ * 每个编码线程持有一个实例，编码时先写入缓冲区，最后复制出精确长度的负载
+ */
+class PayloadBuffer extends ByteArrayOutputStream {
+
+    PayloadBuffer(int initialSize) {
+        super(initialSize);
+    }
+
+    void writeByte(int b) {
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    void writeBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(count + length);
+        System.arraycopy(bytes, offset, buf, count, length);
+        count += length;
+    }
+
+    /**
+     * 按大端序写入 length 个字节
+     */
+    void writeBigEndian(long value, int length) {
+        ensureCapacity(count + length);
+        for (int shift = (length - 1) * 8; shift >= 0; shift -= 8) {
+            buf[count++] = (byte) (value >>> shift);
+        }
+    }
+
+    byte[] array() {
+        return buf;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buf.length) {
+            byte[] grown = new byte[Math.max(capacity, buf.length << 1)];
+            System.arraycopy(buf, 0, grown, 0, count);
+            buf = grown;
+        }
+    }
+}
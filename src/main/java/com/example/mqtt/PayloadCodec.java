@@ -0,0 +1,33 @@
+package com.example.mqtt;
+
+/**
+ * 消息负载编解码器
+ * 负责对象与消息负载字节之间的转换。
+ *
+ * 除JSON外，编码结果以2字节头开始：0x00 + 编解码器ID（见 {@link PayloadCodecs}），
+ * 订阅端据此选择解码器，因此不同编码的消息可以共用同一个主题。
+ * JSON负载不加头，保持与普通MQTT客户端兼容。
+ */
+public interface PayloadCodec {
+
+    /**
+     * 编解码器ID（1-15），写入负载头
+     */
+    int id();
+
+    /**
+     * 编码的内容类型，如 application/json
+     */
+    String contentType();
+
+    /**
+     * 编码对象，返回完整的消息负载（包含负载头）
+     */
+    byte[] encode(Object data);
+
+    /**
+     * 解码负载正文（不含负载头）
+     * 返回由 Map / List / String / Number / Boolean / null 组成的结构
+     */
+    Object decode(byte[] data, int offset, int length);
+}
@@ -0,0 +1,193 @@
+package com.example.mqtt;
+
+import com.google.gson.Gson;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 负载编解码器注册表
+ * 按主题过滤器选择发布时使用的编解码器，并根据负载头识别接收到的消息编码。
+ *
+ * 负载格式：
+ * - JSON：原样发送，不加负载头
+ * - 其它编码：0x00 + 编解码器ID + 编码正文
+ * 合法的JSON文本不会以0x00开头，因此两种格式可以共用同一个主题。
+ */
+public class PayloadCodecs {
+    public static final int MAGIC = 0x00;
+    public static final int HEADER_LENGTH = 2;
+
+    private static final int MAX_CODEC_ID = 15;
+    private static final int MAX_RESOLVED_TOPICS = 10000;
+    private static final Gson DISPLAY_GSON = new Gson();
+
+    private final PayloadCodec[] codecsById = new PayloadCodec[MAX_CODEC_ID + 1];
+    private final Map<String, PayloadCodec> codecsByName = new ConcurrentHashMap<>();
+    private final TopicRouter<PayloadCodec> topicCodecs = new TopicRouter<>();
+    private final Map<String, PayloadCodec> resolvedTopics = new ConcurrentHashMap<>();
+    private volatile PayloadCodec defaultCodec;
+
+    public PayloadCodecs() {
+        JsonPayloadCodec json = new JsonPayloadCodec();
+        register("json", json);
+        register("cbor", new CborPayloadCodec());
+        register("sensor", new SensorReadingCodec());
+        this.defaultCodec = json;
+    }
+
+    /**
+     * 根据配置创建注册表
+     * mqtt.codec.default 指定默认编码，mqtt.codec.topics 按 "过滤器=编码名" 逗号分隔指定主题编码
+     */
+    public static PayloadCodecs fromConfig(MqttConfig config) {
+        PayloadCodecs codecs = new PayloadCodecs();
+        codecs.setDefaultCodec(config.getDefaultCodec());
+
+        String topics = config.getCodecTopics();
+        if (topics != null && !topics.trim().isEmpty()) {
+            for (String mapping : topics.split(",")) {
+                int separator = mapping.lastIndexOf('=');
+                if (separator <= 0) {
+                    System.out.println("⚠ 忽略无效的编码配置: " + mapping);
+                    continue;
+                }
+                codecs.useCodec(mapping.substring(0, separator).trim(), mapping.substring(separator + 1).trim());
+            }
+        }
+        return codecs;
+    }
+
+    /**
+     * 注册编解码器
+     */
+    public void register(String name, PayloadCodec codec) {
+        int id = codec.id();
+        if (id < 1 || id > MAX_CODEC_ID) {
+            throw new IllegalArgumentException("编解码器ID必须在1-" + MAX_CODEC_ID + "之间: " + id);
+        }
+        codecsById[id] = codec;
+        codecsByName.put(name, codec);
+    }
+
+    /**
+     * 设置默认编解码器
+     */
+    public void setDefaultCodec(String name) {
+        this.defaultCodec = requireCodec(name);
+        resolvedTopics.clear();
+    }
+
+    /**
+     * 为匹配主题过滤器的主题指定编解码器
+     */
+    public void useCodec(String topicFilter, String name) {
+        topicCodecs.add(topicFilter, requireCodec(name));
+        resolvedTopics.clear();
+    }
+
+    /**
+     * 按名称获取编解码器
+     */
+    public PayloadCodec getCodec(String name) {
+        return codecsByName.get(name);
+    }
+
+    /**
+     * 获取主题发布时使用的编解码器
+     */
+    public PayloadCodec codecFor(String topic) {
+        PayloadCodec codec = resolvedTopics.get(topic);
+        if (codec != null) {
+            return codec;
+        }
+
+        PayloadCodec[] found = new PayloadCodec[1];
+        topicCodecs.match(topic, found, (candidate, t, result) -> {
+            if (result[0] == null) {
+                result[0] = candidate;
+            }
+        });
+        codec = found[0] != null ? found[0] : defaultCodec;
+
+        if (resolvedTopics.size() >= MAX_RESOLVED_TOPICS) {
+            resolvedTopics.clear();
+        }
+        resolvedTopics.put(topic, codec);
+        return codec;
+    }
+
+    /**
+     * 按主题对应的编解码器编码对象
+     */
+    public byte[] encode(String topic, Object data) {
+        return codecFor(topic).encode(data);
+    }
+
+    /**
+     * 识别负载使用的编解码器
+     * 没有负载头的消息视为JSON
+     */
+    public PayloadCodec codecOf(byte[] payload) {
+        if (hasHeader(payload)) {
+            PayloadCodec codec = codecsById[payload[1]];
+            if (codec == null) {
+                throw new IllegalArgumentException("未知的编解码器ID: " + payload[1]);
+            }
+            return codec;
+        }
+        return codecsById[JsonPayloadCodec.ID];
+    }
+
+    /**
+     * 解码负载
+     */
+    public Object decode(byte[] payload) {
+        PayloadCodec codec = codecOf(payload);
+        int offset = hasHeader(payload) ? HEADER_LENGTH : 0;
+        return codec.decode(payload, offset, payload.length - offset);
+    }
+
+    /**
+     * 把负载转换为便于显示的文本
+     * 无负载头的消息直接按UTF-8显示，二进制编码的消息解码后以紧凑JSON显示
+     */
+    public String toDisplayString(byte[] payload) {
+        if (PayloadCompressor.isCompressed(payload)) {
+            return "(压缩负载, " + payload.length + " 字节)";
+        }
+        if (!hasHeader(payload)) {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+        try {
+            return DISPLAY_GSON.toJson(decode(payload));
+        } catch (RuntimeException e) {
+            return "(无法解码的负载, " + payload.length + " 字节)";
+        }
+    }
+
+    /**
+     * 负载是否带有编解码器头
+     */
+    public static boolean hasHeader(byte[] payload) {
+        return payload.length >= HEADER_LENGTH && payload[0] == MAGIC
+            && payload[1] > 0 && payload[1] <= MAX_CODEC_ID;
+    }
+
+    /**
+     * 写入负载头
+     */
+    static void writeHeader(PayloadBuffer out, int codecId) {
+        out.writeByte(MAGIC);
+        out.writeByte(codecId);
+    }
+
+    private PayloadCodec requireCodec(String name) {
+        PayloadCodec codec = codecsByName.get(name);
+        if (codec == null) {
+            throw new IllegalArgumentException("未知的编解码器: " + name);
+        }
+        return codec;
+    }
+}
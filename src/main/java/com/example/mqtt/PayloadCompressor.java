@@ -0,0 +1,191 @@
+package com.example.mqtt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 负载压缩器
+ * 使用带预置字典的 Deflate 压缩超过阈值的负载。预置字典包含消息中常见的字段名和取值，
+ * 即使是几百字节的小消息也能获得可观的压缩率。
+ *
+ * 压缩后的负载格式：0x00 + 0x40（压缩标记）+ 字典ID + Deflate数据，
+ * 解压后得到原始负载（可能带有编解码器负载头），因此压缩和未压缩的消息可以共用同一个主题。
+ * Deflater/Inflater 按线程复用，避免每条消息分配本地（native）压缩状态。
+ */
+public class PayloadCompressor {
+    public static final int COMPRESSED_MARKER = 0x40;
+    public static final int HEADER_LENGTH = 3;
+    public static final int BUILTIN_DICTIONARY_ID = 1;
+
+    /** MQTT协议允许的最大负载长度 */
+    private static final int MAX_PAYLOAD_LENGTH = 256 * 1024 * 1024;
+
+    /**
+     * 内置字典：按出现频率从低到高排列（Deflate优先匹配靠近末尾的内容）
+     */
+    private static final byte[] BUILTIN_DICTIONARY = (
+        "\"warning\"\"alarm\"\"offline\"\"message\":\"\"value\":\"unit\":\"device\":\"sensor\":"
+        + "\"type\":\"data\":\"name\":true,false,null,"
+        + "\"status\":\"normal\"}{\"id\":\"timestamp\":\"20\"temperature\":\"humidity\":"
+        + ",\"status\":\"normal\",\"temperature\":,\"humidity\":,\"timestamp\":\"20").getBytes(StandardCharsets.UTF_8);
+
+    private final boolean enabled;
+    private final int threshold;
+    private final int level;
+    private final int dictionaryId;
+    private final byte[][] dictionaries = new byte[256][];
+
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+    private final ThreadLocal<PayloadBuffer> buffers = ThreadLocal.withInitial(() -> new PayloadBuffer(1024));
+    private final ThreadLocal<byte[]> chunks = ThreadLocal.withInitial(() -> new byte[4096]);
+
+    public PayloadCompressor(boolean enabled, int threshold, int level) {
+        this(enabled, threshold, level, BUILTIN_DICTIONARY_ID, null);
+    }
+
+    /**
+     * @param dictionaryId 自定义字典ID（2-255），dictionary 为 null 时使用内置字典
+     */
+    public PayloadCompressor(boolean enabled, int threshold, int level, int dictionaryId, byte[] dictionary) {
+        this.enabled = enabled;
+        this.threshold = threshold;
+        this.level = level;
+        this.dictionaries[BUILTIN_DICTIONARY_ID] = BUILTIN_DICTIONARY;
+        if (dictionary != null) {
+            if (dictionaryId <= BUILTIN_DICTIONARY_ID || dictionaryId > 255) {
+                throw new IllegalArgumentException("自定义字典ID必须在2-255之间: " + dictionaryId);
+            }
+            this.dictionaries[dictionaryId] = dictionary;
+            this.dictionaryId = dictionaryId;
+        } else {
+            this.dictionaryId = BUILTIN_DICTIONARY_ID;
+        }
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(this.level));
+    }
+
+    /**
+     * 根据配置创建压缩器
+     */
+    public static PayloadCompressor fromConfig(MqttConfig config) {
+        String dictionaryPath = config.getCompressionDictionary();
+        byte[] dictionary = null;
+        if (dictionaryPath != null && !dictionaryPath.isEmpty()) {
+            dictionary = loadDictionary(dictionaryPath);
+        }
+        return new PayloadCompressor(config.isCompressionEnabled(), config.getCompressionThreshold(),
+            config.getCompressionLevel(), config.getCompressionDictionaryId(), dictionary);
+    }
+
+    /**
+     * 注册额外的解压字典（用于解压其它发布者使用自定义字典压缩的消息）
+     */
+    public void registerDictionary(int id, byte[] dictionary) {
+        if (id <= BUILTIN_DICTIONARY_ID || id > 255) {
+            throw new IllegalArgumentException("自定义字典ID必须在2-255之间: " + id);
+        }
+        dictionaries[id] = dictionary;
+    }
+
+    /**
+     * 压缩负载
+     * 未启用、低于阈值或压缩后没有变小时返回原负载
+     */
+    public byte[] compress(byte[] payload) {
+        if (!enabled || payload.length < threshold) {
+            return payload;
+        }
+
+        Deflater deflater = deflaters.get();
+        PayloadBuffer out = buffers.get();
+        byte[] chunk = chunks.get();
+        deflater.reset();
+        deflater.setDictionary(dictionaries[dictionaryId]);
+        deflater.setInput(payload);
+        deflater.finish();
+
+        out.reset();
+        out.writeByte(PayloadCodecs.MAGIC);
+        out.writeByte(COMPRESSED_MARKER);
+        out.writeByte(dictionaryId);
+        while (!deflater.finished()) {
+            int length = deflater.deflate(chunk);
+            out.writeBytes(chunk, 0, length);
+            if (out.size() >= payload.length) {
+                // 压缩无收益
+                return payload;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 解压负载，未压缩的负载原样返回
+     */
+    public byte[] decompress(byte[] payload) {
+        if (!isCompressed(payload)) {
+            return payload;
+        }
+
+        byte[] dictionary = dictionaries[payload[2] & 0xff];
+        if (dictionary == null) {
+            throw new IllegalArgumentException("未知的压缩字典ID: " + (payload[2] & 0xff));
+        }
+
+        Inflater inflater = inflaters.get();
+        PayloadBuffer out = buffers.get();
+        byte[] chunk = chunks.get();
+        inflater.reset();
+        inflater.setInput(payload, HEADER_LENGTH, payload.length - HEADER_LENGTH);
+
+        out.reset();
+        try {
+            while (!inflater.finished()) {
+                int length = inflater.inflate(chunk);
+                if (length == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput()) {
+                        throw new IllegalArgumentException("压缩数据不完整");
+                    }
+                }
+                out.writeBytes(chunk, 0, length);
+                if (out.size() > MAX_PAYLOAD_LENGTH) {
+                    throw new IllegalArgumentException("解压后的负载超过最大长度");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("压缩数据格式错误: " + e.getMessage(), e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 负载是否为压缩格式
+     */
+    public static boolean isCompressed(byte[] payload) {
+        return payload.length > HEADER_LENGTH
+            && payload[0] == PayloadCodecs.MAGIC && payload[1] == COMPRESSED_MARKER;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private static byte[] loadDictionary(String path) {
+        try (InputStream input = PayloadCompressor.class.getClassLoader().getResourceAsStream(path)) {
+            if (input != null) {
+                return input.readAllBytes();
+            }
+            return Files.readAllBytes(Paths.get(path));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("读取压缩字典失败: " + path, e);
+        }
+    }
+}
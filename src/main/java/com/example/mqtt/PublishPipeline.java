@@ -0,0 +1,385 @@
+package com.example.mqtt;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 发布流水线
+ * {@link MqttClient}、{@link MqttPublisher} 共用的发送路径：离线发送缓冲区 → 发布窗口 → 压缩 → 连接，
+ * 以及发布指标、失败时的流控反馈和确认回调。
+ *
+ * 每个使用者一个实例（指标和离线发送缓冲区按使用者区分）；发布窗口和自适应流控属于连接
+ * （{@link MqttConnectionManager}），由共享该连接的使用者共用。
+ */
+final class PublishPipeline {
+    /** 发送排队等待发布窗口的消息（所有连接共用） */
+    private static volatile ExecutorService sender;
+
+    private final MqttConnectionManager.Listener owner;
+    private final PayloadCodecs codecs;
+    private final PayloadCompressor compressor;
+    private final ClientMetrics metrics;
+    private final EventSink events;
+    private final boolean gauges;
+    private volatile MqttConnectionManager connection;
+    private volatile PublishWindow window;
+    private volatile OutboundSpool spool;
+
+    /**
+     * @param owner 发布方，确认由连接交给它的 deliveryComplete，再调用 {@link #deliveryComplete}
+     */
+    PublishPipeline(MqttConnectionManager.Listener owner, PayloadCodecs codecs, PayloadCompressor compressor,
+                    ClientMetrics metrics, EventSink events) {
+        this(owner, codecs, compressor, metrics, events, true);
+    }
+
+    /**
+     * @param gauges 是否把连接的在途数和窗口大小设为指标的仪表（多个使用者共用同一份指标时为 false，由指标的所有者设置）
+     */
+    PublishPipeline(MqttConnectionManager.Listener owner, PayloadCodecs codecs, PayloadCompressor compressor,
+                    ClientMetrics metrics, EventSink events, boolean gauges) {
+        this.owner = owner;
+        this.codecs = codecs;
+        this.compressor = compressor;
+        this.metrics = metrics;
+        this.events = events;
+        this.gauges = gauges;
+    }
+
+    /**
+     * 使用连接发布（连接前调用，使用连接级的发布窗口）
+     */
+    void attach(MqttConnectionManager acquired) {
+        PublishWindow acquiredWindow = acquired.getPublishWindow();
+        if (gauges) {
+            metrics.setInflightGauge(acquiredWindow::getInflight);
+            metrics.setWindowGauge(acquiredWindow::getLimit);
+        }
+        window = acquiredWindow;
+        connection = acquired;
+    }
+
+    /**
+     * 创建离线发送缓冲区（mqtt.spool.enabled，首次连接成功后调用：之后的断线才会自动重连）
+     */
+    void openSpool(String name, MqttConfig config) {
+        if (spool == null && config.isSpoolEnabled()) {
+            spool = OutboundSpool.fromConfig(name, config, this::sendSpooled);
+        }
+    }
+
+    /**
+     * 重连成功，开始补发缓冲区中的消息
+     */
+    void drainSpool() {
+        OutboundSpool outbound = spool;
+        if (outbound != null) {
+            outbound.drain();
+        }
+    }
+
+    /**
+     * 停止发布：关闭离线发送缓冲区（未补发的消息被丢弃），之后的发布以未连接失败
+     */
+    void detach() {
+        OutboundSpool outbound = spool;
+        if (outbound != null) {
+            int discarded = outbound.close();
+            if (discarded > 0) {
+                System.err.println("⚠ 发送缓冲区中还有 " + discarded + " 条消息未发送，已丢弃");
+            }
+            spool = null;
+        }
+        connection = null;
+    }
+
+    private boolean isConnected() {
+        MqttConnectionManager current = connection;
+        return current != null && current.isConnected();
+    }
+
+    /**
+     * 异步发布，见 {@link MqttClient#publishAsync(byte[], String, int)}
+     */
+    CompletableFuture<IMqttDeliveryToken> publishAsync(byte[] payload, String topic, int qos) {
+        CompletableFuture<IMqttDeliveryToken> spooled = offerToSpool(payload, topic, qos);
+        if (spooled != null) {
+            return spooled;
+        }
+        return send(payload, topic, qos);
+    }
+
+    /**
+     * 不等待发布窗口的异步发布，窗口已满时返回 null
+     */
+    CompletableFuture<IMqttDeliveryToken> tryPublishAsync(byte[] payload, String topic, int qos) {
+        CompletableFuture<IMqttDeliveryToken> spooled = offerToSpool(payload, topic, qos);
+        if (spooled != null) {
+            return spooled;
+        }
+        PublishWindow current = window;
+        if (current == null || !isConnected()) {
+            return notConnected();
+        }
+        long callStart = System.nanoTime();
+        if (!current.tryAcquire()) {
+            return null;
+        }
+        return sendAcquired(current, payload, topic, qos, callStart);
+    }
+
+    /**
+     * 发布窗口已满时排队等待、不阻塞调用方的异步发布
+     */
+    CompletableFuture<IMqttDeliveryToken> publishWhenReady(byte[] payload, String topic, int qos) {
+        CompletableFuture<IMqttDeliveryToken> spooled = offerToSpool(payload, topic, qos);
+        if (spooled != null) {
+            return spooled;
+        }
+        PublishWindow current = window;
+        if (current == null || !isConnected()) {
+            return notConnected();
+        }
+        long callStart = System.nanoTime();
+        CompletableFuture<Void> slot = current.acquireAsync();
+        if (slot.isDone()) {
+            return sendAcquired(current, payload, topic, qos, callStart);
+        }
+        // 在释放窗口的线程（通常是Paho回调线程）之外发送
+        return slot.thenComposeAsync(ignored -> sendAcquired(current, payload, topic, qos, callStart), sender());
+    }
+
+    /**
+     * 阻塞发布，等待发送完成（QoS 1/2 等待Broker确认）
+     */
+    boolean publish(byte[] payload, String topic, int qos) {
+        OutboundSpool outbound = spool;
+        if (outbound == null && !isConnected()) {
+            events.error("✗ 未连接到Broker，无法发布消息");
+            return false;
+        }
+
+        try {
+            if (publishAsync(payload, topic, qos).get() == null) {
+                if (events.sample(EventSink.Type.PUBLISH, EventSink.Level.INFO)) {
+                    events.log(EventSink.Level.INFO, "→ 未连接，消息已暂存到发送缓冲区"
+                        + (outbound != null ? " (待发送: " + outbound.getDepth() + ")" : ""));
+                }
+                return true;
+            }
+            if (events.sample(EventSink.Type.PUBLISH, EventSink.Level.INFO)) {
+                events.log(EventSink.Level.INFO, "→ 发布消息到 '" + topic + "': " + codecs.toDisplayString(payload));
+            }
+            return true;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            events.error("✗ 发布被中断");
+            return false;
+        } catch (ExecutionException e) {
+            events.error("✗ 发布失败: " + e.getCause().getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 批量发布：一次完成整批序列化后连续交给发送线程（不逐条等待确认），
+     * packed 为 true 时整批打包为一个数组作为单条消息发送；返回的 Future 在整批消息都被确认后完成
+     */
+    CompletableFuture<Void> publishBatch(Collection<?> items, String topic, int qos, boolean packed) {
+        if (items.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        PayloadCodec codec = codecs.codecFor(topic);
+        CompletableFuture<?>[] futures;
+        if (packed) {
+            futures = new CompletableFuture<?>[] {
+                publishAsync(codec.encode(items), topic, qos)
+            };
+        } else {
+            byte[][] payloads = new byte[items.size()][];
+            int i = 0;
+            for (Object item : items) {
+                payloads[i++] = codec.encode(item);
+            }
+            futures = new CompletableFuture<?>[payloads.length];
+            for (i = 0; i < payloads.length; i++) {
+                futures[i] = publishAsync(payloads[i], topic, qos);
+            }
+        }
+        if (events.sample(EventSink.Type.PUBLISH, EventSink.Level.INFO)) {
+            events.log(EventSink.Level.INFO, "→ 批量发布 " + items.size() + " 条消息到 '" + topic + "'");
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * 断线或缓冲区中还有未补发的消息时放入离线发送缓冲区，返回对应的 Future；可以直接发送时返回 null
+     */
+    private CompletableFuture<IMqttDeliveryToken> offerToSpool(byte[] payload, String topic, int qos) {
+        OutboundSpool outbound = spool;
+        if (outbound == null) {
+            return null;
+        }
+        switch (outbound.offer(topic, payload, qos, !isConnected())) {
+            case SPOOLED:
+                return CompletableFuture.completedFuture(null);
+            case DROPPED:
+                return CompletableFuture.failedFuture(
+                    new IllegalStateException("发送缓冲区已满，消息被丢弃"));
+            default:
+                return null;
+        }
+    }
+
+    private CompletableFuture<IMqttDeliveryToken> notConnected() {
+        metrics.recordPublishFailure();
+        return CompletableFuture.failedFuture(
+            new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED));
+    }
+
+    /**
+     * 补发缓冲区中的消息
+     *
+     * @return 连接不可用时返回 false，其余情况（包括消息本身无效）视为已处理
+     */
+    private boolean sendSpooled(String topic, byte[] payload, int qos) {
+        if (!isConnected()) {
+            return false;
+        }
+        CompletableFuture<IMqttDeliveryToken> future = send(payload, topic, qos);
+        if (future.isCompletedExceptionally() && !isConnected()) {
+            return false;
+        }
+        future.exceptionally(error -> {
+            events.error("✗ 补发消息失败 (主题: " + topic + "): " + error.getMessage());
+            return null;
+        });
+        return true;
+    }
+
+    /**
+     * 直接在连接上发布（不经过离线发送缓冲区），发布窗口已满时阻塞
+     */
+    private CompletableFuture<IMqttDeliveryToken> send(byte[] payload, String topic, int qos) {
+        PublishWindow current = window;
+        if (current == null || !isConnected()) {
+            return notConnected();
+        }
+
+        long callStart = System.nanoTime();
+        try {
+            current.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        return sendAcquired(current, payload, topic, qos, callStart);
+    }
+
+    /**
+     * 在已占用的窗口位置上发送，Future 完成时释放该位置
+     */
+    private CompletableFuture<IMqttDeliveryToken> sendAcquired(PublishWindow acquired, byte[] payload, String topic,
+                                                                int qos, long callStart) {
+        DeliveryFuture future = new DeliveryFuture(System.nanoTime(), owner);
+        future.whenComplete((token, error) -> acquired.release());
+
+        MqttConnectionManager current = connection;
+        if (current == null) {
+            metrics.recordPublishFailure();
+            future.completeExceptionally(new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED));
+            return future;
+        }
+        try {
+            MqttMessage mqttMessage = new MqttMessage(compressor.compress(payload));
+            mqttMessage.setQos(qos);
+            mqttMessage.setRetained(false);
+
+            current.publish(topic, mqttMessage, future, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken asyncActionToken) {
+                    // 由 deliveryComplete 回调完成
+                }
+
+                @Override
+                public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                    metrics.recordPublishFailure();
+                    AdaptiveRateController control = current.getFlowControl();
+                    if (control != null) {
+                        control.onFailure();
+                    }
+                    future.completeExceptionally(exception);
+                }
+            });
+            metrics.recordPublish(topic, payload.length, System.nanoTime() - callStart);
+        } catch (Exception e) {
+            metrics.recordPublishFailure();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 发布方收到确认（连接的 deliveryComplete 回调）：记录发布到确认的耗时，完成对应的异步发布
+     */
+    @SuppressWarnings("unchecked")
+    void deliveryComplete(IMqttDeliveryToken token) {
+        Object context = token.getUserContext();
+        if (context instanceof DeliveryFuture) {
+            // 流控由连接统一根据确认延迟调整
+            metrics.recordDelivery(System.nanoTime() - ((DeliveryFuture) context).startNanos);
+        }
+        if (context instanceof CompletableFuture) {
+            ((CompletableFuture<IMqttDeliveryToken>) context).complete(token);
+        }
+        if (events.sample(EventSink.Type.DELIVERY, EventSink.Level.DEBUG)) {
+            events.log(EventSink.Level.DEBUG, "  消息已发送 (消息ID: " + token.getMessageId() + ")");
+        }
+    }
+
+    /**
+     * 当前在途（尚未确认）的消息数（连接级）
+     */
+    int getInflightCount() {
+        PublishWindow current = window;
+        return current == null ? 0 : current.getInflight();
+    }
+
+    /**
+     * 离线发送缓冲区，未启用时返回 null
+     */
+    OutboundSpool getSpool() {
+        return spool;
+    }
+
+    private static ExecutorService sender() {
+        ExecutorService executor = sender;
+        if (executor == null) {
+            synchronized (PublishPipeline.class) {
+                executor = sender;
+                if (executor == null) {
+                    // 发送只是交给 Paho 的发送队列，不阻塞；单线程按分配窗口的顺序发出。
+                    // 不使用默认的公共线程池：单核机器上 CompletableFuture 会为每个任务新建一个线程
+                    executor = Executors.newSingleThreadExecutor(r -> {
+                        Thread thread = new Thread(r, "mqtt-publish");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    sender = executor;
+                }
+            }
+        }
+        return executor;
+    }
+}
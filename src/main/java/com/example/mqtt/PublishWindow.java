@@ -0,0 +1,165 @@
+package com.example.mqtt;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 发布窗口
+ * 限制同一连接上在途（已发送但尚未确认）消息的数量，
+ * 窗口已满时阻塞发布方，直到有消息被确认
+ *
+ * 窗口大小可以在运行时调整（见 {@link AdaptiveRateController}），但不超过创建时的上限，
+ * 该上限与 Paho 的 maxInflight 一致；MQTT 5 下还不超过 Broker 声明的接收上限（{@link #setCeiling(int)}）。除阻塞等待外，也支持立即失败（{@link #tryAcquire()}）
+ * 和异步等待（{@link #acquireAsync()}）；释放时优先分配给异步等待者。
+ */
+class PublishWindow {
+    private static final CompletableFuture<Void> GRANTED = CompletableFuture.completedFuture(null);
+
+    private final int maxInflight;
+    private int ceiling;
+    private final ArrayDeque<CompletableFuture<Void>> asyncWaiters = new ArrayDeque<>();
+    private int limit;
+    private int inflight = 0;
+
+    PublishWindow(int maxInflight) {
+        if (maxInflight < 1) {
+            throw new IllegalArgumentException("maxInflight必须大于0: " + maxInflight);
+        }
+        this.maxInflight = maxInflight;
+        this.ceiling = maxInflight;
+        this.limit = maxInflight;
+    }
+
+    /**
+     * 占用一个窗口位置，窗口已满时等待
+     */
+    synchronized void acquire() throws InterruptedException {
+        while (inflight >= limit) {
+            wait();
+        }
+        inflight++;
+    }
+
+    /**
+     * 占用一个窗口位置，窗口已满时立即返回 false
+     */
+    synchronized boolean tryAcquire() {
+        if (inflight >= limit) {
+            return false;
+        }
+        inflight++;
+        return true;
+    }
+
+    /**
+     * 异步占用一个窗口位置，返回的 Future 在分配到位置后完成（在释放位置的线程中）
+     */
+    CompletableFuture<Void> acquireAsync() {
+        synchronized (this) {
+            if (inflight < limit && asyncWaiters.isEmpty()) {
+                inflight++;
+                return GRANTED;
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            asyncWaiters.addLast(waiter);
+            return waiter;
+        }
+    }
+
+    /**
+     * 释放一个窗口位置
+     */
+    void release() {
+        CompletableFuture<Void> granted = null;
+        synchronized (this) {
+            if (inflight > 0) {
+                inflight--;
+                if (asyncWaiters.isEmpty()) {
+                    notify();
+                } else if (inflight < limit) {
+                    inflight++;
+                    granted = asyncWaiters.pollFirst();
+                }
+            }
+        }
+        if (granted != null) {
+            granted.complete(null);
+        }
+    }
+
+    /**
+     * 调整窗口大小（1 到创建时的上限、协商上限之间）
+     */
+    void setLimit(int newLimit) {
+        List<CompletableFuture<Void>> granted = null;
+        synchronized (this) {
+            newLimit = Math.max(1, Math.min(ceiling, newLimit));
+            boolean grown = newLimit > limit;
+            limit = newLimit;
+            if (grown) {
+                while (inflight < limit && !asyncWaiters.isEmpty()) {
+                    if (granted == null) {
+                        granted = new ArrayList<>();
+                    }
+                    inflight++;
+                    granted.add(asyncWaiters.pollFirst());
+                }
+                notifyAll();
+            }
+        }
+        if (granted != null) {
+            for (CompletableFuture<Void> waiter : granted) {
+                waiter.complete(null);
+            }
+        }
+    }
+
+    /**
+     * 设置与 Broker 协商的上限（MQTT 5 Receive Maximum，不超过创建时的上限），窗口超出时立即缩小
+     * 每次连接后重新设置：重连到的 Broker 可能声明不同的上限
+     */
+    void setCeiling(int newCeiling) {
+        int target;
+        synchronized (this) {
+            int previous = ceiling;
+            ceiling = Math.max(1, Math.min(maxInflight, newCeiling));
+            if (limit > ceiling || (limit == previous && ceiling > previous)) {
+                // 缩小到新上限；原来被上限卡住的窗口随上限放大
+                target = ceiling;
+            } else {
+                return;
+            }
+        }
+        setLimit(target);
+    }
+    
+    /**
+     * 当前在途消息数
+     */
+    synchronized int getInflight() {
+        return inflight;
+    }
+
+    /**
+     * 窗口大小的有效上限：创建时的上限和协商上限中较小的一个
+     */
+    synchronized int getCeiling() {
+        return ceiling;
+    }
+
+    /**
+     * 当前窗口大小
+     */
+    synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * 等待分配窗口位置的异步发布数
+     */
+    synchronized int getWaiting() {
+        return asyncWaiters.size();
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.mqtt;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 断线重连调度（指数退避 + 随机抖动）
+ * 代替 Paho 的自动重连（固定从1秒开始翻倍、没有抖动）：Broker 故障切换时，大量客户端在同一时刻断开，
+ * 没有抖动会在同一时刻一起重连，形成连接风暴。
+ *
+ * 第 n 次重试的退避时间为 min(最大延迟, 最小延迟 × 2^n)，实际等待时间在退避时间的一半到全部之间随机分布。
+ * 重连尝试由调用方提供：尝试失败时调用 {@link #retry()}，连接成功时调用 {@link #reset()}。
+ * 尝试应当是异步的（只发起连接，结果在回调中报告），所有连接的重连共用一个定时线程。
+ */
+class Reconnector {
+    private static final int MAX_SHIFT = 30;
+
+    private static volatile ScheduledExecutorService scheduler;
+
+    private final long minDelayMillis;
+    private final long maxDelayMillis;
+    private final Runnable attempt;
+
+    private ScheduledFuture<?> pending;
+    private int failures;
+    private boolean stopped;
+
+    /**
+     * @param minDelayMillis 第一次重连前的退避时间
+     * @param maxDelayMillis 退避时间上限
+     * @param attempt        一次重连尝试（在重连线程中执行，失败时应调用 {@link #retry()}）
+     */
+    Reconnector(long minDelayMillis, long maxDelayMillis, Runnable attempt) {
+        if (minDelayMillis < 1 || maxDelayMillis < minDelayMillis) {
+            throw new IllegalArgumentException("重连延迟配置错误: " + minDelayMillis + " - " + maxDelayMillis);
+        }
+        this.minDelayMillis = minDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.attempt = attempt;
+    }
+
+    /**
+     * 按 mqtt.reconnect.* 配置创建
+     */
+    static Reconnector fromConfig(MqttConfig config, Runnable attempt) {
+        return new Reconnector(config.getReconnectMinDelayMs(), config.getReconnectMaxDelayMs(), attempt);
+    }
+
+    /**
+     * 连接断开，开始重连（已在重连中时忽略）
+     */
+    synchronized void start() {
+        if (stopped || pending != null) {
+            return;
+        }
+        failures = 0;
+        schedule();
+    }
+
+    /**
+     * 本次尝试失败，退避后再试
+     */
+    synchronized void retry() {
+        if (stopped) {
+            return;
+        }
+        failures++;
+        schedule();
+    }
+
+    /**
+     * 连接成功，结束本轮重连
+     */
+    synchronized void reset() {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+        failures = 0;
+    }
+
+    /**
+     * 停止重连（主动断开连接时）
+     */
+    synchronized void stop() {
+        stopped = true;
+        reset();
+    }
+
+    private void schedule() {
+        long delay = nextDelayMillis();
+        pending = scheduler().schedule(this::runAttempt, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void runAttempt() {
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+        }
+        try {
+            attempt.run();
+        } catch (RuntimeException e) {
+            retry();
+        }
+    }
+
+    /**
+     * 下一次重连前的等待时间
+     */
+    long nextDelayMillis() {
+        return backoffMillis(minDelayMillis, maxDelayMillis, failures);
+    }
+
+    /**
+     * 连续失败 failures 次后的等待时间：退避时间 min(最大延迟, 最小延迟 × 2^failures) 的一半加上随机抖动
+     */
+    static long backoffMillis(long minDelayMillis, long maxDelayMillis, int failures) {
+        long backoff = Math.min(maxDelayMillis, minDelayMillis << Math.min(failures, MAX_SHIFT));
+        if (backoff < 0) {
+            backoff = maxDelayMillis;
+        }
+        long half = backoff / 2;
+        return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+    }
+
+    /**
+     * 本轮连续失败的次数
+     */
+    synchronized int getFailures() {
+        return failures;
+    }
+
+    private static ScheduledExecutorService scheduler() {
+        ScheduledExecutorService executor = scheduler;
+        if (executor == null) {
+            synchronized (Reconnector.class) {
+                executor = scheduler;
+                if (executor == null) {
+                    // 重连尝试只发起异步连接，不阻塞线程
+                    executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "mqtt-reconnect");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    scheduler = executor;
+                }
+            }
+        }
+        return executor;
+    }
+}
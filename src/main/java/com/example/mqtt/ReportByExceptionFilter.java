@@ -0,0 +1,262 @@
+package com.example.mqtt;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按变化上报（死区过滤）
+ * 记住每个主题每个字段最近一次发送的值，只有字段变化超出死区，或距上次发送超过最长静默时间（心跳）时才发布。
+ * 变化缓慢的传感器大部分周期的数据与上次相同，过滤后可以大幅减少消息量和Broker负载。
+ *
+ * 数值字段的死区可以是绝对值（0.5）或相对上次发送值的百分比（2%），比较对象是上次<b>发送</b>的值，
+ * 缓慢漂移累积超出死区后也会上报；其他类型的字段只要不相等就算变化。
+ * mqtt.rbe.always.fields 中的字段（例如 id、timestamp）不参与变化判断，每次发布都带上。
+ *
+ * 增量模式下只发送变化的字段（加上 always 字段），心跳时发送完整数据。
+ */
+public class ReportByExceptionFilter {
+    private final double defaultDeadband;
+    private final boolean defaultPercent;
+    private final Map<String, double[]> fieldDeadbands;
+    private final Set<String> alwaysFields;
+    private final long heartbeatNanos;
+    private final boolean delta;
+    private final Map<String, TopicState> states = new HashMap<>();
+
+    private long checked;
+    private long published;
+    private long heartbeats;
+
+    /**
+     * @param deadband        默认死区，以 % 结尾表示百分比，例如 "0.5"、"2%"
+     * @param fieldDeadbands  按字段指定死区，格式: 字段=死区，多个用逗号分隔，例如 temperature=0.2,humidity=2%
+     * @param alwaysFields    不参与变化判断、每次都发送的字段，逗号分隔
+     * @param heartbeatMillis 最长静默时间，超过后即使没有变化也发送完整数据（0 = 不发送心跳）
+     * @param delta           是否只发送变化的字段
+     */
+    public ReportByExceptionFilter(String deadband, String fieldDeadbands, String alwaysFields,
+                                   long heartbeatMillis, boolean delta) {
+        double[] parsed = parseDeadband("mqtt.rbe.deadband", deadband);
+        this.defaultDeadband = parsed[0];
+        this.defaultPercent = parsed[1] != 0;
+        this.fieldDeadbands = new HashMap<>();
+        for (String entry : split(fieldDeadbands)) {
+            int eq = entry.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("mqtt.rbe.deadband.fields 格式错误: " + entry);
+            }
+            String field = entry.substring(0, eq).trim();
+            this.fieldDeadbands.put(field, parseDeadband(field, entry.substring(eq + 1).trim()));
+        }
+        this.alwaysFields = new HashSet<>();
+        Collections.addAll(this.alwaysFields, split(alwaysFields));
+        this.heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis);
+        this.delta = delta;
+    }
+
+    /**
+     * 按 mqtt.rbe.* 配置创建，未启用时返回 null
+     */
+    public static ReportByExceptionFilter fromConfig(MqttConfig config) {
+        if (!config.isRbeEnabled()) {
+            return null;
+        }
+        return new ReportByExceptionFilter(config.getRbeDeadband(), config.getRbeDeadbandFields(),
+            config.getRbeAlwaysFields(), TimeUnit.SECONDS.toMillis(config.getRbeHeartbeatSeconds()),
+            config.isRbeDelta());
+    }
+
+    private static String[] split(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return new String[0];
+        }
+        return value.trim().split("\\s*,\\s*");
+    }
+
+    /**
+     * 解析死区，返回 {值, 是否百分比(1/0)}
+     */
+    private static double[] parseDeadband(String name, String value) {
+        boolean percent = value.endsWith("%");
+        double band = Double.parseDouble(percent ? value.substring(0, value.length() - 1).trim() : value);
+        if (band < 0) {
+            throw new IllegalArgumentException("死区不能为负数 (" + name + "): " + value);
+        }
+        return new double[] {percent ? band / 100 : band, percent ? 1 : 0};
+    }
+
+    /**
+     * 过滤一条数据
+     *
+     * @return 需要发布的数据：完整数据、只含变化字段的增量，或 null（没有超出死区的变化，不需要发布）
+     */
+    public synchronized Map<String, Object> filter(String topic, Map<String, ?> data) {
+        checked++;
+        long now = System.nanoTime();
+        TopicState state = states.computeIfAbsent(topic, t -> new TopicState());
+        boolean heartbeat = isHeartbeatDue(state, now);
+
+        Map<String, Object> changed = null;
+        for (Map.Entry<String, ?> entry : data.entrySet()) {
+            String field = entry.getKey();
+            if (alwaysFields.contains(field) || !isChanged(field, state.lastSent.get(field), entry.getValue())) {
+                continue;
+            }
+            if (changed == null) {
+                changed = new LinkedHashMap<>();
+            }
+            changed.put(field, entry.getValue());
+        }
+
+        if (changed == null && !heartbeat) {
+            return null;
+        }
+        published++;
+        state.lastSentNanos = now;
+        if (heartbeat || !delta) {
+            if (changed == null) {
+                heartbeats++;
+            }
+            // 完整数据：所有字段都以本次的值作为新的参考值
+            for (Map.Entry<String, ?> entry : data.entrySet()) {
+                if (!alwaysFields.contains(entry.getKey())) {
+                    state.lastSent.put(entry.getKey(), entry.getValue());
+                }
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> full = (Map<String, Object>) data;
+            return full;
+        }
+
+        // 增量：只更新发送了的字段，未发送字段继续和原来的参考值比较
+        state.lastSent.putAll(changed);
+        Map<String, Object> report = new LinkedHashMap<>();
+        for (Map.Entry<String, ?> entry : data.entrySet()) {
+            if (alwaysFields.contains(entry.getKey())) {
+                report.put(entry.getKey(), entry.getValue());
+            }
+        }
+        report.putAll(changed);
+        return report;
+    }
+
+    /**
+     * 过滤一条定长二进制传感器读数（二进制格式没有增量，需要上报时发送完整读数）
+     *
+     * @return 是否需要发布
+     */
+    public synchronized boolean accept(String topic, SensorReading reading) {
+        checked++;
+        long now = System.nanoTime();
+        TopicState state = states.computeIfAbsent(topic, t -> new TopicState());
+        boolean heartbeat = isHeartbeatDue(state, now);
+        boolean changed = isChanged("temperature", state.lastSent.get("temperature"), reading.getTemperature())
+            | isChanged("humidity", state.lastSent.get("humidity"), reading.getHumidity())
+            | isChanged("status", state.lastSent.get("status"), reading.getStatus());
+        if (!changed && !heartbeat) {
+            return false;
+        }
+        if (!changed) {
+            heartbeats++;
+        }
+        published++;
+        state.lastSentNanos = now;
+        state.lastSent.put("temperature", reading.getTemperature());
+        state.lastSent.put("humidity", reading.getHumidity());
+        state.lastSent.put("status", reading.getStatus());
+        return true;
+    }
+
+    private boolean isHeartbeatDue(TopicState state, long now) {
+        return state.lastSentNanos == 0 || (heartbeatNanos > 0 && now - state.lastSentNanos >= heartbeatNanos);
+    }
+
+    private boolean isChanged(String field, Object last, Object value) {
+        if (last == null) {
+            return value != null;
+        }
+        if (last instanceof Number && value instanceof Number) {
+            double previous = ((Number) last).doubleValue();
+            double current = ((Number) value).doubleValue();
+            double[] band = fieldDeadbands.get(field);
+            double deadband = band != null ? band[0] : defaultDeadband;
+            boolean percent = band != null ? band[1] != 0 : defaultPercent;
+            if (percent) {
+                deadband *= Math.abs(previous);
+            }
+            return Math.abs(current - previous) > deadband || Double.isNaN(current) != Double.isNaN(previous);
+        }
+        return !Objects.equals(last, value);
+    }
+
+    /**
+     * 忘记一个主题记住的值，该主题的下一条数据完整发送
+     * filter/accept 返回需要发布时就把本次的值当作已发送；发布失败、被丢弃或超时后调用，
+     * 避免订阅端没收到的值被当成参考值，使之后的变化一直被死区过滤掉
+     */
+    public synchronized void invalidate(String topic) {
+        states.remove(topic);
+    }
+
+    /**
+     * 清空记住的值，之后每个主题的下一条数据都完整发送（例如重连后让订阅端重新同步）
+     */
+    public synchronized void reset() {
+        states.clear();
+    }
+
+    /**
+     * 检查过的数据条数
+     */
+    public synchronized long getCheckedCount() {
+        return checked;
+    }
+
+    /**
+     * 实际发布的条数（含心跳）
+     */
+    public synchronized long getPublishedCount() {
+        return published;
+    }
+
+    /**
+     * 因为没有变化而跳过的条数
+     */
+    public synchronized long getSuppressedCount() {
+        return checked - published;
+    }
+
+    /**
+     * 没有变化、因最长静默时间到期而发送的条数
+     */
+    public synchronized long getHeartbeatCount() {
+        return heartbeats;
+    }
+
+    /**
+     * 跳过的数据占比
+     */
+    public synchronized double getSuppressionRate() {
+        return checked == 0 ? 0 : (double) (checked - published) / checked;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("检查 %d, 发布 %d (心跳 %d), 跳过 %d (%.1f%%), 主题 %d",
+            checked, published, heartbeats, checked - published, getSuppressionRate() * 100, states.size());
+    }
+
+    /**
+     * 一个主题上次发送的字段值和发送时间
+     */
+    private static final class TopicState {
+        final Map<String, Object> lastSent = new HashMap<>();
+        long lastSentNanos;
+    }
+}
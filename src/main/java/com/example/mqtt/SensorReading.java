@@ -0,0 +1,102 @@
+package com.example.mqtt;
+
+/**
+ * 传感器读数
+ * 只包含基本类型字段的可复用记录，配合 {@link SensorReadingCodec} 进行定长二进制编解码。
+ * 解码时可反复填充同一个实例，避免每条消息创建对象。
+ */
+public class SensorReading {
+
+    /**
+     * 传感器状态，编码时写入序号（ordinal），只能在末尾追加新状态
+     */
+    public enum Status {
+        NORMAL,
+        WARNING,
+        ALARM,
+        OFFLINE;
+
+        private static final Status[] VALUES = values();
+
+        static Status fromOrdinal(int ordinal) {
+            if (ordinal < 0 || ordinal >= VALUES.length) {
+                throw new IllegalArgumentException("未知的传感器状态: " + ordinal);
+            }
+            return VALUES[ordinal];
+        }
+    }
+
+    private int id;
+    private long timestamp;
+    private double temperature;
+    private double humidity;
+    private Status status = Status.NORMAL;
+
+    public SensorReading() {
+    }
+
+    public SensorReading(int id, long timestamp, double temperature, double humidity, Status status) {
+        set(id, timestamp, temperature, humidity, status);
+    }
+
+    /**
+     * 一次设置所有字段
+     */
+    public SensorReading set(int id, long timestamp, double temperature, double humidity, Status status) {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.temperature = temperature;
+        this.humidity = humidity;
+        this.status = status;
+        return this;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * 采集时间（Unix毫秒时间戳）
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public double getTemperature() {
+        return temperature;
+    }
+
+    public void setTemperature(double temperature) {
+        this.temperature = temperature;
+    }
+
+    public double getHumidity() {
+        return humidity;
+    }
+
+    public void setHumidity(double humidity) {
+        this.humidity = humidity;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    @Override
+    public String toString() {
+        return "SensorReading{id=" + id + ", timestamp=" + timestamp + ", temperature=" + temperature
+            + ", humidity=" + humidity + ", status=" + status + "}";
+    }
+}
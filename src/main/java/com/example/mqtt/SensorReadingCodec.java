@@ -0,0 +1,176 @@
+package com.example.mqtt;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 传感器读数定长二进制编解码器
+ *
+ * 负载布局（大端序，共24字节）：
+ * <pre>
+ * 偏移  长度  字段
+ *  0     1    0x00（负载头）
+ *  1     1    编解码器ID（3）
+ *  2     1    格式版本（1）
+ *  3     4    id           int
+ *  7     8    timestamp    long，Unix毫秒
+ * 15     4    temperature  float
+ * 19     4    humidity     float
+ * 23     1    status       枚举序号
+ * </pre>
+ *
+ * encode/decode 直接读写调用方提供的 ByteBuffer 或 byte[]，不分配对象；
+ * {@link #encode(Object)} / {@link #decode(byte[], int, int)} 是供通用发布和显示路径使用的适配方法。
+ */
+public class SensorReadingCodec implements PayloadCodec {
+    public static final int ID = 3;
+    public static final int VERSION = 1;
+    public static final String CONTENT_TYPE = "application/vnd.sensor-reading.v1";
+
+    /** 含负载头的完整负载长度 */
+    public static final int PAYLOAD_LENGTH = 24;
+    /** 记录正文长度（不含负载头） */
+    public static final int RECORD_LENGTH = PAYLOAD_LENGTH - PayloadCodecs.HEADER_LENGTH;
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    /**
+     * 把读数写入缓冲区当前位置（含负载头），写入 {@link #PAYLOAD_LENGTH} 字节
+     */
+    public static void encode(SensorReading reading, ByteBuffer out) {
+        out.put((byte) PayloadCodecs.MAGIC);
+        out.put((byte) ID);
+        out.put((byte) VERSION);
+        out.putInt(reading.getId());
+        out.putLong(reading.getTimestamp());
+        out.putFloat((float) reading.getTemperature());
+        out.putFloat((float) reading.getHumidity());
+        out.put((byte) reading.getStatus().ordinal());
+    }
+
+    /**
+     * 把读数写入字节数组指定位置（含负载头）
+     */
+    public static void encode(SensorReading reading, byte[] out, int offset) {
+        out[offset] = (byte) PayloadCodecs.MAGIC;
+        out[offset + 1] = (byte) ID;
+        out[offset + 2] = (byte) VERSION;
+        putInt(out, offset + 3, reading.getId());
+        putLong(out, offset + 7, reading.getTimestamp());
+        putInt(out, offset + 15, Float.floatToIntBits((float) reading.getTemperature()));
+        putInt(out, offset + 19, Float.floatToIntBits((float) reading.getHumidity()));
+        out[offset + 23] = (byte) reading.getStatus().ordinal();
+    }
+
+    /**
+     * 从缓冲区当前位置读取一条读数（含负载头）到 into
+     */
+    public static SensorReading decode(ByteBuffer in, SensorReading into) {
+        if (in.remaining() < PAYLOAD_LENGTH) {
+            throw new IllegalArgumentException("传感器读数长度不足: " + in.remaining());
+        }
+        if (in.get() != PayloadCodecs.MAGIC || in.get() != ID) {
+            throw new IllegalArgumentException("不是传感器读数负载");
+        }
+        checkVersion(in.get());
+        return into.set(
+            in.getInt(),
+            in.getLong(),
+            in.getFloat(),
+            in.getFloat(),
+            SensorReading.Status.fromOrdinal(in.get()));
+    }
+
+    /**
+     * 从完整负载（含负载头）读取读数到 into
+     */
+    public static SensorReading decode(byte[] payload, SensorReading into) {
+        if (!isSensorReading(payload)) {
+            throw new IllegalArgumentException("不是传感器读数负载");
+        }
+        return decodeRecord(payload, PayloadCodecs.HEADER_LENGTH, into);
+    }
+
+    /**
+     * 负载是否为传感器读数
+     */
+    public static boolean isSensorReading(byte[] payload) {
+        return payload.length >= PAYLOAD_LENGTH
+            && payload[0] == PayloadCodecs.MAGIC && payload[1] == ID;
+    }
+
+    private static SensorReading decodeRecord(byte[] data, int offset, SensorReading into) {
+        checkVersion(data[offset]);
+        return into.set(
+            getInt(data, offset + 1),
+            getLong(data, offset + 5),
+            Float.intBitsToFloat(getInt(data, offset + 13)),
+            Float.intBitsToFloat(getInt(data, offset + 17)),
+            SensorReading.Status.fromOrdinal(data[offset + 21]));
+    }
+
+    @Override
+    public byte[] encode(Object data) {
+        if (!(data instanceof SensorReading)) {
+            throw new IllegalArgumentException("传感器读数编码器只支持 SensorReading: "
+                + (data == null ? "null" : data.getClass().getName()));
+        }
+        byte[] payload = new byte[PAYLOAD_LENGTH];
+        encode((SensorReading) data, payload, 0);
+        return payload;
+    }
+
+    @Override
+    public Object decode(byte[] data, int offset, int length) {
+        if (length < RECORD_LENGTH) {
+            throw new IllegalArgumentException("传感器读数长度不足: " + length);
+        }
+        SensorReading reading = decodeRecord(data, offset, new SensorReading());
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", reading.getId());
+        map.put("timestamp", reading.getTimestamp());
+        map.put("temperature", (float) reading.getTemperature());
+        map.put("humidity", (float) reading.getHumidity());
+        map.put("status", reading.getStatus().name().toLowerCase());
+        return map;
+    }
+
+    private static void checkVersion(byte version) {
+        if (version != VERSION) {
+            throw new IllegalArgumentException("不支持的传感器读数版本: " + version);
+        }
+    }
+
+    private static void putInt(byte[] out, int offset, int value) {
+        out[offset] = (byte) (value >>> 24);
+        out[offset + 1] = (byte) (value >>> 16);
+        out[offset + 2] = (byte) (value >>> 8);
+        out[offset + 3] = (byte) value;
+    }
+
+    private static void putLong(byte[] out, int offset, long value) {
+        putInt(out, offset, (int) (value >>> 32));
+        putInt(out, offset + 4, (int) value);
+    }
+
+    private static int getInt(byte[] in, int offset) {
+        return ((in[offset] & 0xff) << 24)
+            | ((in[offset + 1] & 0xff) << 16)
+            | ((in[offset + 2] & 0xff) << 8)
+            | (in[offset + 3] & 0xff);
+    }
+
+    private static long getLong(byte[] in, int offset) {
+        return ((long) getInt(in, offset) << 32) | (getInt(in, offset + 4) & 0xffffffffL);
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.mqtt;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * MQTT分片发布器
+ * 同时打开多个连接，按主题（或调用方指定的分区键）的稳定哈希把消息分配到固定连接，
+ * 使发布吞吐量可以随CPU核数扩展，同时保证同一个键的消息顺序。
+ *
+ * 某个分片连接断开时，原本属于它的键会临时分配到其余在线分片，
+ * 其它键的分配不受影响；分片重连后这些键回到原分片。
+ */
+public class ShardedPublisher {
+    private final MqttConfig config;
+    private final MqttClient[] shards;
+    private final PayloadCodecs codecs;
+
+    public ShardedPublisher() {
+        this(MqttConfig.shared());
+    }
+
+    public ShardedPublisher(MqttConfig config) {
+        this(config, config.getShardCount());
+    }
+
+    public ShardedPublisher(MqttConfig config, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("分片数必须大于0: " + shardCount);
+        }
+        this.config = config;
+        this.codecs = PayloadCodecs.fromConfig(config);
+        this.shards = new MqttClient[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new MqttClient(config, config.generateClientId("shard" + i));
+        }
+    }
+
+    /**
+     * 连接所有分片
+     *
+     * @return 连接成功的分片数
+     */
+    public int connect() {
+        int connectedCount = 0;
+        for (MqttClient shard : shards) {
+            if (shard.connect()) {
+                connectedCount++;
+            }
+        }
+        System.out.println("✓ 分片发布器已连接 " + connectedCount + "/" + shards.length + " 个分片");
+        return connectedCount;
+    }
+
+    /**
+     * 按分区键异步发布消息
+     */
+    public CompletableFuture<IMqttDeliveryToken> publishAsync(String key, byte[] payload, String topic, int qos) {
+        int shard = shardFor(key);
+        if (shard < 0) {
+            // 没有在线分片：交给首选分片，启用离线发送缓冲区时暂存，否则以未连接失败
+            shard = Math.floorMod(mix(key.hashCode()), shards.length);
+        }
+        return shards[shard].publishAsync(payload, topic, qos);
+    }
+
+    /**
+     * 按分区键异步发布文本消息
+     */
+    public CompletableFuture<IMqttDeliveryToken> publishAsync(String key, String message, String topic, int qos) {
+        return publishAsync(key, message.getBytes(StandardCharsets.UTF_8), topic, qos);
+    }
+
+    /**
+     * 以主题作为分区键异步发布文本消息
+     */
+    public CompletableFuture<IMqttDeliveryToken> publishAsync(String message, String topic, int qos) {
+        return publishAsync(topic, message, topic, qos);
+    }
+
+    /**
+     * 以主题作为分区键异步发布对象消息（使用默认QoS）
+     */
+    public CompletableFuture<IMqttDeliveryToken> publishAsync(Object data, String topic) {
+        return publishAsync(topic, codecs.encode(topic, data), topic, config.getQos());
+    }
+
+    /**
+     * 计算分区键对应的分片
+     * 首选分片在线时直接使用；否则在在线分片中按同一哈希重新选择
+     *
+     * @return 分片下标，没有在线分片时返回 -1
+     */
+    public int shardFor(String key) {
+        int hash = mix(key.hashCode());
+        int primary = Math.floorMod(hash, shards.length);
+        if (shards[primary].isConnected()) {
+            return primary;
+        }
+
+        int live = 0;
+        for (MqttClient shard : shards) {
+            if (shard.isConnected()) {
+                live++;
+            }
+        }
+        if (live == 0) {
+            return -1;
+        }
+
+        int target = Math.floorMod(mix(hash), live);
+        for (int i = 0; i < shards.length; i++) {
+            if (shards[i].isConnected() && target-- == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 各分片当前的在途（未确认）消息数
+     */
+    public int[] getQueueDepths() {
+        int[] depths = new int[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            depths[i] = shards[i].getInflightCount();
+        }
+        return depths;
+    }
+
+    /**
+     * 在线分片数
+     */
+    public int getConnectedCount() {
+        int count = 0;
+        for (MqttClient shard : shards) {
+            if (shard.isConnected()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 负载编解码器注册表
+     */
+    public PayloadCodecs getCodecs() {
+        return codecs;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * 断开所有分片
+     */
+    public void disconnect() {
+        for (MqttClient shard : shards) {
+            shard.disconnect();
+        }
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,405 @@
+package com.example.mqtt;
+
+import java.util.Arrays;
+
+/**
+ * 主题路由树
+ * 按主题层级构建的前缀树（Trie），支持MQTT通配符：
+ * - "+" 匹配单个层级
+ * - "#" 匹配当前及之后的任意层级（必须是最后一个层级）
+ * - 以 "$" 开头的主题不会被首层通配符匹配
+ *
+ * 共享订阅过滤器 "$share/组名/过滤器" 由调用方先用 {@link #matchingFilter(String)} 取出实际匹配的过滤器再注册。
+ *
+ * 查找的开销与主题层级数成正比，与注册的过滤器数量无关；
+ * 查找过程不加锁、不分配对象，修改操作使用写时复制（copy-on-write）。
+ *
+ * @param <H> 处理器类型
+ */
+public class TopicRouter<H> {
+
+    /**
+     * 匹配回调
+     * 额外的 context 参数用于传递消息等数据，避免每次查找创建捕获型 lambda
+     */
+    @FunctionalInterface
+    public interface MatchVisitor<H, C> {
+        void visit(H handler, String topic, C context);
+    }
+
+    /** 共享订阅（消费组）过滤器前缀: $share/组名/过滤器 */
+    static final String SHARE_PREFIX = "$share/";
+
+    private static final Object[] NO_HANDLERS = new Object[0];
+
+    private final Node root = new Node();
+    private int filterCount = 0;
+
+    /**
+     * 注册处理器
+     */
+    public synchronized void add(String topicFilter, H handler) {
+        validateFilter(topicFilter);
+        if (handler == null) {
+            throw new IllegalArgumentException("处理器不能为空");
+        }
+
+        Node node = root;
+        int start = 0;
+        while (true) {
+            int end = topicFilter.indexOf('/', start);
+            if (end < 0) {
+                end = topicFilter.length();
+            }
+            node = node.getOrCreateChild(topicFilter.substring(start, end));
+            if (end == topicFilter.length()) {
+                break;
+            }
+            start = end + 1;
+        }
+
+        Object[] handlers = node.handlers;
+        Object[] updated = Arrays.copyOf(handlers, handlers.length + 1);
+        updated[handlers.length] = handler;
+        node.handlers = updated;
+        filterCount++;
+    }
+
+    /**
+     * 移除处理器
+     *
+     * @return 是否找到并移除
+     */
+    public synchronized boolean remove(String topicFilter, H handler) {
+        validateFilter(topicFilter);
+        boolean removed = remove(root, topicFilter, 0, handler);
+        if (removed) {
+            filterCount--;
+        }
+        return removed;
+    }
+
+    private boolean remove(Node node, String topicFilter, int start, H handler) {
+        int end = topicFilter.indexOf('/', start);
+        if (end < 0) {
+            end = topicFilter.length();
+        }
+        String level = topicFilter.substring(start, end);
+        Node child = node.getChild(level);
+        if (child == null) {
+            return false;
+        }
+
+        boolean removed;
+        if (end == topicFilter.length()) {
+            removed = child.removeHandler(handler);
+        } else {
+            removed = remove(child, topicFilter, end + 1, handler);
+        }
+
+        // 清理空节点
+        if (removed && child.isEmpty()) {
+            node.removeChild(level);
+        }
+        return removed;
+    }
+
+    /**
+     * 查找与主题匹配的所有处理器并逐个回调
+     *
+     * @return 匹配到的处理器数量
+     */
+    public <C> int match(String topic, C context, MatchVisitor<? super H, C> visitor) {
+        return matchLevel(root, topic, 0, true, context, visitor);
+    }
+
+    /**
+     * 是否存在与主题匹配的处理器
+     */
+    public boolean hasMatch(String topic) {
+        return match(topic, null, (handler, t, context) -> { }) > 0;
+    }
+
+    /**
+     * 已注册的过滤器/处理器数量
+     */
+    public synchronized int size() {
+        return filterCount;
+    }
+
+    private <C> int matchLevel(Node node, String topic, int start, boolean firstLevel,
+                               C context, MatchVisitor<? super H, C> visitor) {
+        boolean wildcardsAllowed = !(firstLevel && topic.startsWith("$"));
+        int matched = 0;
+
+        // "#" 匹配剩余的所有层级
+        Node multi = node.multiLevel;
+        if (multi != null && wildcardsAllowed) {
+            matched += visitAll(multi, topic, context, visitor);
+        }
+
+        // 定位当前层级 [start, end)，同时计算层级字符串的哈希
+        int length = topic.length();
+        int end = start;
+        int hash = 0;
+        while (end < length) {
+            char c = topic.charAt(end);
+            if (c == '/') {
+                break;
+            }
+            hash = 31 * hash + c;
+            end++;
+        }
+        boolean lastLevel = end == length;
+
+        Node exact = node.children.get(topic, start, end, hash);
+        Node single = wildcardsAllowed ? node.singleLevel : null;
+
+        if (lastLevel) {
+            if (exact != null) {
+                matched += visitAll(exact, topic, context, visitor);
+                // "a/#" 同时匹配 "a"
+                if (exact.multiLevel != null) {
+                    matched += visitAll(exact.multiLevel, topic, context, visitor);
+                }
+            }
+            if (single != null) {
+                matched += visitAll(single, topic, context, visitor);
+                if (single.multiLevel != null) {
+                    matched += visitAll(single.multiLevel, topic, context, visitor);
+                }
+            }
+        } else {
+            if (exact != null) {
+                matched += matchLevel(exact, topic, end + 1, false, context, visitor);
+            }
+            if (single != null) {
+                matched += matchLevel(single, topic, end + 1, false, context, visitor);
+            }
+        }
+        return matched;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <C> int visitAll(Node node, String topic, C context, MatchVisitor<? super H, C> visitor) {
+        Object[] handlers = node.handlers;
+        for (Object handler : handlers) {
+            visitor.visit((H) handler, topic, context);
+        }
+        return handlers.length;
+    }
+
+    /**
+     * 组装共享订阅过滤器 "$share/组名/过滤器"，同一组的订阅方轮流接收匹配的消息，每条消息只投递给组内一个订阅方
+     */
+    static String sharedFilter(String group, String topicFilter) {
+        if (group == null || group.isEmpty() || group.indexOf('/') >= 0
+                || group.indexOf('+') >= 0 || group.indexOf('#') >= 0) {
+            throw new IllegalArgumentException("消费组名不能为空，且不能包含 '/'、'+'、'#': " + group);
+        }
+        if (topicFilter.startsWith(SHARE_PREFIX)) {
+            throw new IllegalArgumentException("主题过滤器已经是共享订阅: " + topicFilter);
+        }
+        validateFilter(topicFilter);
+        return SHARE_PREFIX + group + "/" + topicFilter;
+    }
+
+    /**
+     * 共享订阅的组名，普通过滤器返回 null
+     */
+    static String shareGroup(String topicFilter) {
+        if (!topicFilter.startsWith(SHARE_PREFIX)) {
+            return null;
+        }
+        int end = topicFilter.indexOf('/', SHARE_PREFIX.length());
+        return end < 0 ? null : topicFilter.substring(SHARE_PREFIX.length(), end);
+    }
+
+    /**
+     * 消息实际匹配的过滤器：共享订阅去掉 "$share/组名/" 前缀（收到的消息携带原始主题），普通过滤器原样返回
+     */
+    static String matchingFilter(String topicFilter) {
+        if (!topicFilter.startsWith(SHARE_PREFIX)) {
+            return topicFilter;
+        }
+        int end = topicFilter.indexOf('/', SHARE_PREFIX.length());
+        return end < 0 ? topicFilter : topicFilter.substring(end + 1);
+    }
+
+    /**
+     * 校验主题过滤器格式（共享订阅校验组名和实际过滤器）
+     */
+    static void validateFilter(String topicFilter) {
+        if (topicFilter == null || topicFilter.isEmpty()) {
+            throw new IllegalArgumentException("主题过滤器不能为空");
+        }
+        if (topicFilter.startsWith(SHARE_PREFIX)) {
+            String group = shareGroup(topicFilter);
+            if (group == null || group.isEmpty() || group.indexOf('+') >= 0 || group.indexOf('#') >= 0) {
+                throw new IllegalArgumentException("共享订阅格式错误，应为 $share/组名/过滤器: " + topicFilter);
+            }
+            String filter = matchingFilter(topicFilter);
+            if (filter.isEmpty()) {
+                throw new IllegalArgumentException("共享订阅缺少主题过滤器: " + topicFilter);
+            }
+            topicFilter = filter;
+        }
+        int length = topicFilter.length();
+        for (int i = 0; i < length; i++) {
+            char c = topicFilter.charAt(i);
+            if (c == '+' || c == '#') {
+                boolean levelStart = i == 0 || topicFilter.charAt(i - 1) == '/';
+                boolean levelEnd = i == length - 1 || topicFilter.charAt(i + 1) == '/';
+                if (!levelStart || !levelEnd) {
+                    throw new IllegalArgumentException("通配符必须独占一个层级: " + topicFilter);
+                }
+                if (c == '#' && i != length - 1) {
+                    throw new IllegalArgumentException("'#' 只能出现在最后一个层级: " + topicFilter);
+                }
+            }
+        }
+    }
+
+    /**
+     * 树节点
+     */
+    private static final class Node {
+        volatile ChildTable children = ChildTable.EMPTY;
+        volatile Node singleLevel;
+        volatile Node multiLevel;
+        volatile Object[] handlers = NO_HANDLERS;
+
+        Node getChild(String level) {
+            if ("+".equals(level)) {
+                return singleLevel;
+            }
+            if ("#".equals(level)) {
+                return multiLevel;
+            }
+            return children.get(level, 0, level.length(), level.hashCode());
+        }
+
+        Node getOrCreateChild(String level) {
+            Node child = getChild(level);
+            if (child != null) {
+                return child;
+            }
+            child = new Node();
+            if ("+".equals(level)) {
+                singleLevel = child;
+            } else if ("#".equals(level)) {
+                multiLevel = child;
+            } else {
+                children = children.with(level, child);
+            }
+            return child;
+        }
+
+        void removeChild(String level) {
+            if ("+".equals(level)) {
+                singleLevel = null;
+            } else if ("#".equals(level)) {
+                multiLevel = null;
+            } else {
+                children = children.without(level);
+            }
+        }
+
+        boolean removeHandler(Object handler) {
+            Object[] current = handlers;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].equals(handler)) {
+                    Object[] updated = new Object[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    handlers = updated.length == 0 ? NO_HANDLERS : updated;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean isEmpty() {
+            return handlers.length == 0 && children.size == 0
+                && singleLevel == null && multiLevel == null;
+        }
+    }
+
+    /**
+     * 不可变的开放寻址子节点表
+     * 支持直接用主题字符串的一段 [start, end) 查找，无需截取子串
+     */
+    private static final class ChildTable {
+        static final ChildTable EMPTY = new ChildTable(new String[1], new int[1], new Node[1], 0);
+
+        final String[] keys;
+        final int[] hashes;
+        final Node[] nodes;
+        final int size;
+
+        private ChildTable(String[] keys, int[] hashes, Node[] nodes, int size) {
+            this.keys = keys;
+            this.hashes = hashes;
+            this.nodes = nodes;
+            this.size = size;
+        }
+
+        Node get(String topic, int start, int end, int hash) {
+            int mask = keys.length - 1;
+            int length = end - start;
+            for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+                String key = keys[i];
+                if (key == null) {
+                    return null;
+                }
+                if (hashes[i] == hash && key.length() == length
+                        && topic.regionMatches(start, key, 0, length)) {
+                    return nodes[i];
+                }
+            }
+        }
+
+        ChildTable with(String key, Node node) {
+            int capacity = keys.length;
+            while ((size + 1) * 2 > capacity) {
+                capacity <<= 1;
+            }
+            ChildTable table = new ChildTable(new String[capacity], new int[capacity], new Node[capacity], size + 1);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) {
+                    table.insert(keys[i], hashes[i], nodes[i]);
+                }
+            }
+            table.insert(key, key.hashCode(), node);
+            return table;
+        }
+
+        ChildTable without(String key) {
+            if (size <= 1) {
+                return EMPTY;
+            }
+            ChildTable table = new ChildTable(new String[keys.length], new int[keys.length], new Node[keys.length], size - 1);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null && !keys[i].equals(key)) {
+                    table.insert(keys[i], hashes[i], nodes[i]);
+                }
+            }
+            return table;
+        }
+
+        private void insert(String key, int hash, Node node) {
+            int mask = keys.length - 1;
+            int i = spread(hash) & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            hashes[i] = hash;
+            nodes[i] = node;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
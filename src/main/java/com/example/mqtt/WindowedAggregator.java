@@ -0,0 +1,597 @@
+package com.example.mqtt;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * 窗口聚合
+ * 对匹配主题过滤器的遥测消息按设备（主题或负载中的ID字段）计算数值字段的窗口统计：
+ * 条数、最小值、最大值、平均值和最新值，每个窗口结束时输出一条摘要，而不是转发每条读数。
+ *
+ * 支持滚动窗口（slide = window）和滑动窗口（window 为 slide 的整数倍）。窗口被切分为 slide 长度的分片，
+ * 每个设备每个分片每个字段的状态保存在基本类型数组中（不使用装箱的 Map），分片按环形复用，
+ * 内存只与设备数、分片数和字段数有关。窗口按消息到达时间划分。
+ *
+ * 负载可以是JSON（字段为 {@link JsonPayloadView} 路径）或 {@link SensorReadingCodec} 定长二进制
+ * （字段为 temperature、humidity）。摘要交给 {@link #onSummary} 注册的处理器，
+ * 或用 {@link #republishTo} 发布到派生主题（注意派生主题不要匹配聚合的主题过滤器）。
+ *
+ * 实现了 {@code BiConsumer<String, MqttMessage>}，可以直接注册为 {@link MqttClient#addHandler} 的处理器。
+ */
+public class WindowedAggregator implements BiConsumer<String, MqttMessage> {
+    private static final long EMPTY_PANE = Long.MIN_VALUE;
+    private static final int INITIAL_KEYS = 64;
+
+    private static volatile ScheduledExecutorService scheduler;
+
+    private final String topicFilter;
+    private final TopicRouter<Boolean> filter = new TopicRouter<>();
+    private final String[] fields;
+    private final long windowMillis;
+    private final long slideMillis;
+    private final int panes;
+    private final int ring;
+    private final String keyField;
+    private final int maxKeys;
+    private final JsonPayloadView view = new JsonPayloadView();
+    private final SensorReading reading = new SensorReading();
+    private final double[] values;
+    private boolean binary;
+
+    // 设备键 -> 槽位（开放寻址）
+    private String[] keyTable = new String[INITIAL_KEYS * 2];
+    private int[] slotTable = new int[INITIAL_KEYS * 2];
+    private String[] slotKeys = new String[INITIAL_KEYS];
+    private String[] slotTopics = new String[INITIAL_KEYS];
+    private int keyCount;
+
+    // 状态，下标为 ((槽位 * 环形分片数) + 分片) * 字段数 + 字段
+    private long[] paneIds;
+    private long[] counts;
+    private double[] mins;
+    private double[] maxs;
+    private double[] sums;
+    private double[] lasts;
+
+    private volatile Consumer<Summary> summaryHandler;
+    private volatile String outputTopic;
+    private volatile BiConsumer<String, byte[]> publisher;
+    private ScheduledFuture<?> emitTask;
+
+    private long inputCount;
+    private long emittedCount;
+    private long droppedKeys;
+
+    /**
+     * @param topicFilter  聚合的主题过滤器（可含通配符）
+     * @param fields       统计的数值字段
+     * @param windowMillis 窗口长度
+     * @param slideMillis  窗口滑动步长，等于窗口长度（或0）时为滚动窗口
+     * @param keyField     设备ID字段（JSON路径），null 或空表示按主题区分设备
+     * @param maxKeys      最多跟踪的设备数，超出后新设备的消息被丢弃
+     */
+    public WindowedAggregator(String topicFilter, String[] fields, long windowMillis, long slideMillis,
+                              String keyField, int maxKeys) {
+        if (fields.length == 0) {
+            throw new IllegalArgumentException("至少需要一个统计字段");
+        }
+        if (slideMillis <= 0) {
+            slideMillis = windowMillis;
+        }
+        if (windowMillis <= 0 || windowMillis % slideMillis != 0) {
+            throw new IllegalArgumentException("窗口长度必须是滑动步长的整数倍: " + windowMillis + "/" + slideMillis);
+        }
+        this.topicFilter = topicFilter;
+        this.filter.add(topicFilter, Boolean.TRUE);
+        this.fields = fields.clone();
+        this.windowMillis = windowMillis;
+        this.slideMillis = slideMillis;
+        this.panes = (int) (windowMillis / slideMillis);
+        // 多保留一个分片：窗口结束后、定时输出前到达的消息写入下一个分片，不会覆盖尚未输出的数据
+        this.ring = panes + 1;
+        this.keyField = keyField == null || keyField.isEmpty() ? null : keyField;
+        this.maxKeys = maxKeys;
+        this.values = new double[fields.length];
+        allocate(INITIAL_KEYS);
+    }
+
+    /**
+     * 按 mqtt.aggregate.* 配置创建，未配置主题时返回 null
+     */
+    public static WindowedAggregator fromConfig(MqttConfig config) {
+        String topics = config.getAggregateTopics();
+        if (topics.isEmpty()) {
+            return null;
+        }
+        WindowedAggregator aggregator = new WindowedAggregator(topics,
+            config.getAggregateFields().split("\\s*,\\s*"),
+            TimeUnit.SECONDS.toMillis(config.getAggregateWindowSeconds()),
+            TimeUnit.SECONDS.toMillis(config.getAggregateSlideSeconds()),
+            config.getAggregateKeyField(),
+            config.getAggregateMaxKeys());
+        if (!config.getAggregateOutputTopic().isEmpty()) {
+            aggregator.outputTopic = config.getAggregateOutputTopic();
+        }
+        return aggregator;
+    }
+
+    /**
+     * 设置摘要处理器（在定时线程中调用）
+     */
+    public WindowedAggregator onSummary(Consumer<Summary> handler) {
+        this.summaryHandler = handler;
+        return this;
+    }
+
+    /**
+     * 把摘要以JSON发布到派生主题
+     *
+     * @param topicTemplate 主题模板，{topic} 替换为设备最近一条消息的主题，{key} 替换为设备键
+     * @param publisher     发布函数（主题，负载）
+     */
+    public WindowedAggregator republishTo(String topicTemplate, BiConsumer<String, byte[]> publisher) {
+        this.outputTopic = topicTemplate;
+        this.publisher = publisher;
+        return this;
+    }
+
+    /**
+     * 设置发布函数，派生主题使用 mqtt.aggregate.output.topic 中的配置
+     */
+    public WindowedAggregator setPublisher(BiConsumer<String, byte[]> publisher) {
+        this.publisher = publisher;
+        return this;
+    }
+
+    /**
+     * 是否配置了派生主题
+     */
+    public boolean hasOutputTopic() {
+        return outputTopic != null;
+    }
+
+    /**
+     * 主题是否由本聚合器处理
+     */
+    public boolean matches(String topic) {
+        return filter.hasMatch(topic);
+    }
+
+    @Override
+    public void accept(String topic, MqttMessage message) {
+        add(topic, message.getPayload(), System.currentTimeMillis());
+    }
+
+    /**
+     * 加入一条消息
+     *
+     * @param payload  解压后的负载
+     * @param nowMillis 到达时间
+     */
+    public synchronized void add(String topic, byte[] payload, long nowMillis) {
+        if (!readValues(payload)) {
+            return;
+        }
+        // 定长二进制读数没有设备ID字段，按主题区分
+        String key = keyField != null && !binary ? view.getString(keyField) : null;
+        if (key == null) {
+            key = topic;
+        }
+        int slot = slotOf(key);
+        if (slot < 0) {
+            droppedKeys++;
+            return;
+        }
+        slotTopics[slot] = topic;
+        inputCount++;
+
+        long pane = Math.floorDiv(nowMillis, slideMillis);
+        int paneSlot = slot * ring + (int) Math.floorMod(pane, (long) ring);
+        int base = paneSlot * fields.length;
+        if (paneIds[paneSlot] != pane) {
+            // 环形复用：该位置上是旧分片，清空后重新使用
+            paneIds[paneSlot] = pane;
+            Arrays.fill(counts, base, base + fields.length, 0);
+        }
+        for (int f = 0; f < fields.length; f++) {
+            double value = values[f];
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            int index = base + f;
+            if (counts[index] == 0) {
+                mins[index] = value;
+                maxs[index] = value;
+                sums[index] = value;
+            } else {
+                mins[index] = Math.min(mins[index], value);
+                maxs[index] = Math.max(maxs[index], value);
+                sums[index] += value;
+            }
+            counts[index]++;
+            lasts[index] = value;
+        }
+    }
+
+    /**
+     * 读取统计字段到 values，没有任何可用字段时返回 false
+     */
+    private boolean readValues(byte[] payload) {
+        boolean any = false;
+        if (SensorReadingCodec.isSensorReading(payload)) {
+            SensorReadingCodec.decode(payload, reading);
+            for (int f = 0; f < fields.length; f++) {
+                switch (fields[f]) {
+                    case "temperature":
+                        values[f] = reading.getTemperature();
+                        break;
+                    case "humidity":
+                        values[f] = reading.getHumidity();
+                        break;
+                    default:
+                        values[f] = Double.NaN;
+                }
+                any |= !Double.isNaN(values[f]);
+            }
+            binary = true;
+            return any;
+        }
+        binary = false;
+        view.reset(payload);
+        for (int f = 0; f < fields.length; f++) {
+            values[f] = view.getDouble(fields[f], Double.NaN);
+            any |= !Double.isNaN(values[f]);
+        }
+        return any;
+    }
+
+    private int slotOf(String key) {
+        int mask = keyTable.length - 1;
+        int i = (int) Hashing.mix(key.hashCode()) & mask;
+        while (keyTable[i] != null) {
+            if (keyTable[i].equals(key)) {
+                return slotTable[i];
+            }
+            i = (i + 1) & mask;
+        }
+        if (keyCount >= maxKeys) {
+            return -1;
+        }
+
+        int slot = keyCount++;
+        if (slot >= slotKeys.length) {
+            allocate(slotKeys.length * 2);
+        }
+        keyTable[i] = key;
+        slotTable[i] = slot;
+        slotKeys[slot] = key;
+        if (keyCount * 2 > keyTable.length) {
+            rehash(keyTable.length * 2);
+        }
+        return slot;
+    }
+
+    private void rehash(int size) {
+        String[] oldKeys = keyTable;
+        int[] oldSlots = slotTable;
+        keyTable = new String[size];
+        slotTable = new int[size];
+        int mask = size - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == null) {
+                continue;
+            }
+            int i = (int) Hashing.mix(oldKeys[j].hashCode()) & mask;
+            while (keyTable[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keyTable[i] = oldKeys[j];
+            slotTable[i] = oldSlots[j];
+        }
+    }
+
+    /**
+     * 按设备容量分配（或扩容）状态数组
+     */
+    private void allocate(int keys) {
+        int oldPaneSlots = paneIds == null ? 0 : paneIds.length;
+        int paneSlots = keys * ring;
+        int cells = paneSlots * fields.length;
+        paneIds = paneIds == null ? new long[paneSlots] : Arrays.copyOf(paneIds, paneSlots);
+        Arrays.fill(paneIds, oldPaneSlots, paneSlots, EMPTY_PANE);
+        counts = counts == null ? new long[cells] : Arrays.copyOf(counts, cells);
+        mins = mins == null ? new double[cells] : Arrays.copyOf(mins, cells);
+        maxs = maxs == null ? new double[cells] : Arrays.copyOf(maxs, cells);
+        sums = sums == null ? new double[cells] : Arrays.copyOf(sums, cells);
+        lasts = lasts == null ? new double[cells] : Arrays.copyOf(lasts, cells);
+        slotKeys = Arrays.copyOf(slotKeys, keys);
+        slotTopics = Arrays.copyOf(slotTopics, keys);
+    }
+
+    /**
+     * 开始在每个滑动步长结束时输出摘要
+     */
+    public synchronized void start() {
+        if (emitTask != null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long delay = slideMillis - Math.floorMod(now, slideMillis);
+        emitTask = scheduler().scheduleAtFixedRate(this::emitDue, delay, slideMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止定时输出
+     */
+    public synchronized void stop() {
+        if (emitTask != null) {
+            emitTask.cancel(false);
+            emitTask = null;
+        }
+    }
+
+    /**
+     * 输出刚刚结束的窗口（定时触发，容忍少量提前或延后）
+     */
+    private void emitDue() {
+        long now = System.currentTimeMillis();
+        emit(Math.floorDiv(now + slideMillis / 2, slideMillis) - 1);
+    }
+
+    /**
+     * 输出以 lastPane 分片结束的窗口的所有设备摘要
+     */
+    void emit(long lastPane) {
+        Summary[] summaries = collect(lastPane);
+        Consumer<Summary> handler = summaryHandler;
+        BiConsumer<String, byte[]> output = publisher;
+        String template = outputTopic;
+        for (Summary summary : summaries) {
+            try {
+                if (handler != null) {
+                    handler.accept(summary);
+                }
+                if (output != null && template != null) {
+                    String topic = template.replace("{topic}", summary.getTopic()).replace("{key}", summary.getKey());
+                    output.accept(topic, summary.toJson().getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (RuntimeException e) {
+                System.err.println("✗ 输出窗口摘要失败 (" + summary.getKey() + "): " + e.getMessage());
+            }
+        }
+    }
+
+    private synchronized Summary[] collect(long lastPane) {
+        long firstPane = lastPane - panes + 1;
+        long windowEnd = (lastPane + 1) * slideMillis;
+        Summary[] result = new Summary[keyCount];
+        int emitted = 0;
+
+        for (int slot = 0; slot < keyCount; slot++) {
+            Summary summary = null;
+            for (int p = 0; p < ring; p++) {
+                int paneSlot = slot * ring + p;
+                long pane = paneIds[paneSlot];
+                if (pane < firstPane || pane > lastPane) {
+                    continue;
+                }
+                int base = paneSlot * fields.length;
+                for (int f = 0; f < fields.length; f++) {
+                    int index = base + f;
+                    if (counts[index] == 0) {
+                        continue;
+                    }
+                    if (summary == null) {
+                        summary = new Summary(slotKeys[slot], slotTopics[slot], fields, windowEnd - windowMillis, windowEnd);
+                    }
+                    summary.merge(f, counts[index], mins[index], maxs[index], sums[index], lasts[index], pane);
+                }
+            }
+            if (summary != null) {
+                result[emitted++] = summary;
+            }
+        }
+        emittedCount += emitted;
+        return Arrays.copyOf(result, emitted);
+    }
+
+    private static ScheduledExecutorService scheduler() {
+        ScheduledExecutorService executor = scheduler;
+        if (executor == null) {
+            synchronized (WindowedAggregator.class) {
+                executor = scheduler;
+                if (executor == null) {
+                    executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "mqtt-aggregate");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    scheduler = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    public String getTopicFilter() {
+        return topicFilter;
+    }
+
+    public synchronized int getKeyCount() {
+        return keyCount;
+    }
+
+    /**
+     * 已聚合的消息数
+     */
+    public synchronized long getInputCount() {
+        return inputCount;
+    }
+
+    /**
+     * 已输出的摘要数
+     */
+    public synchronized long getEmittedCount() {
+        return emittedCount;
+    }
+
+    /**
+     * 超出设备数上限而丢弃的消息数
+     */
+    public synchronized long getDroppedCount() {
+        return droppedKeys;
+    }
+
+    @Override
+    public synchronized String toString() {
+        String kind = panes == 1 ? "滚动" : "滑动 " + slideMillis / 1000.0 + "s";
+        return String.format("%s, 窗口 %.0fs (%s), 设备 %d, 聚合 %d 条, 输出摘要 %d 条, 超出设备上限丢弃 %d 条",
+            topicFilter, windowMillis / 1000.0, kind, keyCount, inputCount, emittedCount, droppedKeys);
+    }
+
+    /**
+     * 一个设备在一个窗口内的统计摘要
+     */
+    public static final class Summary {
+        private final String key;
+        private final String topic;
+        private final String[] fields;
+        private final long windowStart;
+        private final long windowEnd;
+        private final long[] counts;
+        private final double[] mins;
+        private final double[] maxs;
+        private final double[] sums;
+        private final double[] lasts;
+        private final long[] lastPanes;
+
+        Summary(String key, String topic, String[] fields, long windowStart, long windowEnd) {
+            this.key = key;
+            this.topic = topic;
+            this.fields = fields;
+            this.windowStart = windowStart;
+            this.windowEnd = windowEnd;
+            this.counts = new long[fields.length];
+            this.mins = new double[fields.length];
+            this.maxs = new double[fields.length];
+            this.sums = new double[fields.length];
+            this.lasts = new double[fields.length];
+            this.lastPanes = new long[fields.length];
+            Arrays.fill(lastPanes, EMPTY_PANE);
+        }
+
+        void merge(int f, long count, double min, double max, double sum, double last, long pane) {
+            if (counts[f] == 0) {
+                mins[f] = min;
+                maxs[f] = max;
+            } else {
+                mins[f] = Math.min(mins[f], min);
+                maxs[f] = Math.max(maxs[f], max);
+            }
+            counts[f] += count;
+            sums[f] += sum;
+            if (pane > lastPanes[f]) {
+                lastPanes[f] = pane;
+                lasts[f] = last;
+            }
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * 设备最近一条消息的主题
+         */
+        public String getTopic() {
+            return topic;
+        }
+
+        /**
+         * 窗口起止时间（Unix毫秒，左闭右开）
+         */
+        public long getWindowStart() {
+            return windowStart;
+        }
+
+        public long getWindowEnd() {
+            return windowEnd;
+        }
+
+        public String[] getFields() {
+            return fields.clone();
+        }
+
+        public long getCount(int field) {
+            return counts[field];
+        }
+
+        public double getMin(int field) {
+            return counts[field] == 0 ? Double.NaN : mins[field];
+        }
+
+        public double getMax(int field) {
+            return counts[field] == 0 ? Double.NaN : maxs[field];
+        }
+
+        public double getMean(int field) {
+            return counts[field] == 0 ? Double.NaN : sums[field] / counts[field];
+        }
+
+        public double getLast(int field) {
+            return counts[field] == 0 ? Double.NaN : lasts[field];
+        }
+
+        /**
+         * 紧凑JSON，例如 {"key":"d1","start":...,"end":...,"temperature":{"count":12,"min":..,"max":..,"mean":..,"last":..}}
+         */
+        public String toJson() {
+            StringBuilder json = new StringBuilder(64 + fields.length * 80);
+            json.append("{\"key\":");
+            appendString(json, key);
+            json.append(",\"start\":").append(windowStart).append(",\"end\":").append(windowEnd);
+            for (int f = 0; f < fields.length; f++) {
+                if (counts[f] == 0) {
+                    continue;
+                }
+                json.append(',');
+                appendString(json, fields[f]);
+                json.append(":{\"count\":").append(counts[f])
+                    .append(",\"min\":").append(mins[f])
+                    .append(",\"max\":").append(maxs[f])
+                    .append(",\"mean\":").append(getMean(f))
+                    .append(",\"last\":").append(lasts[f])
+                    .append('}');
+            }
+            return json.append('}').toString();
+        }
+
+        private static void appendString(StringBuilder json, String value) {
+            json.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    json.append('\\').append(c);
+                } else if (c < 0x20) {
+                    json.append(String.format("\\u%04x", (int) c));
+                } else {
+                    json.append(c);
+                }
+            }
+            json.append('"');
+        }
+
+        @Override
+        public String toString() {
+            return toJson();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.mqtt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveRateControllerTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static AdaptiveRateController controller(PublishWindow window, int initial, long timeoutNanos) {
+        return new AdaptiveRateController(window, 1, initial, 2.0, 0, timeoutNanos);
+    }
+
+    private static void ack(AdaptiveRateController controller, int count, long latencyNanos) {
+        for (int i = 0; i < count; i++) {
+            controller.onAck(latencyNanos);
+        }
+    }
+
+    @Test
+    void startsAtInitialWindow() {
+        PublishWindow window = new PublishWindow(100);
+        AdaptiveRateController controller = controller(window, 10, 0);
+
+        assertEquals(10, controller.getWindow());
+        assertEquals(10, window.getLimit());
+    }
+
+    @Test
+    void slowStartThenAdditiveIncrease() {
+        PublishWindow window = new PublishWindow(100);
+        AdaptiveRateController controller = controller(window, 10, 0);
+
+        // 慢启动：每条确认加1
+        ack(controller, 10, MS);
+        assertEquals(20, controller.getWindow());
+        assertEquals(20, window.getLimit());
+
+        // 拥塞后进入加性增长：每个窗口的确认只加1
+        controller.onFailure();
+        assertEquals(10, controller.getWindow());
+        ack(controller, 10, MS);
+        assertEquals(10, controller.getWindow());
+        ack(controller, 2, MS);
+        assertEquals(11, controller.getWindow());
+    }
+
+    @Test
+    void decreasesOncePerRoundTripOnHighLatency() {
+        PublishWindow window = new PublishWindow(100);
+        AdaptiveRateController controller = controller(window, 10, 0);
+        ack(controller, 10, MS);
+        assertEquals(20, controller.getWindow());
+
+        // 基准约1毫秒，阈值为 max(2倍基准, 基准 + 5毫秒)
+        controller.onAck(50 * MS);
+        assertEquals(14, controller.getWindow());
+        assertEquals(14, window.getLimit());
+        // 同一个往返内的其他慢确认不再减小
+        controller.onAck(50 * MS);
+        assertEquals(14, controller.getWindow());
+        assertEquals(1, controller.getDecreaseCount());
+    }
+
+    @Test
+    void halvesOnTimeoutAndFailure() {
+        PublishWindow window = new PublishWindow(100);
+        AdaptiveRateController controller = controller(window, 40, 100 * MS);
+
+        controller.onAck(200 * MS);
+        assertEquals(20, controller.getWindow());
+        assertEquals(1, controller.getTimeoutCount());
+
+        AdaptiveRateController failing = controller(new PublishWindow(100), 40, 0);
+        failing.onFailure();
+        assertEquals(20, failing.getWindow());
+        // 没有确认时每次失败都减半，不低于最小窗口
+        for (int i = 0; i < 10; i++) {
+            failing.onFailure();
+        }
+        assertEquals(1, failing.getWindow());
+        assertEquals(11, failing.getTimeoutCount());
+    }
+
+    @Test
+    void neverExceedsWindowCeiling() {
+        PublishWindow window = new PublishWindow(100);
+        AdaptiveRateController controller = controller(window, 10, 0);
+
+        window.setCeiling(16);
+        controller.onCeilingChanged();
+        ack(controller, 50, MS);
+        assertEquals(16, controller.getWindow());
+        assertEquals(16, window.getLimit());
+
+        // 上限放大后继续增长
+        window.setCeiling(40);
+        controller.onCeilingChanged();
+        ack(controller, 50, MS);
+        assertEquals(40, controller.getWindow());
+
+        // 上限缩小时窗口立即缩小
+        window.setCeiling(5);
+        controller.onCeilingChanged();
+        assertEquals(5, controller.getWindow());
+        assertEquals(5, window.getLimit());
+    }
+
+    @Test
+    void estimatesRateFromWindowAndLatency() {
+        PublishWindow window = new PublishWindow(100);
+        AdaptiveRateController controller = new AdaptiveRateController(window, 1, 10, 2.0, 20 * MS, 0);
+        controller.onAck(10 * MS);
+
+        assertEquals(10 * MS, controller.getSmoothedLatencyNanos());
+        assertEquals(10 * MS, controller.getBaselineLatencyNanos());
+        assertEquals(11 * 100.0, controller.getEstimatedRate(), 1e-6);
+        // 固定阈值：低于阈值的确认不减小窗口
+        controller.onAck(15 * MS);
+        assertTrue(controller.getWindow() > 10);
+        assertEquals(0, controller.getDecreaseCount());
+    }
+
+    @Test
+    void rejectsToleranceNotAboveOne() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new AdaptiveRateController(new PublishWindow(10), 1, 5, 1.0, 0, 0));
+    }
+}
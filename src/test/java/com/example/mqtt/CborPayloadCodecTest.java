@@ -0,0 +1,142 @@
+package com.example.mqtt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CborPayloadCodecTest {
+    private final CborPayloadCodec codec = new CborPayloadCodec();
+
+    /** 编码结果去掉负载头后的CBOR字节 */
+    private byte[] body(Object value) {
+        byte[] encoded = codec.encode(value);
+        assertEquals(PayloadCodecs.MAGIC, encoded[0]);
+        assertEquals(CborPayloadCodec.ID, encoded[1]);
+        return Arrays.copyOfRange(encoded, PayloadCodecs.HEADER_LENGTH, encoded.length);
+    }
+
+    private Object decode(int... bytes) {
+        byte[] data = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            data[i] = (byte) bytes[i];
+        }
+        return codec.decode(data, 0, data.length);
+    }
+
+    private Object roundTrip(Object value) {
+        byte[] encoded = codec.encode(value);
+        return new PayloadCodecs().decode(encoded);
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] data = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            data[i] = (byte) values[i];
+        }
+        return data;
+    }
+
+    @Test
+    void encodesIntegersWithShortestArgument() {
+        assertArrayEquals(bytes(0x00), body(0));
+        assertArrayEquals(bytes(0x17), body(23));
+        assertArrayEquals(bytes(0x18, 0x18), body(24));
+        assertArrayEquals(bytes(0x19, 0x01, 0x00), body(256));
+        assertArrayEquals(bytes(0x1a, 0x00, 0x01, 0x00, 0x00), body(65536));
+        assertArrayEquals(bytes(0x1b, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00), body(4294967296L));
+        assertArrayEquals(bytes(0x20), body(-1));
+        assertArrayEquals(bytes(0x38, 0x63), body(-100));
+    }
+
+    @Test
+    void usesSinglePrecisionOnlyWhenLossless() {
+        assertArrayEquals(bytes(0xfa, 0x3f, 0xc0, 0x00, 0x00), body(1.5));
+        assertArrayEquals(bytes(0xfb, 0x3f, 0xb9, 0x99, 0x99, 0x99, 0x99, 0x99, 0x9a), body(0.1));
+        assertEquals(0.1, roundTrip(0.1));
+        assertTrue(Double.isNaN((Double) roundTrip(Double.NaN)));
+    }
+
+    @Test
+    void roundTripsNestedStructures() {
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("device", "sensor-1");
+        value.put("temp", 21.5);
+        value.put("count", 42L);
+        value.put("offset", -7L);
+        value.put("ok", true);
+        value.put("missing", null);
+        value.put("tags", Arrays.asList("a", "ü", "中文"));
+        value.put("nested", Collections.singletonMap("level", Arrays.asList(1L, Collections.emptyMap())));
+
+        assertEquals(value, roundTrip(value));
+    }
+
+    @Test
+    void roundTripsBytesArraysAndPojos() {
+        byte[] raw = {0, 1, 2, (byte) 0xff};
+        assertArrayEquals(raw, (byte[]) roundTrip(raw));
+        assertEquals(Arrays.asList("x", 1L), roundTrip(new Object[] {"x", 1}));
+        assertEquals("BLOCKED", roundTrip(Thread.State.BLOCKED));
+
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("name", "n");
+        expected.put("value", 3L);
+        expected.put("ratio", 0.25);
+        assertEquals(expected, roundTrip(new Sample("n", 3, 0.25)));
+    }
+
+    @Test
+    void decodesRfc8949Examples() {
+        // 半精度浮点
+        assertEquals(1.0, decode(0xf9, 0x3c, 0x00));
+        assertEquals(-4.0, decode(0xf9, 0xc4, 0x00));
+        assertEquals(5.960464477539063e-8, decode(0xf9, 0x00, 0x01));
+        assertEquals(Double.POSITIVE_INFINITY, decode(0xf9, 0x7c, 0x00));
+        // 不定长数组、映射、字符串、字节串
+        assertEquals(Arrays.asList(1L, 2L), decode(0x9f, 0x01, 0x02, 0xff));
+        assertEquals(Collections.singletonMap("a", 1L), decode(0xbf, 0x61, 0x61, 0x01, 0xff));
+        assertEquals("streaming", decode(0x7f, 0x65, 's', 't', 'r', 'e', 'a', 0x64, 'm', 'i', 'n', 'g', 0xff));
+        assertArrayEquals(bytes(1, 2, 3), (byte[]) decode(0x5f, 0x42, 0x01, 0x02, 0x41, 0x03, 0xff));
+        // 标签被跳过，只返回数据项
+        assertEquals(1363896240L, decode(0xc1, 0x1a, 0x51, 0x4b, 0x67, 0xb0));
+        // undefined 按 null 处理
+        assertNull(decode(0xf7));
+    }
+
+    @Test
+    void rejectsTruncatedInput() {
+        assertThrows(IllegalArgumentException.class, () -> decode(0x19, 0x01));
+        assertThrows(IllegalArgumentException.class, () -> decode(0x63, 'a', 'b'));
+        assertThrows(IllegalArgumentException.class, () -> decode(0x82, 0x01));
+        assertThrows(IllegalArgumentException.class, () -> decode(0x9f, 0x01));
+        assertThrows(IllegalArgumentException.class, () -> decode(0x1c));
+    }
+
+    @Test
+    void decodesWithinGivenRange() {
+        byte[] data = bytes(0xff, 0x18, 0x64, 0xff);
+        assertEquals(100L, codec.decode(data, 1, 2));
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(data, 1, 1));
+    }
+
+    private static final class Sample {
+        final String name;
+        final int value;
+        final double ratio;
+
+        Sample(String name, int value, double ratio) {
+            this.name = name;
+            this.value = value;
+            this.ratio = ratio;
+        }
+    }
+}
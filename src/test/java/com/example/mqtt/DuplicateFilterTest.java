@@ -0,0 +1,127 @@
+package com.example.mqtt;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DuplicateFilterTest {
+    private static final long HOUR = 3_600_000;
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void detectsRepeatedPayloadOnSameTopic() {
+        DuplicateFilter filter = new DuplicateFilter(1000, 0.001, HOUR, null);
+
+        assertFalse(filter.isDuplicate("a/b", utf8("{\"v\":1}")));
+        assertTrue(filter.isDuplicate("a/b", utf8("{\"v\":1}")));
+        assertFalse(filter.isDuplicate("a/c", utf8("{\"v\":1}")));
+        assertFalse(filter.isDuplicate("a/b", utf8("{\"v\":2}")));
+
+        assertEquals(4, filter.getCheckedCount());
+        assertEquals(1, filter.getDuplicateCount());
+        assertEquals(0.25, filter.getHitRate());
+    }
+
+    @Test
+    void identifiesByIdFieldWhenPresent() {
+        DuplicateFilter filter = new DuplicateFilter(1000, 0.001, HOUR, "meta.id");
+
+        assertEquals(filter.identify("t", utf8("{\"meta\":{\"id\":\"m-1\"},\"ts\":1}")),
+            filter.identify("t", utf8("{\"ts\":2,\"meta\":{\"id\":\"m-1\"}}")));
+        assertNotEquals(filter.identify("t", utf8("{\"meta\":{\"id\":\"m-1\"}}")),
+            filter.identify("t", utf8("{\"meta\":{\"id\":\"m-2\"}}")));
+        assertNotEquals(filter.identify("t", utf8("{\"meta\":{\"id\":\"m-1\"}}")),
+            filter.identify("u", utf8("{\"meta\":{\"id\":\"m-1\"}}")));
+
+        // 没有ID字段时按内容识别
+        assertEquals(filter.identify("t", utf8("{\"ts\":1}")), filter.identify("t", utf8("{\"ts\":1}")));
+        assertNotEquals(filter.identify("t", utf8("{\"ts\":1}")), filter.identify("t", utf8("{\"ts\":2}")));
+    }
+
+    @Test
+    void remembersIdsForOneFullGeneration() {
+        DuplicateFilter filter = new DuplicateFilter(100, 0.0001, HOUR, null);
+        long first = filter.identify("t", utf8("first"));
+        assertFalse(filter.isDuplicate(first));
+
+        // 第100条之后轮换，first 进入上一代，仍然能识别
+        for (int i = 0; i < 150; i++) {
+            assertFalse(filter.isDuplicate(filter.identify("t", utf8("m" + i))), "m" + i);
+        }
+        assertEquals(1, filter.getRotationCount());
+        assertTrue(filter.isDuplicate(first));
+    }
+
+    @Test
+    void forgetsIdsAfterTwoRotations() {
+        DuplicateFilter filter = new DuplicateFilter(100, 0.0001, HOUR, null);
+        long first = filter.identify("t", utf8("first"));
+        filter.isDuplicate(first);
+
+        for (int i = 0; i < 250; i++) {
+            filter.isDuplicate(filter.identify("t", utf8("m" + i)));
+        }
+        assertEquals(2, filter.getRotationCount());
+        assertFalse(filter.isDuplicate(first));
+    }
+
+    @Test
+    void rotatesWhenWindowExpires() throws InterruptedException {
+        DuplicateFilter filter = new DuplicateFilter(1000, 0.001, 20, null);
+        long first = filter.identify("t", utf8("first"));
+        filter.isDuplicate(first);
+
+        Thread.sleep(40);
+        filter.isDuplicate(filter.identify("t", utf8("second")));
+        Thread.sleep(40);
+        filter.isDuplicate(filter.identify("t", utf8("third")));
+
+        assertTrue(filter.getRotationCount() >= 2);
+        assertFalse(filter.isDuplicate(first));
+    }
+
+    @Test
+    void falsePositivesStayNearDesignRate() {
+        int capacity = 10_000;
+        DuplicateFilter filter = new DuplicateFilter(capacity, 0.01, HOUR, null);
+        for (int i = 0; i < capacity; i++) {
+            filter.isDuplicate(filter.identify("t", utf8("known-" + i)));
+        }
+        double estimated = filter.getFalsePositiveRate();
+        assertTrue(estimated < 0.02, "estimated " + estimated);
+
+        // 上一代写满、当前代逐步写满的过程中，新消息被误判的比例
+        int falsePositives = 0;
+        for (int i = 0; i < capacity; i++) {
+            if (filter.isDuplicate(filter.identify("t", utf8("fresh-" + i)))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < capacity * 0.03, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void sizesBitArraysFromCapacityAndRate() {
+        DuplicateFilter filter = new DuplicateFilter(10_000, 0.01, HOUR, null);
+
+        // m = 95851 位，向上取2的幂为 131072 位，两代共 32 KB
+        assertEquals(32 * 1024, filter.getMemoryBytes());
+        assertEquals(7, filter.getHashCount());
+    }
+
+    @Test
+    void rejectsInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new DuplicateFilter(0, 0.01, HOUR, null));
+        assertThrows(IllegalArgumentException.class, () -> new DuplicateFilter(10, 0, HOUR, null));
+        assertThrows(IllegalArgumentException.class, () -> new DuplicateFilter(10, 1, HOUR, null));
+    }
+}
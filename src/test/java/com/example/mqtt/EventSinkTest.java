@@ -0,0 +1,76 @@
+package com.example.mqtt;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventSinkTest {
+    private final List<String> lines = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void restoreOutput() {
+        EventSink.setOutput(null);
+    }
+
+    private static Thread drainer() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("mqtt-events")) {
+                return thread;
+            }
+        }
+        return null;
+    }
+
+    private void awaitLines(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (lines.size() < count) {
+            assertTrue(System.nanoTime() < deadline, "lines " + lines);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void drainerSleepsWhenIdleAndWakesOnLog() throws InterruptedException {
+        EventSink.setOutput((level, line) -> lines.add(line));
+        EventSink sink = new EventSink(EventSink.Level.INFO);
+        try {
+            sink.log(EventSink.Level.INFO, "a");
+            awaitLines(1);
+
+            // 缓冲区为空时后台线程无限期休眠，而不是定时轮询
+            Thread thread = drainer();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (thread.getState() != Thread.State.WAITING) {
+                assertTrue(System.nanoTime() < deadline, "后台线程没有休眠: " + thread.getState());
+                Thread.sleep(1);
+            }
+
+            sink.log(EventSink.Level.INFO, "b");
+            sink.log(EventSink.Level.DEBUG, "filtered");
+            sink.log(EventSink.Level.WARN, "c");
+            awaitLines(3);
+            assertEquals(Arrays.asList("a", "b", "c"), lines);
+        } finally {
+            sink.close();
+        }
+    }
+
+    @Test
+    void logsAfterCloseAreStillWritten() throws InterruptedException {
+        EventSink.setOutput((level, line) -> lines.add(line));
+        EventSink sink = new EventSink(EventSink.Level.INFO);
+        sink.close();
+        sink.close();
+
+        sink.log(EventSink.Level.INFO, "late");
+        awaitLines(1);
+        assertEquals(Arrays.asList("late"), lines);
+    }
+}
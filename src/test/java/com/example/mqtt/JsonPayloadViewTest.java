@@ -0,0 +1,138 @@
+package com.example.mqtt;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonPayloadViewTest {
+    private static final String SAMPLE = "{\n"
+        + "  \"device\": {\"id\": \"sensor-1\", \"location\": {\"lat\": 31.2304, \"lng\": 121.4737}},\n"
+        + "  \"note\": \"has } and ] and \\\" inside\",\n"
+        + "  \"readings\" : [ 1.5 , {\"v\": -2}, [3, 4] ],\n"
+        + "  \"temperature\": 21.5,\n"
+        + "  \"count\": 42,\n"
+        + "  \"ok\": true,\n"
+        + "  \"off\": false,\n"
+        + "  \"missing\": null,\n"
+        + "  \"quoted\": \"12.25\",\n"
+        + "  \"温度\": 18\n"
+        + "}";
+
+    private static JsonPayloadView view(String json) {
+        return new JsonPayloadView(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void readsNestedFieldsAndArrayElements() {
+        JsonPayloadView view = view(SAMPLE);
+
+        assertEquals("sensor-1", view.getString("device.id"));
+        assertEquals(31.2304, view.getDouble("device.location.lat"));
+        assertEquals(1.5, view.getDouble("readings.0"));
+        assertEquals(-2, view.getLong("readings.1.v", 0));
+        assertEquals(4, view.getLong("readings.2.1", 0));
+        assertEquals(21.5, view.getDouble("temperature"));
+        assertEquals(42, view.getLong("count", 0));
+        assertEquals(18, view.getLong("温度", 0));
+    }
+
+    @Test
+    void skipsStringsContainingStructuralCharacters() {
+        JsonPayloadView view = view(SAMPLE);
+
+        assertEquals("has } and ] and \" inside", view.getString("note"));
+        assertEquals(21.5, view.getDouble("temperature"));
+    }
+
+    @Test
+    void distinguishesMissingNullAndWrongType() {
+        JsonPayloadView view = view(SAMPLE);
+
+        assertTrue(view.has("missing"));
+        assertNull(view.getString("missing"));
+        assertFalse(view.has("absent"));
+        assertFalse(view.has("device.id.more"));
+        assertFalse(view.has("readings.3"));
+        assertFalse(view.has("readings.x"));
+        assertFalse(view.has("temp"));
+
+        assertEquals(-1, view.getDouble("absent", -1), 0);
+        assertEquals(-1, view.getDouble("device.id", -1), 0);
+        assertThrows(IllegalArgumentException.class, () -> view.getDouble("absent"));
+        assertThrows(IllegalArgumentException.class, () -> view.getDouble("missing"));
+    }
+
+    @Test
+    void readsBooleansLiteralsAndQuotedNumbers() {
+        JsonPayloadView view = view(SAMPLE);
+
+        assertTrue(view.getBoolean("ok", false));
+        assertFalse(view.getBoolean("off", true));
+        assertTrue(view.getBoolean("count", true));
+        assertEquals("42", view.getString("count"));
+        assertEquals("true", view.getString("ok"));
+        assertEquals(12.25, view.getDouble("quoted"));
+        assertEquals("{\"v\": -2}", view.getString("readings.1"));
+    }
+
+    @Test
+    void parsesNumbersLikeDoubleParseDouble() {
+        String[] numbers = {"0", "-0.5", "3.14159", "123456789012345", "0.1", "1e3", "-2.5E-3",
+            "12345678901234567890", "0.0000000000000001", "+7"};
+        JsonPayloadView view = new JsonPayloadView();
+        for (String number : numbers) {
+            view.reset(("{\"n\":" + number + "}").getBytes(StandardCharsets.UTF_8));
+            assertEquals(Double.parseDouble(number), view.getDouble("n"), number);
+        }
+        view.reset("{\"n\":\"abc\"}".getBytes(StandardCharsets.UTF_8));
+        assertEquals(7, view.getLong("n", 7));
+    }
+
+    @Test
+    void decodesEscapedStringsAndKeys() {
+        JsonPayloadView view = view("{\"a\\u0062c\": 1, \"text\": \"line\\nnext \\u4e2d\\t\\\\\"}");
+
+        assertEquals(1, view.getLong("abc", 0));
+        assertEquals("line\nnext 中\t\\", view.getString("text"));
+    }
+
+    @Test
+    void resetUsesOnlyGivenRange() {
+        byte[] framed = "xx{\"a\":1}{\"a\":2}".getBytes(StandardCharsets.UTF_8);
+        JsonPayloadView view = new JsonPayloadView();
+
+        assertEquals(1, view.reset(framed, 2, 7).getLong("a", 0));
+        assertEquals(2, view.reset(framed, 9, 7).getLong("a", 0));
+        assertFalse(view.reset(framed, 2, 5).has("a"));
+    }
+
+    @Test
+    void treatsMalformedInputAsMissing() {
+        assertFalse(view("").has("a"));
+        assertFalse(view("[1,2]").has("a"));
+        assertFalse(view("{\"a\" 1}").has("a"));
+        assertFalse(view("{\"b\":1 \"a\":2}").has("a"));
+        assertFalse(view("{\"a\":").has("a"));
+        assertNull(view("{\"a\":\"unterminated").getString("a"));
+    }
+
+    @Test
+    void hashesRawValue() {
+        long first = view("{\"id\": \"abc\", \"x\": 1}").hashOf("id");
+        long same = view("{\"x\": 2,  \"id\":\"abc\"}").hashOf("id");
+        long other = view("{\"id\": \"abd\"}").hashOf("id");
+
+        assertNotEquals(0, first);
+        assertEquals(first, same);
+        assertNotEquals(first, other);
+        assertEquals(0, view("{\"id\": null}").hashOf("id"));
+        assertEquals(0, view("{}").hashOf("id"));
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.mqtt;
+
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.eclipse.paho.client.mqttv3.internal.MqttPersistentData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedFilePersistenceTest {
+    private static final String CLIENT_ID = "test-client";
+    private static final String SERVER_URI = "tcp://localhost:1883";
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    File baseDirectory;
+
+    private final List<MappedFilePersistence> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeAll() throws MqttPersistenceException {
+        for (MappedFilePersistence persistence : opened) {
+            persistence.close();
+        }
+    }
+
+    private MappedFilePersistence open() throws MqttPersistenceException {
+        MappedFilePersistence persistence = new MappedFilePersistence(baseDirectory.getPath(),
+            MappedFilePersistence.SyncPolicy.OS, 100, SEGMENT_SIZE);
+        persistence.open(CLIENT_ID, SERVER_URI);
+        opened.add(persistence);
+        return persistence;
+    }
+
+    private MappedFilePersistence reopen(MappedFilePersistence persistence) throws MqttPersistenceException {
+        persistence.close();
+        opened.remove(persistence);
+        return open();
+    }
+
+    private File clientDirectory() {
+        File[] dirs = baseDirectory.listFiles(File::isDirectory);
+        assertNotNull(dirs);
+        assertEquals(1, dirs.length);
+        return dirs[0];
+    }
+
+    private File[] segmentFiles() {
+        File[] files = clientDirectory().listFiles((dir, name) -> name.endsWith(".seg"));
+        assertNotNull(files);
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static MqttPersistable data(String key, String header, String payload) {
+        byte[] headerBytes = header.getBytes(StandardCharsets.UTF_8);
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        return new MqttPersistentData(key, headerBytes, 0, headerBytes.length, payloadBytes, 0, payloadBytes.length);
+    }
+
+    /** 与 MappedFilePersistence 的记录格式一致：长度、类型、键长度、键、头部长度、头部、负载长度、负载、CRC */
+    private static int putRecordLength(String key, String header, String payload) {
+        return 4 + 1 + 2 + key.length() + 4 + header.length() + 4 + payload.length() + 4;
+    }
+
+    private static void assertStored(MappedFilePersistence persistence, String key, String header, String payload)
+            throws MqttPersistenceException {
+        MqttPersistable stored = persistence.get(key);
+        assertNotNull(stored, key);
+        assertArrayEquals(header.getBytes(StandardCharsets.UTF_8), stored.getHeaderBytes());
+        assertArrayEquals(payload.getBytes(StandardCharsets.UTF_8), stored.getPayloadBytes());
+    }
+
+    private static List<String> keys(MappedFilePersistence persistence) throws MqttPersistenceException {
+        List<String> keys = new ArrayList<>();
+        for (Object key : Collections.list(persistence.keys())) {
+            keys.add((String) key);
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    @Test
+    void replaysPutsAndRemovesAfterReopen() throws Exception {
+        MappedFilePersistence persistence = open();
+        persistence.put("s-1", data("s-1", "h1", "first"));
+        persistence.put("s-2", data("s-2", "h2", "second"));
+        persistence.put("s-1", data("s-1", "h1b", "first-updated"));
+        persistence.remove("s-2");
+
+        persistence = reopen(persistence);
+
+        assertEquals(Collections.singletonList("s-1"), keys(persistence));
+        assertStored(persistence, "s-1", "h1b", "first-updated");
+        assertFalse(persistence.containsKey("s-2"));
+        assertNull(persistence.get("s-2"));
+    }
+
+    @Test
+    void discardsRecordWithBadChecksumAndEverythingAfterIt() throws Exception {
+        MappedFilePersistence persistence = open();
+        persistence.put("s-1", data("s-1", "h1", "kept"));
+        persistence.put("s-2", data("s-2", "h2", "torn"));
+        persistence.put("s-3", data("s-3", "h3", "after"));
+        persistence.close();
+        opened.remove(persistence);
+
+        // 模拟崩溃时写了一半：破坏第二条记录负载中的一个字节
+        int second = putRecordLength("s-1", "h1", "kept");
+        int payloadOffset = second + 4 + 1 + 2 + 3 + 4 + 2 + 4;
+        try (RandomAccessFile file = new RandomAccessFile(segmentFiles()[0], "rw")) {
+            file.seek(payloadOffset);
+            int original = file.read();
+            file.seek(payloadOffset);
+            file.write(original ^ 0xff);
+        }
+
+        persistence = open();
+        assertEquals(Collections.singletonList("s-1"), keys(persistence));
+        assertStored(persistence, "s-1", "h1", "kept");
+        assertEquals(putRecordLength("s-1", "h1", "kept"), persistence.getDiskBytes());
+    }
+
+    @Test
+    void appendsCleanlyAfterTornTail() throws Exception {
+        MappedFilePersistence persistence = open();
+        persistence.put("s-1", data("s-1", "h1", "kept"));
+        persistence.close();
+        opened.remove(persistence);
+
+        // 模拟只写了长度字段和部分内容的记录
+        int tail = putRecordLength("s-1", "h1", "kept");
+        try (RandomAccessFile file = new RandomAccessFile(segmentFiles()[0], "rw")) {
+            file.seek(tail);
+            file.writeInt(64);
+            file.write(new byte[] {1, 0, 3, 'x', 'y'});
+        }
+
+        persistence = open();
+        assertEquals(Collections.singletonList("s-1"), keys(persistence));
+
+        // 残留内容已清除，之后追加的短记录在下次重放时仍然有效
+        persistence.put("s-2", data("s-2", "", "new"));
+        persistence = reopen(persistence);
+
+        assertEquals(Arrays.asList("s-1", "s-2"), keys(persistence));
+        assertStored(persistence, "s-2", "", "new");
+    }
+
+    @Test
+    void releasesLeadingSegmentWithoutLiveRecords() throws Exception {
+        MappedFilePersistence persistence = open();
+        String payload = repeat('a', 900);
+        for (int i = 0; i < 4; i++) {
+            persistence.put("s-" + i, data("s-" + i, "h", payload));
+        }
+        // 第5条放不进第一个段
+        persistence.put("s-4", data("s-4", "h", payload));
+        assertEquals(2, segmentFiles().length);
+
+        for (int i = 0; i < 4; i++) {
+            persistence.remove("s-" + i);
+        }
+
+        File[] remaining = segmentFiles();
+        assertEquals(1, remaining.length);
+        assertTrue(remaining[0].getName().startsWith("0000000000000001"));
+
+        persistence = reopen(persistence);
+        assertEquals(Collections.singletonList("s-4"), keys(persistence));
+        assertStored(persistence, "s-4", "h", payload);
+    }
+
+    @Test
+    void compactsWhenDeadBytesExceedSegmentAndLiveBytes() throws Exception {
+        MappedFilePersistence persistence = open();
+        persistence.put("pinned", data("pinned", "h", "oldest"));
+        String payload = repeat('b', 500);
+        for (int i = 0; i < 40; i++) {
+            persistence.put("s-1", data("s-1", "h", payload + i));
+        }
+
+        // 第一个段中一直有有效记录（pinned），只能通过压缩回收空间
+        long deadBytes = persistence.getDiskBytes() - persistence.getLiveBytes();
+        assertTrue(deadBytes <= SEGMENT_SIZE, "dead bytes after compaction: " + deadBytes);
+        assertTrue(segmentFiles().length <= 2, "segments: " + segmentFiles().length);
+
+        persistence = reopen(persistence);
+        assertEquals(Arrays.asList("pinned", "s-1"), keys(persistence));
+        assertStored(persistence, "pinned", "h", "oldest");
+        assertStored(persistence, "s-1", "h", payload + 39);
+    }
+
+    @Test
+    void storesRecordLargerThanSegmentInOwnSegment() throws Exception {
+        MappedFilePersistence persistence = open();
+        String payload = repeat('c', SEGMENT_SIZE * 2);
+        persistence.put("big", data("big", "h", payload));
+
+        persistence = reopen(persistence);
+        assertStored(persistence, "big", "h", payload);
+    }
+
+    @Test
+    void clearRemovesAllSegments() throws Exception {
+        MappedFilePersistence persistence = open();
+        persistence.put("s-1", data("s-1", "h", "x"));
+        persistence.clear();
+
+        assertEquals(0, persistence.size());
+        assertEquals(0, segmentFiles().length);
+
+        persistence = reopen(persistence);
+        assertEquals(0, persistence.size());
+    }
+
+    @Test
+    void rejectsSecondOpenOfSameClient() throws Exception {
+        open();
+        MappedFilePersistence second = new MappedFilePersistence(baseDirectory.getPath(),
+            MappedFilePersistence.SyncPolicy.OS, 100, SEGMENT_SIZE);
+        MqttPersistenceException error = assertThrows(MqttPersistenceException.class,
+            () -> second.open(CLIENT_ID, SERVER_URI));
+        assertEquals(MqttPersistenceException.REASON_CODE_PERSISTENCE_IN_USE, error.getReasonCode());
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
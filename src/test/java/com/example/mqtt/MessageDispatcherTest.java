@@ -0,0 +1,194 @@
+package com.example.mqtt;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageDispatcherTest {
+    private final List<String> handled = new CopyOnWriteArrayList<>();
+    private final List<String> discarded = new CopyOnWriteArrayList<>();
+    /** 第一条消息开始处理 */
+    private final CountDownLatch started = new CountDownLatch(1);
+    /** 放行被卡住的处理器 */
+    private final CountDownLatch proceed = new CountDownLatch(1);
+    private MessageDispatcher dispatcher;
+
+    /** 处理第一条消息时卡住，直到 proceed 放行，使后续消息留在队列中 */
+    private final BiConsumer<String, MqttMessage> blockingHandler = (topic, message) -> {
+        started.countDown();
+        try {
+            proceed.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        handled.add(text(message));
+    };
+
+    @AfterEach
+    void shutdown() {
+        proceed.countDown();
+        if (dispatcher != null) {
+            dispatcher.shutdown(5000);
+        }
+    }
+
+    private MessageDispatcher dispatcher(int threads, int queueSize, MessageDispatcher.OverflowPolicy policy) {
+        dispatcher = new MessageDispatcher("test", threads, queueSize, policy);
+        dispatcher.setDiscardHandler((topic, message) -> discarded.add(text(message)));
+        return dispatcher;
+    }
+
+    private static MqttMessage message(String text) {
+        return new MqttMessage(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String text(MqttMessage message) {
+        return new String(message.getPayload(), StandardCharsets.UTF_8);
+    }
+
+    /** 一个工作线程卡在 m0 上，队列（容量2）中是 m1、m2 */
+    private void fillQueue() throws InterruptedException {
+        dispatcher.dispatch("t", message("m0"), blockingHandler);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        dispatcher.dispatch("t", message("m1"), blockingHandler);
+        dispatcher.dispatch("t", message("m2"), blockingHandler);
+        assertEquals(2, dispatcher.getQueuedCount());
+    }
+
+    private void awaitHandled(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (handled.size() < count) {
+            assertTrue(System.nanoTime() < deadline, "handled " + handled);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void dropNewestDiscardsIncomingMessage() throws InterruptedException {
+        dispatcher(1, 2, MessageDispatcher.OverflowPolicy.DROP_NEWEST);
+        fillQueue();
+
+        dispatcher.dispatch("t", message("m3"), blockingHandler);
+        assertEquals(Collections.singletonList("m3"), discarded);
+        assertEquals(1, dispatcher.getDroppedCount());
+
+        proceed.countDown();
+        awaitHandled(3);
+        assertEquals(Arrays.asList("m0", "m1", "m2"), handled);
+    }
+
+    @Test
+    void dropOldestDiscardsQueuedMessage() throws InterruptedException {
+        dispatcher(1, 2, MessageDispatcher.OverflowPolicy.DROP_OLDEST);
+        fillQueue();
+
+        dispatcher.dispatch("t", message("m3"), blockingHandler);
+        dispatcher.dispatch("t", message("m4"), blockingHandler);
+        assertEquals(Arrays.asList("m1", "m2"), discarded);
+        assertEquals(2, dispatcher.getDroppedCount());
+
+        proceed.countDown();
+        awaitHandled(3);
+        assertEquals(Arrays.asList("m0", "m3", "m4"), handled);
+    }
+
+    @Test
+    void blockWaitsForQueueSpace() throws InterruptedException {
+        dispatcher(1, 2, MessageDispatcher.OverflowPolicy.BLOCK);
+        fillQueue();
+
+        Thread callback = new Thread(() -> dispatcher.dispatch("t", message("m3"), blockingHandler));
+        callback.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (callback.getState() != Thread.State.WAITING) {
+            assertTrue(System.nanoTime() < deadline, "回调线程没有阻塞: " + callback.getState());
+            Thread.sleep(1);
+        }
+
+        proceed.countDown();
+        callback.join(5000);
+        awaitHandled(4);
+        assertEquals(Arrays.asList("m0", "m1", "m2", "m3"), handled);
+        assertEquals(0, dispatcher.getDroppedCount());
+    }
+
+    @Test
+    void keepsOrderWithinTopicAcrossWorkers() throws InterruptedException {
+        dispatcher(4, 100, MessageDispatcher.OverflowPolicy.BLOCK);
+        Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+        BiConsumer<String, MqttMessage> handler = (topic, message) ->
+            received.computeIfAbsent(topic, t -> Collections.synchronizedList(new ArrayList<>()))
+                .add(Integer.parseInt(text(message)));
+
+        for (int i = 0; i < 1000; i++) {
+            dispatcher.dispatch("topic/" + (i % 16), message(String.valueOf(i)), handler);
+        }
+        dispatcher.shutdown(5000);
+
+        assertEquals(16, received.size());
+        for (Map.Entry<String, List<Integer>> entry : received.entrySet()) {
+            List<Integer> values = entry.getValue();
+            assertEquals(1000 / 16 + (Integer.parseInt(entry.getKey().substring(6)) < 1000 % 16 ? 1 : 0),
+                values.size(), entry.getKey());
+            for (int i = 1; i < values.size(); i++) {
+                assertTrue(values.get(i - 1) < values.get(i), entry.getKey() + ": " + values);
+            }
+        }
+    }
+
+    @Test
+    void shutdownInterruptsStuckWorkerAfterTimeout() throws InterruptedException {
+        dispatcher(1, 2, MessageDispatcher.OverflowPolicy.BLOCK);
+        fillQueue();
+
+        // 队列已满、处理器卡住：等到超时后中断工作线程，而不是一直等待放入结束标记
+        long start = System.nanoTime();
+        dispatcher.shutdown(100);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+
+        awaitHandled(1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (discarded.size() < 2) {
+            assertTrue(System.nanoTime() < deadline, "discarded " + discarded);
+            Thread.sleep(1);
+        }
+        assertEquals(Collections.singletonList("m0"), handled);
+        assertEquals(Arrays.asList("m1", "m2"), discarded);
+        assertEquals(0, dispatcher.getQueuedCount());
+    }
+
+    @Test
+    void discardsAfterShutdown() {
+        dispatcher(1, 10, MessageDispatcher.OverflowPolicy.BLOCK);
+        dispatcher.shutdown(5000);
+
+        dispatcher.dispatch("t", message("late"), (topic, message) -> handled.add(text(message)));
+        assertEquals(Collections.singletonList("late"), discarded);
+        assertTrue(handled.isEmpty());
+    }
+
+    @Test
+    void handlesInCallerThreadWithoutWorkers() {
+        dispatcher(0, 10, MessageDispatcher.OverflowPolicy.BLOCK);
+        Thread caller = Thread.currentThread();
+        List<Thread> threads = new ArrayList<>();
+
+        dispatcher.dispatch("t", message("m"), (topic, message) -> threads.add(Thread.currentThread()));
+        assertEquals(Collections.singletonList(caller), threads);
+    }
+}
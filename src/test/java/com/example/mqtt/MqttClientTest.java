@@ -0,0 +1,117 @@
+package com.example.mqtt;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MqttClientTest {
+    private final MqttConfig config = new MqttConfig();
+
+    private static void waitFor(BooleanSupplier condition, String description) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "超时: " + description);
+            Thread.sleep(10);
+        }
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void publishesAndReceivesThroughEmbeddedBroker() throws Exception {
+        MqttClient subscriber = new MqttClient(config, "roundtrip-sub");
+        MqttClient publisher = new MqttClient(config, "roundtrip-pub");
+        List<String> received = new CopyOnWriteArrayList<>();
+        try {
+            assertTrue(subscriber.connect());
+            subscriber.setMessageHandler((topic, message) ->
+                received.add(topic + "=" + new String(message.getPayload(), StandardCharsets.UTF_8)));
+            assertTrue(subscriber.subscribe("roundtrip/#", 1));
+            assertTrue(publisher.connect());
+
+            List<CompletableFuture<IMqttDeliveryToken>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                futures.add(publisher.publishAsync(utf8("m" + i), "roundtrip/" + (i % 5), 1));
+            }
+            for (CompletableFuture<IMqttDeliveryToken> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            waitFor(() -> received.size() == 50, "收到全部消息");
+            assertTrue(received.contains("roundtrip/3=m48"));
+            assertEquals(0, publisher.getInflightCount());
+        } finally {
+            publisher.disconnect();
+            subscriber.disconnect();
+        }
+    }
+
+    @Test
+    void batchPublisherFlushesFullBatchesAndLingeringRemainder() throws Exception {
+        MqttClient subscriber = new MqttClient(config, "batch-sub");
+        MqttClient publisher = new MqttClient(config, "batch-pub");
+        List<String> received = new CopyOnWriteArrayList<>();
+        try {
+            assertTrue(subscriber.connect());
+            subscriber.setMessageHandler((topic, message) -> received.add(topic));
+            assertTrue(subscriber.subscribe("batch/test", 1));
+            assertTrue(publisher.connect());
+
+            MqttBatchPublisher batch = publisher.createBatchPublisher("batch/test");
+            int total = config.getBatchSize() * 2 + 5;
+            for (int i = 0; i < total; i++) {
+                assertTrue(batch.add("item-" + i));
+            }
+            // 两个满批次已发出，剩余的消息等 linger 到期后发出
+            assertEquals(5, batch.getPendingCount());
+            waitFor(() -> batch.getPendingCount() == 0, "linger 刷新");
+            waitFor(() -> received.size() == total, "收到全部消息");
+        } finally {
+            publisher.disconnect();
+            subscriber.disconnect();
+        }
+    }
+
+    @Test
+    void spoolsWhileDisconnectedAndDrainsAfterReconnect() throws Exception {
+        EmbeddedBroker broker = EmbeddedBroker.startShared(config.getPort());
+        MqttClient client = new MqttClient(config, "spool-client");
+        EmbeddedBroker restarted = null;
+        try {
+            assertTrue(client.connect());
+            int port = broker.getPort();
+            broker.stop();
+            waitFor(() -> !client.isConnected(), "检测到断线");
+
+            for (int i = 0; i < 20; i++) {
+                // 断线期间的发布立即完成（没有投递令牌），消息留在发送缓冲区
+                assertNull(client.publishAsync(utf8("offline-" + i), "spool/test", 1).get(1, TimeUnit.SECONDS));
+            }
+            assertEquals(20, client.getSpool().getDepth());
+
+            EmbeddedBroker target = new EmbeddedBroker(port).start();
+            restarted = target;
+            waitFor(client::isConnected, "自动重连");
+            waitFor(() -> client.getSpool().getDepth() == 0, "补发完成");
+            waitFor(() -> target.getReceivedCount() == 20, "Broker 收到补发的消息");
+            assertEquals(20, client.getSpool().getDrainedCount());
+        } finally {
+            client.disconnect();
+            if (restarted != null) {
+                restarted.stop();
+            }
+        }
+    }
+}
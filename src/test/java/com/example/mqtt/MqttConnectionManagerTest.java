@@ -0,0 +1,101 @@
+package com.example.mqtt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MqttConnectionManagerTest {
+    private final MqttConfig config = new MqttConfig();
+
+    private static void waitFor(BooleanSupplier condition, String description) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "超时: " + description);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void sharedConnectionClosesWhenLastUserReleases() throws Exception {
+        EmbeddedBroker broker = EmbeddedBroker.startShared(config.getPort());
+        int connections = MqttConnectionManager.getConnectionCount();
+
+        MqttConnectionManager first = MqttConnectionManager.acquire(config);
+        MqttConnectionManager second = MqttConnectionManager.acquire(config);
+        assertSame(first, second);
+        assertEquals(connections + 1, MqttConnectionManager.getConnectionCount());
+
+        first.connect();
+        second.connect();
+        assertTrue(first.isConnected());
+        waitFor(() -> broker.getConnectionCount() == 1, "Broker 上有一个连接");
+
+        // 还有使用者时不断开
+        first.release();
+        assertTrue(second.isConnected());
+        assertEquals(connections + 1, MqttConnectionManager.getConnectionCount());
+
+        second.release();
+        assertFalse(second.isConnected());
+        assertEquals(connections, MqttConnectionManager.getConnectionCount());
+        waitFor(() -> broker.getConnectionCount() == 0, "Broker 上的连接已关闭");
+
+        // 释放后再获取得到新的连接
+        MqttConnectionManager next = MqttConnectionManager.acquire(config);
+        assertNotSame(first, next);
+        next.release();
+    }
+
+    @Test
+    void acquireWaitsForReleasingConnectionToClose() throws Exception {
+        EmbeddedBroker broker = EmbeddedBroker.startShared(config.getPort());
+        MqttConnectionManager old = MqttConnectionManager.acquire(config, "reacquired");
+        old.connect();
+
+        Thread releasing = new Thread(old::release);
+        releasing.start();
+        waitFor(() -> !old.isConnected(), "开始断开");
+        // 旧连接断开完成后才拿到新的连接
+        MqttConnectionManager next = MqttConnectionManager.acquire(config, "reacquired");
+        try {
+            assertNotSame(old, next);
+            next.connect();
+            releasing.join(5000);
+            waitFor(() -> broker.getConnectionCount() == 1, "Broker 上只有新连接");
+            assertTrue(next.isConnected());
+        } finally {
+            next.release();
+        }
+    }
+
+    @Test
+    void clientIdGetsIndependentConnection() throws Exception {
+        EmbeddedBroker broker = EmbeddedBroker.startShared(config.getPort());
+        MqttConnectionManager shared = MqttConnectionManager.acquire(config);
+        MqttConnectionManager a = MqttConnectionManager.acquire(config, "independent-a");
+        MqttConnectionManager b = MqttConnectionManager.acquire(config, "independent-b");
+        try {
+            assertNotSame(shared, a);
+            assertNotSame(a, b);
+            assertSame(a, MqttConnectionManager.acquire(config, "independent-a"));
+            a.release();
+
+            shared.connect();
+            a.connect();
+            b.connect();
+            waitFor(() -> broker.getConnectionCount() == 3, "Broker 上有三个连接");
+        } finally {
+            shared.release();
+            a.release();
+            b.release();
+        }
+        waitFor(() -> broker.getConnectionCount() == 0, "Broker 上的连接已关闭");
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.mqtt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PublishWindowTest {
+
+    /** 等待线程进入阻塞状态（在 wait() 中） */
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.WAITING) {
+            assertTrue(System.nanoTime() < deadline, "线程没有阻塞: " + thread.getState());
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void blocksAtLimitUntilRelease() throws InterruptedException {
+        PublishWindow window = new PublishWindow(2);
+        window.acquire();
+        window.acquire();
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread publisher = new Thread(() -> {
+            try {
+                window.acquire();
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        publisher.start();
+        awaitBlocked(publisher);
+        assertEquals(1, acquired.getCount());
+
+        window.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals(2, window.getInflight());
+        publisher.join();
+    }
+
+    @Test
+    void tryAcquireFailsWhenFull() {
+        PublishWindow window = new PublishWindow(2);
+        assertTrue(window.tryAcquire());
+        assertTrue(window.tryAcquire());
+        assertFalse(window.tryAcquire());
+        assertEquals(2, window.getInflight());
+
+        window.release();
+        assertTrue(window.tryAcquire());
+        // 多余的释放不会让在途数变为负数
+        window.release();
+        window.release();
+        window.release();
+        assertEquals(0, window.getInflight());
+    }
+
+    @Test
+    void ceilingBoundsLimit() {
+        PublishWindow window = new PublishWindow(10);
+        window.setCeiling(4);
+        assertEquals(4, window.getCeiling());
+        assertEquals(4, window.getLimit());
+
+        window.setLimit(8);
+        assertEquals(4, window.getLimit());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(window.tryAcquire());
+        }
+        assertFalse(window.tryAcquire());
+
+        // 被上限卡住的窗口随上限放大，但不超过创建时的上限
+        window.setCeiling(100);
+        assertEquals(10, window.getCeiling());
+        assertEquals(10, window.getLimit());
+
+        // 调整过的窗口不随上限放大
+        window.setLimit(3);
+        window.setCeiling(5);
+        window.setCeiling(10);
+        assertEquals(3, window.getLimit());
+    }
+
+    @Test
+    void shrinkingLimitWaitsForInflightToDrain() {
+        PublishWindow window = new PublishWindow(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(window.tryAcquire());
+        }
+        window.setLimit(2);
+        window.release();
+        window.release();
+        assertFalse(window.tryAcquire());
+        window.release();
+        assertTrue(window.tryAcquire());
+    }
+
+    @Test
+    void grantsAsyncWaitersInOrder() {
+        PublishWindow window = new PublishWindow(1);
+        assertTrue(window.acquireAsync().isDone());
+
+        CompletableFuture<Void> first = window.acquireAsync();
+        CompletableFuture<Void> second = window.acquireAsync();
+        assertFalse(first.isDone());
+        assertEquals(2, window.getWaiting());
+        assertFalse(window.tryAcquire());
+
+        window.release();
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        assertEquals(1, window.getInflight());
+
+        window.release();
+        assertTrue(second.isDone());
+        assertEquals(0, window.getWaiting());
+    }
+
+    @Test
+    void growingLimitGrantsWaiters() {
+        PublishWindow window = new PublishWindow(4);
+        window.setLimit(1);
+        window.acquireAsync();
+        List<CompletableFuture<Void>> waiters = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            waiters.add(window.acquireAsync());
+        }
+
+        window.setLimit(3);
+        assertTrue(waiters.get(0).isDone());
+        assertTrue(waiters.get(1).isDone());
+        assertFalse(waiters.get(2).isDone());
+        assertEquals(3, window.getInflight());
+    }
+
+    @Test
+    void concurrentPublishersNeverExceedLimit() throws InterruptedException {
+        PublishWindow window = new PublishWindow(8);
+        window.setLimit(3);
+        AtomicInteger current = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+
+        Thread[] publishers = new Thread[8];
+        for (int t = 0; t < publishers.length; t++) {
+            publishers[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        window.acquire();
+                        peak.accumulateAndGet(current.incrementAndGet(), Math::max);
+                        current.decrementAndGet();
+                        window.release();
+                        completed.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            publishers[t].start();
+        }
+        for (Thread publisher : publishers) {
+            publisher.join(TimeUnit.SECONDS.toMillis(30));
+        }
+
+        assertEquals(16000, completed.get());
+        assertTrue(peak.get() <= 3, "peak " + peak.get());
+        assertEquals(0, window.getInflight());
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.mqtt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopicRouterTest {
+
+    private static List<String> matches(TopicRouter<String> router, String topic) {
+        List<String> matched = new ArrayList<>();
+        int count = router.match(topic, matched, (handler, t, context) -> context.add(handler));
+        assertEquals(matched.size(), count);
+        Collections.sort(matched);
+        return matched;
+    }
+
+    private static TopicRouter<String> routerOf(String... filters) {
+        TopicRouter<String> router = new TopicRouter<>();
+        for (String filter : filters) {
+            router.add(filter, filter);
+        }
+        return router;
+    }
+
+    @Test
+    void matchesExactAndSingleLevelWildcard() {
+        TopicRouter<String> router = routerOf("sensor/1/temp", "sensor/+/temp", "sensor/+", "+/+/+");
+
+        assertEquals(Arrays.asList("+/+/+", "sensor/+/temp", "sensor/1/temp"), matches(router, "sensor/1/temp"));
+        assertEquals(Arrays.asList("+/+/+", "sensor/+/temp"), matches(router, "sensor/2/temp"));
+        assertEquals(Collections.singletonList("sensor/+"), matches(router, "sensor/1"));
+        assertEquals(Collections.emptyList(), matches(router, "sensor/1/temp/raw"));
+    }
+
+    @Test
+    void multiLevelWildcardAlsoMatchesParentLevel() {
+        TopicRouter<String> router = routerOf("sensor/#", "#", "sensor/+/#");
+
+        assertEquals(Arrays.asList("#", "sensor/#"), matches(router, "sensor"));
+        assertEquals(Arrays.asList("#", "sensor/#", "sensor/+/#"), matches(router, "sensor/1"));
+        assertEquals(Arrays.asList("#", "sensor/#", "sensor/+/#"), matches(router, "sensor/1/temp/raw"));
+        assertEquals(Collections.singletonList("#"), matches(router, "other/1"));
+    }
+
+    @Test
+    void firstLevelWildcardsSkipDollarTopics() {
+        TopicRouter<String> router = routerOf("#", "+/info", "$SYS/#", "$SYS/+");
+
+        assertEquals(Arrays.asList("$SYS/#", "$SYS/+"), matches(router, "$SYS/info"));
+        assertEquals(Arrays.asList("#", "+/info"), matches(router, "app/info"));
+    }
+
+    @Test
+    void matchesEmptyLevels() {
+        TopicRouter<String> router = routerOf("a//b", "a/+/b", "/x");
+
+        assertEquals(Arrays.asList("a/+/b", "a//b"), matches(router, "a//b"));
+        assertEquals(Collections.singletonList("/x"), matches(router, "/x"));
+    }
+
+    @Test
+    void keepsEveryHandlerOfSameFilter() {
+        TopicRouter<String> router = new TopicRouter<>();
+        router.add("a/b", "first");
+        router.add("a/b", "second");
+
+        assertEquals(2, router.size());
+        assertEquals(Arrays.asList("first", "second"), matches(router, "a/b"));
+
+        assertTrue(router.remove("a/b", "first"));
+        assertEquals(Collections.singletonList("second"), matches(router, "a/b"));
+        assertEquals(1, router.size());
+    }
+
+    @Test
+    void removePrunesEmptyNodes() {
+        TopicRouter<String> router = routerOf("a/b/c", "a/+", "a/#");
+
+        assertFalse(router.remove("a/b/c", "missing"));
+        assertFalse(router.remove("x/y", "x/y"));
+        assertTrue(router.remove("a/b/c", "a/b/c"));
+        assertTrue(router.remove("a/+", "a/+"));
+        assertTrue(router.remove("a/#", "a/#"));
+
+        assertEquals(0, router.size());
+        assertFalse(router.hasMatch("a/b/c"));
+        assertFalse(router.hasMatch("a/b"));
+
+        // 清理后的路径可以重新注册
+        router.add("a/b/c", "again");
+        assertEquals(Collections.singletonList("again"), matches(router, "a/b/c"));
+    }
+
+    @Test
+    void growsChildTableBeyondInitialCapacity() {
+        TopicRouter<String> router = new TopicRouter<>();
+        for (int i = 0; i < 200; i++) {
+            router.add("device/" + i + "/state", "h" + i);
+        }
+        for (int i = 0; i < 200; i += 2) {
+            assertTrue(router.remove("device/" + i + "/state", "h" + i));
+        }
+
+        assertEquals(100, router.size());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i % 2 == 1, router.hasMatch("device/" + i + "/state"), "device " + i);
+        }
+    }
+
+    @Test
+    void rejectsInvalidFilters() {
+        TopicRouter<String> router = new TopicRouter<>();
+
+        assertThrows(IllegalArgumentException.class, () -> router.add("", "h"));
+        assertThrows(IllegalArgumentException.class, () -> router.add("a/b+", "h"));
+        assertThrows(IllegalArgumentException.class, () -> router.add("a/#/b", "h"));
+        assertThrows(IllegalArgumentException.class, () -> router.add("a#", "h"));
+        assertThrows(IllegalArgumentException.class, () -> router.add("a/b", null));
+        assertThrows(IllegalArgumentException.class, () -> TopicRouter.validateFilter("$share/g"));
+        assertThrows(IllegalArgumentException.class, () -> TopicRouter.validateFilter("$share//a"));
+        assertThrows(IllegalArgumentException.class, () -> TopicRouter.validateFilter("$share/g+/a"));
+        assertThrows(IllegalArgumentException.class, () -> TopicRouter.validateFilter("$share/g/a+"));
+        TopicRouter.validateFilter("$share/g/a/+/#");
+    }
+
+    @Test
+    void buildsAndSplitsSharedFilters() {
+        String shared = TopicRouter.sharedFilter("workers", "jobs/+");
+
+        assertEquals("$share/workers/jobs/+", shared);
+        assertEquals("workers", TopicRouter.shareGroup(shared));
+        assertEquals("jobs/+", TopicRouter.matchingFilter(shared));
+        assertNull(TopicRouter.shareGroup("jobs/+"));
+        assertEquals("jobs/+", TopicRouter.matchingFilter("jobs/+"));
+
+        assertThrows(IllegalArgumentException.class, () -> TopicRouter.sharedFilter("a/b", "jobs"));
+        assertThrows(IllegalArgumentException.class, () -> TopicRouter.sharedFilter("", "jobs"));
+        assertThrows(IllegalArgumentException.class, () -> TopicRouter.sharedFilter("g", shared));
+    }
+}
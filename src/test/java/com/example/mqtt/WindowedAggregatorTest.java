@@ -0,0 +1,213 @@
+package com.example.mqtt;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WindowedAggregatorTest {
+    private static final String[] FIELDS = {"temperature", "humidity"};
+    private static final int TEMPERATURE = 0;
+    private static final int HUMIDITY = 1;
+
+    private final List<WindowedAggregator.Summary> summaries = new ArrayList<>();
+
+    private WindowedAggregator aggregator(long windowMillis, long slideMillis, String keyField, int maxKeys) {
+        return new WindowedAggregator("sensors/+/data", FIELDS, windowMillis, slideMillis, keyField, maxKeys)
+            .onSummary(summaries::add);
+    }
+
+    private static byte[] json(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] reading(double temperature, double humidity) {
+        byte[] payload = new byte[SensorReadingCodec.PAYLOAD_LENGTH];
+        SensorReadingCodec.encode(new SensorReading(1, 0, temperature, humidity, SensorReading.Status.NORMAL), payload, 0);
+        return payload;
+    }
+
+    private Map<String, WindowedAggregator.Summary> emit(WindowedAggregator aggregator, long lastPane) {
+        summaries.clear();
+        aggregator.emit(lastPane);
+        Map<String, WindowedAggregator.Summary> byKey = new HashMap<>();
+        for (WindowedAggregator.Summary summary : summaries) {
+            byKey.put(summary.getKey(), summary);
+        }
+        return byKey;
+    }
+
+    @Test
+    void summarizesTumblingWindowPerTopic() {
+        WindowedAggregator aggregator = aggregator(1000, 0, null, 100);
+        aggregator.add("sensors/a/data", json("{\"temperature\": 20, \"humidity\": 40}"), 5000);
+        aggregator.add("sensors/a/data", json("{\"temperature\": 24, \"humidity\": 44}"), 5400);
+        aggregator.add("sensors/a/data", json("{\"temperature\": 22}"), 5999);
+        aggregator.add("sensors/b/data", json("{\"temperature\": 10}"), 5500);
+        aggregator.add("sensors/a/data", json("{\"temperature\": 99}"), 6000);
+
+        Map<String, WindowedAggregator.Summary> window = emit(aggregator, 5);
+        assertEquals(2, window.size());
+
+        WindowedAggregator.Summary a = window.get("sensors/a/data");
+        assertEquals(5000, a.getWindowStart());
+        assertEquals(6000, a.getWindowEnd());
+        assertEquals(3, a.getCount(TEMPERATURE));
+        assertEquals(20, a.getMin(TEMPERATURE));
+        assertEquals(24, a.getMax(TEMPERATURE));
+        assertEquals(22, a.getMean(TEMPERATURE));
+        assertEquals(22, a.getLast(TEMPERATURE));
+        assertEquals(2, a.getCount(HUMIDITY));
+        assertEquals(42, a.getMean(HUMIDITY));
+        assertEquals(44, a.getLast(HUMIDITY));
+
+        WindowedAggregator.Summary b = window.get("sensors/b/data");
+        assertEquals(1, b.getCount(TEMPERATURE));
+        assertEquals(0, b.getCount(HUMIDITY));
+        assertTrue(Double.isNaN(b.getMean(HUMIDITY)));
+
+        Map<String, WindowedAggregator.Summary> next = emit(aggregator, 6);
+        assertEquals(1, next.size());
+        assertEquals(99, next.get("sensors/a/data").getLast(TEMPERATURE));
+        assertEquals(3, aggregator.getEmittedCount());
+    }
+
+    @Test
+    void slidingWindowCoversLastPanes() {
+        WindowedAggregator aggregator = aggregator(3000, 1000, null, 100);
+        for (int pane = 1; pane <= 4; pane++) {
+            aggregator.add("sensors/a/data", json("{\"temperature\": " + pane * 10 + "}"), pane * 1000 + 500);
+        }
+
+        WindowedAggregator.Summary first = emit(aggregator, 3).get("sensors/a/data");
+        assertEquals(1000, first.getWindowStart());
+        assertEquals(4000, first.getWindowEnd());
+        assertEquals(3, first.getCount(TEMPERATURE));
+        assertEquals(10, first.getMin(TEMPERATURE));
+        assertEquals(30, first.getLast(TEMPERATURE));
+
+        WindowedAggregator.Summary second = emit(aggregator, 4).get("sensors/a/data");
+        assertEquals(3, second.getCount(TEMPERATURE));
+        assertEquals(20, second.getMin(TEMPERATURE));
+        assertEquals(40, second.getMax(TEMPERATURE));
+        assertEquals(30, second.getMean(TEMPERATURE));
+        assertEquals(40, second.getLast(TEMPERATURE));
+    }
+
+    @Test
+    void reusedPaneSlotDropsStaleData() {
+        WindowedAggregator aggregator = aggregator(1000, 1000, null, 100);
+        aggregator.add("sensors/a/data", json("{\"temperature\": 1}"), 5000);
+        // 环形只有两个分片，分片7复用分片5的位置
+        aggregator.add("sensors/a/data", json("{\"temperature\": 2}"), 7000);
+
+        assertTrue(emit(aggregator, 5).isEmpty());
+        WindowedAggregator.Summary summary = emit(aggregator, 7).get("sensors/a/data");
+        assertEquals(1, summary.getCount(TEMPERATURE));
+        assertEquals(2, summary.getMin(TEMPERATURE));
+    }
+
+    @Test
+    void keysByIdFieldAndFallsBackToTopic() {
+        WindowedAggregator aggregator = aggregator(1000, 0, "device", 100);
+        aggregator.add("sensors/a/data", json("{\"device\": \"d1\", \"temperature\": 1}"), 0);
+        aggregator.add("sensors/b/data", json("{\"device\": \"d1\", \"temperature\": 3}"), 10);
+        aggregator.add("sensors/c/data", json("{\"temperature\": 5}"), 20);
+
+        Map<String, WindowedAggregator.Summary> window = emit(aggregator, 0);
+        assertEquals(2, window.size());
+        assertEquals(2, window.get("d1").getCount(TEMPERATURE));
+        assertEquals("sensors/b/data", window.get("d1").getTopic());
+        assertEquals(1, window.get("sensors/c/data").getCount(TEMPERATURE));
+    }
+
+    @Test
+    void growsBeyondInitialKeysAndEnforcesMaxKeys() {
+        WindowedAggregator aggregator = aggregator(1000, 0, null, 200);
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 250; i++) {
+                aggregator.add("sensors/" + i + "/data", json("{\"temperature\": " + i + "}"), 100 + round);
+            }
+        }
+
+        assertEquals(200, aggregator.getKeyCount());
+        assertEquals(400, aggregator.getInputCount());
+        assertEquals(100, aggregator.getDroppedCount());
+
+        Map<String, WindowedAggregator.Summary> window = emit(aggregator, 0);
+        assertEquals(200, window.size());
+        for (int i = 0; i < 200; i++) {
+            WindowedAggregator.Summary summary = window.get("sensors/" + i + "/data");
+            assertEquals(2, summary.getCount(TEMPERATURE), "sensor " + i);
+            assertEquals(i, summary.getMean(TEMPERATURE), "sensor " + i);
+        }
+    }
+
+    @Test
+    void ignoresPayloadWithoutStatisticFields() {
+        WindowedAggregator aggregator = aggregator(1000, 0, null, 100);
+        aggregator.add("sensors/a/data", json("{\"pressure\": 1013}"), 0);
+        aggregator.add("sensors/a/data", json("not json"), 0);
+
+        assertEquals(0, aggregator.getInputCount());
+        assertEquals(0, aggregator.getKeyCount());
+        assertTrue(emit(aggregator, 0).isEmpty());
+    }
+
+    @Test
+    void readsBinarySensorReadings() {
+        WindowedAggregator aggregator = aggregator(1000, 0, "device", 100);
+        aggregator.add("sensors/a/data", reading(21.5, 40.25), 0);
+        aggregator.add("sensors/a/data", reading(22.5, 41.75), 10);
+
+        WindowedAggregator.Summary summary = emit(aggregator, 0).get("sensors/a/data");
+        assertEquals(22, summary.getMean(TEMPERATURE));
+        assertEquals(41, summary.getMean(HUMIDITY));
+    }
+
+    @Test
+    void republishesSummaryAsJson() {
+        List<String> topics = new ArrayList<>();
+        List<byte[]> payloads = new ArrayList<>();
+        WindowedAggregator aggregator = new WindowedAggregator("sensors/+/data", FIELDS, 1000, 0, null, 100)
+            .republishTo("{topic}/summary", (topic, payload) -> {
+                topics.add(topic);
+                payloads.add(payload);
+            });
+        aggregator.add("sensors/a/data", json("{\"temperature\": 20}"), 2000);
+        aggregator.add("sensors/a/data", json("{\"temperature\": 30}"), 2500);
+        aggregator.emit(2);
+
+        assertEquals(1, topics.size());
+        assertEquals("sensors/a/data/summary", topics.get(0));
+        JsonPayloadView view = new JsonPayloadView(payloads.get(0));
+        assertEquals("sensors/a/data", view.getString("key"));
+        assertEquals(2000, view.getLong("start", 0));
+        assertEquals(3000, view.getLong("end", 0));
+        assertEquals(2, view.getLong("temperature.count", 0));
+        assertEquals(25, view.getDouble("temperature.mean"));
+        assertFalse(view.has("humidity"));
+    }
+
+    @Test
+    void matchesTopicFilterAndRejectsInvalidWindows() {
+        WindowedAggregator aggregator = aggregator(1000, 0, null, 100);
+        assertTrue(aggregator.matches("sensors/a/data"));
+        assertFalse(aggregator.matches("sensors/a/data/summary"));
+
+        assertThrows(IllegalArgumentException.class,
+            () -> new WindowedAggregator("a", new String[0], 1000, 0, null, 10));
+        assertThrows(IllegalArgumentException.class,
+            () -> new WindowedAggregator("a", FIELDS, 1000, 300, null, 10));
+        assertThrows(IllegalArgumentException.class,
+            () -> new WindowedAggregator("a", FIELDS, 0, 0, null, 10));
+    }
+}